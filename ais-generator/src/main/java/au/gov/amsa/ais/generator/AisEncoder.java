@@ -0,0 +1,199 @@
+package au.gov.amsa.ais.generator;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+
+import au.gov.amsa.util.nmea.NmeaUtil;
+
+/**
+ * Encodes the state of a {@link Vessel} as AIS messages (types 1, 2, 3, 5, 18
+ * and 24) and wraps the payloads in !AIVDM sentences with NMEA 4.0 tag blocks.
+ * Payloads longer than one sentence can carry are split over several
+ * sentences grouped by a <code>g:</code> tag and the sequential message id.
+ */
+final class AisEncoder {
+
+    // maximum number of payload characters in one sentence (keeps the
+    // sentence within 82 characters)
+    private static final int MAX_PAYLOAD_CHARS = 60;
+
+    private AisEncoder() {
+        // prevent instantiation
+    }
+
+    static PayloadBuilder positionA(Vessel v, int messageId, long time) {
+        PayloadBuilder b = new PayloadBuilder(168);
+        b.add(messageId, 6);
+        b.add(0, 2);
+        b.add(v.mmsi, 30);
+        b.add(v.navigationalStatus(), 4);
+        b.add(rot(v.rot), 8);
+        b.add(sog(v.sog), 10);
+        b.add(1, 1);
+        b.add(Math.round(v.lon * 600000), 28);
+        b.add(Math.round(v.lat * 600000), 27);
+        b.add(cog(v.cog), 12);
+        b.add(heading(v.cog), 9);
+        b.add(utcSecond(time), 6);
+        b.add(0, 2);
+        b.add(0, 3);
+        b.add(0, 1);
+        b.add(0, 19);
+        return b;
+    }
+
+    static PayloadBuilder staticA(Vessel v, long time) {
+        PayloadBuilder b = new PayloadBuilder(424);
+        b.add(5, 6);
+        b.add(0, 2);
+        b.add(v.mmsi, 30);
+        b.add(0, 2);
+        b.add(v.imo, 30);
+        b.addText(v.callsign, 7);
+        b.addText(v.name, 20);
+        b.add(v.shipType, 8);
+        b.add(v.dimA, 9);
+        b.add(v.dimB, 9);
+        b.add(v.dimC, 6);
+        b.add(v.dimD, 6);
+        // gps
+        b.add(1, 4);
+        // eta of a day later
+        DateTime eta = new DateTime(time, DateTimeZone.UTC).plusDays(1);
+        b.add(eta.getMonthOfYear(), 4);
+        b.add(eta.getDayOfMonth(), 5);
+        b.add(eta.getHourOfDay(), 5);
+        b.add(eta.getMinuteOfHour(), 6);
+        b.add(Math.round(v.draughtMetres * 10), 8);
+        b.addText(v.destination, 20);
+        b.add(0, 1);
+        b.add(0, 1);
+        return b;
+    }
+
+    static PayloadBuilder positionB(Vessel v, long time) {
+        PayloadBuilder b = new PayloadBuilder(168);
+        b.add(18, 6);
+        b.add(0, 2);
+        b.add(v.mmsi, 30);
+        b.add(0, 8);
+        b.add(sog(v.sog), 10);
+        b.add(0, 1);
+        b.add(Math.round(v.lon * 600000), 28);
+        b.add(Math.round(v.lat * 600000), 27);
+        b.add(cog(v.cog), 12);
+        // heading not available
+        b.add(511, 9);
+        b.add(utcSecond(time), 6);
+        b.add(0, 2);
+        // carrier sense unit
+        b.add(1, 1);
+        b.add(0, 1);
+        b.add(0, 1);
+        b.add(1, 1);
+        b.add(0, 1);
+        b.add(0, 1);
+        b.add(0, 1);
+        b.add(0, 20);
+        return b;
+    }
+
+    static PayloadBuilder staticBPartA(Vessel v) {
+        PayloadBuilder b = new PayloadBuilder(168);
+        b.add(24, 6);
+        b.add(0, 2);
+        b.add(v.mmsi, 30);
+        b.add(0, 2);
+        b.addText(v.name, 20);
+        b.add(0, 8);
+        return b;
+    }
+
+    static PayloadBuilder staticBPartB(Vessel v) {
+        PayloadBuilder b = new PayloadBuilder(168);
+        b.add(24, 6);
+        b.add(0, 2);
+        b.add(v.mmsi, 30);
+        b.add(1, 2);
+        b.add(v.shipType, 8);
+        b.addText("SIMGEN1", 7);
+        b.addText(v.callsign, 7);
+        b.add(v.dimA, 9);
+        b.add(v.dimB, 9);
+        b.add(v.dimC, 6);
+        b.add(v.dimD, 6);
+        b.add(0, 6);
+        return b;
+    }
+
+    /**
+     * Adds the NMEA lines carrying the payload to <code>lines</code>.
+     *
+     * @param payload
+     *            encoded message
+     * @param channel
+     *            'A' or 'B'
+     * @param sequenceId
+     *            sequential message id 0-9 for multi-sentence messages
+     * @param groupId
+     *            tag block group id for multi-sentence messages
+     * @param source
+     *            tag block source
+     * @param time
+     *            epoch ms
+     * @param lines
+     *            receives the lines
+     */
+    static void addLines(PayloadBuilder payload, char channel, int sequenceId, int groupId,
+            String source, long time, List<String> lines) {
+        String chars = payload.payload();
+        int count = (chars.length() + MAX_PAYLOAD_CHARS - 1) / MAX_PAYLOAD_CHARS;
+        for (int i = 0; i < count; i++) {
+            int number = i + 1;
+            LinkedHashMap<String, String> tags = new LinkedHashMap<String, String>();
+            if (count > 1)
+                tags.put("g", number + "-" + count + "-" + groupId);
+            if (number == 1) {
+                tags.put("s", source);
+                tags.put("c", String.valueOf(time / 1000));
+            }
+            List<String> items = new ArrayList<String>(7);
+            items.add("!AIVDM");
+            items.add(String.valueOf(count));
+            items.add(String.valueOf(number));
+            items.add(count > 1 ? String.valueOf(sequenceId) : "");
+            items.add(String.valueOf(channel));
+            items.add(chars.substring(i * MAX_PAYLOAD_CHARS,
+                    Math.min(chars.length(), number * MAX_PAYLOAD_CHARS)));
+            items.add(String.valueOf(number == count ? payload.fillBits() : 0));
+            lines.add(NmeaUtil.createNmeaLine(tags, items));
+        }
+    }
+
+    private static int sog(double knots) {
+        return (int) Math.min(1022, Math.round(knots * 10));
+    }
+
+    private static int cog(double degrees) {
+        return (int) Math.round(degrees * 10) % 3600;
+    }
+
+    private static int heading(double degrees) {
+        return (int) Math.round(degrees) % 360;
+    }
+
+    private static int rot(double degreesPerMinute) {
+        // ROTais = 4.733 * sqrt(ROTsensor)
+        double value = 4.733 * Math.sqrt(Math.abs(degreesPerMinute));
+        int rot = (int) Math.min(126, Math.round(value));
+        return degreesPerMinute < 0 ? -rot : rot;
+    }
+
+    private static int utcSecond(long time) {
+        return (int) ((time / 1000) % 60);
+    }
+}
@@ -0,0 +1,24 @@
+package au.gov.amsa.ais.generator;
+
+/**
+ * Bounding box that simulated vessels stay within.
+ */
+final class Area {
+
+    final double minLat;
+    final double minLon;
+    final double maxLat;
+    final double maxLon;
+
+    Area(double minLat, double minLon, double maxLat, double maxLon) {
+        if (minLat >= maxLat || minLon >= maxLon)
+            throw new IllegalArgumentException("min must be less than max");
+        if (minLat < -90 || maxLat > 90 || minLon < -180 || maxLon > 180)
+            throw new IllegalArgumentException("area out of range");
+        this.minLat = minLat;
+        this.minLon = minLon;
+        this.maxLat = maxLat;
+        this.maxLon = maxLon;
+    }
+
+}
@@ -0,0 +1,57 @@
+package au.gov.amsa.ais.generator;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import au.gov.amsa.streams.StringServer;
+import rx.Observable;
+
+/**
+ * Command line entry point. Usage:
+ *
+ * <pre>
+ * GeneratorMain file &lt;vessels&gt; &lt;minutes&gt; &lt;output.nmea.gz&gt;
+ * GeneratorMain socket &lt;vessels&gt; &lt;linesPerSecond&gt; &lt;port&gt;
+ * </pre>
+ *
+ * The first form writes the given number of simulated minutes to a gzipped
+ * file. The second publishes an endless stream at the given rate to
+ * connections on the given port.
+ */
+public final class GeneratorMain {
+
+    private static final Logger log = LoggerFactory.getLogger(GeneratorMain.class);
+
+    public static void main(String[] args) {
+        if (args.length != 4) {
+            System.out.println("Usage: GeneratorMain file <vessels> <minutes> <output.nmea.gz>");
+            System.out.println("       GeneratorMain socket <vessels> <linesPerSecond> <port>");
+            System.exit(1);
+        }
+        int vessels = Integer.parseInt(args[1]);
+        if ("file".equals(args[0])) {
+            long minutes = Long.parseLong(args[2]);
+            File file = new File(args[3]);
+            Observable<String> lines = TrafficGenerator.vessels(vessels)
+                    .duration(minutes, TimeUnit.MINUTES).build().lines();
+            long start = System.currentTimeMillis();
+            long count = TrafficGenerator.writeGzip(lines, file).toBlocking().single();
+            log.info("wrote " + count + " lines to " + file + " in "
+                    + (System.currentTimeMillis() - start) + "ms");
+        } else if ("socket".equals(args[0])) {
+            double rate = Double.parseDouble(args[2]);
+            int port = Integer.parseInt(args[3]);
+            Observable<String> lines = TrafficGenerator
+                    .paced(TrafficGenerator.vessels(vessels).build().lines(), rate)
+                    .map(line -> line + "\r\n");
+            log.info("publishing " + vessels + " vessels at " + rate + " lines/s on port "
+                    + port);
+            StringServer.create(lines, port).start();
+        } else
+            throw new IllegalArgumentException("unknown mode " + args[0]);
+    }
+
+}
@@ -0,0 +1,79 @@
+package au.gov.amsa.ais.generator;
+
+import java.util.Arrays;
+
+/**
+ * Accumulates the bit fields of an AIS message and armours them into the
+ * six-bit ASCII payload used in !AIVDM sentences.
+ */
+final class PayloadBuilder {
+
+    private boolean[] bits;
+    private int length;
+
+    PayloadBuilder(int capacityBits) {
+        bits = new boolean[capacityBits];
+    }
+
+    /**
+     * Appends the lowest <code>numBits</code> bits of <code>value</code> most
+     * significant first. Negative values are written in two's complement.
+     */
+    PayloadBuilder add(long value, int numBits) {
+        ensureCapacity(length + numBits);
+        for (int i = numBits - 1; i >= 0; i--)
+            bits[length++] = ((value >>> i) & 1) == 1;
+        return this;
+    }
+
+    /**
+     * Appends <code>numChars</code> characters of AIS six-bit text, upper
+     * casing and padding with '@' as required. Characters outside the AIS
+     * character set are written as spaces.
+     */
+    PayloadBuilder addText(String text, int numChars) {
+        for (int i = 0; i < numChars; i++) {
+            char ch = i < text.length() ? Character.toUpperCase(text.charAt(i)) : '@';
+            final int value;
+            if (ch >= '@' && ch <= '_')
+                value = ch - '@';
+            else if (ch >= ' ' && ch <= '?')
+                value = ch;
+            else
+                value = ' ';
+            add(value, 6);
+        }
+        return this;
+    }
+
+    int length() {
+        return length;
+    }
+
+    /**
+     * Returns the armoured payload. The number of fill bits needed to pad the
+     * last character is {@link #fillBits()}.
+     */
+    String payload() {
+        int numChars = (length + 5) / 6;
+        char[] chars = new char[numChars];
+        for (int c = 0; c < numChars; c++) {
+            int value = 0;
+            for (int i = 0; i < 6; i++) {
+                int index = c * 6 + i;
+                value = (value << 1) | (index < length && bits[index] ? 1 : 0);
+            }
+            chars[c] = (char) (value < 40 ? value + 48 : value + 56);
+        }
+        return new String(chars);
+    }
+
+    int fillBits() {
+        return (6 - length % 6) % 6;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > bits.length)
+            bits = Arrays.copyOf(bits, Math.max(capacity, bits.length * 2));
+    }
+}
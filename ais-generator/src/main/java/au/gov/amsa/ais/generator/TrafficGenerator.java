@@ -0,0 +1,378 @@
+package au.gov.amsa.ais.generator;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+import com.github.davidmoten.util.Preconditions;
+
+import au.gov.amsa.ais.generator.Vessel.State;
+import rx.Observable;
+import rx.Scheduler;
+import rx.schedulers.Schedulers;
+
+/**
+ * Generates synthetic AIS NMEA traffic for a fleet of simulated vessels (up to
+ * millions) so that the parsers, detectors and servers can be driven at scale
+ * without real feed data.
+ *
+ * <p>
+ * Each vessel is class A or class B and underway, at anchor or moored. It is
+ * dead reckoned between reports with small random changes of course and speed
+ * and reports its position at the ITU-R M.1371 interval for its class, state
+ * and speed (type 1, 2 or 3 for class A, type 18 for class B). Static data is
+ * reported every 6 minutes (type 5 over two sentences for class A, type 24
+ * parts A and B for class B). Lines carry <code>s:</code> and
+ * <code>c:</code> tag blocks and valid checksums and are emitted in time
+ * order of simulated time. The output is deterministic for a given seed.
+ *
+ * <p>
+ * The simulated clock is independent of the wall clock. Use
+ * {@link #writeGzip(Observable, File)} to write a file or
+ * {@link #paced(Observable, double)} to limit a live stream (for example
+ * published with <code>StringServer</code>) to a target rate.
+ */
+public final class TrafficGenerator {
+
+    private static final long STATIC_INTERVAL_MS = TimeUnit.MINUTES.toMillis(6);
+
+    private final int numVessels;
+    private final double classBFraction;
+    private final double anchoredFraction;
+    private final double mooredFraction;
+    private final Area area;
+    private final long startTime;
+    private final long finishTime;
+    private final String source;
+    private final long seed;
+
+    private TrafficGenerator(Builder b) {
+        this.numVessels = b.numVessels;
+        this.classBFraction = b.classBFraction;
+        this.anchoredFraction = b.anchoredFraction;
+        this.mooredFraction = b.mooredFraction;
+        this.area = new Area(b.minLat, b.minLon, b.maxLat, b.maxLon);
+        this.startTime = b.startTime;
+        this.finishTime = b.finishTime;
+        this.source = b.source;
+        this.seed = b.seed;
+    }
+
+    public static Builder vessels(int numVessels) {
+        return new Builder(numVessels);
+    }
+
+    public static final class Builder {
+
+        private final int numVessels;
+        private double classBFraction = 0.3;
+        private double anchoredFraction = 0.15;
+        private double mooredFraction = 0.15;
+        // around Australia
+        private double minLat = -45;
+        private double minLon = 110;
+        private double maxLat = -10;
+        private double maxLon = 155;
+        private long startTime = System.currentTimeMillis();
+        private long finishTime = Long.MAX_VALUE;
+        private String source = "generator";
+        private long seed = 1;
+
+        private Builder(int numVessels) {
+            this.numVessels = numVessels;
+        }
+
+        /**
+         * Sets the proportion of vessels that are class B.
+         */
+        public Builder classBFraction(double fraction) {
+            this.classBFraction = fraction;
+            return this;
+        }
+
+        /**
+         * Sets the proportion of vessels that are at anchor.
+         */
+        public Builder anchoredFraction(double fraction) {
+            this.anchoredFraction = fraction;
+            return this;
+        }
+
+        /**
+         * Sets the proportion of vessels that are moored.
+         */
+        public Builder mooredFraction(double fraction) {
+            this.mooredFraction = fraction;
+            return this;
+        }
+
+        /**
+         * Sets the bounding box the vessels stay within.
+         */
+        public Builder area(double minLat, double minLon, double maxLat, double maxLon) {
+            this.minLat = minLat;
+            this.minLon = minLon;
+            this.maxLat = maxLat;
+            this.maxLon = maxLon;
+            return this;
+        }
+
+        /**
+         * Sets the simulated time (epoch ms) of the first report.
+         */
+        public Builder startTime(long startTime) {
+            this.startTime = startTime;
+            return this;
+        }
+
+        /**
+         * Sets the simulated time (epoch ms, exclusive) at which generation
+         * stops. By default generation does not stop.
+         */
+        public Builder finishTime(long finishTime) {
+            this.finishTime = finishTime;
+            return this;
+        }
+
+        /**
+         * Sets the simulated duration (from the start time) after which
+         * generation stops.
+         */
+        public Builder duration(long duration, TimeUnit unit) {
+            this.finishTime = startTime + unit.toMillis(duration);
+            return this;
+        }
+
+        /**
+         * Sets the value of the <code>s:</code> tag.
+         */
+        public Builder source(String source) {
+            this.source = source;
+            return this;
+        }
+
+        public Builder seed(long seed) {
+            this.seed = seed;
+            return this;
+        }
+
+        public TrafficGenerator build() {
+            Preconditions.checkArgument(numVessels > 0, "numVessels must be > 0");
+            Preconditions.checkArgument(classBFraction >= 0 && classBFraction <= 1,
+                    "classBFraction must be between 0 and 1");
+            Preconditions.checkArgument(anchoredFraction >= 0 && mooredFraction >= 0
+                    && anchoredFraction + mooredFraction <= 1,
+                    "anchored and moored fractions must be between 0 and 1");
+            Preconditions.checkNotNull(source);
+            return new TrafficGenerator(this);
+        }
+    }
+
+    /**
+     * Returns the generated lines. Each subscription runs its own simulation
+     * from the start time. Backpressure is supported.
+     *
+     * @return NMEA lines
+     */
+    public Observable<String> lines() {
+        return Observable.from(new Iterable<String>() {
+            @Override
+            public Iterator<String> iterator() {
+                return new Simulation();
+            }
+        });
+    }
+
+    /**
+     * Returns the lines of <code>source</code> at approximately
+     * <code>linesPerSecond</code>, emitted in small batches every few
+     * milliseconds. If downstream is slower the rate falls behind rather than
+     * buffering.
+     *
+     * @param source
+     * @param linesPerSecond
+     * @param scheduler
+     * @return
+     */
+    public static Observable<String> paced(Observable<String> source, double linesPerSecond,
+            Scheduler scheduler) {
+        Preconditions.checkArgument(linesPerSecond > 0, "linesPerSecond must be > 0");
+        // aim for 100 batches a second
+        int batchSize = (int) Math.max(1, Math.round(linesPerSecond / 100));
+        long periodMicros = Math.max(1, Math.round(batchSize * 1000000 / linesPerSecond));
+        Observable<Long> ticks = Observable
+                .interval(periodMicros, TimeUnit.MICROSECONDS, scheduler)
+                .onBackpressureDrop();
+        return source.buffer(batchSize)
+                // release a batch per tick
+                .zipWith(ticks, (batch, tick) -> batch)
+                // flatten
+                .concatMapIterable(batch -> batch);
+    }
+
+    public static Observable<String> paced(Observable<String> source, double linesPerSecond) {
+        return paced(source, linesPerSecond, Schedulers.computation());
+    }
+
+    /**
+     * Writes the lines to a gzipped file, one per line, and emits the number
+     * of lines written.
+     *
+     * @param lines
+     * @param file
+     * @return
+     */
+    public static Observable<Long> writeGzip(Observable<String> lines, File file) {
+        return Observable.using(() -> {
+            try {
+                return new BufferedWriter(new OutputStreamWriter(new GZIPOutputStream(
+                        new FileOutputStream(file), 65536), StandardCharsets.UTF_8), 65536);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        } , writer -> lines.doOnNext(line -> write(writer, line)).countLong(),
+                writer -> close(writer), true);
+    }
+
+    private static void write(Writer writer, String line) {
+        try {
+            writer.write(line);
+            writer.write('\n');
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static void close(Writer writer) {
+        try {
+            writer.close();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Event loop of one run: a heap of vessels ordered by their next report
+     * time.
+     */
+    private final class Simulation implements Iterator<String> {
+
+        private final Random random = new Random(seed);
+        private final PriorityQueue<Vessel> heap;
+        private final ArrayDeque<String> pending = new ArrayDeque<String>();
+        private final List<String> lines = new ArrayList<String>(2);
+        private int sequenceId;
+        private int groupId;
+
+        Simulation() {
+            heap = new PriorityQueue<Vessel>(numVessels,
+                    (a, b) -> Long.compare(nextTime(a), nextTime(b)));
+            for (int i = 0; i < numVessels; i++) {
+                boolean classA = random.nextDouble() >= classBFraction;
+                double r = random.nextDouble();
+                final State state;
+                if (r < anchoredFraction)
+                    state = State.AT_ANCHOR;
+                else if (r < anchoredFraction + mooredFraction)
+                    state = State.MOORED;
+                else
+                    state = State.UNDERWAY;
+                Vessel v = new Vessel(i, classA, state, area, startTime, random);
+                // spread the first reports over their intervals
+                v.nextPositionTime = startTime
+                        + (long) (random.nextDouble() * v.positionReportingIntervalMs());
+                v.nextStaticTime = startTime
+                        + (long) (random.nextDouble() * STATIC_INTERVAL_MS);
+                heap.add(v);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (pending.isEmpty())
+                step();
+            return !pending.isEmpty();
+        }
+
+        @Override
+        public String next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            return pending.poll();
+        }
+
+        private void step() {
+            while (pending.isEmpty()) {
+                Vessel v = heap.peek();
+                if (v == null || nextTime(v) >= finishTime)
+                    return;
+                heap.poll();
+                report(v);
+                heap.add(v);
+            }
+        }
+
+        private void report(Vessel v) {
+            lines.clear();
+            char channel = (v.counter++ & 1) == 0 ? 'A' : 'B';
+            if (v.nextPositionTime <= v.nextStaticTime) {
+                long time = v.nextPositionTime;
+                v.advance(time, area, random);
+                final PayloadBuilder payload;
+                if (v.classA)
+                    payload = AisEncoder.positionA(v, positionMessageId(), time);
+                else
+                    payload = AisEncoder.positionB(v, time);
+                AisEncoder.addLines(payload, channel, 0, 0, source, time, lines);
+                v.nextPositionTime = time + v.positionReportingIntervalMs();
+            } else {
+                long time = v.nextStaticTime;
+                if (v.classA)
+                    addMultiSentence(AisEncoder.staticA(v, time), channel, time);
+                else {
+                    AisEncoder.addLines(AisEncoder.staticBPartA(v), channel, 0, 0, source,
+                            time, lines);
+                    AisEncoder.addLines(AisEncoder.staticBPartB(v), channel, 0, 0, source,
+                            time, lines);
+                }
+                v.nextStaticTime = time + STATIC_INTERVAL_MS;
+            }
+            pending.addAll(lines);
+        }
+
+        private void addMultiSentence(PayloadBuilder payload, char channel, long time) {
+            sequenceId = (sequenceId + 1) % 10;
+            groupId = groupId % 99999 + 1;
+            AisEncoder.addLines(payload, channel, sequenceId, groupId, source, time, lines);
+        }
+
+        private int positionMessageId() {
+            // mostly scheduled reports, some assigned and interrogated
+            int r = random.nextInt(100);
+            if (r < 90)
+                return 1;
+            else if (r < 93)
+                return 2;
+            else
+                return 3;
+        }
+    }
+
+    private static long nextTime(Vessel v) {
+        return Math.min(v.nextPositionTime, v.nextStaticTime);
+    }
+
+}
@@ -0,0 +1,146 @@
+package au.gov.amsa.ais.generator;
+
+import java.util.Random;
+
+/**
+ * Mutable state of one simulated vessel. Only accessed by the generator that
+ * owns it.
+ */
+final class Vessel {
+
+    enum State {
+        UNDERWAY, AT_ANCHOR, MOORED;
+    }
+
+    private static final double NM_PER_DEGREE = 60;
+
+    final int mmsi;
+    final boolean classA;
+    final int imo;
+    final String name;
+    final String callsign;
+    final String destination;
+    final int shipType;
+    final int dimA, dimB, dimC, dimD;
+    final float draughtMetres;
+
+    State state;
+    double lat;
+    double lon;
+    // knots
+    double sog;
+    // degrees true
+    double cog;
+    // degrees per minute
+    double rot;
+    long positionTime;
+
+    long nextPositionTime;
+    long nextStaticTime;
+    // alternates the channel (A or B) of successive reports
+    int counter;
+
+    Vessel(int index, boolean classA, State state, Area area, long time, Random random) {
+        // keep mmsis unique and in the range of ship station mmsis
+        this.mmsi = 201000000 + index;
+        this.classA = classA;
+        this.state = state;
+        this.imo = classA ? 9000000 + index % 999999 : 0;
+        this.name = "SIM " + index;
+        this.callsign = "SIM" + Integer.toString(index, 36).toUpperCase();
+        this.destination = DESTINATIONS[random.nextInt(DESTINATIONS.length)];
+        this.shipType = classA ? 70 + random.nextInt(20) : 36 + random.nextInt(2);
+        this.dimA = classA ? 50 + random.nextInt(150) : 5 + random.nextInt(10);
+        this.dimB = classA ? 10 + random.nextInt(40) : 2 + random.nextInt(5);
+        this.dimC = classA ? 5 + random.nextInt(15) : 1 + random.nextInt(3);
+        this.dimD = classA ? 5 + random.nextInt(15) : 1 + random.nextInt(3);
+        this.draughtMetres = classA ? 4 + random.nextInt(120) / 10f : 0;
+        this.lat = area.minLat + random.nextDouble() * (area.maxLat - area.minLat);
+        this.lon = area.minLon + random.nextDouble() * (area.maxLon - area.minLon);
+        this.cog = random.nextDouble() * 360;
+        if (state == State.UNDERWAY)
+            this.sog = classA ? 8 + random.nextDouble() * 14 : 4 + random.nextDouble() * 11;
+        else
+            this.sog = random.nextDouble() * 0.3;
+        this.positionTime = time;
+    }
+
+    /**
+     * Dead reckons the vessel forward to <code>time</code> with a small random
+     * change of course and speed, turning back into the area at its edges.
+     */
+    void advance(long time, Area area, Random random) {
+        double hours = (time - positionTime) / 3600000.0;
+        positionTime = time;
+        if (hours <= 0)
+            return;
+        if (state == State.UNDERWAY) {
+            double turn = random.nextGaussian() * 2;
+            rot = turn / Math.max(hours * 60, 1.0 / 60);
+            cog = normalize(cog + turn);
+            double max = classA ? 25 : 15;
+            sog = Math.max(2.5, Math.min(max, sog + random.nextGaussian() * 0.2));
+        } else {
+            // swinging at anchor or on the mooring lines
+            rot = 0;
+            cog = normalize(cog + random.nextGaussian() * 5);
+            sog = Math.min(0.5, Math.abs(sog + random.nextGaussian() * 0.05));
+        }
+        double distanceNm = sog * hours;
+        double radians = Math.toRadians(cog);
+        lat += distanceNm * Math.cos(radians) / NM_PER_DEGREE;
+        lon += distanceNm * Math.sin(radians) / NM_PER_DEGREE
+                / Math.max(0.1, Math.cos(Math.toRadians(lat)));
+        if (lat < area.minLat || lat > area.maxLat) {
+            lat = Math.max(area.minLat, Math.min(area.maxLat, lat));
+            cog = normalize(180 - cog);
+        }
+        if (lon < area.minLon || lon > area.maxLon) {
+            lon = Math.max(area.minLon, Math.min(area.maxLon, lon));
+            cog = normalize(360 - cog);
+        }
+    }
+
+    /**
+     * Returns the time in ms until the next position report is due according
+     * to the ITU-R M.1371 reporting intervals for the class and state of the
+     * vessel (ignoring the faster rates when changing course).
+     */
+    long positionReportingIntervalMs() {
+        if (classA) {
+            if (state != State.UNDERWAY && sog <= 3)
+                return 180000;
+            else if (sog <= 14)
+                return 10000;
+            else if (sog <= 23)
+                return 6000;
+            else
+                return 2000;
+        } else {
+            if (sog <= 2)
+                return 180000;
+            else
+                return 30000;
+        }
+    }
+
+    int navigationalStatus() {
+        switch (state) {
+        case AT_ANCHOR:
+            return 1;
+        case MOORED:
+            return 5;
+        default:
+            return 0;
+        }
+    }
+
+    private static double normalize(double degrees) {
+        double d = degrees % 360;
+        return d < 0 ? d + 360 : d;
+    }
+
+    private static final String[] DESTINATIONS = { "SYDNEY", "MELBOURNE", "BRISBANE",
+            "FREMANTLE", "ADELAIDE", "HOBART", "DARWIN", "NEWCASTLE", "PORT HEDLAND",
+            "GLADSTONE", "SINGAPORE", "AUCKLAND" };
+}
@@ -0,0 +1,61 @@
+package au.gov.amsa.ais.generator;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import au.gov.amsa.ais.rx.Streams;
+import rx.Observable;
+
+/**
+ * Throughput of the ingestion chain (lines to decoded messages to fixes) on
+ * generated traffic, which unlike the sample file used by
+ * <code>BenchmarksIngestion</code> has tag blocks on every line, a realistic
+ * share of multi-sentence messages and as many distinct vessels as wanted.
+ * Also measures the generator itself so that soak tests can tell whether it
+ * keeps up with the rate they ask for. Scores are lines per second. Run with
+ * <code>mvn install -P benchmark</code>.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class BenchmarksGenerated {
+
+    private static final int LINES = 40000;
+    private static final long START_TIME = 1450000000000L;
+
+    @Param({ "1000", "50000" })
+    public int vessels;
+
+    private TrafficGenerator generator;
+    private List<String> lines;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        generator = TrafficGenerator.vessels(vessels).startTime(START_TIME).seed(1).build();
+        lines = generator.lines().take(LINES).toList().toBlocking().single();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LINES)
+    public int generate() {
+        return generator.lines().take(LINES).count().toBlocking().single();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LINES)
+    public int linesToFixes() {
+        return Streams.extractFixes(Observable.from(lines)).count().toBlocking().single();
+    }
+
+}
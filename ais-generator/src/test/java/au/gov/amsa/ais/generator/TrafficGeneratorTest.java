@@ -0,0 +1,111 @@
+package au.gov.amsa.ais.generator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import au.gov.amsa.ais.AisMessage;
+import au.gov.amsa.ais.Timestamped;
+import au.gov.amsa.ais.message.AisPosition;
+import au.gov.amsa.ais.message.AisShipStaticA;
+import au.gov.amsa.ais.rx.Streams;
+import au.gov.amsa.util.nmea.NmeaUtil;
+import rx.Observable;
+
+public class TrafficGeneratorTest {
+
+    private static final long START = 1450000000000L;
+
+    private static TrafficGenerator generator(int vessels, long minutes) {
+        return TrafficGenerator.vessels(vessels).startTime(START)
+                .duration(minutes, TimeUnit.MINUTES).seed(123).build();
+    }
+
+    @Test
+    public void testPayloadArmouring() {
+        PayloadBuilder b = new PayloadBuilder(12);
+        b.add(1, 6).add(40, 6).add(1, 2);
+        assertEquals("1`@", b.payload());
+        assertEquals(4, b.fillBits());
+    }
+
+    @Test
+    public void testLinesHaveValidChecksums() {
+        List<String> lines = generator(100, 10).lines().toList().toBlocking().single();
+        assertTrue(lines.size() > 1000);
+        for (String line : lines) {
+            assertTrue(line, NmeaUtil.isValid(line));
+            String tagBlock = line.substring(1, line.indexOf('\\', 1));
+            assertEquals(line, tagBlock.substring(tagBlock.indexOf('*') + 1),
+                    NmeaUtil.getChecksum(tagBlock.substring(0, tagBlock.indexOf('*'))));
+        }
+    }
+
+    @Test
+    public void testGeneratedMessagesDecode() {
+        Observable<String> lines = generator(200, 10).lines();
+        List<Timestamped<AisMessage>> messages = Streams.extractMessages(lines).toList()
+                .toBlocking().single();
+        Map<Integer, Integer> counts = new HashMap<Integer, Integer>();
+        long previousTime = 0;
+        for (Timestamped<AisMessage> m : messages) {
+            int id = m.message().getMessageId();
+            counts.put(id, counts.getOrDefault(id, 0) + 1);
+            // second resolution in the c: tag
+            assertTrue(m.time() >= previousTime);
+            previousTime = m.time();
+            assertTrue(m.time() >= START / 1000 * 1000
+                    && m.time() < START + TimeUnit.MINUTES.toMillis(10));
+            if (m.message() instanceof AisPosition) {
+                AisPosition p = (AisPosition) m.message();
+                assertTrue(p.getMmsi() >= 201000000 && p.getMmsi() < 201000200);
+                assertTrue(p.getLatitude() >= -45 && p.getLatitude() <= -10);
+                assertTrue(p.getLongitude() >= 110 && p.getLongitude() <= 155);
+            } else if (m.message() instanceof AisShipStaticA) {
+                AisShipStaticA s = (AisShipStaticA) m.message();
+                assertTrue(s.getName().startsWith("SIM "));
+                assertTrue(s.getCallsign().startsWith("SIM"));
+            }
+        }
+        // every vessel reports static data in 6 minutes
+        int statics = counts.getOrDefault(5, 0) + counts.getOrDefault(24, 0) / 2;
+        assertTrue(counts.toString(), statics >= 200);
+        for (int id : new int[] { 1, 2, 3, 5, 18, 24 })
+            assertTrue(counts.toString(), counts.containsKey(id));
+    }
+
+    @Test
+    public void testDeterministicForSeed() {
+        assertEquals(generator(50, 5).lines().toList().toBlocking().single(),
+                generator(50, 5).lines().toList().toBlocking().single());
+    }
+
+    @Test
+    public void testWriteGzip() {
+        File file = new File("target/generated.nmea.gz");
+        file.getParentFile().mkdirs();
+        long count = TrafficGenerator.writeGzip(generator(20, 5).lines(), file).toBlocking()
+                .single();
+        assertEquals(count, (long) Streams.nmeaFromGzip(file).filter(line -> !line.isEmpty())
+                .countLong().toBlocking().single());
+    }
+
+    @Test
+    public void testPacedRate() {
+        long start = System.currentTimeMillis();
+        int n = TrafficGenerator.paced(generator(100, 60).lines().take(500), 2000).count()
+                .toBlocking().single();
+        long elapsed = System.currentTimeMillis() - start;
+        assertEquals(500, n);
+        // 500 lines at 2000 lines/s
+        assertTrue("elapsed=" + elapsed, elapsed >= 200 && elapsed < 3000);
+    }
+
+}
@@ -17,12 +17,17 @@ public final class Group implements GroupMember {
     private final boolean addTimestamp;
     private final boolean addArrivalTime;
     private final List<Region> filterRegions;
+    private final boolean passLinesWithoutPosition;
     private final List<MessageType> filterMessageTypes;
     private final List<Pattern> filterPatterns;
     private final Observable<String> lines;
+    // null if there are no filter regions
+    private final RegionIndex regionIndex;
+    // filterPatterns compiled to match in one pass
+    private final PatternMatcher patternMatcher;
 
     private Group(String id, List<GroupMember> members, boolean enabled, boolean addTimestamp,
-            boolean addArrivalTime, List<Region> filterRegions,
+            boolean addArrivalTime, List<Region> filterRegions, boolean passLinesWithoutPosition,
             List<MessageType> filterMessageTypes, List<Pattern> filterPatterns) {
         Util.verifyId(id);
         Preconditions.checkNotNull(members);
@@ -33,8 +38,11 @@ public final class Group implements GroupMember {
         this.addTimestamp = addTimestamp;
         this.addArrivalTime = addArrivalTime;
         this.filterRegions = filterRegions;
+        this.passLinesWithoutPosition = passLinesWithoutPosition;
         this.filterMessageTypes = filterMessageTypes;
         this.filterPatterns = filterPatterns;
+        this.regionIndex = filterRegions.isEmpty() ? null : new RegionIndex(filterRegions);
+        this.patternMatcher = new PatternMatcher(filterPatterns);
         this.lines = createLines();
     }
 
@@ -46,12 +54,16 @@ public final class Group implements GroupMember {
     private Observable<String> createLines() {
         if (enabled) {
             return Observable.from(members)
-                    // concurrently merge member observables
-                    .flatMap(member -> member.lines().subscribeOn(Schedulers.io()))
-                    // TODO filter on regions and message types
+                    // concurrently merge member observables, filtering each
+                    // on message type before the merge so that fragments
+                    // from different members with the same sequential
+                    // message id are not mixed up
+                    .flatMap(member -> filterMessageTypes(member.lines())
+                            .subscribeOn(Schedulers.io()))
+                    // filter on regions
+                    .filter(line -> regionIndex == null || inRegion(line))
                     // filter on patterns
-                    .filter(line -> filterPatterns.isEmpty() || filterPatterns.stream()
-                            .anyMatch(pattern -> pattern.matcher(line).find()))
+                    .filter(line -> patternMatcher.matches(line))
                     // multiple parent groups share the same stream
                     .share();
         } else {
@@ -59,6 +71,38 @@ public final class Group implements GroupMember {
         }
     }
 
+    private Observable<String> filterMessageTypes(Observable<String> o) {
+        if (filterMessageTypes.isEmpty())
+            return o;
+        else
+            // the filter holds fragments so needs one instance per
+            // subscription (and per member)
+            return Observable.defer(() -> {
+                MessageTypeFilter filter = new MessageTypeFilter(filterMessageTypes);
+                return o.flatMapIterable(line -> filter.accept(line));
+            });
+    }
+
+    /**
+     * Returns true if the line is a position report located in one of the
+     * filter regions. Lines without a position (static data, multi-part
+     * messages, non-AIS sentences) are passed unless
+     * {@link Builder#passLinesWithoutPosition(boolean)} was set false, so that
+     * a regional feed still carries the static data of its vessels.
+     * 
+     * @param line
+     *            NMEA line
+     * @return true if the line is passed by the region filter
+     */
+    private boolean inRegion(String line) {
+        long position = NmeaPositions.position(line);
+        if (position == NmeaPositions.NO_POSITION)
+            return passLinesWithoutPosition;
+        else
+            return regionIndex.contains(NmeaPositions.lat(position),
+                    NmeaPositions.lon(position));
+    }
+
     public String id() {
         return id;
     }
@@ -83,6 +127,10 @@ public final class Group implements GroupMember {
         return filterRegions;
     }
 
+    public boolean passLinesWithoutPosition() {
+        return passLinesWithoutPosition;
+    }
+
     public List<MessageType> filterMessageTypes() {
         return filterMessageTypes;
     }
@@ -103,6 +151,7 @@ public final class Group implements GroupMember {
         private boolean addTimestamp;
         private boolean addArrivalTime;
         private final List<Region> filterRegions = new ArrayList<>();
+        private boolean passLinesWithoutPosition = true;
         private final List<MessageType> filterMessageTypes = new ArrayList<MessageType>();
         private final List<Pattern> filterPatterns = new ArrayList<Pattern>();
 
@@ -149,6 +198,18 @@ public final class Group implements GroupMember {
             return this;
         }
 
+        /**
+         * Sets whether lines without a position pass the filter regions
+         * (default true). Has no effect if there are no filter regions.
+         * 
+         * @param passLinesWithoutPosition
+         * @return this
+         */
+        public Builder passLinesWithoutPosition(boolean passLinesWithoutPosition) {
+            this.passLinesWithoutPosition = passLinesWithoutPosition;
+            return this;
+        }
+
         public Builder filterMessageTypes(List<MessageType> filterMessageTypes) {
             this.filterMessageTypes.addAll(filterMessageTypes);
             return this;
@@ -175,7 +236,7 @@ public final class Group implements GroupMember {
 
         public Group build() {
             return new Group(id, members, enabled, addTimestamp, addArrivalTime, filterRegions,
-                    filterMessageTypes, filterPatterns);
+                    passLinesWithoutPosition, filterMessageTypes, filterPatterns);
         }
     }
 
@@ -194,6 +255,8 @@ public final class Group implements GroupMember {
         b.append(addArrivalTime);
         b.append(", filterRegions=");
         b.append(filterRegions);
+        b.append(", passLinesWithoutPosition=");
+        b.append(passLinesWithoutPosition);
         b.append(", filterMessageTypes=");
         b.append(filterMessageTypes);
         b.append(", filterPatterns=");
@@ -12,4 +12,9 @@ public final class MessageType {
         return aisMessageType;
     }
 
+    @Override
+    public String toString() {
+        return "MessageType [aisMessageType=" + aisMessageType + "]";
+    }
+
 }
@@ -0,0 +1,152 @@
+package au.gov.amsa.ais.router.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.github.davidmoten.guavamini.Preconditions;
+
+/**
+ * Passes the AIS NMEA lines whose message type is one of a given set. The
+ * type is read from the first payload character of the first sentence of a
+ * message. The fragments of a multi-sentence message are held until the last
+ * one arrives and then passed together (or dropped together if the type is
+ * not wanted): the decision made on the first fragment is cached against the
+ * sentence group id (sequential message id and channel) so later fragments
+ * are decided without looking at their payload. Fragments whose first
+ * fragment was not seen are dropped.
+ *
+ * <p>
+ * Holds state between lines so one instance is needed per stream and
+ * {@link #accept(String)} must not be called concurrently. The sentence group
+ * id is only unique within one feed so a stream merged from several feeds
+ * should be filtered per feed before the merge (as {@link Group} does for
+ * its members).
+ */
+final class MessageTypeFilter {
+
+    // limits memory used by groups that never complete
+    private static final int MAX_PENDING_GROUPS = 1024;
+
+    private final boolean[] types = new boolean[64];
+
+    private final Map<Integer, Pending> pending = new LinkedHashMap<Integer, Pending>() {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Pending> eldest) {
+            return size() > MAX_PENDING_GROUPS;
+        }
+    };
+
+    MessageTypeFilter(List<MessageType> messageTypes) {
+        Preconditions.checkNotNull(messageTypes);
+        for (MessageType type : messageTypes)
+            if (type.aisMessageType() >= 0 && type.aisMessageType() < types.length)
+                types[type.aisMessageType()] = true;
+    }
+
+    /**
+     * Returns the lines to pass on as a result of receiving the given line:
+     * nothing, the line itself or (on the last fragment of a wanted message)
+     * all of the message's fragments.
+     *
+     * @param line
+     *            NMEA line
+     * @return lines to pass on
+     */
+    List<String> accept(String line) {
+        int length = line.length();
+        int i = 0;
+        // skip tag block
+        if (length > 0 && line.charAt(0) == '\\') {
+            i = line.indexOf('\\', 1);
+            if (i < 0)
+                return Collections.emptyList();
+            i++;
+        }
+        if (i >= length || line.charAt(i) != '!')
+            return Collections.emptyList();
+        // read !AIVDM,count,number,sequence,channel,payload
+        int count = 0;
+        int number = 0;
+        int sequence = 0;
+        int channel = 0;
+        int field = 0;
+        for (i = i + 1; i < length; i++) {
+            char ch = line.charAt(i);
+            if (ch == ',') {
+                field++;
+                if (field == 5) {
+                    i++;
+                    break;
+                }
+            } else if (field == 1)
+                count = count * 10 + ch - '0';
+            else if (field == 2)
+                number = number * 10 + ch - '0';
+            else if (field == 3)
+                // single digit, 0 if absent
+                sequence = ch - '0' + 1;
+            else if (field == 4)
+                channel = ch;
+        }
+        if (field < 5 || count < 1 || number < 1 || number > count)
+            return Collections.emptyList();
+        if (count == 1) {
+            if (i < length && isWanted(line.charAt(i)))
+                return Collections.singletonList(line);
+            else
+                return Collections.emptyList();
+        }
+        Integer key = (sequence << 8) | (channel & 0xFF);
+        if (number == 1) {
+            boolean wanted = i < length && isWanted(line.charAt(i));
+            pending.put(key, new Pending(wanted, count, line));
+            return Collections.emptyList();
+        }
+        Pending p = pending.get(key);
+        if (p == null)
+            return Collections.emptyList();
+        else if (p.count != count || p.next != number) {
+            // out of sequence, drop the whole message
+            pending.remove(key);
+            return Collections.emptyList();
+        }
+        p.next++;
+        if (p.wanted)
+            p.lines.add(line);
+        if (number < count)
+            return Collections.emptyList();
+        pending.remove(key);
+        return p.wanted ? p.lines : Collections.<String> emptyList();
+    }
+
+    private boolean isWanted(char ch) {
+        int v = ch - 48;
+        if (v > 40)
+            v -= 8;
+        return v >= 0 && v < types.length && types[v];
+    }
+
+    private static final class Pending {
+        final boolean wanted;
+        final int count;
+        // null unless wanted
+        final List<String> lines;
+        int next = 2;
+
+        Pending(boolean wanted, int count, String first) {
+            this.wanted = wanted;
+            this.count = count;
+            if (wanted) {
+                this.lines = new ArrayList<String>(count);
+                lines.add(first);
+            } else
+                this.lines = null;
+        }
+    }
+
+}
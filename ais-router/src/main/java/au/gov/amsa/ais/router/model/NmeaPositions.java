@@ -0,0 +1,173 @@
+package au.gov.amsa.ais.router.model;
+
+/**
+ * Reads the position straight out of the six-bit payload of an AIS NMEA line
+ * (with or without a tag block) without parsing the line into an
+ * <code>AisMessage</code>. Only the header fields needed to find the payload
+ * and the message type are looked at and the latitude and longitude bits are
+ * decoded from the payload characters in place.
+ */
+final class NmeaPositions {
+
+    /**
+     * Returned by {@link #position(CharSequence)} when the line has no
+     * position (not a position message, position not available or the line
+     * can't be read).
+     */
+    static final long NO_POSITION = Long.MIN_VALUE;
+
+    // positions are in 1/10000 minute (1/600000 degree) units, except type 27
+    private static final float UNITS_PER_DEGREE = 600000f;
+    private static final float UNITS_PER_DEGREE_LONG_RANGE = 600f;
+
+    private NmeaPositions() {
+        // prevent instantiation
+    }
+
+    /**
+     * Returns the position in the line packed into a long (latitude in the
+     * high 32 bits and longitude in the low 32 bits, both in 1/10000 minute)
+     * or {@link #NO_POSITION}. Use {@link #lat(long)} and {@link #lon(long)}
+     * to unpack.
+     *
+     * @param line
+     *            NMEA line
+     * @return packed position
+     */
+    static long position(CharSequence line) {
+        int start = payloadStart(line);
+        if (start < 0)
+            return NO_POSITION;
+        int end = indexOf(line, ',', start);
+        if (end < 0)
+            return NO_POSITION;
+        return position(line, start, end);
+    }
+
+    static float lat(long position) {
+        return (int) (position >> 32) / UNITS_PER_DEGREE;
+    }
+
+    static float lon(long position) {
+        return (int) position / UNITS_PER_DEGREE;
+    }
+
+    /**
+     * Returns the index of the first payload character of the (single part)
+     * sentence in the line or -1 if the line is not a one sentence AIS
+     * message.
+     */
+    private static int payloadStart(CharSequence line) {
+        int i = 0;
+        int length = line.length();
+        // skip tag block
+        if (length > 0 && line.charAt(0) == '\\') {
+            i = indexOf(line, '\\', 1);
+            if (i < 0)
+                return -1;
+            i++;
+        }
+        // expect !AIVDM,1,1,,A,payload,0*hh (or VDO)
+        if (i + 7 > length || line.charAt(i) != '!' && line.charAt(i) != '$')
+            return -1;
+        int field = 0;
+        int fieldStart = i;
+        for (; i < length; i++) {
+            if (line.charAt(i) == ',') {
+                field++;
+                // fragment count must be 1 as positions are not read from
+                // multi-part messages
+                if (field == 2 && !(i - fieldStart == 2 && line.charAt(fieldStart + 1) == '1'))
+                    return -1;
+                if (field == 5)
+                    return i + 1;
+                fieldStart = i;
+            }
+        }
+        return -1;
+    }
+
+    private static long position(CharSequence line, int start, int end) {
+        int bits = (end - start) * 6;
+        if (bits < 6)
+            return NO_POSITION;
+        int type = (int) bits(line, start, 0, 6);
+        switch (type) {
+        case 1:
+        case 2:
+        case 3:
+        case 9:
+            return position(line, start, bits, 61, 28, 89, 27, UNITS_PER_DEGREE);
+        case 4:
+        case 11:
+            return position(line, start, bits, 79, 28, 107, 27, UNITS_PER_DEGREE);
+        case 18:
+        case 19:
+            return position(line, start, bits, 57, 28, 85, 27, UNITS_PER_DEGREE);
+        case 21:
+            return position(line, start, bits, 164, 28, 192, 27, UNITS_PER_DEGREE);
+        case 27:
+            return position(line, start, bits, 44, 18, 62, 17,
+                    UNITS_PER_DEGREE_LONG_RANGE);
+        default:
+            return NO_POSITION;
+        }
+    }
+
+    private static long position(CharSequence line, int start, int bits, int lonFrom,
+            int lonBits, int latFrom, int latBits, float unitsPerDegree) {
+        if (latFrom + latBits > bits)
+            return NO_POSITION;
+        int lon = signed(bits(line, start, lonFrom, lonBits), lonBits);
+        int lat = signed(bits(line, start, latFrom, latBits), latBits);
+        // 181 and 91 degrees mean not available
+        if (Math.abs(lon) > 180 * unitsPerDegree || Math.abs(lat) > 90 * unitsPerDegree)
+            return NO_POSITION;
+        if (unitsPerDegree != UNITS_PER_DEGREE) {
+            lon = Math.round(lon / unitsPerDegree * UNITS_PER_DEGREE);
+            lat = Math.round(lat / unitsPerDegree * UNITS_PER_DEGREE);
+        }
+        return ((long) lat << 32) | (lon & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Returns <code>count</code> (at most 32) bits from the payload starting
+     * at bit <code>from</code>.
+     */
+    private static long bits(CharSequence line, int start, int from, int count) {
+        long value = 0;
+        int to = from + count;
+        int i = from / 6;
+        int bit = from % 6;
+        int taken = 0;
+        while (taken < count) {
+            int v = sixBit(line.charAt(start + i));
+            int available = 6 - bit;
+            int n = Math.min(available, to - from - taken);
+            value = (value << n) | ((v >> (available - n)) & ((1 << n) - 1));
+            taken += n;
+            bit = 0;
+            i++;
+        }
+        return value;
+    }
+
+    private static int sixBit(char ch) {
+        int v = ch - 48;
+        if (v > 40)
+            v -= 8;
+        return v & 0x3F;
+    }
+
+    private static int signed(long value, int bits) {
+        return (int) (value << (64 - bits) >> (64 - bits));
+    }
+
+    private static int indexOf(CharSequence s, char ch, int from) {
+        for (int i = from; i < s.length(); i++)
+            if (s.charAt(i) == ch)
+                return i;
+        return -1;
+    }
+
+}
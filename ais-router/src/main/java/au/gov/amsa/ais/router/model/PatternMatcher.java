@@ -0,0 +1,196 @@
+package au.gov.amsa.ais.router.model;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.regex.Pattern;
+
+import com.github.davidmoten.guavamini.Preconditions;
+
+/**
+ * Finds whether a line contains a match for any of a list of patterns.
+ *
+ * <p>
+ * Patterns that are plain literals (like MMSIs and source names) are compiled
+ * into one Aho-Corasick automaton over the characters that appear in them, so
+ * a line is scanned once whatever the number of literals and without creating
+ * a {@link java.util.regex.Matcher}. Each remaining pattern is matched on its
+ * own.
+ *
+ * <p>
+ * Instances are immutable and thread safe.
+ */
+final class PatternMatcher {
+
+    private static final String META = "\\^$.|?*+()[]{}";
+
+    private final boolean matchAll;
+    // null if no literals
+    private final Literals literals;
+    private final Pattern[] regexes;
+
+    PatternMatcher(List<Pattern> patterns) {
+        Preconditions.checkNotNull(patterns);
+        this.matchAll = patterns.isEmpty();
+        List<String> literalList = new ArrayList<String>();
+        List<Pattern> regexList = new ArrayList<Pattern>();
+        for (Pattern pattern : patterns) {
+            String literal = literal(pattern);
+            if (literal != null)
+                literalList.add(literal);
+            else
+                regexList.add(pattern);
+        }
+        this.literals = literalList.isEmpty() ? null : new Literals(literalList);
+        this.regexes = regexList.toArray(new Pattern[regexList.size()]);
+    }
+
+    /**
+     * Returns true if any pattern is found in the line (or there are no
+     * patterns).
+     *
+     * @param line
+     * @return true if line matches
+     */
+    boolean matches(CharSequence line) {
+        if (matchAll)
+            return true;
+        if (literals != null && literals.foundIn(line))
+            return true;
+        for (Pattern pattern : regexes)
+            if (pattern.matcher(line).find())
+                return true;
+        return false;
+    }
+
+    /**
+     * Returns the string the pattern matches if it only matches one ASCII
+     * string (no flags, no metacharacters other than escaped punctuation),
+     * otherwise null.
+     */
+    static String literal(Pattern pattern) {
+        String s = pattern.pattern();
+        if ((pattern.flags() & Pattern.LITERAL) != 0)
+            return pattern.flags() == Pattern.LITERAL && isAscii(s) && !s.isEmpty() ? s : null;
+        if (pattern.flags() != 0)
+            return null;
+        StringBuilder b = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            char ch = s.charAt(i);
+            if (ch == '\\') {
+                if (i + 1 == s.length())
+                    return null;
+                char next = s.charAt(++i);
+                // escaped letters and digits are classes, references etc.
+                if (Character.isLetterOrDigit(next))
+                    return null;
+                b.append(next);
+            } else if (META.indexOf(ch) >= 0)
+                return null;
+            else
+                b.append(ch);
+        }
+        if (b.length() == 0 || !isAscii(b))
+            return null;
+        return b.toString();
+    }
+
+    private static boolean isAscii(CharSequence s) {
+        for (int i = 0; i < s.length(); i++)
+            if (s.charAt(i) >= 128)
+                return false;
+        return true;
+    }
+
+    /**
+     * Aho-Corasick automaton with the failure links folded into a complete
+     * transition table. Characters that appear in no literal share one column
+     * (and always lead back to the root) so the table is states x (distinct
+     * characters + 1). Entries are offsets of the next state's row, or -1 for
+     * a transition that completes a literal. A single literal is just found
+     * with {@link String#indexOf(String)} which is quicker.
+     */
+    private static final class Literals {
+
+        private final int[] columns = new int[128];
+        private final int[] next;
+        // non-null if only one literal
+        private final String only;
+
+        Literals(List<String> literals) {
+            this.only = literals.size() == 1 ? literals.get(0) : null;
+            // assign columns, 0 for characters in no literal
+            int width = 1;
+            for (String s : literals)
+                for (int i = 0; i < s.length(); i++)
+                    if (columns[s.charAt(i)] == 0)
+                        columns[s.charAt(i)] = width++;
+
+            // build the trie
+            int maxStates = 1;
+            for (String s : literals)
+                maxStates += s.length();
+            int[] trie = new int[maxStates * width];
+            Arrays.fill(trie, -1);
+            boolean[] terminal = new boolean[maxStates];
+            int states = 1;
+            for (String s : literals) {
+                int state = 0;
+                for (int i = 0; i < s.length(); i++) {
+                    int index = state * width + columns[s.charAt(i)];
+                    if (trie[index] == -1)
+                        trie[index] = states++;
+                    state = trie[index];
+                }
+                terminal[state] = true;
+            }
+
+            // breadth first fill of missing transitions from the failure links
+            int[] next = Arrays.copyOf(trie, states * width);
+            int[] fail = new int[states];
+            Queue<Integer> queue = new ArrayDeque<Integer>();
+            for (int c = 0; c < width; c++) {
+                int s = next[c];
+                if (s == -1)
+                    next[c] = 0;
+                else {
+                    fail[s] = 0;
+                    queue.add(s);
+                }
+            }
+            while (!queue.isEmpty()) {
+                int state = queue.poll();
+                terminal[state] |= terminal[fail[state]];
+                for (int c = 0; c < width; c++) {
+                    int index = state * width + c;
+                    int s = next[index];
+                    if (s == -1)
+                        next[index] = next[fail[state] * width + c];
+                    else {
+                        fail[s] = next[fail[state] * width + c];
+                        queue.add(s);
+                    }
+                }
+            }
+            for (int i = 0; i < next.length; i++)
+                next[i] = terminal[next[i]] ? -1 : next[i] * width;
+            this.next = next;
+        }
+
+        boolean foundIn(CharSequence line) {
+            if (only != null)
+                return line.toString().indexOf(only) >= 0;
+            int row = 0;
+            for (int i = 0; i < line.length(); i++) {
+                char ch = line.charAt(i);
+                row = next[row + (ch < 128 ? columns[ch] : 0)];
+                if (row < 0)
+                    return true;
+            }
+            return false;
+        }
+    }
+
+}
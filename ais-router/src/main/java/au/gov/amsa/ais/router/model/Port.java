@@ -7,6 +7,7 @@ import java.util.Optional;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import au.gov.amsa.streams.EncodedString;
 import au.gov.amsa.streams.StringServer;
 import rx.Observable;
 
@@ -66,7 +67,10 @@ public final class Port implements Closeable {
             if (server.isPresent()) {
                 throw new RuntimeException("server already started");
             } else if (enabled && group.isPresent()) {
-                server = Optional.of(StringServer.create(lines.map(line -> line + "\n"), port));
+                // encode each line once for all clients of the port
+                Observable<EncodedString> encoded = lines.map(line -> EncodedString.line(line))
+                        .share();
+                server = Optional.of(StringServer.createEncoded(encoded, port));
                 server.get().start();
             }
         }
@@ -68,9 +68,29 @@ public final class Rectangle implements Region {
         }
     }
 
+    @Override
+    public Rectangle bounds() {
+        return this;
+    }
+
     @Override
     public boolean contains(float lat, float lon) {
         return minLat <= lat && maxLat >= lat && minLon <= lon && maxLon >= lon;
     }
 
+    @Override
+    public String toString() {
+        StringBuilder b = new StringBuilder();
+        b.append("Rectangle [minLat=");
+        b.append(minLat);
+        b.append(", maxLat=");
+        b.append(maxLat);
+        b.append(", minLon=");
+        b.append(minLon);
+        b.append(", maxLon=");
+        b.append(maxLon);
+        b.append("]");
+        return b.toString();
+    }
+
 }
@@ -2,4 +2,16 @@ package au.gov.amsa.ais.router.model;
 
 public interface Region {
     boolean contains(float lat, float lon);
+
+    /**
+     * Returns a rectangle enclosing the region, used to index regions so that
+     * only the regions near a position need to be checked. Defaults to the
+     * whole globe so that existing implementations still work, though they
+     * are then checked for every position.
+     * 
+     * @return bounding rectangle
+     */
+    default Rectangle bounds() {
+        return Rectangle.builder().minLat(-90).maxLat(90).minLon(-180).maxLon(180).build();
+    }
 }
@@ -0,0 +1,88 @@
+package au.gov.amsa.ais.router.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.github.davidmoten.guavamini.Preconditions;
+
+/**
+ * A grid of one degree cells over the globe recording for each cell the
+ * regions whose bounds overlap it, so that finding whether a position is in
+ * any of many regions takes one array lookup and at most a few
+ * {@link Region#contains(float, float)} checks. Cells lying wholly inside a
+ * {@link Rectangle} are marked as covered and need no checks at all.
+ */
+final class RegionIndex {
+
+    private static final int ROWS = 180;
+    private static final int COLS = 360;
+    private static final Region[] COVERED = new Region[0];
+
+    // null if no region overlaps the cell
+    private final Region[][] cells = new Region[ROWS * COLS][];
+
+    RegionIndex(List<Region> regions) {
+        Preconditions.checkNotNull(regions);
+        @SuppressWarnings("unchecked")
+        List<Region>[] lists = new List[ROWS * COLS];
+        for (Region region : regions) {
+            Rectangle r = region.bounds();
+            int minRow = row(r.minLat());
+            int maxRow = row(r.maxLat());
+            int minCol = col(r.minLon());
+            int maxCol = col(r.maxLon());
+            for (int row = minRow; row <= maxRow; row++) {
+                for (int col = minCol; col <= maxCol; col++) {
+                    int cell = row * COLS + col;
+                    if (cells[cell] == COVERED)
+                        continue;
+                    else if (region == r && covers(r, row, col)) {
+                        cells[cell] = COVERED;
+                        lists[cell] = null;
+                    } else {
+                        if (lists[cell] == null)
+                            lists[cell] = new ArrayList<Region>(1);
+                        lists[cell].add(region);
+                    }
+                }
+            }
+        }
+        for (int i = 0; i < lists.length; i++)
+            if (lists[i] != null)
+                cells[i] = lists[i].toArray(new Region[lists[i].size()]);
+    }
+
+    boolean contains(float lat, float lon) {
+        if (!(lat >= -90 && lat <= 90 && lon >= -180 && lon <= 180))
+            return false;
+        Region[] candidates = cells[row(lat) * COLS + col(lon)];
+        if (candidates == null)
+            return false;
+        else if (candidates == COVERED)
+            return true;
+        for (Region region : candidates)
+            if (region.contains(lat, lon))
+                return true;
+        return false;
+    }
+
+    private static boolean covers(Rectangle r, int row, int col) {
+        float lat = row - 90;
+        float lon = col - 180;
+        return r.minLat() <= lat && r.maxLat() >= lat + 1 && r.minLon() <= lon
+                && r.maxLon() >= lon + 1;
+    }
+
+    private static int row(float lat) {
+        return clamp((int) Math.floor(lat + 90), ROWS);
+    }
+
+    private static int col(float lon) {
+        return clamp((int) Math.floor(lon + 180), COLS);
+    }
+
+    private static int clamp(int index, int size) {
+        return Math.max(0, Math.min(size - 1, index));
+    }
+
+}
@@ -0,0 +1,97 @@
+package au.gov.amsa.ais.router.model;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import au.gov.amsa.streams.EncodedString;
+
+/**
+ * Cost of getting each line of a port to its clients' output streams when
+ * every client encodes the line (<code>line + "\n"</code> then
+ * <code>getBytes</code>, as <code>Port</code> used to) compared with encoding
+ * it once as an {@link EncodedString} and writing the same bytes to every
+ * client. The streams only count bytes so that socket cost is left out.
+ * Scores are lines per second. Run with <code>mvn install -P benchmark</code>.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class BenchmarksPort {
+
+    private static final int LINES = 1000;
+
+    @Param({ "1", "10", "100" })
+    public int clients;
+
+    private List<String> lines;
+    private CountingOutputStream[] outs;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(1);
+        lines = new ArrayList<String>();
+        for (int i = 0; i < LINES; i++) {
+            StringBuilder payload = new StringBuilder();
+            for (int j = 0; j < 28; j++)
+                payload.append((char) ('0' + random.nextInt(40)));
+            lines.add("\\s:station" + random.nextInt(1000) + ",c:" + (1461727307 + i)
+                    + "*65\\!AIVDM,1,1,,A," + payload + ",0*50");
+        }
+        outs = new CountingOutputStream[clients];
+        for (int i = 0; i < clients; i++)
+            outs[i] = new CountingOutputStream();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LINES)
+    public long encodePerClient() throws IOException {
+        for (String line : lines) {
+            String s = line + "\n";
+            for (OutputStream out : outs)
+                out.write(s.getBytes(StandardCharsets.UTF_8));
+        }
+        return outs[0].count;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LINES)
+    public long encodeOnce() throws IOException {
+        for (String line : lines) {
+            EncodedString s = EncodedString.line(line);
+            for (OutputStream out : outs)
+                s.writeTo(out);
+        }
+        return outs[0].count;
+    }
+
+    private static final class CountingOutputStream extends OutputStream {
+
+        long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+
+}
@@ -0,0 +1,100 @@
+package au.gov.amsa.ais.router.model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Compares filtering lines on a group's patterns one {@link Pattern} at a
+ * time (as <code>Group</code> used to) with the single pass
+ * {@link PatternMatcher}, for groups of literal source patterns plus a couple
+ * of regular expressions. Also measures combining all the patterns into one
+ * alternation, the approach <code>PatternMatcher</code> decided against.
+ * Scores are lines per second. Run with <code>mvn install -P benchmark</code>.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class BenchmarksRouter {
+
+    private static final int LINES = 10000;
+
+    @Param({ "1", "10", "50" })
+    public int patternCount;
+
+    private List<String> lines;
+    private List<Pattern> patterns;
+    private PatternMatcher matcher;
+    private Pattern alternation;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(1);
+        lines = new ArrayList<String>();
+        for (int i = 0; i < LINES; i++) {
+            StringBuilder payload = new StringBuilder();
+            for (int j = 0; j < 28; j++)
+                payload.append((char) ('0' + random.nextInt(40)));
+            lines.add("\\s:station" + random.nextInt(1000) + ",c:" + (1461727307 + i)
+                    + "*65\\!AIVDM,1,1,,A," + payload + ",0*50");
+        }
+        patterns = new ArrayList<Pattern>();
+        for (int i = 0; i < patternCount; i++) {
+            if (i % 25 == 24)
+                patterns.add(Pattern.compile("c:14617\\d{4}99\\*"));
+            else
+                patterns.add(Pattern.compile("s:station" + (i * 37 % 1000) + ","));
+        }
+        matcher = new PatternMatcher(patterns);
+        StringBuilder b = new StringBuilder();
+        for (Pattern pattern : patterns) {
+            if (b.length() > 0)
+                b.append('|');
+            b.append("(?:").append(pattern.pattern()).append(')');
+        }
+        alternation = Pattern.compile(b.toString());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LINES)
+    public int patternsOneAtATime() {
+        int count = 0;
+        for (String line : lines)
+            if (patterns.stream().anyMatch(pattern -> pattern.matcher(line).find()))
+                count++;
+        return count;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LINES)
+    public int patternMatcher() {
+        int count = 0;
+        for (String line : lines)
+            if (matcher.matches(line))
+                count++;
+        return count;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LINES)
+    public int alternation() {
+        int count = 0;
+        for (String line : lines)
+            if (alternation.matcher(line).find())
+                count++;
+        return count;
+    }
+
+}
@@ -0,0 +1,125 @@
+package au.gov.amsa.ais.router.model;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.Test;
+
+import rx.Observable;
+
+public class MessageTypeFilterTest {
+
+    private static final String POSITION = "!ABVDM,1,1,6,B,1G7lQJ001PbomTie:ms2sR@40000,0*34";
+    private static final String BASE_STATION = "!ASVDM,1,1,7,A,404k0WAuhMcg1:=kOMr:C0W005Jt,0*1A";
+    private static final String STATIC_1 = "\\g:1-2-3985,s:rEV02,c:1334337317*2D\\!AIVDM,2,1,9,B,58KvN<42ACikUKW77F1H4hF0<PTp622222222216`0`cF5BF0RT13H0T,0*70";
+    private static final String STATIC_2 = "\\g:2-2-3985*5A\\!AIVDM,2,2,9,B,PFRC88888888880,2*29";
+    private static final String OTHER_1 = "!AIVDM,2,1,3,A,85M:Ih1KUQU6jAs85`0MK4lh<7=B42l0000,0*1D";
+    private static final String OTHER_2 = "!AIVDM,2,2,3,A,00000000000,2*26";
+
+    @Test
+    public void testSingleSentenceDecidedOnFirstPayloadCharacter() {
+        MessageTypeFilter f = filter(1, 2, 3);
+        assertEquals(Arrays.asList(POSITION), f.accept(POSITION));
+        assertEquals(Collections.emptyList(), f.accept(BASE_STATION));
+        assertEquals(Collections.emptyList(), f.accept("$BSALR,,006,V,V,general failure*62"));
+        assertEquals(Collections.emptyList(), f.accept(""));
+    }
+
+    @Test
+    public void testFragmentsOfWantedMessagePassedTogether() {
+        MessageTypeFilter f = filter(5);
+        assertEquals(Collections.emptyList(), f.accept(STATIC_1));
+        assertEquals(Collections.emptyList(), f.accept(POSITION));
+        assertEquals(Arrays.asList(STATIC_1, STATIC_2), f.accept(STATIC_2));
+    }
+
+    @Test
+    public void testFragmentsOfUnwantedMessageDroppedTogether() {
+        MessageTypeFilter f = filter(5);
+        assertEquals(Collections.emptyList(), f.accept(OTHER_1));
+        assertEquals(Collections.emptyList(), f.accept(OTHER_2));
+    }
+
+    @Test
+    public void testFragmentWithoutFirstFragmentDropped() {
+        MessageTypeFilter f = filter(5);
+        assertEquals(Collections.emptyList(), f.accept(STATIC_2));
+        // and a first fragment followed by the wrong number is dropped
+        assertEquals(Collections.emptyList(), f.accept(STATIC_1));
+        assertEquals(Collections.emptyList(),
+                f.accept("!AIVDM,3,3,9,B,PFRC88888888880,2*29"));
+        assertEquals(Collections.emptyList(), f.accept(STATIC_2));
+    }
+
+    @Test
+    public void testInterleavedGroupsKeptApart() {
+        MessageTypeFilter f = filter(5, 8);
+        assertEquals(Collections.emptyList(), f.accept(STATIC_1));
+        assertEquals(Collections.emptyList(), f.accept(OTHER_1));
+        assertEquals(Arrays.asList(OTHER_1, OTHER_2), f.accept(OTHER_2));
+        assertEquals(Arrays.asList(STATIC_1, STATIC_2), f.accept(STATIC_2));
+    }
+
+    @Test
+    public void testGroupFiltersOnMessageType() {
+        Group group = Group.builder().id("static")
+                .member(() -> Observable.just(POSITION, STATIC_1, BASE_STATION, STATIC_2))
+                .filterMessageTypes(new MessageType(5)).build();
+        List<String> lines = group.lines().toList().toBlocking().single();
+        assertEquals(Arrays.asList(STATIC_1, STATIC_2), lines);
+    }
+
+    @Test
+    public void testGroupKeepsMembersWithSameSequenceIdApart() {
+        // the same sentence group id (9 on channel B) as STATIC_1 and STATIC_2
+        String other1 = "!AIVDM,2,1,9,B,55M:Ih1KUQU6jAs85`0MK4lh<7=B42l0000000000000000000,0*00";
+        String other2 = "!AIVDM,2,2,9,B,00000000000,2*00";
+        // both members emit their first fragment before either emits its
+        // second so the fragments are interleaved in the merge
+        CyclicBarrier barrier = new CyclicBarrier(2);
+        Group group = Group.builder().id("static")
+                .member(() -> fragments(barrier, STATIC_1, STATIC_2))
+                .member(() -> fragments(barrier, other1, other2))
+                .filterMessageTypes(new MessageType(5)).build();
+        List<String> lines = group.lines().toList().toBlocking().single();
+        assertEquals(4, lines.size());
+        Set<List<String>> messages = new HashSet<List<String>>();
+        messages.add(lines.subList(0, 2));
+        messages.add(lines.subList(2, 4));
+        assertEquals(new HashSet<List<String>>(
+                Arrays.asList(Arrays.asList(STATIC_1, STATIC_2), Arrays.asList(other1, other2))),
+                messages);
+    }
+
+    private static Observable<String> fragments(CyclicBarrier barrier, String first,
+            String second) {
+        return Observable.create(subscriber -> {
+            subscriber.onNext(first);
+            try {
+                barrier.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException | BrokenBarrierException | TimeoutException e) {
+                subscriber.onError(e);
+                return;
+            }
+            subscriber.onNext(second);
+            subscriber.onCompleted();
+        });
+    }
+
+    private static MessageTypeFilter filter(int... types) {
+        MessageType[] list = new MessageType[types.length];
+        for (int i = 0; i < types.length; i++)
+            list[i] = new MessageType(types[i]);
+        return new MessageTypeFilter(Arrays.asList(list));
+    }
+
+}
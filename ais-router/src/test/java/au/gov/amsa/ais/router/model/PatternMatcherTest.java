@@ -0,0 +1,113 @@
+package au.gov.amsa.ais.router.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+public class PatternMatcherTest {
+
+    private static final String LINE = "\\s:ISEEK Kembla,c:1461727307*65\\!BSVDM,1,1,,A,177hUM000<:lKg7dNBPJA:GN0<1R,0*50";
+
+    @Test
+    public void testLiteral() {
+        assertEquals("Kembla", PatternMatcher.literal(Pattern.compile("Kembla")));
+        assertEquals("c:146", PatternMatcher.literal(Pattern.compile("c:146")));
+        assertEquals("a.b", PatternMatcher.literal(Pattern.compile("a\\.b")));
+        assertEquals("a.b", PatternMatcher.literal(Pattern.compile("a.b", Pattern.LITERAL)));
+        assertNull(PatternMatcher.literal(Pattern.compile("a.b")));
+        assertNull(PatternMatcher.literal(Pattern.compile("a\\db")));
+        assertNull(PatternMatcher.literal(Pattern.compile("kembla", Pattern.CASE_INSENSITIVE)));
+        assertNull(PatternMatcher.literal(Pattern.compile("")));
+    }
+
+    @Test
+    public void testNoPatternsMatchesEverything() {
+        assertTrue(new PatternMatcher(Collections.<Pattern> emptyList()).matches(LINE));
+    }
+
+    @Test
+    public void testLiteralsFoundAnywhereInLine() {
+        assertTrue(matcher("Wollongong", "Kembla").matches(LINE));
+        assertTrue(matcher("Wollongong", "\\*50").matches(LINE));
+        assertTrue(matcher("\\\\s:").matches(LINE));
+        assertFalse(matcher("\\s:").matches(LINE));
+        assertFalse(matcher("Wollongong", "Kemblb", "ISEEKK").matches(LINE));
+        // overlapping literals need the failure links
+        assertTrue(matcher("abcd", "bce").matches("xabcex"));
+        assertTrue(matcher("he", "she", "his", "hers").matches("ushers"));
+        assertFalse(matcher("he", "she", "his", "hers").matches("hi s"));
+    }
+
+    @Test
+    public void testRegexesAndFlags() {
+        assertTrue(matcher("Wollongong", "c:\\d+\\*").matches(LINE));
+        assertFalse(matcher("x{3}", "KEMBLA").matches(LINE));
+        assertTrue(new PatternMatcher(Arrays.asList(Pattern.compile("x{3}"),
+                Pattern.compile("KEMBLA", Pattern.CASE_INSENSITIVE))).matches(LINE));
+        // case insensitivity does not leak to other patterns
+        assertFalse(new PatternMatcher(Arrays.asList(
+                Pattern.compile("x", Pattern.CASE_INSENSITIVE),
+                Pattern.compile("ISEEK\\s+KEMBLA"))).matches(LINE));
+        // back references
+        assertTrue(matcher("(\\d)\\1", "zz+").matches("a11b"));
+        assertTrue(matcher("(?<n>z)\\k<n>", "(?<n>1)\\k<n>").matches("a11b"));
+    }
+
+    @Test
+    public void testAgreesWithMatchingEachPattern() {
+        Random random = new Random(12345);
+        String alphabet = "abc,.*:1";
+        for (int run = 0; run < 2000; run++) {
+            List<Pattern> patterns = new ArrayList<Pattern>();
+            int n = 1 + random.nextInt(8);
+            for (int i = 0; i < n; i++) {
+                String s = random(random, alphabet, 1 + random.nextInt(4));
+                if (random.nextInt(4) == 0)
+                    patterns.add(Pattern.compile(escape(s) + "[ab]+"));
+                else
+                    patterns.add(Pattern.compile(escape(s)));
+            }
+            PatternMatcher matcher = new PatternMatcher(patterns);
+            for (int i = 0; i < 20; i++) {
+                String line = random(random, alphabet, random.nextInt(30));
+                boolean expected = patterns.stream().anyMatch(p -> p.matcher(line).find());
+                assertEquals(patterns + " " + line, expected, matcher.matches(line));
+            }
+        }
+    }
+
+    private static String escape(String s) {
+        StringBuilder b = new StringBuilder();
+        for (char ch : s.toCharArray()) {
+            if (".*".indexOf(ch) >= 0)
+                b.append('\\');
+            b.append(ch);
+        }
+        return b.toString();
+    }
+
+    private static String random(Random random, String alphabet, int length) {
+        StringBuilder b = new StringBuilder();
+        for (int i = 0; i < length; i++)
+            b.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        return b.toString();
+    }
+
+    private static PatternMatcher matcher(String... patterns) {
+        List<Pattern> list = new ArrayList<Pattern>();
+        for (String p : patterns)
+            list.add(Pattern.compile(p));
+        return new PatternMatcher(list);
+    }
+
+}
@@ -0,0 +1,156 @@
+package au.gov.amsa.ais.router.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import au.gov.amsa.ais.AisMessage;
+import au.gov.amsa.ais.AisNmeaMessage;
+import au.gov.amsa.ais.message.AisBaseStation;
+import au.gov.amsa.ais.message.AisPosition;
+import rx.Observable;
+
+public class RegionFilterTest {
+
+    private static final double PRECISION = 0.00001;
+
+    @Test
+    public void testPositionAgreesWithParser() {
+        for (String line : Arrays.asList(
+                "!ABVDM,1,1,6,B,1G7lQJ001PbomTie:ms2sR@40000,0*34",
+                "!ABVDM,1,1,8,B,377:pu1001bnVfQe2ON5j1h20000,0*15",
+                "!ASVDM,1,1,7,A,404k0WAuhMcg1:=kOMr:C0W005Jt,0*1A",
+                "\\s:rEV02,c:1334337317*58\\!AIVDM,1,1,,B,19NWuLhuRb5QHfCpPcwj`26B0<02,0*5F")) {
+            AisMessage m = new AisNmeaMessage(line).getMessage();
+            double lat, lon;
+            if (m instanceof AisBaseStation) {
+                lat = ((AisBaseStation) m).getLatitude();
+                lon = ((AisBaseStation) m).getLongitude();
+            } else {
+                lat = ((AisPosition) m).getLatitude();
+                lon = ((AisPosition) m).getLongitude();
+            }
+            long p = NmeaPositions.position(line);
+            assertEquals(line, lat, NmeaPositions.lat(p), PRECISION);
+            assertEquals(line, lon, NmeaPositions.lon(p), PRECISION);
+        }
+    }
+
+    @Test
+    public void testPositionOfClassBAndLongRange() {
+        long p = NmeaPositions.position(line(payload(18, 57, -33.85, 151.2, 600000, 28)));
+        assertEquals(-33.85, NmeaPositions.lat(p), PRECISION);
+        assertEquals(151.2, NmeaPositions.lon(p), PRECISION);
+        p = NmeaPositions.position(line(payload(27, 44, -33.85, 151.2, 600, 18)));
+        assertEquals(-33.85, NmeaPositions.lat(p), 0.001);
+        assertEquals(151.2, NmeaPositions.lon(p), 0.001);
+    }
+
+    @Test
+    public void testNoPosition() {
+        // position not available (lon 181, lat 91)
+        assertEquals(NmeaPositions.NO_POSITION,
+                NmeaPositions.position(line(payload(1, 61, 91, 181, 600000, 28))));
+        // static data
+        assertEquals(NmeaPositions.NO_POSITION, NmeaPositions.position(
+                "!AIVDM,2,1,9,B,58KvN<42ACikUKW77F1H4hF0<PTp622222222216`0`cF5BF0RT13H0T,0*70"));
+        assertEquals(NmeaPositions.NO_POSITION,
+                NmeaPositions.position("$BSALR,,006,V,V,general failure*62"));
+        assertEquals(NmeaPositions.NO_POSITION, NmeaPositions.position(""));
+        assertEquals(NmeaPositions.NO_POSITION, NmeaPositions.position("!AIVDM,1,1,,A,1,0*00"));
+    }
+
+    @Test
+    public void testRegionIndex() {
+        Rectangle sydney = Rectangle.builder().minLat(-34.5f).maxLat(-33f).minLon(150.5f)
+                .maxLon(152f).build();
+        Rectangle big = Rectangle.builder().minLat(-45f).maxLat(-10f).minLon(110f).maxLon(115f)
+                .build();
+        RegionIndex index = new RegionIndex(Arrays.<Region> asList(sydney, big));
+        assertTrue(index.contains(-33.85f, 151.2f));
+        assertTrue(index.contains(-34.5f, 152f));
+        assertFalse(index.contains(-34.51f, 151.2f));
+        assertTrue(index.contains(-30.5f, 112.5f));
+        assertTrue(index.contains(-10f, 115f));
+        assertFalse(index.contains(0, 0));
+        assertFalse(index.contains(91, 181));
+        assertFalse(index.contains(Float.NaN, 0));
+    }
+
+    @Test
+    public void testGroupFiltersOnRegion() {
+        String inside = line(payload(1, 61, -33.85, 151.2, 600000, 28));
+        String outside = line(payload(1, 61, -12.5, 130.8, 600000, 28));
+        String noPosition = "!AIVDM,1,1,,A,H7P@<J0l4T000000000000000000,0*00";
+        Group group = Group.builder().id("sydney")
+                .member(() -> Observable.just(inside, outside, noPosition))
+                .filterRegion(Rectangle.builder().minLat(-34.5f).maxLat(-33f).minLon(150.5f)
+                        .maxLon(152f).build())
+                .build();
+        List<String> lines = group.lines().toList().toBlocking().single();
+        assertEquals(Arrays.asList(inside, noPosition), lines);
+    }
+
+    @Test
+    public void testGroupCanDropLinesWithoutPosition() {
+        String inside = line(payload(1, 61, -33.85, 151.2, 600000, 28));
+        String noPosition = "!AIVDM,1,1,,A,H7P@<J0l4T000000000000000000,0*00";
+        Group group = Group.builder().id("sydney")
+                .member(() -> Observable.just(inside, noPosition))
+                .filterRegion(Rectangle.builder().minLat(-34.5f).maxLat(-33f).minLon(150.5f)
+                        .maxLon(152f).build())
+                .passLinesWithoutPosition(false).build();
+        List<String> lines = group.lines().toList().toBlocking().single();
+        assertEquals(Arrays.asList(inside), lines);
+    }
+
+    @Test
+    public void testRegionWithoutBoundsIsCheckedEverywhere() {
+        // a lambda only implements contains so has the default (whole globe)
+        // bounds
+        Region north = (lat, lon) -> lat > 0;
+        RegionIndex index = new RegionIndex(Arrays.asList(north));
+        assertTrue(index.contains(10, 100));
+        assertTrue(index.contains(89.5f, -179.5f));
+        assertFalse(index.contains(-10, 100));
+    }
+
+    private static String line(String payload) {
+        return "!AIVDM,1,1,,A," + payload + ",0*00";
+    }
+
+    /**
+     * Returns a payload of 168 bits of the given message type with the
+     * longitude at bit <code>lonFrom</code> immediately followed by the
+     * latitude (one bit shorter).
+     */
+    private static String payload(int type, int lonFrom, double lat, double lon,
+            int unitsPerDegree, int lonBits) {
+        StringBuilder b = new StringBuilder();
+        bits(b, type, 6);
+        bits(b, 0, lonFrom - 6);
+        bits(b, Math.round(lon * unitsPerDegree), lonBits);
+        bits(b, Math.round(lat * unitsPerDegree), lonBits - 1);
+        while (b.length() < 168)
+            b.append('0');
+        while (b.length() % 6 != 0)
+            b.append('0');
+        StringBuilder s = new StringBuilder();
+        for (int i = 0; i < b.length(); i += 6) {
+            int v = Integer.parseInt(b.substring(i, i + 6), 2);
+            s.append((char) (v < 40 ? v + 48 : v + 56));
+        }
+        return s.toString();
+    }
+
+    private static void bits(StringBuilder b, long value, int n) {
+        for (int i = n - 1; i >= 0; i--)
+            b.append(((value >> i) & 1) == 1 ? '1' : '0');
+    }
+
+}
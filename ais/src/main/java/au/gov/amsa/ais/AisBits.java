@@ -0,0 +1,165 @@
+package au.gov.amsa.ais;
+
+import au.gov.amsa.util.SixBit;
+
+/**
+ * The bits of an AIS message payload decoded once from the six bit armoured
+ * string into packed longs. Unlike {@link AisExtractor} fields are read
+ * without synchronization or re-decoding, so an instance is cheap to read
+ * from many times and from many threads (it is immutable).
+ */
+public final class AisBits {
+
+    private final long[] words;
+    private final int length;
+
+    private AisBits(long[] words, int length) {
+        this.words = words;
+        this.length = length;
+    }
+
+    /**
+     * Decodes the armoured payload of an AIS message.
+     *
+     * @param payload
+     *            the encapsulated message from the NMEA line
+     * @param padBits
+     *            number of fill bits at the end of the payload
+     * @return decoded bits
+     * @throws AisParseException
+     *             if the payload contains an invalid character
+     */
+    public static AisBits from(String payload, int padBits) {
+        if (payload.length() == 0)
+            throw new AisParseException("message length cannot be 0");
+        if (padBits > 6 || padBits < 0)
+            throw new AisParseException("padBits must be between 0 and 6");
+        int numBits = payload.length() * 6;
+        long[] words = new long[(numBits + 63) >>> 6];
+        int bit = 0;
+        for (int i = 0; i < payload.length(); i++) {
+            char ch = payload.charAt(i);
+            int value = ch < 256 ? SixBit.toSixBit(ch) : -1;
+            if (value == -1)
+                throw new AisParseException("Illegal sixbit ascii char: " + ch);
+            int w = bit >>> 6;
+            int offset = bit & 63;
+            if (offset <= 58)
+                words[w] |= (long) value << (58 - offset);
+            else {
+                // straddles two words
+                int spill = offset - 58;
+                words[w] |= (long) value >>> spill;
+                words[w + 1] |= (long) value << (64 - spill);
+            }
+            bit += 6;
+        }
+        return new AisBits(words, Math.max(0, numBits - padBits));
+    }
+
+    /**
+     * Returns the number of bits in the message (excluding fill bits).
+     *
+     * @return
+     */
+    public int length() {
+        return length;
+    }
+
+    /**
+     * Returns the unsigned value of the bits from <code>from</code> inclusive
+     * to <code>to</code> exclusive (at most 63 bits).
+     *
+     * @param from
+     * @param to
+     * @return
+     */
+    public long getLong(int from, int to) {
+        checkRange(from, to);
+        int n = to - from;
+        if (n == 0)
+            return 0;
+        int w = from >>> 6;
+        int offset = from & 63;
+        long v = words[w] << offset;
+        if (offset + n > 64)
+            v |= words[w + 1] >>> (64 - offset);
+        return v >>> (64 - n);
+    }
+
+    /**
+     * Returns the unsigned value of the bits from <code>from</code> inclusive
+     * to <code>to</code> exclusive.
+     *
+     * @param from
+     * @param to
+     * @return
+     */
+    public int getValue(int from, int to) {
+        return (int) getLong(from, to);
+    }
+
+    /**
+     * Returns the two's complement signed value of the bits from
+     * <code>from</code> inclusive to <code>to</code> exclusive.
+     *
+     * @param from
+     * @param to
+     * @return
+     */
+    public int getSignedValue(int from, int to) {
+        int n = to - from;
+        if (n == 0)
+            return 0;
+        long v = getLong(from, to);
+        return (int) ((v << (64 - n)) >> (64 - n));
+    }
+
+    public boolean isSet(int index) {
+        return getLong(index, index + 1) == 1;
+    }
+
+    /**
+     * Returns the six bit text in the given bit range. As for
+     * {@link AisExtractor#getString(int, int)} the text stops at the first
+     * '@' and trailing spaces are removed.
+     *
+     * @param from
+     * @param to
+     * @return
+     */
+    public String getString(int from, int to) {
+        checkLength(to);
+        if (from < 0 || from > to)
+            throw new IllegalArgumentException("invalid bit range " + from + " to " + to);
+        int len = (to - from) / 6;
+        char[] chars = new char[len];
+        int pos = from;
+        for (int i = 0; i < len; i++) {
+            int value = (int) getLong(pos, pos + 6);
+            char ch = (char) (value < 32 ? value + 64 : value);
+            if (ch == '@') {
+                len = i;
+                break;
+            }
+            chars[i] = ch;
+            pos += 6;
+        }
+        while (len > 0 && chars[len - 1] == ' ')
+            len--;
+        return new String(chars, 0, len);
+    }
+
+    private void checkRange(int from, int to) {
+        checkLength(to);
+        if (from < 0 || from > to || to - from > 63)
+            throw new IllegalArgumentException("invalid bit range " + from + " to " + to);
+    }
+
+    private void checkLength(int to) {
+        if (to > length)
+            throw new AisParseException(length + " is not enough bits. At least " + to
+                    + " expected.");
+    }
+
+}
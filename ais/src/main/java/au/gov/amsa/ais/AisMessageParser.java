@@ -6,6 +6,7 @@ import au.gov.amsa.ais.message.AisMessageOther;
 import au.gov.amsa.ais.message.AisPositionA;
 import au.gov.amsa.ais.message.AisPositionB;
 import au.gov.amsa.ais.message.AisPositionBExtended;
+import au.gov.amsa.ais.message.AisPositionLongRange;
 import au.gov.amsa.ais.message.AisShipStaticA;
 
 /**
@@ -61,7 +62,7 @@ public class AisMessageParser {
 		int id = extractor.getMessageId();
 		if (Util.isClassAPositionReport(id)) {
 			return new AisPositionA(message, source, padBits);
-		} else if (id == 4)
+		} else if (id == 4 || id == 11)
 			return new AisBaseStation(message, source, padBits);
 		else if (id == 5)
 			return new AisShipStaticA(message, source, padBits);
@@ -71,6 +72,8 @@ public class AisMessageParser {
 			return new AisPositionBExtended(message, source, padBits);
 		else if (id == 21)
 			return new AisAidToNavigation(message, source, padBits);
+		else if (id == 27)
+			return new AisPositionLongRange(message, source, padBits);
 		else
 			return new AisMessageOther(id, source, padBits);
 	}
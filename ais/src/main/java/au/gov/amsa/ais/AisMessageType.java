@@ -13,7 +13,7 @@ public enum AisMessageType {
 			6), BINARY_ACKNOWLEDGE(7), BINARY_BROADCAST_MESSAGE(8), STANDARD_SAR_AIRCRAFT_POSITION_REPORT(
 			9), UTC_AND_DATE_INQUIRY(10), UTC_AND_DATE_RESPONSE(11), ADDRESSED_SAFETY_RELATED_MESSAGE(
 			12), POSITION_REPORT_CLASS_B(18), POSITION_REPORT_CLASS_B_EXTENDED(
-			19), ATON_REPORT(21), STATIC_DATA_REPORT(24);
+			19), ATON_REPORT(21), STATIC_DATA_REPORT(24), LONG_RANGE_AIS_BROADCAST(27);
 
 	private final int id;
 
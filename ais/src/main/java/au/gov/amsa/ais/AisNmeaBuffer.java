@@ -1,87 +1,143 @@
 package au.gov.amsa.ais;
 
-import java.util.Collection;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.Comparator;
 import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import au.gov.amsa.util.nmea.NmeaMessage;
-import au.gov.amsa.util.nmea.NmeaMessageParseException;
-import au.gov.amsa.util.nmea.NmeaUtil;
 
 import com.google.common.base.Optional;
-import com.google.common.collect.LinkedHashMultimap;
 import com.google.common.collect.Lists;
 
+/**
+ * Reassembles multi-sentence AIS messages. Fragments are grouped by source,
+ * channel and sequential message id and held in a fixed size slot array per
+ * group. There is no global lock (each group is guarded by its own monitor)
+ * and incomplete groups are expired once they are older than
+ * <code>maxAgeMs</code> or once more than <code>maxBufferSize</code>
+ * fragments are buffered (oldest group first).
+ */
 public class AisNmeaBuffer {
 
 	private static final int AIS_MESSAGE_COL_NO = 5;
+	private static final int CHANNEL_COL_NO = 4;
 	private static final int MIN_NUM_COLS_FOR_LINE_TO_BE_AGGREGATED = 6;
 	private static final int COLUMN_TO_AGGREGATE = AIS_MESSAGE_COL_NO;
+	// the fragment count field in an encapsulation sentence is a single digit
+	private static final int MAX_FRAGMENTS = 9;
+	private static final long DEFAULT_MAX_AGE_MS = TimeUnit.MINUTES.toMillis(1);
+
 	private final int maxBufferSize;
-	private final LinkedHashMultimap<String, NmeaMessage> buffer;
-	private final AtomicBoolean adding = new AtomicBoolean();
+	private final long maxAgeMs;
+	private final ConcurrentHashMap<Key, Group> groups = new ConcurrentHashMap<Key, Group>();
+	// groups in order of creation, used for expiry
+	private final Queue<Group> order = new ConcurrentLinkedQueue<Group>();
+	private final AtomicInteger size = new AtomicInteger();
 
-	public AisNmeaBuffer(int maxBufferSize) {
+	public AisNmeaBuffer(int maxBufferSize, long maxAgeMs) {
 		this.maxBufferSize = maxBufferSize;
-		this.buffer = LinkedHashMultimap.create();
+		this.maxAgeMs = maxAgeMs;
+	}
+
+	public AisNmeaBuffer(int maxBufferSize) {
+		this(maxBufferSize, DEFAULT_MAX_AGE_MS);
 	}
 
 	/**
 	 * Returns the complete message only once the whole group of messages has
-	 * arrived otherwise returns null.
-	 * 
+	 * arrived otherwise returns absent. Uses the current time as the arrival
+	 * time for expiry purposes.
+	 *
 	 * @param nmea
 	 * @return
 	 */
 	public Optional<List<NmeaMessage>> add(NmeaMessage nmea) {
-		// use compare-and-swap semantics instead of synchronizing to squeak a
-		// bit more performance out of this. Contention is expected to be low so
-		// this should help.
-		while (true) {
-			if (adding.compareAndSet(false, true)) {
-				Optional<List<NmeaMessage>> result = doAdd(nmea);
-				adding.set(false);
-				return result;
-			}
-		}
+		return add(nmea, System.currentTimeMillis());
 	}
 
-	private Optional<List<NmeaMessage>> doAdd(NmeaMessage nmea) {
+	/**
+	 * Returns the complete message (ordered by sentence number) only once the
+	 * whole group of messages has arrived otherwise returns absent.
+	 *
+	 * @param nmea
+	 * @param arrivalTime
+	 *            time in epoch ms used to expire incomplete groups
+	 * @return
+	 */
+	public Optional<List<NmeaMessage>> add(NmeaMessage nmea, long arrivalTime) {
 		List<String> items = nmea.getItems();
 		if (items.size() < MIN_NUM_COLS_FOR_LINE_TO_BE_AGGREGATED)
 			return Optional.of(Collections.singletonList(nmea));
-		if (nmea.isSingleSentence()) {
+		if (nmea.isSingleSentence())
 			return Optional.of(Collections.singletonList(nmea));
-		} else {
-			String groupId = nmea.getSentenceGroupId();
-			buffer.put(groupId, nmea);
-			// trim the oldest if we have reached max buffer size
-			if (buffer.size() > maxBufferSize)
-				buffer.removeAll(buffer.keySet().iterator().next());
-			int numGroupMessages = nmea.getSentenceCount();
-			int numGroupMessagesSoFar = buffer.get(groupId).size();
-			if (numGroupMessagesSoFar == numGroupMessages) {
-				// we have all messages in that group now so concatenate
-				List<NmeaMessage> list = orderMessages(buffer.get(groupId));
-				// NmeaMessage concatenatedMessage = concatenateMessages(list);
-				buffer.removeAll(groupId);
-				return Optional.of(list);
+		int count = nmea.getSentenceCount();
+		int number = nmea.getSentenceNumber();
+		if (count > MAX_FRAGMENTS || number < 1 || number > count)
+			// can never be completed so don't buffer it
+			return Optional.absent();
+		Key key = createKey(nmea, items);
+		Optional<List<NmeaMessage>> result = null;
+		while (result == null) {
+			Group group = groups.get(key);
+			if (group == null) {
+				Group created = new Group(key, count, arrivalTime);
+				group = groups.putIfAbsent(key, created);
+				if (group == null) {
+					group = created;
+					order.offer(created);
+				}
+			}
+			result = group.add(nmea, number, count);
+		}
+		expire(arrivalTime);
+		return result;
+	}
+
+	private static Key createKey(NmeaMessage nmea, List<String> items) {
+		// when the grouping comes from the tag block only the first sentence
+		// of the group carries the other tags (like the source) so don't use
+		// the source in that case
+		final String source;
+		if (nmea.getSentenceGroupingFromTagBlock() == null)
+			source = nmea.getSource();
+		else
+			source = null;
+		return new Key(source, items.get(CHANNEL_COL_NO), nmea.getSentenceGroupId());
+	}
+
+	private void expire(long now) {
+		while (true) {
+			Group oldest = order.peek();
+			if (oldest == null)
+				return;
+			else if (oldest.isClosed())
+				order.remove(oldest);
+			else if (size.get() > maxBufferSize || now - oldest.createTime > maxAgeMs) {
+				oldest.evict();
+				order.remove(oldest);
 			} else
-				return Optional.absent();
+				return;
 		}
 	}
 
 	/**
-	 * Returns the aggregated message or if an {@link NmeaMessageParseException}
-	 * occurs returns null.
-	 * 
+	 * Returns the aggregated message or absent if the list is empty. The
+	 * checksum of the aggregated message is calculated lazily so that a full
+	 * NMEA line is only built when a caller asks for one (for example via
+	 * {@link NmeaMessage#toLine()}).
+	 *
 	 * @param list
 	 * @return
 	 */
 	public static Optional<NmeaMessage> concatenateMessages(List<NmeaMessage> list) {
+		if (list.isEmpty())
+			return Optional.absent();
 		if (list.size() == 1)
 			return Optional.of(list.get(0));
 
@@ -95,37 +151,133 @@ public class AisNmeaBuffer {
 		// copy tags so we can modify
 		LinkedHashMap<String, String> tags = new LinkedHashMap<String, String>(first.getTags());
 
-		StringBuilder s = new StringBuilder();
-		for (NmeaMessage t : list) {
-			s.append(t.getItems().get(COLUMN_TO_AGGREGATE));
-		}
-		cols.set(COLUMN_TO_AGGREGATE, s.toString());
+		cols.set(COLUMN_TO_AGGREGATE, joinPayloads(list));
 		// set num sentences to be 1 and current sentence number to be 1
 		cols.set(1, "1");
 		cols.set(2, "1");
 
 		tags.put("g", "1-1-" + first.getSentenceGroupId());
-		try {
-			String checksum = NmeaUtil.getChecksum(NmeaUtil.createNmeaLine(tags, cols));
-			NmeaMessage message = new NmeaMessage(tags, cols, checksum);
-			return Optional.of(message);
-		} catch (NmeaMessageParseException e) {
-			return Optional.absent();
+		return Optional.of(new NmeaMessage(tags, cols, null));
+	}
+
+	/**
+	 * Returns the concatenation of the armoured AIS payloads (column 5) of the
+	 * given ordered list of sentences.
+	 *
+	 * @param list
+	 * @return
+	 */
+	public static String joinPayloads(List<NmeaMessage> list) {
+		if (list.size() == 1)
+			return list.get(0).getItems().get(COLUMN_TO_AGGREGATE);
+		int length = 0;
+		for (NmeaMessage t : list)
+			length += t.getItems().get(COLUMN_TO_AGGREGATE).length();
+		StringBuilder s = new StringBuilder(length);
+		for (NmeaMessage t : list) {
+			s.append(t.getItems().get(COLUMN_TO_AGGREGATE));
 		}
+		return s.toString();
+	}
+
+	/**
+	 * Returns the number of fragments currently buffered.
+	 *
+	 * @return
+	 */
+	public int size() {
+		return size.get();
 	}
 
-	private static List<NmeaMessage> orderMessages(Collection<NmeaMessage> c) {
-		List<NmeaMessage> list = Lists.newArrayList(c);
-		Collections.sort(list, new Comparator<NmeaMessage>() {
-			@Override
-			public int compare(NmeaMessage a, NmeaMessage b) {
-				return a.getSentenceNumber().compareTo(b.getSentenceNumber());
+	private final class Group {
+
+		private final Key key;
+		private final long createTime;
+		private final NmeaMessage[] fragments;
+		private int received;
+		private boolean closed;
+
+		Group(Key key, int count, long createTime) {
+			this.key = key;
+			this.fragments = new NmeaMessage[count];
+			this.createTime = createTime;
+		}
+
+		/**
+		 * Returns null if this group was closed by another thread and the add
+		 * should be retried against a fresh group.
+		 */
+		synchronized Optional<List<NmeaMessage>> add(NmeaMessage nmea, int number, int count) {
+			if (closed)
+				return null;
+			if (count != fragments.length) {
+				// a new group has reused the sequential id before this group
+				// was completed so discard this one
+				close();
+				return null;
+			}
+			if (fragments[number - 1] == null) {
+				received++;
+				size.incrementAndGet();
 			}
-		});
-		return list;
+			fragments[number - 1] = nmea;
+			if (received == fragments.length) {
+				close();
+				return Optional.<List<NmeaMessage>> of(Arrays.asList(fragments));
+			} else
+				return Optional.absent();
+		}
+
+		synchronized void evict() {
+			if (!closed)
+				close();
+		}
+
+		synchronized boolean isClosed() {
+			return closed;
+		}
+
+		private void close() {
+			closed = true;
+			size.addAndGet(-received);
+			groups.remove(key, this);
+		}
 	}
 
-	public int size() {
-		return buffer.size();
+	private static final class Key {
+		private final String source;
+		private final String channel;
+		private final String id;
+
+		Key(String source, String channel, String id) {
+			this.source = source;
+			this.channel = channel;
+			this.id = id;
+		}
+
+		@Override
+		public int hashCode() {
+			final int prime = 31;
+			int result = 1;
+			result = prime * result + ((channel == null) ? 0 : channel.hashCode());
+			result = prime * result + ((id == null) ? 0 : id.hashCode());
+			result = prime * result + ((source == null) ? 0 : source.hashCode());
+			return result;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (obj == null || getClass() != obj.getClass())
+				return false;
+			Key other = (Key) obj;
+			return equal(channel, other.channel) && equal(id, other.id)
+			        && equal(source, other.source);
+		}
+
+		private static boolean equal(String a, String b) {
+			return a == null ? b == null : a.equals(b);
+		}
 	}
 }
@@ -0,0 +1,202 @@
+package au.gov.amsa.ais;
+
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Detects AIS sentences whose armoured payload has already been seen within a
+ * time window, typically because the same transmission was received by more
+ * than one feed (terrestrial, satellite, partner). Detection happens on the raw
+ * line before any parsing: a 64-bit hash of the payload column is computed
+ * directly from the line without allocation and looked up in a
+ * {@link TimeWindowedLongSet}.
+ *
+ * <p>
+ * Sentences that are one part of a multi-sentence message are never reported
+ * as duplicates because trailing fragments (for example the padding at the end
+ * of a type 5 message) are frequently identical for different vessels and
+ * dropping one would stop its message being reassembled.
+ *
+ * <p>
+ * Duplicates are counted per source (the tag block <code>s:</code> value or if
+ * absent the feed supplied with the line) so that the overlap between feeds
+ * can be measured.
+ */
+public final class NmeaPayloadDeduplicator {
+
+    private static final String UNKNOWN_SOURCE = "unknown";
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    private static final int PAYLOAD_COLUMN = 5;
+
+    private final TimeWindowedLongSet hashes;
+    private final ConcurrentHashMap<String, AtomicLong> duplicates = new ConcurrentHashMap<String, AtomicLong>();
+    private final AtomicLong seen = new AtomicLong();
+
+    /**
+     * Constructor.
+     *
+     * @param windowMs
+     *            how long a payload is remembered for in ms
+     */
+    public NmeaPayloadDeduplicator(long windowMs) {
+        this.hashes = new TimeWindowedLongSet(windowMs);
+    }
+
+    /**
+     * Returns true if and only if the line is an AIS sentence with a payload
+     * that has already been seen within the window.
+     *
+     * @param feed
+     *            name of the feed the line arrived on, used for counting if the
+     *            line has no tag block source. May be null.
+     * @param line
+     *            NMEA line
+     * @param time
+     *            arrival time in epoch ms
+     * @return true if the line is a duplicate
+     */
+    public boolean isDuplicate(String feed, String line, long time) {
+        seen.incrementAndGet();
+        long hash = payloadHash(line);
+        if (hash == 0)
+            return false;
+        final boolean added;
+        synchronized (hashes) {
+            added = hashes.add(hash, time);
+        }
+        if (added)
+            return false;
+        else {
+            String source = ShardedNmeaStreamProcessor.routingKey(feed, line);
+            if (source == null)
+                source = UNKNOWN_SOURCE;
+            AtomicLong count = duplicates.get(source);
+            if (count == null) {
+                AtomicLong created = new AtomicLong();
+                count = duplicates.putIfAbsent(source, created);
+                if (count == null)
+                    count = created;
+            }
+            count.incrementAndGet();
+            return true;
+        }
+    }
+
+    /**
+     * Returns true if and only if the line is an AIS sentence with a payload
+     * that has already been seen within the window.
+     *
+     * @param line
+     *            NMEA line
+     * @param time
+     *            arrival time in epoch ms
+     * @return true if the line is a duplicate
+     */
+    public boolean isDuplicate(String line, long time) {
+        return isDuplicate(null, line, time);
+    }
+
+    /**
+     * Returns the number of lines checked so far.
+     *
+     * @return
+     */
+    public long seen() {
+        return seen.get();
+    }
+
+    /**
+     * Returns the total number of duplicates found so far.
+     *
+     * @return
+     */
+    public long duplicates() {
+        long total = 0;
+        for (AtomicLong count : duplicates.values())
+            total += count.get();
+        return total;
+    }
+
+    /**
+     * Returns a snapshot of the number of duplicates found so far by source.
+     *
+     * @return
+     */
+    public Map<String, Long> duplicatesBySource() {
+        ImmutableMap.Builder<String, Long> builder = ImmutableMap.builder();
+        for (Entry<String, AtomicLong> entry : duplicates.entrySet())
+            builder.put(entry.getKey(), entry.getValue().get());
+        return builder.build();
+    }
+
+    /**
+     * Returns a 64-bit hash of the armoured payload of a single sentence AIS
+     * line (<code>!..VDM</code> or <code>!..VDO</code>) optionally preceded by
+     * a tag block. Returns 0 if the line is not a single sentence AIS line or
+     * is malformed. Does not allocate.
+     *
+     * @param line
+     * @return hash of the payload or 0
+     */
+    static long payloadHash(String line) {
+        int n = line.length();
+        int i = 0;
+        if (n > 0 && line.charAt(0) == '\\') {
+            int finish = line.indexOf('\\', 1);
+            if (finish == -1)
+                return 0;
+            i = finish + 1;
+        }
+        if (i >= n || line.charAt(i) != '!')
+            return 0;
+        int column = 0;
+        int countStart = -1;
+        while (i < n && column < PAYLOAD_COLUMN) {
+            if (line.charAt(i) == ',') {
+                column++;
+                if (column == 1)
+                    countStart = i + 1;
+            }
+            i++;
+        }
+        if (column < PAYLOAD_COLUMN)
+            return 0;
+        // only single sentence messages (fragment count of 1)
+        if (line.charAt(countStart) != '1' || line.charAt(countStart + 1) != ',')
+            return 0;
+        long h = FNV_OFFSET_BASIS;
+        int start = i;
+        while (i < n) {
+            char c = line.charAt(i);
+            if (c == ',')
+                break;
+            h ^= c;
+            h *= FNV_PRIME;
+            i++;
+        }
+        if (i == start || i == n)
+            return 0;
+        h = mix(h);
+        // zero is reserved to mean no hash
+        return h == 0 ? 1 : h;
+    }
+
+    /**
+     * Finalization step of MurmurHash3 so that all bits of the hash are well
+     * distributed (the set uses the low bits for indexing).
+     */
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+}
@@ -104,7 +104,8 @@ public class NmeaStreamProcessor {
 		// if is multi line message then don't report to listener till last
 		// message in sequence has been received.
 		if (!nmea.isSingleSentence()) {
-			Optional<List<NmeaMessage>> messages = nmeaBuffer.add(nmea);
+			Optional<List<NmeaMessage>> messages = nmeaBuffer.add(nmea,
+					arrivalTime);
 			if (messages.isPresent()) {
 				Optional<NmeaMessage> joined = AisNmeaBuffer
 						.concatenateMessages(messages.get());
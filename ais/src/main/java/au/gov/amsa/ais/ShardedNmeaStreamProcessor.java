@@ -0,0 +1,350 @@
+package au.gov.amsa.ais;
+
+import java.io.Closeable;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+
+/**
+ * Distributes NMEA lines from many feeds across a number of independent
+ * {@link NmeaStreamProcessor}s (shards) each running on its own thread. A line
+ * is routed by the feed name supplied with it so that lines from the same feed
+ * (including the fragments of a multi-sentence message and any
+ * <code>$PGHP</code> timestamp lines) are always processed in order by the
+ * same shard. Lines without a feed are routed by their tag block group id
+ * (<code>g:</code>) so that the fragments of a message stay together, or
+ * failing that by their tag block source (<code>s:</code>). The results of
+ * all shards are reported to the one listener (calls to the listener are
+ * serialized).
+ *
+ * <p>
+ * Per-shard queue depth and lag (how long the line at the head of the queue
+ * has been waiting) are available via {@link #queueDepth(int)} and
+ * {@link #lagMs(int)}.
+ */
+public final class ShardedNmeaStreamProcessor implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(ShardedNmeaStreamProcessor.class);
+
+    private static final int DEFAULT_QUEUE_SIZE = 10000;
+    private static final LineAndTime STOP = new LineAndTime("", 0);
+
+    private final List<Shard> shards;
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    /**
+     * Constructor.
+     *
+     * @param listener
+     *            receives the merged output of all shards
+     * @param matchWithTimestampLine
+     *            as per {@link NmeaStreamProcessor}
+     * @param numShards
+     *            number of shards (threads)
+     * @param queueSize
+     *            maximum number of lines waiting to be processed per shard.
+     *            When a shard's queue is full {@link #line(String, String)}
+     *            blocks.
+     */
+    public ShardedNmeaStreamProcessor(NmeaStreamProcessorListener listener,
+            boolean matchWithTimestampLine, int numShards, int queueSize) {
+        Preconditions.checkArgument(numShards > 0, "numShards must be > 0");
+        Preconditions.checkArgument(queueSize > 0, "queueSize must be > 0");
+        NmeaStreamProcessorListener merged = new SynchronizedListener(listener);
+        this.shards = Lists.newArrayList();
+        for (int i = 0; i < numShards; i++) {
+            Shard shard = new Shard(i,
+                    new NmeaStreamProcessor(merged, matchWithTimestampLine),
+                    new ArrayBlockingQueue<LineAndTime>(queueSize));
+            shards.add(shard);
+        }
+        for (Shard shard : shards)
+            shard.start();
+    }
+
+    public ShardedNmeaStreamProcessor(NmeaStreamProcessorListener listener,
+            boolean matchWithTimestampLine, int numShards) {
+        this(listener, matchWithTimestampLine, numShards, DEFAULT_QUEUE_SIZE);
+    }
+
+    /**
+     * Handles the arrival of a new NMEA line from the given feed and assumes
+     * its arrival time is now.
+     *
+     * @param feed
+     *            name of the feed the line arrived on, used for routing. May
+     *            be null.
+     * @param line
+     */
+    public void line(String feed, String line) {
+        line(feed, line, System.currentTimeMillis());
+    }
+
+    /**
+     * Handles the arrival of a new NMEA line and assumes its arrival time is
+     * now. The line is routed by its tag block group id or source.
+     *
+     * @param line
+     */
+    public void line(String line) {
+        line(null, line);
+    }
+
+    /**
+     * Handles the arrival of a new NMEA line from the given feed at the given
+     * arrival time.
+     *
+     * @param feed
+     *            name of the feed the line arrived on, used for routing. May
+     *            be null.
+     * @param line
+     * @param arrivalTime
+     * @throws IllegalStateException
+     *             if {@link #close()} has been called
+     */
+    public void line(String feed, String line, long arrivalTime) {
+        if (closed.get())
+            throw new IllegalStateException("processor has been closed");
+        Shard shard = shards.get(shardIndex(shardKey(feed, line), shards.size()));
+        try {
+            shard.queue.put(new LineAndTime(line, arrivalTime));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Returns the number of shards.
+     *
+     * @return
+     */
+    public int numShards() {
+        return shards.size();
+    }
+
+    /**
+     * Returns the number of lines waiting to be processed by the given shard.
+     *
+     * @param shard
+     *            shard index (zero based)
+     * @return
+     */
+    public int queueDepth(int shard) {
+        return shards.get(shard).queue.size();
+    }
+
+    /**
+     * Returns how long in ms the line at the head of the queue for the given
+     * shard has been waiting. Returns 0 if the queue is empty.
+     *
+     * @param shard
+     *            shard index (zero based)
+     * @return
+     */
+    public long lagMs(int shard) {
+        LineAndTime head = shards.get(shard).queue.peek();
+        if (head == null)
+            return 0;
+        else
+            return Math.max(0, System.currentTimeMillis() - head.getTime());
+    }
+
+    /**
+     * Returns the number of lines processed so far by the given shard.
+     *
+     * @param shard
+     *            shard index (zero based)
+     * @return
+     */
+    public long processedCount(int shard) {
+        return shards.get(shard).processed.get();
+    }
+
+    /**
+     * Stops all shards after they have processed the lines already queued.
+     */
+    @Override
+    public void close() {
+        if (!closed.compareAndSet(false, true))
+            return;
+        for (Shard shard : shards) {
+            try {
+                shard.queue.put(STOP);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                shard.thread.interrupt();
+            }
+        }
+    }
+
+    /**
+     * Waits for all shards to finish processing after {@link #close()} has
+     * been called.
+     *
+     * @param timeout
+     * @param unit
+     * @return true if all shards finished within the timeout
+     * @throws InterruptedException
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long finish = System.currentTimeMillis() + unit.toMillis(timeout);
+        for (Shard shard : shards) {
+            long remaining = finish - System.currentTimeMillis();
+            if (remaining <= 0)
+                return false;
+            shard.thread.join(remaining);
+            if (shard.thread.isAlive())
+                return false;
+        }
+        return true;
+    }
+
+    static int shardIndex(String key, int numShards) {
+        if (key == null)
+            return 0;
+        else
+            return (key.hashCode() & Integer.MAX_VALUE) % numShards;
+    }
+
+    /**
+     * Returns the key the line is sharded on: the feed if not null otherwise
+     * the id of the tag block group (<code>g:</code>) the line belongs to
+     * otherwise the tag block source (<code>s:</code>). Only the first
+     * fragment of a grouped message carries the source so routing fragments by
+     * source would split them across shards.
+     *
+     * @param feed
+     * @param line
+     * @return key or null if none found
+     */
+    static String shardKey(String feed, String line) {
+        if (feed != null)
+            return feed;
+        String group = tag(line, "g:");
+        if (group != null)
+            // g:sentence-count-id, only the id is common to the fragments
+            return "g:" + group.substring(group.lastIndexOf('-') + 1);
+        else
+            return tag(line, "s:");
+    }
+
+    /**
+     * Returns the tag block source (<code>s:</code>) of the line if present
+     * otherwise returns the feed. Does not parse the whole line.
+     *
+     * @param feed
+     * @param line
+     * @return
+     */
+    static String routingKey(String feed, String line) {
+        String source = tag(line, "s:");
+        return source != null ? source : feed;
+    }
+
+    /**
+     * Returns the value of the given tag in the tag block of the line or null
+     * if absent. Does not parse the whole line.
+     *
+     * @param line
+     * @param name
+     *            tag name including the colon, for example <code>s:</code>
+     * @return tag value or null
+     */
+    private static String tag(String line, String name) {
+        if (line.startsWith("\\")) {
+            int finish = line.indexOf('\\', 1);
+            if (finish > 0) {
+                int start = 1;
+                while (start < finish) {
+                    int comma = line.indexOf(',', start);
+                    if (comma == -1 || comma > finish)
+                        comma = finish;
+                    if (line.startsWith(name, start)) {
+                        int end = comma;
+                        // the last tag is followed by the tag block checksum
+                        int star = line.lastIndexOf('*', end);
+                        if (star > start)
+                            end = star;
+                        return line.substring(start + name.length(), end);
+                    }
+                    start = comma + 1;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static final class Shard implements Runnable {
+
+        private final int index;
+        private final NmeaStreamProcessor processor;
+        private final BlockingQueue<LineAndTime> queue;
+        private final AtomicLong processed = new AtomicLong();
+        private final Thread thread;
+
+        Shard(int index, NmeaStreamProcessor processor, BlockingQueue<LineAndTime> queue) {
+            this.index = index;
+            this.processor = processor;
+            this.queue = queue;
+            this.thread = new Thread(this, "nmea-shard-" + index);
+            this.thread.setDaemon(true);
+        }
+
+        void start() {
+            thread.start();
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    LineAndTime line = queue.take();
+                    if (line == STOP)
+                        break;
+                    try {
+                        processor.line(line.getLine(), line.getTime());
+                    } catch (RuntimeException e) {
+                        log.warn("shard " + index + ": " + e.getMessage(), e);
+                    }
+                    processed.incrementAndGet();
+                }
+            } catch (InterruptedException e) {
+                log.info("shard " + index + " interrupted");
+            }
+        }
+    }
+
+    private static final class SynchronizedListener implements NmeaStreamProcessorListener {
+
+        private final NmeaStreamProcessorListener listener;
+
+        SynchronizedListener(NmeaStreamProcessorListener listener) {
+            this.listener = listener;
+        }
+
+        @Override
+        public synchronized void message(String line, long time) {
+            listener.message(line, time);
+        }
+
+        @Override
+        public synchronized void timestampNotFound(String line, Long arrivalTime) {
+            listener.timestampNotFound(line, arrivalTime);
+        }
+
+        @Override
+        public synchronized void invalidNmea(String line, long arrivalTime, String message) {
+            listener.invalidNmea(line, arrivalTime, message);
+        }
+    }
+}
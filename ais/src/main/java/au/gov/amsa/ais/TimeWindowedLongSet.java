@@ -0,0 +1,147 @@
+package au.gov.amsa.ais;
+
+import java.util.Arrays;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A set of non-zero longs that only remembers values added within roughly the
+ * last <code>windowMs</code>. The window is split into time buckets and each
+ * bucket is an open-addressing (linear probing) hash table of primitive longs
+ * so adding and querying does not allocate. When time moves past the oldest
+ * bucket that bucket is cleared and reused, so a value is forgotten between
+ * <code>windowMs</code> and <code>windowMs + windowMs/numBuckets</code> after
+ * it was added.
+ *
+ * <p>
+ * Not thread safe.
+ */
+final class TimeWindowedLongSet {
+
+    private static final int DEFAULT_NUM_BUCKETS = 4;
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final long bucketMs;
+    private final Table[] tables;
+    private long currentBucket = Long.MIN_VALUE;
+
+    TimeWindowedLongSet(long windowMs, int numBuckets) {
+        Preconditions.checkArgument(windowMs > 0, "windowMs must be > 0");
+        Preconditions.checkArgument(numBuckets > 0, "numBuckets must be > 0");
+        this.bucketMs = Math.max(1, windowMs / numBuckets);
+        // one extra table for the partially elapsed current bucket
+        this.tables = new Table[numBuckets + 1];
+        for (int i = 0; i < tables.length; i++)
+            tables[i] = new Table(INITIAL_CAPACITY);
+    }
+
+    TimeWindowedLongSet(long windowMs) {
+        this(windowMs, DEFAULT_NUM_BUCKETS);
+    }
+
+    /**
+     * Adds the value to the set at the given time and returns true if and
+     * only if the value was not already present within the window.
+     *
+     * @param value
+     *            must not be zero
+     * @param time
+     *            time in epoch ms
+     * @return true if the value was added
+     */
+    boolean add(long value, long time) {
+        Preconditions.checkArgument(value != 0, "value must not be zero");
+        // don't let time go backwards for out of order arrivals
+        currentBucket = Math.max(currentBucket, Math.floorDiv(time, bucketMs));
+        Table current = tables[(int) Math.floorMod(currentBucket, (long) tables.length)];
+        if (current.bucket != currentBucket) {
+            current.clear();
+            current.bucket = currentBucket;
+        }
+        for (Table table : tables) {
+            if (table != current && isLive(table) && table.contains(value))
+                return false;
+        }
+        return current.add(value);
+    }
+
+    private boolean isLive(Table table) {
+        return table.bucket > currentBucket - tables.length && table.bucket <= currentBucket;
+    }
+
+    /**
+     * Returns the number of values held in buckets that are still within the
+     * window.
+     *
+     * @return
+     */
+    int size() {
+        int size = 0;
+        for (Table table : tables)
+            if (isLive(table))
+                size += table.size;
+        return size;
+    }
+
+    private static final class Table {
+
+        long bucket = Long.MIN_VALUE;
+        long[] values;
+        int size;
+
+        Table(int capacity) {
+            values = new long[capacity];
+        }
+
+        boolean contains(long value) {
+            int mask = values.length - 1;
+            int i = index(value, mask);
+            while (true) {
+                long v = values[i];
+                if (v == 0)
+                    return false;
+                else if (v == value)
+                    return true;
+                i = (i + 1) & mask;
+            }
+        }
+
+        boolean add(long value) {
+            // keep the load factor at or below 0.5
+            if ((size + 1) * 2 > values.length)
+                resize(values.length * 2);
+            int mask = values.length - 1;
+            int i = index(value, mask);
+            while (true) {
+                long v = values[i];
+                if (v == 0) {
+                    values[i] = value;
+                    size++;
+                    return true;
+                } else if (v == value)
+                    return false;
+                i = (i + 1) & mask;
+            }
+        }
+
+        private void resize(int capacity) {
+            long[] old = values;
+            values = new long[capacity];
+            size = 0;
+            for (long v : old)
+                if (v != 0)
+                    add(v);
+        }
+
+        void clear() {
+            if (size > 0) {
+                Arrays.fill(values, 0);
+                size = 0;
+            }
+        }
+
+        private static int index(long value, int mask) {
+            return (int) (value ^ (value >>> 32)) & mask;
+        }
+    }
+}
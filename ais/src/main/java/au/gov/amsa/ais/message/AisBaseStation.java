@@ -13,7 +13,8 @@ import au.gov.amsa.ais.HasMmsi;
 import au.gov.amsa.ais.Util;
 
 /**
- * An AIS base station message (message id 4).
+ * An AIS base station message (message id 4) or UTC and date response
+ * (message id 11) which has the same layout.
  * 
  * @author dxm
  * 
@@ -56,7 +57,8 @@ public class AisBaseStation implements AisMessage, HasMmsi {
         this.source = source;
         this.extractor = factory.create(message, MIN_LENGTH, padBits);
         messageId = extractor.getMessageId();
-        Util.checkMessageId(messageId, AisMessageType.BASE_STATION_REPORT);
+        Util.checkMessageId(messageId, AisMessageType.BASE_STATION_REPORT,
+                AisMessageType.UTC_AND_DATE_RESPONSE);
         Util.checkLatLong(getLatitude(), getLongitude());
 
     }
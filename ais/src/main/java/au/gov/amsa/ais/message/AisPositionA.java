@@ -29,8 +29,14 @@ public class AisPositionA implements AisPosition, HasCommunications {
     private final String source;
     private final int messageId;
     private final int mmsi;
-    private final Double longitude;
-    private final Double latitude;
+    // decoded on first use, published by the volatile write
+    private Double longitude;
+    private Double latitude;
+    private volatile boolean positionDecoded;
+    private final String message;
+    private final int padBits;
+    // decoded on first use of report()
+    private volatile AisPositionReport report;
 
     public AisPositionA(String message, String source, int padBits) {
         this(Util.getAisExtractorFactory(), message, source, padBits);
@@ -42,13 +48,37 @@ public class AisPositionA implements AisPosition, HasCommunications {
 
     public AisPositionA(AisExtractorFactory factory, String message, String source, int padBits) {
         this.source = source;
+        this.message = message;
+        this.padBits = padBits;
         this.extractor = factory.create(message, 137, padBits);
         messageId = extractor.getMessageId();
         Util.checkMessageId(messageId, POSITION_REPORT_SCHEDULED, POSITION_REPORT_ASSIGNED,
                 POSITION_REPORT_SPECIAL);
         mmsi = extractor.getValue(8, 38);
-        longitude = extractLongitude(extractor);
-        latitude = extractLatitude(extractor);
+    }
+
+    /**
+     * Returns the primitive accessors over the same payload, decoded on first
+     * call. Use this to read the position fields without boxing.
+     *
+     * @return report
+     */
+    public AisPositionReport report() {
+        AisPositionReport r = report;
+        if (r == null) {
+            // benign race, the report is immutable
+            r = AisPositionReport.from(message, padBits);
+            report = r;
+        }
+        return r;
+    }
+
+    private void decodePosition() {
+        if (!positionDecoded) {
+            longitude = extractLongitude(extractor);
+            latitude = extractLatitude(extractor);
+            positionDecoded = true;
+        }
     }
 
     static Integer extractTrueHeading(AisExtractor extractor) {
@@ -166,11 +196,13 @@ public class AisPositionA implements AisPosition, HasCommunications {
 
     @Override
     public Double getLongitude() {
+        decodePosition();
         return longitude;
     }
 
     @Override
     public Double getLatitude() {
+        decodePosition();
         return latitude;
     }
 
@@ -232,9 +264,9 @@ public class AisPositionA implements AisPosition, HasCommunications {
         builder.append(", isHighAccuracyPosition=");
         builder.append(isHighAccuracyPosition());
         builder.append(", longitude=");
-        builder.append(longitude);
+        builder.append(getLongitude());
         builder.append(", latitude=");
-        builder.append(latitude);
+        builder.append(getLatitude());
         builder.append(", courseOverGround=");
         builder.append(getCourseOverGround());
         builder.append(", trueHeading=");
@@ -25,6 +25,10 @@ public class AisPositionB implements AisPosition, HasCommunications {
     private final int mmsi;
     private final Double longitude;
     private final Double latitude;
+    private final String message;
+    private final int padBits;
+    // decoded on first use of report()
+    private volatile AisPositionReport report;
 
     public AisPositionB(String message, String source, int padBits) {
         this(getAisExtractorFactory(), message, source, padBits);
@@ -36,6 +40,8 @@ public class AisPositionB implements AisPosition, HasCommunications {
 
     public AisPositionB(AisExtractorFactory factory, String message, String source, int padBits) {
         this.source = source;
+        this.message = message;
+        this.padBits = padBits;
         this.extractor = factory.create(message, 133, padBits);
         messageId = extractor.getMessageId();
         checkMessageId(getMessageId(), AisMessageType.POSITION_REPORT_CLASS_B);
@@ -45,6 +51,22 @@ public class AisPositionB implements AisPosition, HasCommunications {
         latitude = extractLatitude(extractor);
     }
 
+    /**
+     * Returns the primitive accessors over the same payload, decoded on first
+     * call. Use this to read the position fields without boxing.
+     *
+     * @return report
+     */
+    public AisPositionReport report() {
+        AisPositionReport r = report;
+        if (r == null) {
+            // benign race, the report is immutable
+            r = AisPositionReport.from(message, padBits);
+            report = r;
+        }
+        return r;
+    }
+
     static Integer extractTrueHeading(AisExtractor extractor) {
         try {
             int val = extractor.getValue(124, 133);
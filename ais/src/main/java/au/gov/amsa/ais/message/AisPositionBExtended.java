@@ -6,6 +6,7 @@ import au.gov.amsa.ais.AisExtractor;
 import au.gov.amsa.ais.AisExtractorFactory;
 import au.gov.amsa.ais.AisMessageType;
 import au.gov.amsa.ais.Util;
+import au.gov.amsa.util.StringInterner;
 
 public class AisPositionBExtended implements AisPosition, AisShipStatic {
 
@@ -57,7 +58,7 @@ public class AisPositionBExtended implements AisPosition, AisShipStatic {
         courseOverGround = extractCourseOverGround(extractor);
         trueHeading = extractTrueHeading(extractor);
         timeSecondsOnly = extractor.getValue(133, 139);
-        name = extractor.getString(143, 263);
+        name = StringInterner.instance().intern(extractor.getString(143, 263));
         shipType = extractor.getValue(263, 271);
         dimensionA = extractor.getValue(271, 280);
         dimensionB = extractor.getValue(280, 289);
@@ -0,0 +1,146 @@
+package au.gov.amsa.ais.message;
+
+import au.gov.amsa.ais.AisMessageType;
+import au.gov.amsa.ais.Util;
+
+/**
+ * Decoder for AIS message type 27 (long range AIS broadcast), the reduced
+ * position report sent by class A transponders for reception by satellite.
+ * Position is to 1/10 minute, speed to 1 knot and course to 1 degree. There is
+ * no heading or time stamp.
+ */
+public class AisPositionLongRange implements AisPosition {
+
+    private final String source;
+    private final AisPositionReport report;
+
+    public AisPositionLongRange(String message, int padBits) {
+        this(message, null, padBits);
+    }
+
+    public AisPositionLongRange(String message, String source, int padBits) {
+        this.source = source;
+        this.report = AisPositionReport.from(message, padBits);
+        Util.checkMessageId(report.messageId(), AisMessageType.LONG_RANGE_AIS_BROADCAST);
+    }
+
+    /**
+     * Returns the primitive accessors for this message.
+     *
+     * @return
+     */
+    public AisPositionReport report() {
+        return report;
+    }
+
+    @Override
+    public int getMessageId() {
+        return report.messageId();
+    }
+
+    @Override
+    public String getSource() {
+        return source;
+    }
+
+    @Override
+    public int getMmsi() {
+        return report.mmsiInt();
+    }
+
+    @Override
+    public int getRepeatIndicator() {
+        return report.repeatIndicator();
+    }
+
+    public NavigationalStatus getNavigationalStatus() {
+        return NavigationalStatus.values()[report.navigationalStatusOrMinusOne()];
+    }
+
+    @Override
+    public Double getSpeedOverGroundKnots() {
+        return boxed(report.sogOrNaN());
+    }
+
+    @Override
+    public boolean isHighAccuracyPosition() {
+        return report.isHighAccuracyPosition();
+    }
+
+    @Override
+    public Double getLongitude() {
+        return boxed(report.lonOrNaN());
+    }
+
+    @Override
+    public Double getLatitude() {
+        return boxed(report.latOrNaN());
+    }
+
+    @Override
+    public Double getCourseOverGround() {
+        return boxed(report.cogOrNaN());
+    }
+
+    /**
+     * Returns null because heading is not part of message type 27.
+     */
+    @Override
+    public Integer getTrueHeading() {
+        return null;
+    }
+
+    /**
+     * Returns 60 (time stamp not available) because the time stamp is not part
+     * of message type 27.
+     */
+    @Override
+    public int getTimeSecondsOnly() {
+        return 60;
+    }
+
+    @Override
+    public boolean isUsingRAIM() {
+        return report.bits().isSet(39);
+    }
+
+    /**
+     * Returns true if the position is from the current GNSS fix rather than
+     * an earlier one.
+     *
+     * @return
+     */
+    public boolean isGnssPositionCurrent() {
+        return !report.bits().isSet(94);
+    }
+
+    private static Double boxed(double value) {
+        return Double.isNaN(value) ? null : value;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append("AisPositionLongRange [source=");
+        builder.append(source);
+        builder.append(", messageId=");
+        builder.append(getMessageId());
+        builder.append(", mmsi=");
+        builder.append(getMmsi());
+        builder.append(", navigationalStatus=");
+        builder.append(getNavigationalStatus());
+        builder.append(", speedOverGroundKnots=");
+        builder.append(getSpeedOverGroundKnots());
+        builder.append(", longitude=");
+        builder.append(getLongitude());
+        builder.append(", latitude=");
+        builder.append(getLatitude());
+        builder.append(", courseOverGround=");
+        builder.append(getCourseOverGround());
+        builder.append(", isGnssPositionCurrent=");
+        builder.append(isGnssPositionCurrent());
+        builder.append("]");
+        return builder.toString();
+    }
+
+}
@@ -0,0 +1,294 @@
+package au.gov.amsa.ais.message;
+
+import au.gov.amsa.ais.AisBits;
+import au.gov.amsa.ais.AisParseException;
+
+/**
+ * Primitive (unboxed) read access to the position related fields of any AIS
+ * message that carries a position: types 1, 2, 3 (class A), 4 and 11 (base
+ * station / UTC response), 18 and 19 (class B), 21 (aid to navigation) and 27
+ * (long range broadcast, mainly received by satellite).
+ *
+ * <p>
+ * The payload is decoded once into {@link AisBits} and each accessor reads its
+ * field directly from those bits, so nothing is decoded until asked for (for
+ * example a filter on MMSI never decodes the position) and no
+ * <code>Integer</code> or <code>Double</code> is created. Absent values are
+ * reported as {@link Double#NaN} or -1 with a matching <code>hasX()</code>
+ * method.
+ */
+public final class AisPositionReport {
+
+    private static final int LATITUDE_NOT_AVAILABLE = 91 * 600000;
+    private static final int LONGITUDE_NOT_AVAILABLE = 181 * 600000;
+    private static final int LONG_RANGE_LATITUDE_NOT_AVAILABLE = 91 * 600;
+    private static final int LONG_RANGE_LONGITUDE_NOT_AVAILABLE = 181 * 600;
+
+    private final AisBits bits;
+    private final int messageId;
+    private final Layout layout;
+
+    private AisPositionReport(AisBits bits, int messageId, Layout layout) {
+        this.bits = bits;
+        this.messageId = messageId;
+        this.layout = layout;
+    }
+
+    /**
+     * Returns true if the message type carries a position that this class
+     * can read.
+     *
+     * @param messageId
+     * @return
+     */
+    public static boolean isSupported(int messageId) {
+        return layout(messageId) != null;
+    }
+
+    /**
+     * Decodes the payload of a position carrying message.
+     *
+     * @param payload
+     *            encapsulated message from the NMEA line
+     * @param padBits
+     *            number of fill bits
+     * @return report
+     * @throws AisParseException
+     *             if the payload is invalid, too short or not a supported
+     *             message type
+     */
+    public static AisPositionReport from(String payload, int padBits) {
+        return from(AisBits.from(payload, padBits));
+    }
+
+    public static AisPositionReport from(AisBits bits) {
+        int messageId = bits.getValue(0, 6);
+        Layout layout = layout(messageId);
+        if (layout == null)
+            throw new AisParseException("message type " + messageId
+                    + " does not carry a position");
+        if (bits.length() < layout.minLength)
+            throw new AisParseException("message type " + messageId + " has " + bits.length()
+                    + " bits, expected at least " + layout.minLength);
+        return new AisPositionReport(bits, messageId, layout);
+    }
+
+    public AisBits bits() {
+        return bits;
+    }
+
+    public int messageId() {
+        return messageId;
+    }
+
+    public int repeatIndicator() {
+        return bits.getValue(6, 8);
+    }
+
+    public int mmsiInt() {
+        return bits.getValue(8, 38);
+    }
+
+    /**
+     * Returns true if the message is from a class A transponder (types 1, 2,
+     * 3 and 27).
+     *
+     * @return
+     */
+    public boolean isClassA() {
+        return layout == Layout.CLASS_A || layout == Layout.LONG_RANGE;
+    }
+
+    public boolean hasPosition() {
+        return !Double.isNaN(latOrNaN()) && !Double.isNaN(lonOrNaN());
+    }
+
+    /**
+     * Returns the latitude in degrees or NaN if not available or out of
+     * range.
+     *
+     * @return
+     */
+    public double latOrNaN() {
+        if (layout == Layout.LONG_RANGE)
+            return coordinate(bits.getSignedValue(62, 79), LONG_RANGE_LATITUDE_NOT_AVAILABLE, 600,
+                    90);
+        else
+            return coordinate(bits.getSignedValue(layout.lat, layout.lat + 27),
+                    LATITUDE_NOT_AVAILABLE, 600000, 90);
+    }
+
+    /**
+     * Returns the longitude in degrees or NaN if not available or out of
+     * range.
+     *
+     * @return
+     */
+    public double lonOrNaN() {
+        if (layout == Layout.LONG_RANGE)
+            return coordinate(bits.getSignedValue(44, 62), LONG_RANGE_LONGITUDE_NOT_AVAILABLE,
+                    600, 180);
+        else
+            return coordinate(bits.getSignedValue(layout.lon, layout.lon + 28),
+                    LONGITUDE_NOT_AVAILABLE, 600000, 180);
+    }
+
+    private static double coordinate(int value, int notAvailable, double scale, double max) {
+        if (value == notAvailable)
+            return Double.NaN;
+        double d = value / scale;
+        if (d < -max || d > max)
+            return Double.NaN;
+        else
+            return d;
+    }
+
+    public boolean isHighAccuracyPosition() {
+        return bits.isSet(layout.accuracy);
+    }
+
+    public boolean hasSog() {
+        return !Double.isNaN(sogOrNaN());
+    }
+
+    /**
+     * Returns the speed over ground in knots or NaN if not available (or not
+     * part of the message type).
+     *
+     * @return
+     */
+    public double sogOrNaN() {
+        if (layout.sog == -1)
+            return Double.NaN;
+        else if (layout == Layout.LONG_RANGE) {
+            int value = bits.getValue(79, 85);
+            return value == 63 ? Double.NaN : value;
+        } else {
+            int value = bits.getValue(layout.sog, layout.sog + 10);
+            return value == 1023 ? Double.NaN : value / 10.0;
+        }
+    }
+
+    public boolean hasCog() {
+        return !Double.isNaN(cogOrNaN());
+    }
+
+    /**
+     * Returns the course over ground in degrees true or NaN if not available
+     * (or not part of the message type).
+     *
+     * @return
+     */
+    public double cogOrNaN() {
+        if (layout.cog == -1)
+            return Double.NaN;
+        else if (layout == Layout.LONG_RANGE) {
+            int value = bits.getValue(85, 94);
+            return value >= 360 ? Double.NaN : value;
+        } else {
+            int value = bits.getValue(layout.cog, layout.cog + 12);
+            return value >= 3600 ? Double.NaN : value / 10.0;
+        }
+    }
+
+    public boolean hasHeading() {
+        return headingOrMinusOne() != -1;
+    }
+
+    /**
+     * Returns the true heading in degrees or -1 if not available (or not part
+     * of the message type).
+     *
+     * @return
+     */
+    public int headingOrMinusOne() {
+        if (layout.heading == -1)
+            return -1;
+        int value = bits.getValue(layout.heading, layout.heading + 9);
+        return value > 359 ? -1 : value;
+    }
+
+    /**
+     * Returns the navigational status code (0-15) or -1 if not part of the
+     * message type. See {@link NavigationalStatus}.
+     *
+     * @return
+     */
+    public int navigationalStatusOrMinusOne() {
+        if (layout.navStatus == -1)
+            return -1;
+        else
+            return bits.getValue(layout.navStatus, layout.navStatus + 4);
+    }
+
+    /**
+     * Returns the UTC second of the report (0-59) or -1 if not available.
+     *
+     * @return
+     */
+    public int secondOrMinusOne() {
+        if (layout.second == -1 || bits.length() < layout.second + 6)
+            return -1;
+        int value = bits.getValue(layout.second, layout.second + 6);
+        return value > 59 ? -1 : value;
+    }
+
+    private static Layout layout(int messageId) {
+        switch (messageId) {
+        case 1:
+        case 2:
+        case 3:
+            return Layout.CLASS_A;
+        case 4:
+        case 11:
+            return Layout.BASE_STATION;
+        case 18:
+        case 19:
+            return Layout.CLASS_B;
+        case 21:
+            return Layout.ATON;
+        case 27:
+            return Layout.LONG_RANGE;
+        default:
+            return null;
+        }
+    }
+
+    /**
+     * Bit offsets of the fields for each group of message types (-1 if the
+     * field is not present).
+     */
+    private enum Layout {
+
+        CLASS_A(137, 38, 50, 60, 61, 89, 116, 128, 137), //
+        BASE_STATION(134, -1, -1, 78, 79, 107, -1, -1, 72), //
+        CLASS_B(133, -1, 46, 56, 57, 85, 112, 124, 133), //
+        ATON(219, -1, -1, 163, 164, 192, -1, -1, 253), //
+        // fields of different widths so offsets are only used for presence
+        LONG_RANGE(96, 40, 79, 38, 44, 62, 85, -1, -1);
+
+        final int minLength;
+        final int navStatus;
+        final int sog;
+        final int accuracy;
+        final int lon;
+        final int lat;
+        final int cog;
+        final int heading;
+        final int second;
+
+        private Layout(int minLength, int navStatus, int sog, int accuracy, int lon, int lat,
+                int cog, int heading, int second) {
+            this.minLength = minLength;
+            this.navStatus = navStatus;
+            this.sog = sog;
+            this.accuracy = accuracy;
+            this.lon = lon;
+            this.lat = lat;
+            this.cog = cog;
+            this.heading = heading;
+            this.second = second;
+        }
+    }
+
+}
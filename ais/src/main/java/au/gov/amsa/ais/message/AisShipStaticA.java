@@ -10,6 +10,7 @@ import au.gov.amsa.ais.AisExtractor;
 import au.gov.amsa.ais.AisExtractorFactory;
 import au.gov.amsa.ais.AisMessageType;
 import au.gov.amsa.ais.Util;
+import au.gov.amsa.util.StringInterner;
 
 /**
  * Decoder for AIS ship static and voyage related data (message type 5).
@@ -87,14 +88,14 @@ public class AisShipStaticA implements AisShipStatic {
 
     public String getCallsign() {
         if (callsign == null)
-            callsign = extractor.getString(70, 112);
+            callsign = StringInterner.instance().intern(extractor.getString(70, 112));
         return callsign;
     }
 
     @Override
     public String getName() {
         if (name == null)
-            name = extractor.getString(112, 232);
+            name = StringInterner.instance().intern(extractor.getString(112, 232));
         return name;
     }
 
@@ -223,7 +224,7 @@ public class AisShipStaticA implements AisShipStatic {
 
     public String getDestination() {
         if (destination == null)
-            destination = extractor.getString(302, 422);
+            destination = StringInterner.instance().intern(extractor.getString(302, 422));
         return destination;
     }
 
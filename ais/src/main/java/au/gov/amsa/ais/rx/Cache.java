@@ -1,32 +1,117 @@
 package au.gov.amsa.ais.rx;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import rx.functions.Func1;
 
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheLoader.InvalidCacheLoadException;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+/**
+ * Thread safe cache that creates missing values using a factory. A value for
+ * a key is created at most once at a time and creating it does not block
+ * access to other keys. Optionally bounded by size and/or time since last
+ * access (least recently used entries are evicted first). A null value is
+ * never cached: if the factory returns null then null is returned and the
+ * factory is called again the next time the key is requested.
+ *
+ * @param <S>
+ *            key type
+ * @param <T>
+ *            value type
+ */
 public class Cache<S, T> {
 
-	private final Func1<S, T> factory;
+	private static final long UNBOUNDED = -1;
 
-	public Cache(Func1<S, T> factory) {
-		this.factory = factory;
+	private final LoadingCache<S, T> cache;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param factory
+	 *            creates the value for a key that is not in the cache
+	 * @param maximumSize
+	 *            maximum number of entries, -1 for unbounded
+	 * @param expireAfterAccessMs
+	 *            entries not accessed for this long are evicted, -1 for never
+	 */
+	public Cache(final Func1<S, T> factory, long maximumSize, long expireAfterAccessMs) {
+		Preconditions.checkNotNull(factory);
+		CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder().recordStats();
+		if (maximumSize != UNBOUNDED)
+			builder = builder.maximumSize(maximumSize);
+		if (expireAfterAccessMs != UNBOUNDED)
+			builder = builder.expireAfterAccess(expireAfterAccessMs, TimeUnit.MILLISECONDS);
+		this.cache = builder.build(new CacheLoader<S, T>() {
+			@Override
+			public T load(S key) {
+				// a null result is reported by the cache as an
+				// InvalidCacheLoadException and is not cached
+				return factory.call(key);
+			}
+		});
 	}
 
-	private final Map<S, T> map = new HashMap<S, T>();
+	/**
+	 * Constructor for a cache without eviction.
+	 *
+	 * @param factory
+	 *            creates the value for a key that is not in the cache
+	 */
+	public Cache(Func1<S, T> factory) {
+		this(factory, UNBOUNDED, UNBOUNDED);
+	}
 
-	public synchronized Cache<S, T> put(S key, T value) {
-		map.put(key, value);
+	/**
+	 * Sets the value for the key. Putting null removes the key so that the
+	 * next get calls the factory.
+	 *
+	 * @param key
+	 * @param value
+	 * @return this
+	 */
+	public Cache<S, T> put(S key, T value) {
+		if (value == null)
+			cache.invalidate(key);
+		else
+			cache.put(key, value);
 		return this;
 	}
 
-	public synchronized T get(S key) {
-		T value = map.get(key);
-		if (value == null) {
-			T t = factory.call(key);
-			map.put(key, t);
-			return t;
-		} else
-			return value;
+	public T get(S key) {
+		try {
+			return cache.getUnchecked(key);
+		} catch (InvalidCacheLoadException e) {
+			// factory returned null
+			return null;
+		} catch (UncheckedExecutionException e) {
+			// rethrow what the factory threw
+			throw Throwables.propagate(e.getCause());
+		}
+	}
+
+	/**
+	 * Returns the approximate number of entries in the cache.
+	 *
+	 * @return
+	 */
+	public long size() {
+		return cache.size();
+	}
+
+	/**
+	 * Returns the hit, miss, load and eviction statistics of the cache.
+	 *
+	 * @return
+	 */
+	public CacheStats stats() {
+		return cache.stats();
 	}
 }
@@ -0,0 +1,372 @@
+package au.gov.amsa.ais.rx;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Preconditions;
+
+/**
+ * Mutable, thread safe store of the history of {@link CraftProperty} values
+ * per MMSI. Unlike {@link CraftProperties} an update does not copy anything:
+ * each property of a craft is kept as a change log of a primitive time array
+ * and an array of ids into a shared string dictionary (names, destinations and
+ * callsigns repeat a lot). Crafts are spread over lock stripes by MMSI so
+ * updates to different crafts rarely contend.
+ *
+ * <p>
+ * The same de-duplication rules as {@link CraftProperties#add(CraftProperty)}
+ * apply: a value equal to the value already in effect at that time is not
+ * recorded and a later change to the same value is moved earlier.
+ *
+ * <p>
+ * The whole store can be written to a binary file with {@link #snapshot(File)}
+ * and read back with {@link #restore(File)}.
+ */
+public final class CraftPropertyStore {
+
+	private static final int MAGIC = 0x43505331; // CPS1
+	private static final int DEFAULT_NUM_STRIPES = 64;
+	private static final CraftPropertyName[] NAMES = CraftPropertyName.values();
+
+	private final Stripe[] stripes;
+	private final Dictionary dictionary = new Dictionary();
+
+	public CraftPropertyStore(int numStripes) {
+		Preconditions.checkArgument(numStripes > 0, "numStripes must be > 0");
+		stripes = new Stripe[numStripes];
+		for (int i = 0; i < numStripes; i++)
+			stripes[i] = new Stripe();
+	}
+
+	public CraftPropertyStore() {
+		this(DEFAULT_NUM_STRIPES);
+	}
+
+	public void add(CraftProperty p) {
+		add(p.getMmsi().getMmsi(), p.getName(), p.getValue(), p.getTime());
+	}
+
+	public void add(long mmsi, CraftPropertyName name, String value, long time) {
+		Preconditions.checkNotNull(name);
+		Preconditions.checkNotNull(value);
+		int id = dictionary.id(value);
+		Stripe stripe = stripe(mmsi);
+		synchronized (stripe) {
+			Craft craft = stripe.crafts.get(mmsi);
+			if (craft == null) {
+				craft = new Craft();
+				stripe.crafts.put(mmsi, craft);
+			}
+			craft.log(name).add(time, id);
+		}
+	}
+
+	/**
+	 * Returns the value of the property in effect at the given time (the
+	 * value of the latest change at or before that time) or absent if no
+	 * change is recorded at or before that time.
+	 *
+	 * @param mmsi
+	 * @param name
+	 * @param time
+	 *            epoch ms
+	 * @return
+	 */
+	public Optional<String> valueAt(long mmsi, CraftPropertyName name, long time) {
+		Stripe stripe = stripe(mmsi);
+		final int id;
+		synchronized (stripe) {
+			Craft craft = stripe.crafts.get(mmsi);
+			if (craft == null)
+				return Optional.absent();
+			ChangeLog log = craft.logs[name.ordinal()];
+			if (log == null)
+				return Optional.absent();
+			id = log.idAt(time);
+		}
+		if (id == -1)
+			return Optional.absent();
+		else
+			return Optional.of(dictionary.value(id));
+	}
+
+	/**
+	 * Returns a copy of the history of the given craft in the form produced
+	 * by {@link CraftProperties} or absent if nothing is recorded for the
+	 * craft.
+	 *
+	 * @param mmsi
+	 * @return
+	 */
+	public Optional<CraftProperties> get(Mmsi mmsi) {
+		Stripe stripe = stripe(mmsi.getMmsi());
+		Map<CraftPropertyName, TreeMap<Long, String>> map = new HashMap<CraftPropertyName, TreeMap<Long, String>>();
+		synchronized (stripe) {
+			Craft craft = stripe.crafts.get(mmsi.getMmsi());
+			if (craft == null)
+				return Optional.absent();
+			for (int i = 0; i < NAMES.length; i++) {
+				ChangeLog log = craft.logs[i];
+				if (log != null) {
+					TreeMap<Long, String> tree = new TreeMap<Long, String>();
+					for (int j = 0; j < log.size; j++)
+						tree.put(log.times[j], dictionary.value(log.ids[j]));
+					map.put(NAMES[i], tree);
+				}
+			}
+		}
+		return Optional.of(new CraftProperties(mmsi, map));
+	}
+
+	/**
+	 * Returns the number of crafts in the store.
+	 *
+	 * @return
+	 */
+	public int size() {
+		int size = 0;
+		for (Stripe stripe : stripes)
+			synchronized (stripe) {
+				size += stripe.crafts.size();
+			}
+		return size;
+	}
+
+	/**
+	 * Returns the number of distinct string values in the store.
+	 *
+	 * @return
+	 */
+	public int dictionarySize() {
+		return dictionary.size();
+	}
+
+	/**
+	 * Writes the contents of the store to the given file. Concurrent updates
+	 * are allowed while the snapshot is taken (each stripe is written
+	 * atomically).
+	 *
+	 * @param file
+	 * @throws IOException
+	 */
+	public void snapshot(File file) throws IOException {
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(file), 65536))) {
+			out.writeInt(MAGIC);
+			for (Stripe stripe : stripes) {
+				synchronized (stripe) {
+					for (Entry<Long, Craft> entry : stripe.crafts.entrySet()) {
+						out.writeBoolean(true);
+						out.writeLong(entry.getKey());
+						entry.getValue().write(out);
+					}
+				}
+			}
+			out.writeBoolean(false);
+			// written last so that it includes every id referenced above
+			dictionary.write(out);
+		}
+	}
+
+	/**
+	 * Returns a new store with the contents of a file written by
+	 * {@link #snapshot(File)}.
+	 *
+	 * @param file
+	 * @return
+	 * @throws IOException
+	 */
+	public static CraftPropertyStore restore(File file) throws IOException {
+		CraftPropertyStore store = new CraftPropertyStore();
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+				new FileInputStream(file), 65536))) {
+			if (in.readInt() != MAGIC)
+				throw new IOException("not a craft property snapshot: " + file);
+			while (in.readBoolean()) {
+				long mmsi = in.readLong();
+				Craft craft = Craft.read(in);
+				Stripe stripe = store.stripe(mmsi);
+				synchronized (stripe) {
+					stripe.crafts.put(mmsi, craft);
+				}
+			}
+			store.dictionary.read(in);
+		}
+		return store;
+	}
+
+	private Stripe stripe(long mmsi) {
+		int h = (int) (mmsi ^ (mmsi >>> 32));
+		h ^= h >>> 16;
+		return stripes[(h & Integer.MAX_VALUE) % stripes.length];
+	}
+
+	private static final class Stripe {
+		final Map<Long, Craft> crafts = new HashMap<Long, Craft>();
+	}
+
+	private static final class Craft {
+
+		final ChangeLog[] logs = new ChangeLog[NAMES.length];
+
+		ChangeLog log(CraftPropertyName name) {
+			ChangeLog log = logs[name.ordinal()];
+			if (log == null) {
+				log = new ChangeLog();
+				logs[name.ordinal()] = log;
+			}
+			return log;
+		}
+
+		void write(DataOutputStream out) throws IOException {
+			int count = 0;
+			for (ChangeLog log : logs)
+				if (log != null)
+					count++;
+			out.writeByte(count);
+			for (int i = 0; i < logs.length; i++) {
+				ChangeLog log = logs[i];
+				if (log != null) {
+					// write the name so that the file does not depend on
+					// enum ordering
+					out.writeUTF(NAMES[i].name());
+					out.writeInt(log.size);
+					for (int j = 0; j < log.size; j++) {
+						out.writeLong(log.times[j]);
+						out.writeInt(log.ids[j]);
+					}
+				}
+			}
+		}
+
+		static Craft read(DataInputStream in) throws IOException {
+			Craft craft = new Craft();
+			int count = in.readUnsignedByte();
+			for (int i = 0; i < count; i++) {
+				ChangeLog log = craft.log(CraftPropertyName.valueOf(in.readUTF()));
+				int size = in.readInt();
+				log.times = new long[Math.max(size, 1)];
+				log.ids = new int[Math.max(size, 1)];
+				for (int j = 0; j < size; j++) {
+					log.times[j] = in.readLong();
+					log.ids[j] = in.readInt();
+				}
+				log.size = size;
+			}
+			return craft;
+		}
+	}
+
+	/**
+	 * Times of changes in ascending order with the dictionary id of the value
+	 * from that time on.
+	 */
+	private static final class ChangeLog {
+
+		long[] times = new long[2];
+		int[] ids = new int[2];
+		int size;
+
+		void add(long time, int id) {
+			int index = Arrays.binarySearch(times, 0, size, time);
+			// index of the floor entry
+			int floor = index >= 0 ? index : -index - 2;
+			if (floor >= 0 && ids[floor] == id)
+				// value already in effect
+				return;
+			if (index >= 0) {
+				// same time so replace the value
+				ids[index] = id;
+				return;
+			}
+			int insert = floor + 1;
+			if (insert < size && ids[insert] == id) {
+				// the next change is to the same value so move it earlier
+				times[insert] = time;
+				return;
+			}
+			if (size == times.length) {
+				times = Arrays.copyOf(times, size * 2);
+				ids = Arrays.copyOf(ids, size * 2);
+			}
+			System.arraycopy(times, insert, times, insert + 1, size - insert);
+			System.arraycopy(ids, insert, ids, insert + 1, size - insert);
+			times[insert] = time;
+			ids[insert] = id;
+			size++;
+		}
+
+		int idAt(long time) {
+			int index = Arrays.binarySearch(times, 0, size, time);
+			int floor = index >= 0 ? index : -index - 2;
+			return floor >= 0 ? ids[floor] : -1;
+		}
+	}
+
+	/**
+	 * Maps strings to dense integer ids and back. Ids are never reused.
+	 */
+	private static final class Dictionary {
+
+		private final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<String, Integer>();
+		private volatile String[] values = new String[1024];
+		private int size;
+
+		int id(String value) {
+			Integer id = ids.get(value);
+			if (id != null)
+				return id;
+			synchronized (this) {
+				id = ids.get(value);
+				if (id != null)
+					return id;
+				String[] v = values;
+				if (size == v.length)
+					v = Arrays.copyOf(v, size * 2);
+				v[size] = value;
+				// publish the array before the id
+				values = v;
+				ids.put(value, size);
+				return size++;
+			}
+		}
+
+		String value(int id) {
+			return values[id];
+		}
+
+		synchronized int size() {
+			return size;
+		}
+
+		synchronized void write(DataOutputStream out) throws IOException {
+			out.writeInt(size);
+			for (int i = 0; i < size; i++)
+				out.writeUTF(values[i]);
+		}
+
+		synchronized void read(DataInputStream in) throws IOException {
+			int n = in.readInt();
+			String[] v = new String[Math.max(n, 1)];
+			for (int i = 0; i < n; i++) {
+				v[i] = in.readUTF();
+				ids.put(v[i], i);
+			}
+			size = n;
+			values = v;
+		}
+	}
+}
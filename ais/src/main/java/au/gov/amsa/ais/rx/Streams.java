@@ -10,7 +10,6 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.PrintStream;
-import java.io.Reader;
 import java.net.Socket;
 import java.net.UnknownHostException;
 import java.nio.charset.Charset;
@@ -34,9 +33,11 @@ import au.gov.amsa.ais.AisNmeaBuffer;
 import au.gov.amsa.ais.AisNmeaMessage;
 import au.gov.amsa.ais.AisParseException;
 import au.gov.amsa.ais.LineAndTime;
+import au.gov.amsa.ais.NmeaPayloadDeduplicator;
 import au.gov.amsa.ais.Timestamped;
 import au.gov.amsa.ais.message.AisPosition;
 import au.gov.amsa.ais.message.AisPositionA;
+import au.gov.amsa.ais.message.AisPositionLongRange;
 import au.gov.amsa.risky.format.AisClass;
 import au.gov.amsa.risky.format.BinaryFixes;
 import au.gov.amsa.risky.format.BinaryFixesFormat;
@@ -44,7 +45,9 @@ import au.gov.amsa.risky.format.BinaryFixesWriter;
 import au.gov.amsa.risky.format.Fix;
 import au.gov.amsa.risky.format.FixImpl;
 import au.gov.amsa.risky.format.NavigationalStatus;
-import au.gov.amsa.streams.Strings;
+import au.gov.amsa.streams.ByteLines;
+import au.gov.amsa.streams.LineAndSource;
+import au.gov.amsa.streams.Transformers;
 import au.gov.amsa.util.Files;
 import au.gov.amsa.util.nmea.NmeaMessage;
 import au.gov.amsa.util.nmea.NmeaMessageParseException;
@@ -65,6 +68,7 @@ public class Streams {
 
     public static final int BUFFER_SIZE = 100;
     private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final int GZIP_BUFFER_SIZE = 65536;
 
     private static Logger log = LoggerFactory.getLogger(Streams.class);
 
@@ -94,6 +98,35 @@ public class Streams {
                 .map(TO_AIS_MESSAGE_AND_LINE);
     }
 
+    /**
+     * As {@link #extract(Observable)} but parses the NMEA lines and decodes
+     * the AIS messages in parallel (preserving order) using
+     * {@link Transformers#parallelOrdered(Func1, int, int)}. Suited to
+     * processing files rather than slow live feeds because items are handled
+     * in batches.
+     *
+     * @param rawAisNmea
+     * @param parallelism
+     *            maximum number of batches processed concurrently
+     * @param batchSize
+     *            number of lines processed together
+     * @return
+     */
+    public static Observable<TimestampedAndLine<AisMessage>> extract(
+            Observable<String> rawAisNmea, int parallelism, int batchSize) {
+        return rawAisNmea
+                // parse nmea in parallel
+                .compose(Transformers.parallelOrdered(LINE_TO_NMEA_MESSAGE, parallelism,
+                        batchSize))
+                // if error filter out
+                .compose(Streams.<NmeaMessage> valueIfPresent())
+                // aggregate multi line nmea
+                .compose(aggregateMultiLineNmea(BUFFER_SIZE))
+                // parse ais message and include line in parallel
+                .compose(Transformers.parallelOrdered(TO_AIS_MESSAGE_AND_LINE, parallelism,
+                        batchSize));
+    }
+
     public static Observable<Timestamped<AisMessage>> extractMessages(
             Observable<String> rawAisNmea) {
         return rawAisNmea.map(LINE_TO_NMEA_MESSAGE)
@@ -108,6 +141,34 @@ public class Streams {
 
     }
 
+    /**
+     * As {@link #extractMessages(Observable)} but parses the NMEA lines and
+     * decodes the AIS messages in parallel (preserving order) using
+     * {@link Transformers#parallelOrdered(Func1, int, int)}.
+     *
+     * @param rawAisNmea
+     * @param parallelism
+     *            maximum number of batches processed concurrently
+     * @param batchSize
+     *            number of lines processed together
+     * @return
+     */
+    public static Observable<Timestamped<AisMessage>> extractMessages(
+            Observable<String> rawAisNmea, int parallelism, int batchSize) {
+        return rawAisNmea
+                //
+                .compose(Transformers.parallelOrdered(LINE_TO_NMEA_MESSAGE, parallelism,
+                        batchSize))
+                //
+                .compose(Streams.<NmeaMessage> valueIfPresent())
+                //
+                .compose(aggregateMultiLineNmea(BUFFER_SIZE))
+                //
+                .compose(Transformers.parallelOrdered(TO_AIS_MESSAGE, parallelism, batchSize))
+                //
+                .compose(Streams.<Timestamped<AisMessage>> valueIfPresent());
+    }
+
     public static <T> Func1<Optional<T>, Boolean> isPresent() {
         return x -> x.isPresent();
     }
@@ -125,7 +186,7 @@ public class Streams {
         return extractMessages(rawAisNmea).flatMap(TO_FIX, 1);
     }
 
-    private static final Func1<Timestamped<AisMessage>, Observable<Fix>> TO_FIX = m -> {
+    static final Func1<Timestamped<AisMessage>, Observable<Fix>> TO_FIX = m -> {
         try {
             if (m.message() instanceof AisPosition) {
                 AisPosition a = (AisPosition) m.message();
@@ -138,6 +199,9 @@ public class Streams {
                     if (a instanceof AisPositionA) {
                         AisPositionA p = (AisPositionA) a;
                         nav = of(NavigationalStatus.values()[p.getNavigationalStatus().ordinal()]);
+                    } else if (a instanceof AisPositionLongRange) {
+                        AisPositionLongRange p = (AisPositionLongRange) a;
+                        nav = of(NavigationalStatus.values()[p.getNavigationalStatus().ordinal()]);
                     } else
                         nav = absent();
 
@@ -160,7 +224,8 @@ public class Streams {
                         heading = of((a.getTrueHeading().floatValue()));
 
                     AisClass aisClass;
-                    if (a instanceof AisPositionA)
+                    // long range broadcasts are only sent by class A
+                    if (a instanceof AisPositionA || a instanceof AisPositionLongRange)
                         aisClass = AisClass.A;
                     else
                         aisClass = AisClass.B;
@@ -202,7 +267,8 @@ public class Streams {
     }
 
     public static Observable<String> nmeaFrom(InputStream is) {
-        return Strings.split(Strings.from(new InputStreamReader(is, UTF8)), "\n");
+        // frame lines on the bytes rather than splitting decoded chunks
+        return ByteLines.from(is).map(line -> line.toString());
     }
 
     public static Observable<String> nmeaFromGzip(String filename) {
@@ -215,20 +281,19 @@ public class Streams {
 
     public static Observable<String> nmeaFromGzip(final File file) {
 
-        Func0<Reader> resourceFactory = () -> {
+        Func0<InputStream> resourceFactory = () -> {
             try {
-                return new InputStreamReader(new GZIPInputStream(new FileInputStream(file)), UTF8);
+                return new GZIPInputStream(new FileInputStream(file), GZIP_BUFFER_SIZE);
             } catch (IOException e) {
                 throw new RuntimeException(e);
             }
         };
 
-        Func1<Reader, Observable<String>> observableFactory = reader -> Strings
-                .split(Strings.from(reader), "\n");
+        Func1<InputStream, Observable<String>> observableFactory = is -> nmeaFrom(is);
 
-        Action1<Reader> disposeAction = reader -> {
+        Action1<InputStream> disposeAction = is -> {
             try {
-                reader.close();
+                is.close();
             } catch (IOException e) {
                 // ignore
             }
@@ -453,6 +518,75 @@ public class Streams {
         };
     }
 
+    /**
+     * Removes AIS lines whose payload has already been seen within
+     * <code>windowMs</code> (for example the same transmission received via
+     * more than one feed) before any parsing happens. Each subscription has
+     * its own deduplicator.
+     *
+     * @param windowMs
+     *            how long a payload is remembered for in ms
+     * @return transformer that drops duplicate lines
+     */
+    public static Transformer<String, String> deduplicate(long windowMs) {
+        return o -> Observable
+                .defer(() -> o.compose(deduplicate(new NmeaPayloadDeduplicator(windowMs))));
+    }
+
+    /**
+     * Removes AIS lines that the given deduplicator reports as duplicates
+     * using the current time as the arrival time. Use this overload to read
+     * the duplicate counts per source from the deduplicator. Lines without a
+     * tag block source are counted against an unknown source; use
+     * {@link #deduplicate(String, NmeaPayloadDeduplicator)} or
+     * {@link #deduplicateBySource(NmeaPayloadDeduplicator)} to count them
+     * against their feed.
+     *
+     * @param deduplicator
+     * @return transformer that drops duplicate lines
+     */
+    public static Transformer<String, String> deduplicate(
+            NmeaPayloadDeduplicator deduplicator) {
+        return deduplicate(null, deduplicator);
+    }
+
+    /**
+     * Removes AIS lines that arrived on the given feed and that the given
+     * deduplicator reports as duplicates using the current time as the
+     * arrival time. Duplicates without a tag block source are counted against
+     * the feed.
+     *
+     * @param feed
+     *            name of the feed the lines arrived on. May be null.
+     * @param deduplicator
+     * @return transformer that drops duplicate lines
+     */
+    public static Transformer<String, String> deduplicate(String feed,
+            NmeaPayloadDeduplicator deduplicator) {
+        return o -> o.filter(
+                line -> !deduplicator.isDuplicate(feed, line, System.currentTimeMillis()));
+    }
+
+    /**
+     * Removes AIS lines from many feeds (for example from
+     * {@link au.gov.amsa.streams.MultiplexedSockets}) that the given
+     * deduplicator reports as duplicates using the current time as the
+     * arrival time. Duplicates without a tag block source are counted against
+     * the <code>host:port</code> they were read from.
+     *
+     * @param deduplicator
+     * @return transformer that drops duplicate lines
+     */
+    public static Transformer<LineAndSource, LineAndSource> deduplicateBySource(
+            NmeaPayloadDeduplicator deduplicator) {
+        return o -> o.filter(line -> !deduplicator.isDuplicate(feed(line), line.line(),
+                System.currentTimeMillis()));
+    }
+
+    private static String feed(LineAndSource line) {
+        return line.source().getHost() + ":" + line.source().getPort();
+    }
+
     private static Observable<? extends NmeaMessage> addToBuffer(AisNmeaBuffer buffer,
             NmeaMessage nmea) {
         try {
@@ -0,0 +1,210 @@
+package au.gov.amsa.ais.rx;
+
+import au.gov.amsa.risky.format.AisClass;
+
+/**
+ * The latest state of one vessel as read from a {@link VesselStateStore}.
+ * Instances are filled in place by the store so that a reader can scan every
+ * vessel without allocating. An instance handed out by
+ * {@link VesselStateStore#iterator()} or
+ * {@link VesselStateStore#within(double, double, double, double)} is reused
+ * for the next vessel; call {@link #copy()} to keep it.
+ *
+ * <p>
+ * Absent values are reported as {@link Double#NaN} or -1 in the same way as
+ * {@link au.gov.amsa.ais.message.AisPositionReport}.
+ */
+public final class VesselState {
+
+	int mmsi;
+	long version;
+	long positionTime;
+	double lat;
+	double lon;
+	float sog;
+	float cog;
+	int heading;
+	int navigationalStatus;
+	int aisClass;
+	long staticTime;
+	long dimensions;
+	int shipType;
+
+	public VesselState() {
+		// filled by VesselStateStore
+	}
+
+	public int mmsi() {
+		return mmsi;
+	}
+
+	/**
+	 * Returns the number of updates applied to this vessel in the store. Can
+	 * be compared with the value from an earlier read to detect change.
+	 *
+	 * @return
+	 */
+	public long version() {
+		return version;
+	}
+
+	public boolean hasPosition() {
+		return !Double.isNaN(lat);
+	}
+
+	/**
+	 * Returns the time of the latest position in epoch ms or
+	 * {@link Long#MIN_VALUE} if no position has been received.
+	 *
+	 * @return
+	 */
+	public long positionTime() {
+		return positionTime;
+	}
+
+	public double latOrNaN() {
+		return lat;
+	}
+
+	public double lonOrNaN() {
+		return lon;
+	}
+
+	public double sogOrNaN() {
+		return sog;
+	}
+
+	public double cogOrNaN() {
+		return cog;
+	}
+
+	public int headingOrMinusOne() {
+		return heading;
+	}
+
+	public int navigationalStatusOrMinusOne() {
+		return navigationalStatus;
+	}
+
+	/**
+	 * Returns the class of the transponder that sent the latest position or
+	 * null if no position has been received.
+	 *
+	 * @return
+	 */
+	public AisClass aisClassOrNull() {
+		return VesselStateStore.toAisClass(aisClass);
+	}
+
+	/**
+	 * Returns the time of the latest static data in epoch ms or
+	 * {@link Long#MIN_VALUE} if none has been received.
+	 *
+	 * @return
+	 */
+	public long staticTime() {
+		return staticTime;
+	}
+
+	public int dimensionAOrMinusOne() {
+		return VesselStateStore.dimension(dimensions, 0);
+	}
+
+	public int dimensionBOrMinusOne() {
+		return VesselStateStore.dimension(dimensions, 1);
+	}
+
+	public int dimensionCOrMinusOne() {
+		return VesselStateStore.dimension(dimensions, 2);
+	}
+
+	public int dimensionDOrMinusOne() {
+		return VesselStateStore.dimension(dimensions, 3);
+	}
+
+	/**
+	 * Returns the length in metres (dimension A + B) or -1 if not known.
+	 *
+	 * @return
+	 */
+	public int lengthMetresOrMinusOne() {
+		int a = dimensionAOrMinusOne();
+		int b = dimensionBOrMinusOne();
+		if (a == -1 || b == -1)
+			return -1;
+		else
+			return a + b;
+	}
+
+	/**
+	 * Returns the width in metres (dimension C + D) or -1 if not known.
+	 *
+	 * @return
+	 */
+	public int widthMetresOrMinusOne() {
+		int c = dimensionCOrMinusOne();
+		int d = dimensionDOrMinusOne();
+		if (c == -1 || d == -1)
+			return -1;
+		else
+			return c + d;
+	}
+
+	public int shipTypeOrMinusOne() {
+		return shipType;
+	}
+
+	public VesselState copy() {
+		VesselState s = new VesselState();
+		s.mmsi = mmsi;
+		s.version = version;
+		s.positionTime = positionTime;
+		s.lat = lat;
+		s.lon = lon;
+		s.sog = sog;
+		s.cog = cog;
+		s.heading = heading;
+		s.navigationalStatus = navigationalStatus;
+		s.aisClass = aisClass;
+		s.staticTime = staticTime;
+		s.dimensions = dimensions;
+		s.shipType = shipType;
+		return s;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder b = new StringBuilder();
+		b.append("VesselState [mmsi=");
+		b.append(mmsi);
+		b.append(", version=");
+		b.append(version);
+		b.append(", positionTime=");
+		b.append(positionTime);
+		b.append(", lat=");
+		b.append(lat);
+		b.append(", lon=");
+		b.append(lon);
+		b.append(", sog=");
+		b.append(sog);
+		b.append(", cog=");
+		b.append(cog);
+		b.append(", heading=");
+		b.append(heading);
+		b.append(", navigationalStatus=");
+		b.append(navigationalStatus);
+		b.append(", aisClass=");
+		b.append(aisClassOrNull());
+		b.append(", staticTime=");
+		b.append(staticTime);
+		b.append(", lengthMetres=");
+		b.append(lengthMetresOrMinusOne());
+		b.append(", widthMetres=");
+		b.append(widthMetresOrMinusOne());
+		b.append(", shipType=");
+		b.append(shipType);
+		b.append("]");
+		return b.toString();
+	}
+
+}
@@ -0,0 +1,526 @@
+package au.gov.amsa.ais.rx;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import au.gov.amsa.ais.AisMessage;
+import au.gov.amsa.ais.Timestamped;
+import au.gov.amsa.ais.message.AisPosition;
+import au.gov.amsa.ais.message.AisPositionA;
+import au.gov.amsa.ais.message.AisPositionB;
+import au.gov.amsa.ais.message.AisPositionBExtended;
+import au.gov.amsa.ais.message.AisPositionLongRange;
+import au.gov.amsa.ais.message.AisPositionReport;
+import au.gov.amsa.ais.message.AisShipStatic;
+import au.gov.amsa.risky.format.AisClass;
+import au.gov.amsa.risky.format.Fix;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Preconditions;
+
+import rx.functions.Action1;
+
+/**
+ * The latest position and static data of every vessel, keyed by MMSI, so that
+ * one decoded stream can serve every consumer that needs "where is each
+ * vessel now" instead of each keeping its own map.
+ *
+ * <p>
+ * State is held in columns of primitives (one array per field in segments of
+ * {@value #SEGMENT_SIZE} vessels) rather than an object per vessel, so an
+ * update allocates nothing and a scan such as
+ * {@link #within(double, double, double, double)} only touches the lat and
+ * lon columns of vessels outside the box.
+ *
+ * <p>
+ * The update methods must be called by one thread at a time (for example from
+ * the <code>onNext</code> of a single subscription, see {@link #updater()}).
+ * Reads are lock free and can happen on any number of threads at the same
+ * time as updates: each vessel has a version that is odd while an update is in
+ * progress and a read retries until it sees the same even version before and
+ * after reading the fields, so a reader never sees half an update. A scan is
+ * consistent per vessel but not across vessels.
+ */
+public final class VesselStateStore {
+
+	static final int SEGMENT_SIZE = 1024;
+	private static final int SEGMENT_SHIFT = 10;
+	private static final int INITIAL_INDEX_CAPACITY = 4096;
+
+	private static final int CLASS_NONE = 0;
+	private static final int CLASS_A = 1;
+	private static final int CLASS_B = 2;
+	private static final long NO_DIMENSIONS = -1L;
+
+	// written only by the single writer, published through volatile writes
+	private volatile Index index = new Index(INITIAL_INDEX_CAPACITY);
+	private volatile Segment[] segments = new Segment[0];
+	private volatile int size;
+
+	/**
+	 * Returns the number of vessels in the store.
+	 *
+	 * @return
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns a function that applies each message to this store, for use in
+	 * <code>doOnNext</code> on a stream of decoded messages. Rx serializes
+	 * <code>onNext</code> calls so this satisfies the single writer rule as
+	 * long as only one stream updates the store.
+	 *
+	 * @return
+	 */
+	public Action1<Timestamped<? extends AisMessage>> updater() {
+		return m -> update(m);
+	}
+
+	/**
+	 * Applies the position or static data in the message to the state of its
+	 * vessel. Other message types are ignored. A position or static data
+	 * older than the latest one already held is ignored.
+	 *
+	 * @param m
+	 *            timestamped message
+	 * @return true if the state changed
+	 */
+	public boolean update(Timestamped<? extends AisMessage> m) {
+		AisMessage message = m.message();
+		boolean changed = false;
+		if (message instanceof AisPosition)
+			changed = updatePosition((AisPosition) message, m.time());
+		if (message instanceof AisShipStatic)
+			changed |= updateStatic((AisShipStatic) message, m.time());
+		return changed;
+	}
+
+	private boolean updatePosition(AisPosition p, long time) {
+		// the common types are read without boxing
+		if (p instanceof AisPositionA)
+			return updatePosition(((AisPositionA) p).report(), time);
+		else if (p instanceof AisPositionB)
+			return updatePosition(((AisPositionB) p).report(), time);
+		Double lat = p.getLatitude();
+		Double lon = p.getLongitude();
+		if (p.getMmsi() <= 0 || lat == null || lon == null)
+			return false;
+		final int navigationalStatus;
+		if (p instanceof AisPositionLongRange)
+			navigationalStatus = ((AisPositionLongRange) p).getNavigationalStatus().ordinal();
+		else
+			navigationalStatus = -1;
+		int aisClass = p instanceof AisPositionBExtended ? CLASS_B : CLASS_A;
+		Integer heading = p.getTrueHeading();
+		return updatePosition(p.getMmsi(), time, lat, lon,
+				toFloat(p.getSpeedOverGroundKnots()), toFloat(p.getCourseOverGround()),
+				heading == null ? -1 : heading, navigationalStatus, aisClass);
+	}
+
+	private boolean updatePosition(AisPositionReport r, long time) {
+		int mmsi = r.mmsiInt();
+		if (mmsi <= 0 || !r.hasPosition())
+			return false;
+		return updatePosition(mmsi, time, r.latOrNaN(), r.lonOrNaN(), (float) r.sogOrNaN(),
+				(float) r.cogOrNaN(), r.headingOrMinusOne(), r.navigationalStatusOrMinusOne(),
+				r.isClassA() ? CLASS_A : CLASS_B);
+	}
+
+	/**
+	 * Applies the position in the fix to the state of its vessel unless a
+	 * later position is already held.
+	 *
+	 * @param fix
+	 * @return true if the state changed
+	 */
+	public boolean update(Fix fix) {
+		if (fix.mmsi() <= 0)
+			return false;
+		return updatePosition(fix.mmsi(), fix.time(), fix.lat(), fix.lon(),
+				orNaN(fix.speedOverGroundKnots()), orNaN(fix.courseOverGroundDegrees()),
+				fix.headingDegrees().isPresent() ? Math.round(fix.headingDegrees().get()) : -1,
+				fix.navigationalStatus().isPresent() ? fix.navigationalStatus().get().ordinal()
+						: -1, fix.aisClass() == AisClass.B ? CLASS_B : CLASS_A);
+	}
+
+	private boolean updatePosition(int mmsi, long time, double lat, double lon, float sog,
+			float cog, int heading, int navigationalStatus, int aisClass) {
+		int slot = slotFor(mmsi);
+		Segment s = segments[slot >>> SEGMENT_SHIFT];
+		int i = slot & (SEGMENT_SIZE - 1);
+		if (time < s.positionTime.get(i))
+			return false;
+		long v = s.beginWrite(i);
+		s.positionTime.lazySet(i, time);
+		s.lat.lazySet(i, Double.doubleToRawLongBits(lat));
+		s.lon.lazySet(i, Double.doubleToRawLongBits(lon));
+		s.sog.lazySet(i, Float.floatToRawIntBits(sog));
+		s.cog.lazySet(i, Float.floatToRawIntBits(cog));
+		s.heading.lazySet(i, heading);
+		s.navigationalStatus.lazySet(i, navigationalStatus);
+		s.aisClass.lazySet(i, aisClass);
+		s.endWrite(i, v);
+		return true;
+	}
+
+	private boolean updateStatic(AisShipStatic m, long time) {
+		int mmsi = m.getMmsi();
+		if (mmsi <= 0)
+			return false;
+		int slot = slotFor(mmsi);
+		Segment s = segments[slot >>> SEGMENT_SHIFT];
+		int i = slot & (SEGMENT_SIZE - 1);
+		if (time < s.staticTime.get(i))
+			return false;
+		long dimensions = packDimensions(m.getDimensionA(), m.getDimensionB(),
+				m.getDimensionC(), m.getDimensionD());
+		long v = s.beginWrite(i);
+		s.staticTime.lazySet(i, time);
+		s.dimensions.lazySet(i, dimensions);
+		s.shipType.lazySet(i, m.getShipType());
+		s.endWrite(i, v);
+		return true;
+	}
+
+	/**
+	 * Reads the state of the vessel into <code>into</code>.
+	 *
+	 * @param mmsi
+	 * @param into
+	 *            holder to fill
+	 * @return false (and <code>into</code> unchanged) if the vessel is not in
+	 *         the store
+	 */
+	public boolean get(int mmsi, VesselState into) {
+		int slot = index.find(mmsi);
+		if (slot == -1)
+			return false;
+		read(slot, into);
+		return true;
+	}
+
+	public Optional<VesselState> get(int mmsi) {
+		VesselState s = new VesselState();
+		if (get(mmsi, s))
+			return Optional.of(s);
+		else
+			return Optional.absent();
+	}
+
+	/**
+	 * Returns the version of the vessel's state (the number of updates
+	 * applied to it) or -1 if the vessel is not in the store. Cheaper than a
+	 * full read for a consumer that only wants to know if anything changed.
+	 *
+	 * @param mmsi
+	 * @return
+	 */
+	public long version(int mmsi) {
+		int slot = index.find(mmsi);
+		if (slot == -1)
+			return -1;
+		Segment s = segments[slot >>> SEGMENT_SHIFT];
+		int i = slot & (SEGMENT_SIZE - 1);
+		long v;
+		while (((v = s.version.get(i)) & 1) == 1)
+			Thread.yield();
+		return v >>> 1;
+	}
+
+	/**
+	 * Returns an iterator over every vessel in the store. The same
+	 * {@link VesselState} is returned by each call to <code>next()</code> so
+	 * use {@link VesselState#copy()} to keep one. Vessels added during the
+	 * iteration may or may not be returned.
+	 *
+	 * @return
+	 */
+	public Iterator<VesselState> iterator() {
+		return new Scan(-90, 90, -180, 180);
+	}
+
+	/**
+	 * Returns an iterator over the vessels whose latest position is within
+	 * the given bounds (inclusive). As for {@link #iterator()} the returned
+	 * {@link VesselState} is reused. A box crossing the antimeridian can be
+	 * given with <code>minLon &gt; maxLon</code>.
+	 *
+	 * @param minLat
+	 * @param maxLat
+	 * @param minLon
+	 * @param maxLon
+	 * @return
+	 */
+	public Iterator<VesselState> within(double minLat, double maxLat, double minLon,
+			double maxLon) {
+		Preconditions.checkArgument(minLat <= maxLat, "minLat must be <= maxLat");
+		return new Scan(minLat, maxLat, minLon, maxLon);
+	}
+
+	private void read(int slot, VesselState into) {
+		Segment s = segments[slot >>> SEGMENT_SHIFT];
+		int i = slot & (SEGMENT_SIZE - 1);
+		while (true) {
+			long v = s.version.get(i);
+			if ((v & 1) == 1) {
+				Thread.yield();
+				continue;
+			}
+			into.mmsi = s.mmsi.get(i);
+			into.positionTime = s.positionTime.get(i);
+			into.lat = Double.longBitsToDouble(s.lat.get(i));
+			into.lon = Double.longBitsToDouble(s.lon.get(i));
+			into.sog = Float.intBitsToFloat(s.sog.get(i));
+			into.cog = Float.intBitsToFloat(s.cog.get(i));
+			into.heading = s.heading.get(i);
+			into.navigationalStatus = s.navigationalStatus.get(i);
+			into.aisClass = s.aisClass.get(i);
+			into.staticTime = s.staticTime.get(i);
+			into.dimensions = s.dimensions.get(i);
+			into.shipType = s.shipType.get(i);
+			if (s.version.get(i) == v) {
+				into.version = v >>> 1;
+				return;
+			}
+		}
+	}
+
+	private final class Scan implements Iterator<VesselState> {
+
+		private final double minLat;
+		private final double maxLat;
+		private final double minLon;
+		private final double maxLon;
+		private final boolean all;
+		private final int end = size;
+		private final VesselState state = new VesselState();
+		private int slot = -1;
+		private boolean ready;
+
+		Scan(double minLat, double maxLat, double minLon, double maxLon) {
+			this.minLat = minLat;
+			this.maxLat = maxLat;
+			this.minLon = minLon;
+			this.maxLon = maxLon;
+			this.all = minLat == -90 && maxLat == 90 && minLon == -180 && maxLon == 180;
+		}
+
+		@Override
+		public boolean hasNext() {
+			while (!ready && slot + 1 < end) {
+				slot++;
+				if (all) {
+					read(slot, state);
+					ready = true;
+				} else {
+					Segment s = segments[slot >>> SEGMENT_SHIFT];
+					int i = slot & (SEGMENT_SIZE - 1);
+					// cheap check on the columns before a consistent read
+					if (inBox(Double.longBitsToDouble(s.lat.get(i)),
+							Double.longBitsToDouble(s.lon.get(i)))) {
+						read(slot, state);
+						// position may have moved since the check
+						ready = inBox(state.lat, state.lon);
+					}
+				}
+			}
+			return ready;
+		}
+
+		private boolean inBox(double lat, double lon) {
+			if (Double.isNaN(lat) || lat < minLat || lat > maxLat)
+				return false;
+			else if (minLon <= maxLon)
+				return lon >= minLon && lon <= maxLon;
+			else
+				return lon >= minLon || lon <= maxLon;
+		}
+
+		@Override
+		public VesselState next() {
+			if (!hasNext())
+				throw new NoSuchElementException();
+			ready = false;
+			return state;
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+	}
+
+	/**
+	 * Returns the slot of the vessel, adding it if not present. Writer only.
+	 */
+	private int slotFor(int mmsi) {
+		Index idx = index;
+		int slot = idx.find(mmsi);
+		if (slot != -1)
+			return slot;
+		slot = size;
+		Segment[] segs = segments;
+		if (slot >>> SEGMENT_SHIFT == segs.length) {
+			segs = Arrays.copyOf(segs, segs.length + 1);
+			segs[segs.length - 1] = new Segment();
+			segments = segs;
+		}
+		segs[slot >>> SEGMENT_SHIFT].mmsi.lazySet(slot & (SEGMENT_SIZE - 1), mmsi);
+		if (idx.count + 1 > idx.capacity() >>> 1) {
+			idx = idx.doubled();
+			index = idx;
+		}
+		idx.insert(mmsi, slot);
+		size = slot + 1;
+		return slot;
+	}
+
+	static long packDimensions(Optional<Integer> a, Optional<Integer> b, Optional<Integer> c,
+			Optional<Integer> d) {
+		return packDimension(a, 0) | packDimension(b, 1) | packDimension(c, 2)
+				| packDimension(d, 3);
+	}
+
+	private static long packDimension(Optional<Integer> value, int n) {
+		long v = value.isPresent() ? Math.min(value.get(), 0xFFFE) : 0xFFFF;
+		return v << (16 * n);
+	}
+
+	static int dimension(long dimensions, int n) {
+		int v = (int) ((dimensions >>> (16 * n)) & 0xFFFF);
+		return v == 0xFFFF ? -1 : v;
+	}
+
+	static AisClass toAisClass(int aisClass) {
+		if (aisClass == CLASS_A)
+			return AisClass.A;
+		else if (aisClass == CLASS_B)
+			return AisClass.B;
+		else
+			return null;
+	}
+
+	private static float toFloat(Double value) {
+		return value == null ? Float.NaN : value.floatValue();
+	}
+
+	private static float orNaN(Optional<Float> value) {
+		return value.isPresent() ? value.get() : Float.NaN;
+	}
+
+	/**
+	 * One column per field for {@value #SEGMENT_SIZE} vessels.
+	 */
+	private static final class Segment {
+		final AtomicLongArray version = new AtomicLongArray(SEGMENT_SIZE);
+		final AtomicIntegerArray mmsi = new AtomicIntegerArray(SEGMENT_SIZE);
+		final AtomicLongArray positionTime = filled(Long.MIN_VALUE);
+		final AtomicLongArray lat = filled(Double.doubleToRawLongBits(Double.NaN));
+		final AtomicLongArray lon = filled(Double.doubleToRawLongBits(Double.NaN));
+		final AtomicIntegerArray sog = filled(Float.floatToRawIntBits(Float.NaN));
+		final AtomicIntegerArray cog = filled(Float.floatToRawIntBits(Float.NaN));
+		final AtomicIntegerArray heading = filled(-1);
+		final AtomicIntegerArray navigationalStatus = filled(-1);
+		final AtomicIntegerArray aisClass = filled(CLASS_NONE);
+		final AtomicLongArray staticTime = filled(Long.MIN_VALUE);
+		final AtomicLongArray dimensions = filled(NO_DIMENSIONS);
+		final AtomicIntegerArray shipType = filled(-1);
+
+		/**
+		 * Marks the vessel as being updated and returns the version before the
+		 * update.
+		 */
+		long beginWrite(int i) {
+			long v = version.get(i);
+			// volatile write so the field writes that follow cannot be seen
+			// before it
+			version.set(i, v + 1);
+			return v;
+		}
+
+		void endWrite(int i, long v) {
+			// ordered write so the field writes before it are seen first
+			version.lazySet(i, v + 2);
+		}
+
+		private static AtomicLongArray filled(long value) {
+			long[] a = new long[SEGMENT_SIZE];
+			Arrays.fill(a, value);
+			return new AtomicLongArray(a);
+		}
+
+		private static AtomicIntegerArray filled(int value) {
+			int[] a = new int[SEGMENT_SIZE];
+			Arrays.fill(a, value);
+			return new AtomicIntegerArray(a);
+		}
+	}
+
+	/**
+	 * Open addressing (linear probing) map of MMSI to slot. Entries are never
+	 * removed. The writer publishes an entry by writing the key after the
+	 * slot, so a reader that sees the key also sees the slot. A full index is
+	 * replaced rather than resized in place.
+	 */
+	private static final class Index {
+		final AtomicIntegerArray keys;
+		final AtomicIntegerArray slots;
+		final int mask;
+		// writer only
+		int count;
+
+		Index(int capacity) {
+			keys = new AtomicIntegerArray(capacity);
+			slots = new AtomicIntegerArray(capacity);
+			mask = capacity - 1;
+		}
+
+		int capacity() {
+			return mask + 1;
+		}
+
+		int find(int mmsi) {
+			if (mmsi <= 0)
+				return -1;
+			int i = hash(mmsi) & mask;
+			while (true) {
+				int key = keys.get(i);
+				if (key == mmsi)
+					return slots.get(i);
+				else if (key == 0)
+					return -1;
+				i = (i + 1) & mask;
+			}
+		}
+
+		void insert(int mmsi, int slot) {
+			int i = hash(mmsi) & mask;
+			while (keys.get(i) != 0)
+				i = (i + 1) & mask;
+			slots.lazySet(i, slot);
+			keys.lazySet(i, mmsi);
+			count++;
+		}
+
+		Index doubled() {
+			Index idx = new Index(capacity() * 2);
+			for (int i = 0; i <= mask; i++) {
+				int key = keys.get(i);
+				if (key != 0)
+					idx.insert(key, slots.get(i));
+			}
+			return idx;
+		}
+
+		private static int hash(int mmsi) {
+			int h = mmsi * 0x9E3779B9;
+			return h ^ (h >>> 16);
+		}
+	}
+
+}
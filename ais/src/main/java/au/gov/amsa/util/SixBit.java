@@ -21,6 +21,17 @@ public final class SixBit {
 		return toSixbit;
 	}
 
+	/**
+	 * Returns the six bit value of an armoured payload character or -1 if the
+	 * character is not a valid payload character.
+	 * 
+	 * @param chr
+	 * @return
+	 */
+	public static int toSixBit(char chr) {
+		return INT_TO_SIX_BIT[chr];
+	}
+
 	/**
 	 * Converts sixBit string characters to bits (boolean values in the array
 	 * bitSet) but just between the bit range {@code from} to {@code to}
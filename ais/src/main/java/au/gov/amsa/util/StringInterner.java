@@ -0,0 +1,98 @@
+package au.gov.amsa.util;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded, lock-free table of canonical strings used to avoid retaining many
+ * equal copies of frequently repeated strings (tag block sources, ship names,
+ * callsigns, destinations). The table is direct mapped: each string hashes to
+ * one slot and a miss replaces whatever was in that slot, so memory use is
+ * fixed and the table adapts to the current working set. Interning never
+ * blocks and is safe to call from any thread.
+ */
+public final class StringInterner {
+
+	private static final int DEFAULT_CAPACITY = 8192;
+
+	private static final StringInterner INSTANCE = new StringInterner(
+			DEFAULT_CAPACITY);
+
+	private final AtomicReferenceArray<String> table;
+	private final int mask;
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+
+	/**
+	 * Constructor.
+	 *
+	 * @param capacity
+	 *            number of slots, rounded up to a power of two
+	 */
+	public StringInterner(int capacity) {
+		if (capacity <= 0)
+			throw new IllegalArgumentException("capacity must be > 0");
+		int size = Integer.highestOneBit(capacity);
+		if (size < capacity)
+			size <<= 1;
+		this.table = new AtomicReferenceArray<String>(size);
+		this.mask = size - 1;
+	}
+
+	/**
+	 * Returns the shared interner used by the NMEA and AIS parsers.
+	 *
+	 * @return
+	 */
+	public static StringInterner instance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Returns a string equal to <code>s</code>, the cached instance if there
+	 * is one otherwise <code>s</code> itself (which is then cached).
+	 *
+	 * @param s
+	 * @return
+	 */
+	public String intern(String s) {
+		if (s == null)
+			return null;
+		int h = s.hashCode();
+		int index = (h ^ (h >>> 16)) & mask;
+		String cached = table.get(index);
+		if (cached != null && cached.equals(s)) {
+			hits.increment();
+			return cached;
+		} else {
+			misses.increment();
+			table.lazySet(index, s);
+			return s;
+		}
+	}
+
+	public long hits() {
+		return hits.sum();
+	}
+
+	public long misses() {
+		return misses.sum();
+	}
+
+	/**
+	 * Returns the proportion of calls to {@link #intern(String)} that returned
+	 * a cached string (0 if there have been no calls).
+	 *
+	 * @return
+	 */
+	public double hitRate() {
+		long h = hits.sum();
+		long total = h + misses.sum();
+		return total == 0 ? 0 : (double) h / total;
+	}
+
+	public int capacity() {
+		return table.length();
+	}
+
+}
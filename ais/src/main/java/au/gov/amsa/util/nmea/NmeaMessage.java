@@ -26,6 +26,9 @@ public class NmeaMessage {
      * @param items
      *            is the list of columns from the NMEA message (not including
      *            the tag block) but including the checksum on the final column.
+     * @param checksum
+     *            the checksum from the end of the NMEA line. If null the
+     *            checksum is calculated on demand by {@link #getChecksum()}.
      */
     public NmeaMessage(LinkedHashMap<String, String> tags, List<String> items, String checksum) {
         this.tags = tags;
@@ -170,7 +173,15 @@ public class NmeaMessage {
         return NmeaUtil.getChecksum(NmeaUtil.createNmeaLine(tags, items));
     }
 
+    /**
+     * Returns the checksum from the end of the NMEA line or if that was not
+     * supplied at construction the calculated checksum.
+     * 
+     * @return checksum
+     */
     public String getChecksum() {
+        if (checksum == null)
+            checksum = calculateChecksum();
         return checksum;
     }
 
@@ -7,6 +7,8 @@ import org.apache.commons.lang3.StringUtils;
 
 import com.google.common.collect.Maps;
 
+import au.gov.amsa.util.StringInterner;
+
 /**
  * Parses NMEA messages.
  * 
@@ -16,6 +18,7 @@ public class NmeaMessageParser {
     private static final String CHECKSUM_DELIMITER = "*";
     private static final String PARAMETER_DELIMITER = ",";
     private static final String CODE_DELIMITER = ":";
+    private static final StringInterner INTERNER = StringInterner.instance();
 
     /**
      * Return an {@link NmeaMessage} from the given NMEA line.
@@ -67,6 +70,15 @@ public class NmeaMessageParser {
         return items;
     }
 
+    /**
+     * Returns true if the tag usually has the same value on many lines (source
+     * and destination station) so is worth interning. Times, line counts and
+     * group ids are not.
+     */
+    private static boolean isRepeatedValue(String key) {
+        return "s".equals(key) || "d".equals(key);
+    }
+
     /**
      * Returns the tags from the tag block section of the message (NMEA v4.0).
      * If there is no tag block then returns an empty map.
@@ -83,7 +95,11 @@ public class NmeaMessageParser {
             if (i == -1)
                 throw new NmeaMessageParseException("TAG BLOCK parameter is not is format 'a:b' :"
                         + s);
-            map.put(item.substring(0, i), item.substring(i + 1));
+            String key = INTERNER.intern(item.substring(0, i));
+            String value = item.substring(i + 1);
+            if (isRepeatedValue(key))
+                value = INTERNER.intern(value);
+            map.put(key, value);
         }
         return map;
     }
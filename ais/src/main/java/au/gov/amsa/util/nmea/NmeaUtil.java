@@ -159,6 +159,98 @@ public final class NmeaUtil {
 		return amendedLine;
 	}
 
+	/**
+	 * Returns the same result as {@link #supplementWithTime(String, long)} for
+	 * a valid NMEA line but does so by scanning and splicing the line rather
+	 * than parsing it into an {@link NmeaMessage}. The line is not otherwise
+	 * validated.
+	 *
+	 * @param line
+	 * @param arrivalTime
+	 * @return line with <code>c:</code> and <code>a:</code> tags added if it
+	 *         had no <code>c:</code> tag
+	 */
+	public static String spliceArrivalTime(String line, long arrivalTime) {
+		if (line.length() > 0 && line.charAt(0) == BACKSLASH) {
+			int i = line.indexOf(BACKSLASH, 1);
+			if (i == -1)
+				throw new RuntimeException(
+						"line starts with \\ but does not have closing tag block delimiter \\");
+			if (i < 4)
+				throw new RuntimeException(
+						"tag block not long enough to have a checksum");
+			int contentFinish = i - 3;
+			String group = null;
+			int start = 1;
+			while (start < contentFinish) {
+				int comma = line.indexOf(',', start);
+				if (comma == -1 || comma > contentFinish)
+					comma = contentFinish;
+				if (line.startsWith("c:", start))
+					// already has a time
+					return line;
+				else if (line.startsWith("g:", start))
+					group = line.substring(start + 2, comma);
+				start = comma + 1;
+			}
+			// if multiline then don't deal with second and later lines
+			if (!isSingleOrFirstSentence(line, i + 1, group))
+				return line;
+			StringBuilder s = new StringBuilder(line.length() + 40);
+			s.append(BACKSLASH);
+			s.append(line, 1, contentFinish);
+			s.append(",");
+			appendTimes(arrivalTime, arrivalTime, s);
+			String checksum = checksum(s, 1);
+			s.append('*');
+			s.append(checksum);
+			s.append(line, i, line.length());
+			return s.toString();
+		} else {
+			StringBuilder s = new StringBuilder(line.length() + 40);
+			s.append(BACKSLASH);
+			appendTimes(arrivalTime, arrivalTime, s);
+			String checksum = checksum(s, 1);
+			s.append('*');
+			s.append(checksum);
+			s.append(BACKSLASH);
+			s.append(line);
+			return s.toString();
+		}
+	}
+
+	private static boolean isSingleOrFirstSentence(String line, int start, String group) {
+		final String number;
+		final String count;
+		if (group != null) {
+			String[] parts = group.split("-");
+			if (parts.length < 2)
+				return true;
+			number = parts[0];
+			count = parts[1];
+		} else if (start < line.length() && line.charAt(start) == '!') {
+			int c1 = line.indexOf(',', start);
+			int c2 = c1 == -1 ? -1 : line.indexOf(',', c1 + 1);
+			int c3 = c2 == -1 ? -1 : line.indexOf(',', c2 + 1);
+			if (c3 == -1)
+				return true;
+			count = line.substring(c1 + 1, c2);
+			number = line.substring(c2 + 1, c3);
+		} else
+			return true;
+		return "1".equals(count) || "1".equals(number);
+	}
+
+	private static String checksum(CharSequence s, int start) {
+		int checksum = 0;
+		for (int i = start; i < s.length(); i++)
+			checksum ^= s.charAt(i);
+		String hex = Integer.toHexString(checksum % 256);
+		if (hex.length() == 1)
+			hex = "0" + hex;
+		return hex.toUpperCase();
+	}
+
 	private static void appendTimes(long arrivalTime, Long t, StringBuilder s) {
 		s.append("c:");
 		s.append(t / 1000);
@@ -0,0 +1,519 @@
+package au.gov.amsa.util.nmea.replay;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import rx.Observable;
+import rx.Scheduler;
+import rx.Scheduler.Worker;
+import rx.Subscriber;
+import rx.internal.operators.BackpressureUtils;
+import rx.schedulers.Schedulers;
+import rx.subscriptions.Subscriptions;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Replays archived NMEA files (plain or gzipped) against a virtual clock so
+ * that a recorded day can be pushed through a live stack (for example as the
+ * source of a <code>StringServer</code>) at its original rate or faster.
+ *
+ * <p>
+ * The time of a line is taken from its tag block: the <code>a:</code>
+ * (arrival time in ms) tag if present, otherwise the <code>c:</code> tag (unix
+ * time in seconds). A line without a time (for instance the second sentence
+ * of a multi-sentence message) is given the time of the line before it in the
+ * same file and lines before the first timed line of a file are dropped. The
+ * files are merged in time order using a heap of the next line of each file,
+ * so each file should itself be in time order.
+ *
+ * <p>
+ * A line with archive time <code>t</code> is due at wall clock time
+ * <code>wallStart + (t - archiveStart) / speedUp</code>. Every line that is
+ * due is emitted without waiting, in batches of up to
+ * <code>maxBatchSize</code>, so that high speed-ups are not limited by the
+ * granularity of sleeping. A speed-up of {@link Double#POSITIVE_INFINITY}
+ * replays as fast as possible.
+ *
+ * <p>
+ * Backpressure is honoured: a batch is only emitted when one has been
+ * requested. The virtual clock keeps running while the subscriber is not
+ * requesting so a slow subscriber falls behind the original rate and then
+ * receives the lines that became due meanwhile in full batches until it
+ * catches up.
+ *
+ * <p>
+ * The replay can be paused, resumed, sped up or slowed down and moved to
+ * another archive time while it is running. These controls act on every
+ * current subscription so normally the replay is subscribed to once (use
+ * <code>share()</code> to feed several consumers).
+ */
+public final class NmeaReplay {
+
+	private static Logger log = LoggerFactory.getLogger(NmeaReplay.class);
+
+	private static final long NO_TIME = Long.MIN_VALUE;
+	// lines due within this many ms are emitted rather than waited for
+	private static final long MIN_WAIT_MS = 1;
+
+	private final List<File> files;
+	private final int maxBatchSize;
+	private final Scheduler scheduler;
+
+	// guarded by lock, which is also notified on any change of control state
+	private final Object lock = new Object();
+	private double speedUp;
+	private boolean paused;
+	private long seekTime;
+	private long pausedArchiveTime = NO_TIME;
+	private long archiveAnchor = NO_TIME;
+	private long wallAnchor;
+
+	private volatile long currentTime = NO_TIME;
+
+	private NmeaReplay(Builder b) {
+		this.files = b.files;
+		this.maxBatchSize = b.maxBatchSize;
+		this.scheduler = b.scheduler;
+		this.speedUp = b.speedUp;
+		this.seekTime = b.startTime;
+	}
+
+	public static Builder files(List<File> files) {
+		return new Builder(files);
+	}
+
+	public static Builder files(File... files) {
+		List<File> list = new ArrayList<File>();
+		for (File file : files)
+			list.add(file);
+		return files(list);
+	}
+
+	public static final class Builder {
+
+		private final List<File> files;
+		private double speedUp = 1;
+		private int maxBatchSize = 1000;
+		private long startTime = NO_TIME;
+		private Scheduler scheduler = Schedulers.io();
+
+		private Builder(List<File> files) {
+			this.files = new ArrayList<File>(files);
+		}
+
+		/**
+		 * Sets the ratio of archive time to wall clock time (1 is real time,
+		 * {@link Double#POSITIVE_INFINITY} is as fast as possible).
+		 */
+		public Builder speedUp(double speedUp) {
+			this.speedUp = speedUp;
+			return this;
+		}
+
+		/**
+		 * Sets the maximum number of lines emitted together in one batch.
+		 */
+		public Builder maxBatchSize(int maxBatchSize) {
+			this.maxBatchSize = maxBatchSize;
+			return this;
+		}
+
+		/**
+		 * Sets the archive time (epoch ms) to start the replay from. By
+		 * default the replay starts from the earliest line.
+		 */
+		public Builder startTime(long startTime) {
+			this.startTime = startTime;
+			return this;
+		}
+
+		/**
+		 * Sets the scheduler that the replay loop runs on (it occupies one
+		 * thread for the duration of the replay).
+		 */
+		public Builder scheduler(Scheduler scheduler) {
+			this.scheduler = scheduler;
+			return this;
+		}
+
+		public NmeaReplay build() {
+			Preconditions.checkArgument(!files.isEmpty(), "no files to replay");
+			Preconditions.checkArgument(speedUp > 0, "speedUp must be > 0");
+			Preconditions.checkArgument(maxBatchSize > 0, "maxBatchSize must be > 0");
+			Preconditions.checkNotNull(scheduler);
+			return new NmeaReplay(this);
+		}
+	}
+
+	/**
+	 * Returns the replayed lines in batches of lines that became due
+	 * together. The stream completes when all files have been replayed.
+	 *
+	 * @return batches of lines
+	 */
+	public Observable<List<String>> batches() {
+		return Observable.create(new Observable.OnSubscribe<List<String>>() {
+			@Override
+			public void call(final Subscriber<? super List<String>> subscriber) {
+				Worker worker = scheduler.createWorker();
+				subscriber.add(worker);
+				// wake the replay loop so it notices the unsubscribe
+				subscriber.add(Subscriptions.create(() -> wake()));
+				final AtomicLong requested = new AtomicLong();
+				subscriber.setProducer(n -> {
+					if (n > 0) {
+						BackpressureUtils.getAndAddRequest(requested, n);
+						// wake the replay loop if it is waiting for requests
+						wake();
+					}
+				});
+				worker.schedule(() -> replay(subscriber, requested));
+			}
+		});
+	}
+
+	private void wake() {
+		synchronized (lock) {
+			lock.notifyAll();
+		}
+	}
+
+	/**
+	 * Returns the replayed lines.
+	 *
+	 * @return lines
+	 */
+	public Observable<String> lines() {
+		return batches().concatMapIterable(list -> list);
+	}
+
+	/**
+	 * Stops emitting lines until {@link #resume()} is called. The virtual
+	 * clock stops too so no lines are skipped.
+	 */
+	public void pause() {
+		synchronized (lock) {
+			if (!paused) {
+				pausedArchiveTime = archiveNow(System.currentTimeMillis());
+				paused = true;
+				lock.notifyAll();
+			}
+		}
+	}
+
+	public void resume() {
+		synchronized (lock) {
+			if (paused) {
+				paused = false;
+				if (pausedArchiveTime != NO_TIME)
+					anchor(pausedArchiveTime, System.currentTimeMillis());
+				pausedArchiveTime = NO_TIME;
+				lock.notifyAll();
+			}
+		}
+	}
+
+	public boolean isPaused() {
+		synchronized (lock) {
+			return paused;
+		}
+	}
+
+	/**
+	 * Moves the replay to the given archive time (forwards or backwards).
+	 * Replay continues from the first line at or after that time.
+	 *
+	 * @param time
+	 *            archive time, epoch ms
+	 */
+	public void seek(long time) {
+		synchronized (lock) {
+			seekTime = time;
+			lock.notifyAll();
+		}
+	}
+
+	/**
+	 * Changes the speed-up from now on without jumping in archive time.
+	 *
+	 * @param speedUp
+	 */
+	public void speedUp(double speedUp) {
+		Preconditions.checkArgument(speedUp > 0, "speedUp must be > 0");
+		synchronized (lock) {
+			long now = System.currentTimeMillis();
+			long archiveNow = archiveNow(now);
+			this.speedUp = speedUp;
+			if (archiveNow != NO_TIME && !paused)
+				anchor(archiveNow, now);
+			lock.notifyAll();
+		}
+	}
+
+	/**
+	 * Returns the archive time (epoch ms) of the last line emitted or
+	 * {@link Long#MIN_VALUE} if nothing has been emitted yet.
+	 *
+	 * @return
+	 */
+	public long currentTime() {
+		return currentTime;
+	}
+
+	private void replay(Subscriber<? super List<String>> subscriber, AtomicLong requested) {
+		Merger merger = null;
+		try {
+			while (!subscriber.isUnsubscribed()) {
+				List<String> batch = null;
+				synchronized (lock) {
+					if (merger == null || seekTime != NO_TIME) {
+						if (merger != null)
+							merger.close();
+						merger = new Merger(files, seekTime);
+						if (seekTime != NO_TIME) {
+							// restart the clock from the requested time
+							long now = System.currentTimeMillis();
+							anchor(seekTime, now);
+							if (paused)
+								pausedArchiveTime = seekTime;
+						}
+						seekTime = NO_TIME;
+					}
+					if (paused) {
+						lock.wait();
+						continue;
+					}
+					Cursor next = merger.peek();
+					if (next == null)
+						// complete outside the lock
+						break;
+					if (requested.get() == 0) {
+						lock.wait();
+						continue;
+					}
+					long now = System.currentTimeMillis();
+					if (archiveAnchor == NO_TIME)
+						// start the clock at the first line
+						anchor(next.time, now);
+					long wait = dueTime(next.time) - now;
+					if (wait >= MIN_WAIT_MS) {
+						lock.wait(wait);
+						continue;
+					}
+					long archiveNow = archiveNow(now);
+					batch = new ArrayList<String>(Math.min(maxBatchSize, 64));
+					while (batch.size() < maxBatchSize && next != null
+							&& (next.time <= archiveNow || dueTime(next.time) - now < MIN_WAIT_MS)) {
+						currentTime = next.time;
+						batch.add(merger.poll());
+						next = merger.peek();
+					}
+					if (Double.isInfinite(speedUp))
+						// keep the clock at the last line emitted so that
+						// pausing or slowing down continues from there
+						anchor(currentTime, now);
+				}
+				// emit outside the lock so that controls are not blocked by a
+				// slow consumer
+				subscriber.onNext(batch);
+				if (requested.get() != Long.MAX_VALUE)
+					BackpressureUtils.produced(requested, 1);
+			}
+			if (!subscriber.isUnsubscribed())
+				subscriber.onCompleted();
+		} catch (InterruptedException e) {
+			log.info("replay interrupted");
+		} catch (IOException | RuntimeException e) {
+			subscriber.onError(e);
+		} finally {
+			if (merger != null)
+				merger.close();
+		}
+	}
+
+	// the following methods must be called holding lock
+
+	private void anchor(long archiveTime, long wallTime) {
+		archiveAnchor = archiveTime;
+		wallAnchor = wallTime;
+	}
+
+	private long dueTime(long archiveTime) {
+		if (Double.isInfinite(speedUp))
+			return wallAnchor;
+		else
+			return wallAnchor + (long) ((archiveTime - archiveAnchor) / speedUp);
+	}
+
+	private long archiveNow(long wallTime) {
+		if (paused)
+			return pausedArchiveTime;
+		else if (archiveAnchor == NO_TIME)
+			return NO_TIME;
+		else if (Double.isInfinite(speedUp))
+			// anchored at the last line emitted
+			return archiveAnchor;
+		else
+			return archiveAnchor + (long) ((wallTime - wallAnchor) * speedUp);
+	}
+
+	/**
+	 * Returns the archive time of the line in ms from its tag block or
+	 * {@link Long#MIN_VALUE} if it has none. Only scans the tag block.
+	 *
+	 * @param line
+	 * @return
+	 */
+	static long time(String line) {
+		if (line.length() == 0 || line.charAt(0) != '\\')
+			return NO_TIME;
+		int finish = line.indexOf('*', 1);
+		int end = line.indexOf('\\', 1);
+		if (end == -1)
+			return NO_TIME;
+		if (finish == -1 || finish > end)
+			finish = end;
+		long c = NO_TIME;
+		int start = 1;
+		while (start < finish) {
+			int comma = line.indexOf(',', start);
+			if (comma == -1 || comma > finish)
+				comma = finish;
+			if (line.startsWith("a:", start)) {
+				long a = parseLong(line, start + 2, comma);
+				if (a != NO_TIME)
+					return a;
+			} else if (line.startsWith("c:", start)) {
+				long seconds = parseLong(line, start + 2, comma);
+				if (seconds != NO_TIME)
+					c = seconds * 1000;
+			}
+			start = comma + 1;
+		}
+		return c;
+	}
+
+	private static long parseLong(String s, int start, int finish) {
+		if (start >= finish)
+			return NO_TIME;
+		long value = 0;
+		for (int i = start; i < finish; i++) {
+			char ch = s.charAt(i);
+			if (ch < '0' || ch > '9')
+				return NO_TIME;
+			value = value * 10 + (ch - '0');
+		}
+		return value;
+	}
+
+	/**
+	 * Merges the lines of several files in time order.
+	 */
+	private static final class Merger implements Closeable {
+
+		private final PriorityQueue<Cursor> heap;
+		private final List<Cursor> cursors = new ArrayList<Cursor>();
+
+		Merger(List<File> files, long startTime) throws IOException {
+			heap = new PriorityQueue<Cursor>(Math.max(1, files.size()), (x, y) -> {
+				int c = Long.compare(x.time, y.time);
+				// keep file order for equal times
+				return c != 0 ? c : Integer.compare(x.index, y.index);
+			});
+			try {
+				for (int i = 0; i < files.size(); i++) {
+					Cursor cursor = new Cursor(files.get(i), i);
+					cursors.add(cursor);
+					while (cursor.line != null && startTime != NO_TIME
+							&& cursor.time < startTime)
+						cursor.advance();
+					if (cursor.line != null)
+						heap.add(cursor);
+				}
+			} catch (IOException | RuntimeException e) {
+				close();
+				throw e;
+			}
+		}
+
+		Cursor peek() {
+			return heap.peek();
+		}
+
+		String poll() throws IOException {
+			Cursor cursor = heap.poll();
+			String line = cursor.line;
+			cursor.advance();
+			if (cursor.line != null)
+				heap.add(cursor);
+			return line;
+		}
+
+		@Override
+		public void close() {
+			for (Cursor cursor : cursors)
+				cursor.close();
+		}
+	}
+
+	/**
+	 * The current line of a file and its time.
+	 */
+	private static final class Cursor {
+
+		final int index;
+		private final BufferedReader reader;
+		String line;
+		long time = NO_TIME;
+
+		Cursor(File file, int index) throws IOException {
+			this.index = index;
+			InputStream is = new FileInputStream(file);
+			if (file.getName().endsWith(".gz"))
+				is = new GZIPInputStream(is, 65536);
+			this.reader = new BufferedReader(new InputStreamReader(is,
+					StandardCharsets.UTF_8), 65536);
+			advance();
+		}
+
+		void advance() throws IOException {
+			String s;
+			while ((s = reader.readLine()) != null) {
+				if (s.isEmpty())
+					continue;
+				long t = time(s);
+				if (t != NO_TIME)
+					time = t;
+				if (time != NO_TIME) {
+					line = s;
+					return;
+				}
+			}
+			line = null;
+			close();
+		}
+
+		void close() {
+			try {
+				reader.close();
+			} catch (IOException e) {
+				log.warn(e.getMessage(), e);
+			}
+		}
+	}
+}
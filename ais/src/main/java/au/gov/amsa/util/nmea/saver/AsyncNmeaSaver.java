@@ -0,0 +1,440 @@
+package au.gov.amsa.util.nmea.saver;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+import org.joda.time.format.DateTimeFormat;
+import org.joda.time.format.DateTimeFormatter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import rx.Observable;
+import rx.Scheduler;
+import rx.Subscriber;
+import rx.schedulers.Schedulers;
+import au.gov.amsa.ais.LineAndTime;
+import au.gov.amsa.util.nmea.NmeaUtil;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Preconditions;
+
+/**
+ * Saves NMEA lines to rolling gzip compressed segment files at full feed rate.
+ * Lines are handed (with their arrival time) through a bounded queue to a
+ * single writer thread which takes them in batches, adds the arrival time tag
+ * to each line by splicing (see {@link NmeaUtil#spliceArrivalTime}) and
+ * writes the batch as one compressed block that is flushed to the file before
+ * the next batch is taken. If the queue is full the thread delivering lines
+ * blocks. Lines with a malformed tag block are not written and are counted
+ * (see {@link #malformedLines()}).
+ *
+ * <p>
+ * A new segment is started when the current one reaches
+ * <code>maxSegmentBytes</code> uncompressed or when the UTC day changes. Each
+ * segment is recorded in the file {@value #INDEX_FILENAME} in the output
+ * directory as <code>filename,firstArrivalTime</code> so that the segments
+ * covering a time range can be found with
+ * {@link #segments(File, long, long)}. Segments can be read with
+ * <code>Streams.nmeaFromGzip</code>.
+ *
+ * <p>
+ * If writing fails the source is unsubscribed, lines still arriving are
+ * dropped and the failure is thrown by {@link #stop()} (and is available from
+ * {@link #error()}).
+ *
+ * <p>
+ * The writer thread is a daemon so it does not keep the JVM alive; call
+ * {@link #stop()} to write the lines still queued and close the segment.
+ */
+public final class AsyncNmeaSaver {
+
+	private static Logger log = LoggerFactory.getLogger(AsyncNmeaSaver.class);
+
+	public static final String INDEX_FILENAME = "index.csv";
+
+	private static final DateTimeFormatter SEGMENT_NAME_FORMAT = DateTimeFormat
+			.forPattern("yyyy-MM-dd'T'HHmmss.SSS").withZoneUTC();
+	private static final long DAY_MS = TimeUnit.DAYS.toMillis(1);
+	private static final LineAndTime STOP = new LineAndTime("", 0);
+
+	private final Observable<String> source;
+	private final File directory;
+	private final BlockingQueue<LineAndTime> queue;
+	private final int batchSize;
+	private final long maxSegmentBytes;
+	private final boolean sync;
+	private final Clock clock;
+	private final AtomicLong linesWritten = new AtomicLong();
+	private final AtomicLong malformedLines = new AtomicLong();
+	private final AtomicLong linesDropped = new AtomicLong();
+	private final Thread writerThread;
+	private volatile Subscriber<String> subscriber;
+	// set by the writer thread if writing fails
+	private volatile IOException error;
+
+	// accessed only by the writer thread
+	private Writer writer;
+	private FileOutputStream fos;
+	private long segmentBytes;
+	private long segmentDayEnd;
+
+	private AsyncNmeaSaver(Builder b) {
+		this.source = b.source;
+		this.directory = b.directory;
+		this.queue = new ArrayBlockingQueue<LineAndTime>(b.queueSize);
+		this.batchSize = b.batchSize;
+		this.maxSegmentBytes = b.maxSegmentBytes;
+		this.sync = b.sync;
+		this.clock = b.clock;
+		this.writerThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				writeLoop();
+			}
+		}, "nmea-saver");
+		this.writerThread.setDaemon(true);
+		directory.mkdirs();
+	}
+
+	public static Builder source(Observable<String> nmea) {
+		return new Builder(nmea);
+	}
+
+	public static final class Builder {
+
+		private final Observable<String> source;
+		private File directory;
+		private int queueSize = 100000;
+		private int batchSize = 1000;
+		private long maxSegmentBytes = 128 * 1024 * 1024;
+		private boolean sync = false;
+		private Clock clock = new SystemClock();
+
+		private Builder(Observable<String> source) {
+			this.source = source;
+		}
+
+		public Builder directory(File directory) {
+			this.directory = directory;
+			return this;
+		}
+
+		/**
+		 * Sets the maximum number of lines waiting to be written.
+		 */
+		public Builder queueSize(int queueSize) {
+			this.queueSize = queueSize;
+			return this;
+		}
+
+		/**
+		 * Sets the maximum number of lines written (and flushed) together.
+		 */
+		public Builder batchSize(int batchSize) {
+			this.batchSize = batchSize;
+			return this;
+		}
+
+		/**
+		 * Sets the number of uncompressed bytes after which a new segment is
+		 * started.
+		 */
+		public Builder maxSegmentBytes(long maxSegmentBytes) {
+			this.maxSegmentBytes = maxSegmentBytes;
+			return this;
+		}
+
+		/**
+		 * If true each batch is forced to the storage device after it is
+		 * written (slower but survives an operating system crash).
+		 */
+		public Builder sync(boolean sync) {
+			this.sync = sync;
+			return this;
+		}
+
+		public Builder clock(Clock clock) {
+			this.clock = clock;
+			return this;
+		}
+
+		public AsyncNmeaSaver build() {
+			Preconditions.checkNotNull(source);
+			Preconditions.checkNotNull(directory, "directory must be set");
+			Preconditions.checkArgument(queueSize > 0, "queueSize must be > 0");
+			Preconditions.checkArgument(batchSize > 0, "batchSize must be > 0");
+			Preconditions.checkArgument(maxSegmentBytes > 0,
+					"maxSegmentBytes must be > 0");
+			Preconditions.checkNotNull(clock);
+			return new AsyncNmeaSaver(this);
+		}
+	}
+
+	public void start() {
+		start(Schedulers.io());
+	}
+
+	public void start(Scheduler scheduler) {
+		writerThread.start();
+		subscriber = createSubscriber();
+		source.subscribeOn(scheduler).subscribe(subscriber);
+	}
+
+	/**
+	 * Stops reading from the source and waits for the lines already queued to
+	 * be written and the current segment to be closed.
+	 *
+	 * @throws InterruptedException
+	 * @throws IOException
+	 *             if writing failed
+	 */
+	public void stop() throws InterruptedException, IOException {
+		if (subscriber != null)
+			subscriber.unsubscribe();
+		if (writerThread.isAlive()) {
+			enqueue(STOP);
+			writerThread.join();
+		}
+		if (error != null)
+			throw error;
+	}
+
+	/**
+	 * Returns the failure that stopped lines being written if any.
+	 *
+	 * @return
+	 */
+	public Optional<IOException> error() {
+		return Optional.fromNullable(error);
+	}
+
+	/**
+	 * Returns the number of lines waiting to be written.
+	 *
+	 * @return
+	 */
+	public int queueDepth() {
+		return queue.size();
+	}
+
+	/**
+	 * Returns the number of lines written so far.
+	 *
+	 * @return
+	 */
+	public long linesWritten() {
+		return linesWritten.get();
+	}
+
+	/**
+	 * Returns the number of lines not written because their tag block was
+	 * malformed.
+	 *
+	 * @return
+	 */
+	public long malformedLines() {
+		return malformedLines.get();
+	}
+
+	/**
+	 * Returns the number of lines dropped because writing had failed.
+	 *
+	 * @return
+	 */
+	public long linesDropped() {
+		return linesDropped.get();
+	}
+
+	private Subscriber<String> createSubscriber() {
+		return new Subscriber<String>() {
+
+			@Override
+			public void onCompleted() {
+				log.info("source completed");
+				enqueue(STOP);
+			}
+
+			@Override
+			public void onError(Throwable e) {
+				log.error(e.getMessage(), e);
+				enqueue(STOP);
+			}
+
+			@Override
+			public void onNext(String line) {
+				if (line.length() > 0)
+					enqueue(new LineAndTime(line, clock.getTimeMs()));
+			}
+		};
+	}
+
+	private void enqueue(LineAndTime line) {
+		try {
+			// wait for space but give up if the writer has failed (it will
+			// never take from the queue again)
+			while (error == null) {
+				if (queue.offer(line, 100, TimeUnit.MILLISECONDS))
+					return;
+			}
+			if (line != STOP)
+				linesDropped.incrementAndGet();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		}
+	}
+
+	private void writeLoop() {
+		List<LineAndTime> batch = new ArrayList<LineAndTime>(batchSize);
+		boolean stopped = false;
+		try {
+			while (!stopped) {
+				batch.add(queue.take());
+				queue.drainTo(batch, batchSize - 1);
+				for (LineAndTime line : batch) {
+					if (line == STOP) {
+						stopped = true;
+						break;
+					}
+					write(line);
+				}
+				batch.clear();
+				flush();
+			}
+		} catch (InterruptedException e) {
+			log.info("writer interrupted");
+		} catch (IOException e) {
+			log.error("writing failed, unsubscribing from source: " + e.getMessage(), e);
+			error = e;
+			Subscriber<String> s = subscriber;
+			if (s != null)
+				s.unsubscribe();
+			linesDropped.addAndGet(queue.size());
+			queue.clear();
+		} finally {
+			closeSegment();
+		}
+	}
+
+	private void write(LineAndTime line) throws IOException {
+		final String amendedLine;
+		try {
+			amendedLine = NmeaUtil.spliceArrivalTime(line.getLine(), line.getTime());
+		} catch (RuntimeException e) {
+			// malformed tag block
+			malformedLines.incrementAndGet();
+			log.debug("malformed tag block, not saved: " + line.getLine(), e);
+			return;
+		}
+		if (writer == null || segmentBytes >= maxSegmentBytes
+				|| line.getTime() >= segmentDayEnd)
+			openSegment(line.getTime());
+		writer.write(amendedLine);
+		writer.write('\n');
+		segmentBytes += amendedLine.length() + 1;
+		linesWritten.incrementAndGet();
+	}
+
+	private void flush() throws IOException {
+		if (writer != null) {
+			// GZIPOutputStream was created with syncFlush so this completes
+			// the current compressed block
+			writer.flush();
+			if (sync)
+				fos.getChannel().force(false);
+		}
+	}
+
+	private void openSegment(long firstArrivalTime) throws IOException {
+		closeSegment();
+		String name = SEGMENT_NAME_FORMAT.print(firstArrivalTime) + ".nmea.gz";
+		File file = new File(directory, name);
+		for (int i = 1; file.exists(); i++)
+			file = new File(directory, name.replace(".nmea.gz", "-" + i + ".nmea.gz"));
+		fos = new FileOutputStream(file);
+		writer = new BufferedWriter(new OutputStreamWriter(new GZIPOutputStream(fos, 65536,
+				true), StandardCharsets.UTF_8), 65536);
+		segmentBytes = 0;
+		segmentDayEnd = (Math.floorDiv(firstArrivalTime, DAY_MS) + 1) * DAY_MS;
+		appendToIndex(file.getName(), firstArrivalTime);
+		log.info("started segment " + file);
+	}
+
+	private void appendToIndex(String filename, long firstArrivalTime) throws IOException {
+		try (Writer index = new OutputStreamWriter(new FileOutputStream(new File(directory,
+				INDEX_FILENAME), true), StandardCharsets.UTF_8)) {
+			index.write(filename + "," + firstArrivalTime + "\n");
+		}
+	}
+
+	private void closeSegment() {
+		if (writer != null) {
+			try {
+				writer.close();
+			} catch (IOException e) {
+				log.error(e.getMessage(), e);
+			}
+			writer = null;
+			fos = null;
+		}
+	}
+
+	/**
+	 * Returns the segment files in the given directory that may contain lines
+	 * that arrived in the interval [startTime, finishTime) in order of first
+	 * arrival time.
+	 *
+	 * @param directory
+	 *            output directory of an {@link AsyncNmeaSaver}
+	 * @param startTime
+	 *            inclusive, epoch ms
+	 * @param finishTime
+	 *            exclusive, epoch ms
+	 * @return segment files
+	 * @throws IOException
+	 */
+	public static List<File> segments(File directory, long startTime, long finishTime)
+			throws IOException {
+		List<File> files = new ArrayList<File>();
+		List<Long> times = new ArrayList<Long>();
+		File index = new File(directory, INDEX_FILENAME);
+		if (!index.exists())
+			return files;
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+				new FileInputStream(index), StandardCharsets.UTF_8))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				int comma = line.lastIndexOf(',');
+				if (comma > 0) {
+					files.add(new File(directory, line.substring(0, comma)));
+					times.add(Long.parseLong(line.substring(comma + 1)));
+				}
+			}
+		}
+		List<File> result = new ArrayList<File>();
+		for (int i = 0; i < files.size(); i++) {
+			// a segment covers up to (and including) the first arrival time of
+			// the next one
+			boolean startsBeforeFinish = times.get(i) < finishTime;
+			boolean endsAfterStart = i == files.size() - 1 || times.get(i + 1) >= startTime;
+			if (startsBeforeFinish && endsAfterStart)
+				result.add(files.get(i));
+		}
+		return result;
+	}
+}
@@ -0,0 +1,59 @@
+package au.gov.amsa.ais;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class AisBitsTest {
+
+    private static final String[] PAYLOADS = { "15MgK45P3@G?fl0E`JbR0OwT0@MS",
+            "B7P@fj00RJVpbIuUhlF93wm5WP06", "403OviQuMGCqWrRO9>E6fE700@GO",
+            "57PBtv01sb5IH`PR221LE986222222222222220l28?554000:kQEhhDm31H20DPSmD`880" };
+
+    @Test
+    public void testValuesMatchAisExtractor() {
+        Random random = new Random(1);
+        for (String payload : PAYLOADS) {
+            int padBits = payload.length() > 60 ? 2 : 0;
+            AisBits bits = AisBits.from(payload, padBits);
+            AisExtractor extractor = new AisExtractor(payload, 0, padBits);
+            assertEquals(payload.length() * 6 - padBits, bits.length());
+            for (int i = 0; i < 2000; i++) {
+                int from = random.nextInt(bits.length());
+                int to = Math.min(bits.length(), from + 1 + random.nextInt(31));
+                assertEquals(extractor.getValue(from, to), bits.getValue(from, to));
+                assertEquals(extractor.getSignedValue(from, to), bits.getSignedValue(from, to));
+            }
+        }
+    }
+
+    @Test
+    public void testStringMatchesAisExtractor() {
+        String payload = PAYLOADS[3];
+        AisBits bits = AisBits.from(payload, 2);
+        AisExtractor extractor = new AisExtractor(payload, 0, 2);
+        assertEquals(extractor.getString(112, 232), bits.getString(112, 232));
+        assertEquals(extractor.getString(70, 112), bits.getString(70, 112));
+    }
+
+    @Test
+    public void testValueAcrossWordBoundary() {
+        // 11 characters = 66 bits, all set
+        AisBits bits = AisBits.from("wwwwwwwwwww", 0);
+        assertEquals(0xFF, bits.getValue(58, 66));
+        assertEquals(-1, bits.getSignedValue(58, 66));
+    }
+
+    @Test(expected = AisParseException.class)
+    public void testReadingBeyondLengthThrows() {
+        AisBits.from("15MgK45P3@G?fl0E`JbR0OwT0@MS", 0).getValue(160, 169);
+    }
+
+    @Test(expected = AisParseException.class)
+    public void testIllegalCharacterThrows() {
+        AisBits.from("15Mg{", 0);
+    }
+
+}
@@ -118,4 +118,38 @@ public class AisNmeaBufferTest {
         assertEquals(1334073836000L, (long) a.getTime());
     }
 
+    @Test
+    public void testIncompleteGroupIsExpiredByTime() {
+        AisNmeaBuffer buffer = new AisNmeaBuffer(10, 1000);
+        String line1 = "\\g:1-2-1130,c:1334278696*29\\!BSVDM,2,1,0,A,55DSBL02<Dm7<I`OP005<T4r0hTiT00000000016=hJ<855f?>kV`54Qh000,0*0B";
+        String line2 = "\\g:2-2-1130*5E\\!BSVDM,2,2,0,A,00000000002,0*3D";
+        String other = "\\g:2-2-3985*5A\\!AIVDM,2,2,9,B,PFRC88888888880,2*29";
+        assertFalse(buffer.add(NmeaUtil.parseNmea(line1), 0).isPresent());
+        assertEquals(1, buffer.size());
+        // arrival of another fragment more than 1s later expires the first
+        // group
+        assertFalse(buffer.add(NmeaUtil.parseNmea(other), 1001).isPresent());
+        assertEquals(1, buffer.size());
+        assertFalse(buffer.add(NmeaUtil.parseNmea(line2), 1002).isPresent());
+    }
+
+    @Test
+    public void testFragmentsOnDifferentChannelsAreNotJoined() {
+        AisNmeaBuffer buffer = new AisNmeaBuffer(10);
+        String line1 = "!AIVDM,2,1,3,A,55DSBL02<Dm7<I`OP005<T4r0hTiT00000000016=hJ<855f?>kV`54Qh000,0*0B";
+        String line2 = "!AIVDM,2,2,3,B,00000000002,0*3D";
+        assertFalse(buffer.add(NmeaUtil.parseNmea(line1)).isPresent());
+        assertFalse(buffer.add(NmeaUtil.parseNmea(line2)).isPresent());
+        assertEquals(2, buffer.size());
+    }
+
+    @Test
+    public void testRepeatedFragmentDoesNotCompleteGroup() {
+        AisNmeaBuffer buffer = new AisNmeaBuffer(10);
+        String line1 = "\\g:1-2-1130,c:1334278696*29\\!BSVDM,2,1,0,A,55DSBL02<Dm7<I`OP005<T4r0hTiT00000000016=hJ<855f?>kV`54Qh000,0*0B";
+        assertFalse(buffer.add(NmeaUtil.parseNmea(line1)).isPresent());
+        assertFalse(buffer.add(NmeaUtil.parseNmea(line1)).isPresent());
+        assertEquals(1, buffer.size());
+    }
+
 }
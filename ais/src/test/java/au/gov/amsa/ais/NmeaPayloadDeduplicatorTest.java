@@ -0,0 +1,79 @@
+package au.gov.amsa.ais;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+
+import org.junit.Test;
+
+public class NmeaPayloadDeduplicatorTest {
+
+    private static final String LINE = "!AIVDM,1,1,,A,144gjIP0085KKPQHMPjT81Sb1PSL,0*22";
+    private static final String LINE_FROM_SATELLITE = "\\s:SAT,c:1334337326*5A\\!AIVDM,1,1,,B,144gjIP0085KKPQHMPjT81Sb1PSL,0*21";
+
+    @Test
+    public void testSamePayloadFromDifferentFeedIsDuplicate() {
+        NmeaPayloadDeduplicator d = new NmeaPayloadDeduplicator(10000);
+        assertFalse(d.isDuplicate("terrestrial", LINE, 1000));
+        assertTrue(d.isDuplicate("other", LINE_FROM_SATELLITE, 2000));
+        assertTrue(d.isDuplicate("partner", LINE, 3000));
+        assertEquals(3, d.seen());
+        assertEquals(2, d.duplicates());
+        Map<String, Long> bySource = d.duplicatesBySource();
+        assertEquals(2, bySource.size());
+        // tag block source takes precedence over feed
+        assertEquals(1L, (long) bySource.get("SAT"));
+        assertEquals(1L, (long) bySource.get("partner"));
+    }
+
+    @Test
+    public void testPayloadIsForgottenAfterWindow() {
+        NmeaPayloadDeduplicator d = new NmeaPayloadDeduplicator(10000);
+        assertFalse(d.isDuplicate(LINE, 1000));
+        assertTrue(d.isDuplicate(LINE, 10999));
+        // the window is approximate (up to a quarter window longer)
+        assertFalse(d.isDuplicate(LINE, 30000));
+    }
+
+    @Test
+    public void testMultiSentenceFragmentsAreNeverDuplicates() {
+        NmeaPayloadDeduplicator d = new NmeaPayloadDeduplicator(10000);
+        String line = "!BSVDM,2,2,0,A,00000000002,0*3D";
+        assertFalse(d.isDuplicate(line, 1000));
+        assertFalse(d.isDuplicate(line, 1000));
+    }
+
+    @Test
+    public void testNonAisLinesAreNotHashed() {
+        assertEquals(0, NmeaPayloadDeduplicator.payloadHash(""));
+        assertEquals(0, NmeaPayloadDeduplicator.payloadHash("$GPGGA,1,2,3,4,5,6"));
+        assertEquals(0, NmeaPayloadDeduplicator.payloadHash("!AIVDM,1,1,,A"));
+        assertEquals(0, NmeaPayloadDeduplicator.payloadHash("\\c:123*5A"));
+        assertEquals(0, NmeaPayloadDeduplicator.payloadHash("!AIVDM,1,1,,A,144gjIP0085KK"));
+    }
+
+    @Test
+    public void testHashDependsOnlyOnPayload() {
+        assertEquals(NmeaPayloadDeduplicator.payloadHash(LINE),
+                NmeaPayloadDeduplicator.payloadHash(LINE_FROM_SATELLITE));
+        assertNotEquals(NmeaPayloadDeduplicator.payloadHash(LINE), NmeaPayloadDeduplicator
+                .payloadHash("!AIVDM,1,1,,A,144gjIP0085KKPQHMPjT81Sb1PSM,0*22"));
+    }
+
+    @Test
+    public void testTimeWindowedSetGrowsAndExpires() {
+        TimeWindowedLongSet set = new TimeWindowedLongSet(1000, 4);
+        for (long i = 1; i <= 5000; i++)
+            assertTrue(set.add(i, 0));
+        assertEquals(5000, set.size());
+        for (long i = 1; i <= 5000; i++)
+            assertFalse(set.add(i, 500));
+        assertEquals(5000, set.size());
+        assertTrue(set.add(1, 1250));
+        assertEquals(1, set.size());
+    }
+
+}
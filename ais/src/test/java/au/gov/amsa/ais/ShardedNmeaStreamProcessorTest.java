@@ -0,0 +1,160 @@
+package au.gov.amsa.ais;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import au.gov.amsa.util.nmea.NmeaUtil;
+
+public class ShardedNmeaStreamProcessorTest {
+
+    @Test
+    public void testRoutingKeyIsTagBlockSource() {
+        assertEquals("rEV02", ShardedNmeaStreamProcessor.routingKey("feed",
+                "\\s:rEV02,c:1334337326*5A\\!AIVDM,1,1,,B,18JSad001i5gcaArTICimQTT068t,0*4A"));
+    }
+
+    @Test
+    public void testRoutingKeyIsTagBlockSourceWhenLastTag() {
+        assertEquals("MSQ - Mt Cootha", ShardedNmeaStreamProcessor.routingKey("feed",
+                "\\c:1426803365,s:MSQ - Mt Cootha*73\\!AIVDM,1,1,,A,B7P?n900Irg8IHL4RblF?wRToP06,0*1B"));
+    }
+
+    @Test
+    public void testRoutingKeyIsFeedWhenNoSource() {
+        assertEquals("feed", ShardedNmeaStreamProcessor.routingKey("feed",
+                "\\c:1334337326*5A\\!AIVDM,1,1,,B,18JSad001i5gcaArTICimQTT068t,0*4A"));
+        assertEquals("feed", ShardedNmeaStreamProcessor.routingKey("feed",
+                "!AIVDM,1,1,,A,144gjIP0085KKPQHMPjT81Sb1PSL,0*22"));
+        assertNull(ShardedNmeaStreamProcessor.routingKey(null,
+                "!AIVDM,1,1,,A,144gjIP0085KKPQHMPjT81Sb1PSL,0*22"));
+    }
+
+    @Test
+    public void testShardKeyIsFeedThenGroupIdThenSource() {
+        String first = "\\g:1-2-1130,s:rEV02,c:1334278696*hh\\!BSVDM,2,1,0,A,55DSBL02,0*0B";
+        String second = "\\g:2-2-1130*5E\\!BSVDM,2,2,0,A,00000000002,0*3D";
+        assertEquals("feed", ShardedNmeaStreamProcessor.shardKey("feed", first));
+        assertEquals("feed", ShardedNmeaStreamProcessor.shardKey("feed", second));
+        assertEquals("g:1130", ShardedNmeaStreamProcessor.shardKey(null, first));
+        assertEquals("g:1130", ShardedNmeaStreamProcessor.shardKey(null, second));
+        assertEquals("rEV02", ShardedNmeaStreamProcessor.shardKey(null,
+                "\\s:rEV02,c:1334337326*5A\\!AIVDM,1,1,,B,18JSad001i5gcaArTICimQTT068t,0*4A"));
+        assertNull(ShardedNmeaStreamProcessor.shardKey(null,
+                "!AIVDM,1,1,,A,144gjIP0085KKPQHMPjT81Sb1PSL,0*22"));
+    }
+
+    @Test
+    public void testGroupedFragmentsAreJoinedAcrossShardsWithoutFeed()
+            throws InterruptedException {
+        checkGroupedFragmentsAreJoinedAcrossShards(null);
+    }
+
+    @Test
+    public void testGroupedFragmentsAreJoinedAcrossShardsWithFeed() throws InterruptedException {
+        checkGroupedFragmentsAreJoinedAcrossShards("feed");
+    }
+
+    private static void checkGroupedFragmentsAreJoinedAcrossShards(String feed)
+            throws InterruptedException {
+        final List<String> lines = new CopyOnWriteArrayList<String>();
+        NmeaStreamProcessorListener listener = new NmeaStreamProcessorListener() {
+
+            @Override
+            public void message(String line, long time) {
+                lines.add(line);
+            }
+
+            @Override
+            public void timestampNotFound(String line, Long arrivalTime) {
+            }
+
+            @Override
+            public void invalidNmea(String line, long arrivalTime, String message) {
+            }
+        };
+        ShardedNmeaStreamProcessor p = new ShardedNmeaStreamProcessor(listener, false, 8);
+        // only the first fragment has the source so sources that hash to
+        // different shards would separate the fragments if routed by source
+        int messages = 26;
+        for (int i = 0; i < messages; i++) {
+            String tags = "g:1-2-" + (1000 + i) + ",s:" + (char) ('a' + i) + ",c:1334278696";
+            p.line(feed, "\\" + tags + "*" + NmeaUtil.getChecksum(tags)
+                    + "\\!BSVDM,2,1,0,A,55DSBL02<Dm7<I`OP005<T4r0hTiT00000000016=hJ<855f?>kV`54Qh000,0*0B");
+            String tags2 = "g:2-2-" + (1000 + i);
+            p.line(feed, "\\" + tags2 + "*" + NmeaUtil.getChecksum(tags2)
+                    + "\\!BSVDM,2,2,0,A,00000000002,0*3D");
+        }
+        p.close();
+        assertTrue(p.awaitTermination(10, TimeUnit.SECONDS));
+        assertEquals(messages, lines.size());
+        for (String line : lines)
+            assertTrue(line, line.startsWith("\\g:1-1-")
+                    && line.endsWith("Qh00000000000002,0*3A"));
+    }
+
+    @Test
+    public void testLinesFromAllShardsAreReportedToListener() throws InterruptedException {
+        final List<String> lines = new CopyOnWriteArrayList<String>();
+        NmeaStreamProcessorListener listener = new NmeaStreamProcessorListener() {
+
+            @Override
+            public void message(String line, long time) {
+                lines.add(line);
+            }
+
+            @Override
+            public void timestampNotFound(String line, Long arrivalTime) {
+            }
+
+            @Override
+            public void invalidNmea(String line, long arrivalTime, String message) {
+            }
+        };
+        ShardedNmeaStreamProcessor p = new ShardedNmeaStreamProcessor(listener, false, 4);
+        for (int i = 0; i < 100; i++) {
+            p.line("feed" + i, "!AIVDM,1,1,,A,144gjIP0085KKPQHMPjT81Sb1PSL,0*22");
+        }
+        p.close();
+        assertTrue(p.awaitTermination(10, TimeUnit.SECONDS));
+        assertEquals(100, lines.size());
+        long total = 0;
+        for (int i = 0; i < p.numShards(); i++) {
+            assertEquals(0, p.queueDepth(i));
+            assertEquals(0, p.lagMs(i));
+            total += p.processedCount(i);
+        }
+        assertEquals(100, total);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testLineAfterCloseThrows() throws InterruptedException {
+        NmeaStreamProcessorListener listener = new NmeaStreamProcessorListener() {
+
+            @Override
+            public void message(String line, long time) {
+            }
+
+            @Override
+            public void timestampNotFound(String line, Long arrivalTime) {
+            }
+
+            @Override
+            public void invalidNmea(String line, long arrivalTime, String message) {
+            }
+        };
+        ShardedNmeaStreamProcessor p = new ShardedNmeaStreamProcessor(listener, false, 2);
+        p.close();
+        // closing twice is harmless
+        p.close();
+        assertTrue(p.awaitTermination(10, TimeUnit.SECONDS));
+        p.line("feed", "!AIVDM,1,1,,A,144gjIP0085KKPQHMPjT81Sb1PSL,0*22", 0);
+    }
+
+}
@@ -0,0 +1,166 @@
+package au.gov.amsa.ais.message;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import au.gov.amsa.ais.AisMessage;
+import au.gov.amsa.ais.AisMessageParser;
+import au.gov.amsa.ais.AisParseException;
+import au.gov.amsa.ais.rx.Streams;
+import au.gov.amsa.risky.format.AisClass;
+import au.gov.amsa.risky.format.Fix;
+import au.gov.amsa.util.nmea.NmeaUtil;
+import rx.Observable;
+
+public class AisPositionReportTest {
+
+    private static final double PRECISION = 0.00001;
+
+    @Test
+    public void testClassAMatchesAisPositionA() {
+        String payload = "15MgK45P3@G?fl0E`JbR0OwT0@MS";
+        AisPositionA p = new AisPositionA(payload, 0);
+        AisPositionReport r = AisPositionReport.from(payload, 0);
+        assertEquals(p.getMessageId(), r.messageId());
+        assertEquals(p.getMmsi(), r.mmsiInt());
+        assertTrue(r.isClassA());
+        assertEquals(p.getLatitude(), r.latOrNaN(), PRECISION);
+        assertEquals(p.getLongitude(), r.lonOrNaN(), PRECISION);
+        assertEquals(p.getSpeedOverGroundKnots(), r.sogOrNaN(), PRECISION);
+        assertEquals(p.getCourseOverGround(), r.cogOrNaN(), PRECISION);
+        assertEquals(p.getTrueHeading() == null, !r.hasHeading());
+        assertEquals(p.getNavigationalStatus().ordinal(), r.navigationalStatusOrMinusOne());
+        assertEquals(p.getTimeSecondsOnly(), r.secondOrMinusOne());
+        assertEquals(p.isHighAccuracyPosition(), r.isHighAccuracyPosition());
+    }
+
+    @Test
+    public void testClassBMatchesAisPositionB() {
+        String payload = "B7P@fj00RJVpbIuUhlF93wm5WP06";
+        AisPositionB p = new AisPositionB(payload, 0);
+        AisPositionReport r = AisPositionReport.from(payload, 0);
+        assertEquals(p.getMmsi(), r.mmsiInt());
+        assertFalse(r.isClassA());
+        assertEquals(p.getLatitude(), r.latOrNaN(), PRECISION);
+        assertEquals(p.getLongitude(), r.lonOrNaN(), PRECISION);
+        assertEquals(p.getSpeedOverGroundKnots() == null, !r.hasSog());
+        assertEquals(-1, r.navigationalStatusOrMinusOne());
+    }
+
+    @Test
+    public void testReportIsAvailableFromPositionMessages() {
+        AisPositionA a = new AisPositionA("15MgK45P3@G?fl0E`JbR0OwT0@MS", 0);
+        assertSame(a.report(), a.report());
+        assertEquals(a.getMmsi(), a.report().mmsiInt());
+        assertEquals(a.getLatitude(), a.report().latOrNaN(), PRECISION);
+        AisPositionB b = new AisPositionB("B7P@fj00RJVpbIuUhlF93wm5WP06", 0);
+        assertEquals(b.getMmsi(), b.report().mmsiInt());
+        assertEquals(b.getLongitude(), b.report().lonOrNaN(), PRECISION);
+    }
+
+    @Test
+    public void testBaseStationMatchesAisBaseStation() {
+        String payload = "403OviQuMGCqWrRO9>E6fE700@GO";
+        AisBaseStation b = new AisBaseStation(payload, 0);
+        AisPositionReport r = AisPositionReport.from(payload, 0);
+        assertEquals(b.getMmsi(), r.mmsiInt());
+        assertEquals(b.getLatitude(), r.latOrNaN(), PRECISION);
+        assertEquals(b.getLongitude(), r.lonOrNaN(), PRECISION);
+        assertFalse(r.hasSog());
+        assertFalse(r.hasCog());
+        assertFalse(r.hasHeading());
+    }
+
+    @Test
+    public void testLongRange() {
+        AisPositionReport r = AisPositionReport.from(LONG_RANGE, 0);
+        assertEquals(27, r.messageId());
+        assertEquals(123456789, r.mmsiInt());
+        assertTrue(r.isClassA());
+        assertEquals(-33.85, r.latOrNaN(), PRECISION);
+        assertEquals(151.2, r.lonOrNaN(), PRECISION);
+        assertEquals(12, r.sogOrNaN(), PRECISION);
+        assertEquals(45, r.cogOrNaN(), PRECISION);
+        assertEquals(5, r.navigationalStatusOrMinusOne());
+        assertTrue(r.isHighAccuracyPosition());
+        assertFalse(r.hasHeading());
+        assertEquals(-1, r.secondOrMinusOne());
+    }
+
+    @Test
+    public void testParserDecodesLongRangeAndUtcResponse() {
+        AisMessageParser parser = new AisMessageParser();
+        AisMessage m = parser.parse(LONG_RANGE, 0);
+        assertTrue(m instanceof AisPositionLongRange);
+        AisPositionLongRange p = (AisPositionLongRange) m;
+        assertEquals(NavigationalStatus.MOORED, p.getNavigationalStatus());
+        assertEquals(-33.85, p.getLatitude(), PRECISION);
+        assertEquals(null, p.getTrueHeading());
+        assertTrue(p.isGnssPositionCurrent());
+        // type 11 has the same layout as type 4
+        String utcResponse = ";" + "403OviQuMGCqWrRO9>E6fE700@GO".substring(1);
+        assertTrue(parser.parse(utcResponse, 0) instanceof AisBaseStation);
+        assertEquals(11, parser.parse(utcResponse, 0).getMessageId());
+    }
+
+    @Test
+    public void testLongRangeIsUsableAsFix() {
+        String line = NmeaUtil.supplementWithTime("!AIVDM,1,1,,A," + LONG_RANGE + ",0*"
+                + NmeaUtil.getChecksum("!AIVDM,1,1,,A," + LONG_RANGE + ",0"), 1450000000000L);
+        List<Fix> fixes = Streams.extractFixes(Observable.just(line)).toList().toBlocking()
+                .single();
+        assertEquals(1, fixes.size());
+        Fix fix = fixes.get(0);
+        assertEquals(123456789, fix.mmsi());
+        assertEquals(AisClass.A, fix.aisClass());
+        assertEquals(-33.85, fix.lat(), 0.0001);
+        assertEquals(12, fix.speedOverGroundKnots().get(), PRECISION);
+    }
+
+    @Test(expected = AisParseException.class)
+    public void testMessageWithoutPositionThrows() {
+        AisPositionReport.from(
+                "57PBtv01sb5IH`PR221LE986222222222222220l28?554000:kQEhhDm31H20DPSmD`880", 2);
+    }
+
+    private static final String LONG_RANGE = longRange();
+
+    /**
+     * Returns a type 27 payload for a moored vessel at -33.85, 151.2.
+     */
+    private static String longRange() {
+        StringBuilder b = new StringBuilder();
+        bits(b, 27, 6);
+        bits(b, 0, 2);
+        bits(b, 123456789, 30);
+        // accuracy, raim
+        bits(b, 1, 1);
+        bits(b, 0, 1);
+        bits(b, 5, 4);
+        bits(b, Math.round(151.2 * 600), 18);
+        bits(b, Math.round(-33.85 * 600), 17);
+        bits(b, 12, 6);
+        bits(b, 45, 9);
+        // gnss current, spare
+        bits(b, 0, 1);
+        bits(b, 0, 1);
+        StringBuilder s = new StringBuilder();
+        for (int i = 0; i < b.length(); i += 6) {
+            int v = Integer.parseInt(b.substring(i, i + 6), 2);
+            s.append((char) (v < 40 ? v + 48 : v + 56));
+        }
+        return s.toString();
+    }
+
+    private static void bits(StringBuilder b, long value, int n) {
+        for (int i = n - 1; i >= 0; i--)
+            b.append(((value >> i) & 1) == 1 ? '1' : '0');
+    }
+
+}
@@ -0,0 +1,209 @@
+package au.gov.amsa.ais.rx;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import au.gov.amsa.ais.AisMessage;
+import au.gov.amsa.ais.Timestamped;
+import au.gov.amsa.risky.format.BinaryFixes;
+import au.gov.amsa.risky.format.BinaryFixesFormat;
+import au.gov.amsa.risky.format.Fix;
+import au.gov.amsa.util.nmea.NmeaMessage;
+import au.gov.amsa.util.nmea.NmeaUtil;
+import rx.Observable;
+
+/**
+ * Throughput of each stage of the ingestion path (line split, NMEA parse,
+ * multi-sentence aggregation, AIS decode, Fix conversion, binary write and
+ * binary read) and of the whole chain, single threaded and in parallel.
+ *
+ * <p>
+ * Every benchmark processes the data derived from the same first
+ * {@value #LINES} lines of <code>ais.txt.gz</code> so scores (ops/s) are
+ * input lines per second and, with <code>-prof gc</code>,
+ * <code>gc.alloc.rate.norm</code> is bytes allocated per input line. The
+ * stages are therefore directly comparable and roughly add up to the whole
+ * chain. Run with <code>mvn install -P benchmark</code> which writes the
+ * results as JSON to <code>target/jmh-&lt;version&gt;.json</code>.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class BenchmarksIngestion {
+
+	private static final int LINES = 40000;
+	private static final long START_TIME = 1450000000000L;
+
+	private byte[] bytes;
+	private List<String> lines;
+	private List<NmeaMessage> nmea;
+	private List<NmeaMessage> aggregated;
+	private List<Timestamped<AisMessage>> messages;
+	private List<Fix> fixes;
+	private ByteBuffer binary;
+	private File binaryFile;
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		// the sample has no tag blocks so add arrival times as the saver would
+		// (messages without a time are not decoded)
+		lines = Streams.nmeaFromGzip(new File("src/test/resources/ais.txt.gz"))
+				.filter(line -> !line.isEmpty()).take(LINES)
+				.map(line -> NmeaUtil.spliceArrivalTime(line, START_TIME)).toList()
+				.toBlocking().single();
+		if (lines.size() != LINES)
+			throw new IllegalStateException("expected " + LINES + " lines");
+		StringBuilder s = new StringBuilder();
+		for (String line : lines)
+			s.append(line).append('\n');
+		bytes = s.toString().getBytes(StandardCharsets.UTF_8);
+		nmea = Observable.from(lines).map(Streams.LINE_TO_NMEA_MESSAGE)
+				.compose(Streams.<NmeaMessage> valueIfPresent()).toList().toBlocking()
+				.single();
+		aggregated = Observable.from(nmea)
+				.compose(Streams.aggregateMultiLineNmea(Streams.BUFFER_SIZE)).toList()
+				.toBlocking().single();
+		messages = Observable.from(aggregated).map(Streams.TO_AIS_MESSAGE)
+				.compose(Streams.<Timestamped<AisMessage>> valueIfPresent()).toList()
+				.toBlocking().single();
+		fixes = Observable.from(messages).flatMap(Streams.TO_FIX, 1).toList().toBlocking()
+				.single();
+		int recordSize = BinaryFixes.recordSize(BinaryFixesFormat.WITH_MMSI);
+		binary = ByteBuffer.allocate(recordSize * fixes.size());
+		binaryFile = File.createTempFile("benchmark", ".track");
+		try (OutputStream os = new FileOutputStream(binaryFile)) {
+			for (Fix fix : fixes)
+				BinaryFixes.write(fix, os, BinaryFixesFormat.WITH_MMSI);
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		binaryFile.delete();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(LINES)
+	public int lineSplit() {
+		return Streams.nmeaFrom(new ByteArrayInputStream(bytes)).count().toBlocking()
+				.single();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(LINES)
+	public int nmeaParse() {
+		int count = 0;
+		for (String line : lines)
+			if (Streams.LINE_TO_NMEA_MESSAGE.call(line).isPresent())
+				count++;
+		return count;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(LINES)
+	public int multiSentenceAggregation() {
+		return Observable.from(nmea)
+				.compose(Streams.aggregateMultiLineNmea(Streams.BUFFER_SIZE)).count()
+				.toBlocking().single();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(LINES)
+	public int aisDecode() {
+		int count = 0;
+		for (NmeaMessage n : aggregated)
+			if (Streams.TO_AIS_MESSAGE.call(n).isPresent())
+				count++;
+		return count;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(LINES)
+	public int fixConversion() {
+		return Observable.from(messages).flatMap(Streams.TO_FIX, 1).count().toBlocking()
+				.single();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(LINES)
+	public int binaryWrite() {
+		binary.clear();
+		for (Fix fix : fixes)
+			BinaryFixes.write(fix, binary, BinaryFixesFormat.WITH_MMSI);
+		return binary.position();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(LINES)
+	public int binaryRead() {
+		return BinaryFixes.from(binaryFile, false, BinaryFixesFormat.WITH_MMSI).count()
+				.toBlocking().single();
+	}
+
+	/**
+	 * Bytes to fixes written in binary form, sequentially when the
+	 * parallelism is 1 otherwise with the parallel parse and decode stages.
+	 */
+	@Benchmark
+	@OperationsPerInvocation(LINES)
+	public int wholeChain(Parallelism p) {
+		int parallelism = p.value;
+		Observable<String> raw = Streams.nmeaFrom(new ByteArrayInputStream(bytes));
+		final Observable<Timestamped<AisMessage>> decoded;
+		if (parallelism == 1)
+			decoded = Streams.extractMessages(raw);
+		else
+			decoded = Streams.extractMessages(raw, parallelism, 256);
+		ByteBuffer bb = ByteBuffer.allocate(BinaryFixes.recordSize(BinaryFixesFormat.WITH_MMSI));
+		return decoded.flatMap(Streams.TO_FIX, 1).doOnNext(fix -> {
+			bb.clear();
+			BinaryFixes.write(fix, bb, BinaryFixesFormat.WITH_MMSI);
+		}).count().toBlocking().single();
+	}
+
+	/**
+	 * Lines to decoded messages, the part of {@link #wholeChain(Parallelism)}
+	 * that the parallelism applies to.
+	 */
+	@Benchmark
+	@OperationsPerInvocation(LINES)
+	public int linesToMessages(Parallelism p) {
+		int parallelism = p.value;
+		Observable<String> raw = Observable.from(lines);
+		if (parallelism == 1)
+			return Streams.extractMessages(raw).count().toBlocking().single();
+		else
+			return Streams.extractMessages(raw, parallelism, 256).count().toBlocking().single();
+	}
+
+	/**
+	 * Number of batches parsed and decoded concurrently in the chain
+	 * benchmarks (1 uses the sequential path). In its own state so that the
+	 * stage benchmarks are not run once per value.
+	 */
+	@State(Scope.Benchmark)
+	public static class Parallelism {
+		@Param({ "1", "4" })
+		public int value;
+	}
+
+}
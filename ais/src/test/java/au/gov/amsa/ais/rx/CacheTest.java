@@ -0,0 +1,104 @@
+package au.gov.amsa.ais.rx;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class CacheTest {
+
+	@Test
+	public void testGetUsesFactoryOncePerKey() {
+		final AtomicInteger calls = new AtomicInteger();
+		Cache<Integer, String> cache = new Cache<Integer, String>(n -> {
+			calls.incrementAndGet();
+			return "v" + n;
+		});
+		assertEquals("v1", cache.get(1));
+		assertEquals("v1", cache.get(1));
+		assertEquals("v2", cache.get(2));
+		assertEquals(2, calls.get());
+		assertEquals(1, cache.stats().hitCount());
+		assertEquals(2, cache.stats().missCount());
+	}
+
+	@Test
+	public void testPutOverridesFactory() {
+		Cache<Integer, String> cache = new Cache<Integer, String>(n -> "v" + n).put(1, "a");
+		assertEquals("a", cache.get(1));
+	}
+
+	@Test
+	public void testFactoryMayReturnNull() {
+		Cache<Integer, String> cache = new Cache<Integer, String>(n -> null);
+		assertNull(cache.get(1));
+	}
+
+	@Test
+	public void testNullIsNotCached() {
+		final AtomicInteger calls = new AtomicInteger();
+		Cache<Integer, String> cache = new Cache<Integer, String>(n -> {
+			return calls.incrementAndGet() == 1 ? null : "v" + n;
+		});
+		assertNull(cache.get(1));
+		assertEquals("v1", cache.get(1));
+		assertEquals(2, calls.get());
+	}
+
+	@Test
+	public void testPutNullRemovesValue() {
+		Cache<Integer, String> cache = new Cache<Integer, String>(n -> "v" + n).put(1, "a");
+		assertEquals("a", cache.get(1));
+		cache.put(1, null);
+		assertEquals("v1", cache.get(1));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testFactoryExceptionIsRethrown() {
+		new Cache<Integer, String>(n -> {
+			throw new IllegalStateException();
+		}).get(1);
+	}
+
+	@Test
+	public void testSizeBoundEvicts() {
+		Cache<Integer, String> cache = new Cache<Integer, String>(n -> "v" + n, 10, -1);
+		for (int i = 0; i < 100; i++)
+			cache.get(i);
+		assertEquals(10, cache.size());
+		assertEquals(90, cache.stats().evictionCount());
+	}
+
+	@Test
+	public void testSlowLoadDoesNotBlockOtherKeys() throws InterruptedException {
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final Cache<Integer, String> cache = new Cache<Integer, String>(n -> {
+			if (n == 1)
+				try {
+					started.countDown();
+					release.await(10, TimeUnit.SECONDS);
+				} catch (InterruptedException e) {
+					throw new RuntimeException(e);
+				}
+			return "v" + n;
+		});
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		executor.execute(() -> cache.get(1));
+		assertTrue(started.await(10, TimeUnit.SECONDS));
+		// key 1 is still loading
+		assertEquals("v2", cache.get(2));
+		release.countDown();
+		executor.shutdown();
+		executor.awaitTermination(10, TimeUnit.SECONDS);
+		assertEquals("v1", cache.get(1));
+	}
+
+}
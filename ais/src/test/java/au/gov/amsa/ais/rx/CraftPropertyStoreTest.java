@@ -0,0 +1,93 @@
+package au.gov.amsa.ais.rx;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.File;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.google.common.base.Optional;
+
+public class CraftPropertyStoreTest {
+
+	private static final long MMSI = 1234;
+
+	@Test
+	public void testValueAtReturnsLatestChangeAtOrBeforeTime() {
+		CraftPropertyStore store = new CraftPropertyStore();
+		store.add(MMSI, CraftPropertyName.NAME, "a", 10);
+		store.add(MMSI, CraftPropertyName.NAME, "b", 20);
+		assertFalse(store.valueAt(MMSI, CraftPropertyName.NAME, 9).isPresent());
+		assertEquals("a", store.valueAt(MMSI, CraftPropertyName.NAME, 10).get());
+		assertEquals("a", store.valueAt(MMSI, CraftPropertyName.NAME, 19).get());
+		assertEquals("b", store.valueAt(MMSI, CraftPropertyName.NAME, 20).get());
+		assertEquals("b", store.valueAt(MMSI, CraftPropertyName.NAME, 1000).get());
+		assertFalse(store.valueAt(MMSI, CraftPropertyName.CALLSIGN, 20).isPresent());
+		assertFalse(store.valueAt(MMSI + 1, CraftPropertyName.NAME, 20).isPresent());
+	}
+
+	@Test
+	public void testAddMatchesCraftProperties() {
+		// same sequence of updates applied to both in odd orders
+		long[] times = { 5, 1, 3, 3, 8, 2, 7, 7, 0, 9 };
+		String[] values = { "a", "a", "b", "c", "a", "b", "a", "b", "b", "c" };
+		CraftPropertyStore store = new CraftPropertyStore();
+		CraftProperties c = new CraftProperties(new Mmsi(MMSI));
+		for (int i = 0; i < times.length; i++) {
+			CraftProperty p = new CraftProperty(new Mmsi(MMSI), CraftPropertyName.NAME,
+					values[i], times[i]);
+			store.add(p);
+			c = c.add(p);
+		}
+		TreeMap<Long, String> expected = c.getMap().get(CraftPropertyName.NAME);
+		assertEquals(expected,
+				store.get(new Mmsi(MMSI)).get().getMap().get(CraftPropertyName.NAME));
+	}
+
+	@Test
+	public void testSnapshotAndRestore() throws Exception {
+		CraftPropertyStore store = new CraftPropertyStore();
+		for (long mmsi = 1; mmsi <= 1000; mmsi++) {
+			store.add(mmsi, CraftPropertyName.DESTINATION, "SYDNEY", 100);
+			store.add(mmsi, CraftPropertyName.DESTINATION, "BRISBANE", 200);
+			store.add(mmsi, CraftPropertyName.NAME, "SHIP " + mmsi, 100);
+		}
+		assertEquals(1002, store.dictionarySize());
+		File file = new File("target/craft-properties.bin");
+		store.snapshot(file);
+		CraftPropertyStore restored = CraftPropertyStore.restore(file);
+		assertEquals(1000, restored.size());
+		assertEquals(1002, restored.dictionarySize());
+		assertEquals(Optional.of("SYDNEY"),
+				restored.valueAt(500, CraftPropertyName.DESTINATION, 150));
+		assertEquals(Optional.of("BRISBANE"),
+				restored.valueAt(500, CraftPropertyName.DESTINATION, 250));
+		assertEquals(Optional.of("SHIP 500"), restored.valueAt(500, CraftPropertyName.NAME, 250));
+		// restored store can still be updated with existing dictionary values
+		restored.add(500, CraftPropertyName.DESTINATION, "SYDNEY", 300);
+		assertEquals(1002, restored.dictionarySize());
+	}
+
+	@Test
+	public void testConcurrentUpdates() throws InterruptedException {
+		final CraftPropertyStore store = new CraftPropertyStore(4);
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		for (int t = 0; t < 4; t++) {
+			final int thread = t;
+			executor.execute(() -> {
+				for (long i = 0; i < 10000; i++)
+					store.add(i % 100, CraftPropertyName.NAME, "n" + (i % 7), i * 4 + thread);
+			});
+		}
+		executor.shutdown();
+		executor.awaitTermination(30, TimeUnit.SECONDS);
+		assertEquals(100, store.size());
+		assertEquals(7, store.dictionarySize());
+	}
+
+}
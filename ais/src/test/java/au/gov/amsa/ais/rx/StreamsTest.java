@@ -9,6 +9,7 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.Charset;
+import java.util.List;
 
 import org.apache.commons.io.FileUtils;
 import org.junit.Test;
@@ -16,6 +17,7 @@ import org.junit.Test;
 import com.google.common.base.Optional;
 
 import au.gov.amsa.ais.AisMessage;
+import au.gov.amsa.ais.NmeaPayloadDeduplicator;
 import au.gov.amsa.ais.message.AisShipStaticA;
 import au.gov.amsa.ais.rx.Streams.TimestampedAndLine;
 import au.gov.amsa.risky.format.AisClass;
@@ -25,6 +27,8 @@ import au.gov.amsa.risky.format.BinaryFixesWriter;
 import au.gov.amsa.risky.format.BinaryFixesWriter.ByMonth;
 import au.gov.amsa.risky.format.Fix;
 import au.gov.amsa.risky.format.NavigationalStatus;
+import au.gov.amsa.streams.HostPort;
+import au.gov.amsa.streams.LineAndSource;
 import rx.Observable;
 
 public class StreamsTest {
@@ -110,6 +114,16 @@ public class StreamsTest {
                         .toBlocking().single());
     }
 
+    @Test
+    public void testParallelExtractMessagesMatchesSequential() {
+        File file = new File("src/test/resources/nmea-timestamped.txt");
+        List<String> expected = Streams.extractMessages(Streams.nmeaFrom(file))
+                .map(m -> m.time() + m.message().toString()).toList().toBlocking().single();
+        List<String> actual = Streams.extractMessages(Streams.nmeaFrom(file), 4, 7)
+                .map(m -> m.time() + m.message().toString()).toList().toBlocking().single();
+        assertEquals(expected, actual);
+    }
+
     @Test
     public void testExtractFixFromAisPositionB() throws IOException {
         InputStream is = new ByteArrayInputStream(
@@ -158,4 +172,19 @@ public class StreamsTest {
     public static void main(String[] args) {
         System.out.println((byte) 128);
     }
+
+    @Test
+    public void testDeduplicateBySourceCountsAgainstFeed() {
+        String line = "!AIVDM,1,1,,A,144gjIP0085KKPQHMPjT81Sb1PSL,0*22";
+        HostPort terrestrial = HostPort.create("terrestrial", 9010, 1000, 1000);
+        HostPort partner = HostPort.create("partner", 9010, 1000, 1000);
+        NmeaPayloadDeduplicator d = new NmeaPayloadDeduplicator(60000);
+        List<LineAndSource> list = Observable
+                .just(new LineAndSource(line, terrestrial), new LineAndSource(line, partner))
+                .compose(Streams.deduplicateBySource(d)).toList().toBlocking().single();
+        assertEquals(1, list.size());
+        assertEquals(terrestrial, list.get(0).source());
+        assertEquals(1L, (long) d.duplicatesBySource().get("partner:9010"));
+    }
+
 }
@@ -0,0 +1,173 @@
+package au.gov.amsa.ais.rx;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import au.gov.amsa.ais.Timestamped;
+import au.gov.amsa.ais.message.AisPositionA;
+import au.gov.amsa.ais.message.AisShipStaticA;
+import au.gov.amsa.risky.format.AisClass;
+import au.gov.amsa.risky.format.FixImpl;
+import au.gov.amsa.risky.format.NavigationalStatus;
+
+import com.google.common.base.Optional;
+
+public class VesselStateStoreTest {
+
+	private static final double PRECISION = 0.00001;
+
+	@Test
+	public void testPositionFromMessage() {
+		VesselStateStore store = new VesselStateStore();
+		AisPositionA p = new AisPositionA("15MgK45P3@G?fl0E`JbR0OwT0@MS", 0);
+		assertTrue(store.update(Timestamped.create(p, 1000)));
+		assertEquals(1, store.size());
+		VesselState s = store.get(p.getMmsi()).get();
+		assertEquals(p.getMmsi(), s.mmsi());
+		assertEquals(1000, s.positionTime());
+		assertEquals(p.getLatitude(), s.latOrNaN(), PRECISION);
+		assertEquals(p.getLongitude(), s.lonOrNaN(), PRECISION);
+		assertEquals(p.getSpeedOverGroundKnots(), s.sogOrNaN(), PRECISION);
+		assertEquals(p.getCourseOverGround(), s.cogOrNaN(), PRECISION);
+		assertEquals(p.getNavigationalStatus().ordinal(), s.navigationalStatusOrMinusOne());
+		assertEquals(AisClass.A, s.aisClassOrNull());
+		assertEquals(-1, s.shipTypeOrMinusOne());
+		assertEquals(Long.MIN_VALUE, s.staticTime());
+		assertEquals(1, s.version());
+	}
+
+	@Test
+	public void testStaticDataAndPositionAreMerged() {
+		VesselStateStore store = new VesselStateStore();
+		AisShipStaticA m = new AisShipStaticA(
+				"57PBtv01sb5IH`PR221LE986222222222222220l28?554000:kQEhhDm31H20DPSmD`880",
+				null, 2);
+		assertTrue(store.update(Timestamped.create(m, 500)));
+		VesselState s = store.get(m.getMmsi()).get();
+		assertFalse(s.hasPosition());
+		assertEquals(m.getShipType(), s.shipTypeOrMinusOne());
+		assertEquals((int) m.getLengthMetres().get(), s.lengthMetresOrMinusOne());
+		assertEquals((int) m.getDimensionC().get(), s.dimensionCOrMinusOne());
+
+		store.update(fix(m.getMmsi(), -35, 150, 1000));
+		store.get(m.getMmsi(), s);
+		assertEquals(-35, s.latOrNaN(), PRECISION);
+		assertEquals(m.getShipType(), s.shipTypeOrMinusOne());
+		assertEquals(2, s.version());
+	}
+
+	@Test
+	public void testOlderPositionIsIgnored() {
+		VesselStateStore store = new VesselStateStore();
+		assertTrue(store.update(fix(123, -35, 150, 2000)));
+		assertFalse(store.update(fix(123, -36, 151, 1000)));
+		VesselState s = store.get(123).get();
+		assertEquals(-35, s.latOrNaN(), PRECISION);
+		assertEquals(2000, s.positionTime());
+		assertEquals(1, store.version(123));
+		assertEquals(-1, store.version(456));
+		assertFalse(store.get(456).isPresent());
+		assertFalse(store.get(0).isPresent());
+	}
+
+	@Test
+	public void testFixFields() {
+		VesselStateStore store = new VesselStateStore();
+		store.update(new FixImpl(123, -35f, 150f, 1000, Optional.<Integer> absent(),
+				Optional.<Short> absent(), Optional.of(NavigationalStatus.MOORED),
+				Optional.of(3.5f), Optional.<Float> absent(), Optional.of(270f), AisClass.B));
+		VesselState s = store.get(123).get();
+		assertEquals(3.5, s.sogOrNaN(), PRECISION);
+		assertTrue(Double.isNaN(s.cogOrNaN()));
+		assertEquals(270, s.headingOrMinusOne());
+		assertEquals(NavigationalStatus.MOORED.ordinal(), s.navigationalStatusOrMinusOne());
+		assertEquals(AisClass.B, s.aisClassOrNull());
+	}
+
+	@Test
+	public void testManyVesselsAndIteration() {
+		VesselStateStore store = new VesselStateStore();
+		int n = 10000;
+		for (int i = 1; i <= n; i++)
+			store.update(fix(i, -80 + i % 160, -170 + i % 340, i));
+		assertEquals(n, store.size());
+		Set<Integer> seen = new HashSet<>();
+		Iterator<VesselState> it = store.iterator();
+		while (it.hasNext()) {
+			VesselState s = it.next();
+			assertEquals(s.positionTime(), s.mmsi());
+			seen.add(s.mmsi());
+		}
+		assertEquals(n, seen.size());
+		for (int i = 1; i <= n; i += 997)
+			assertEquals(-80 + i % 160, store.get(i).get().latOrNaN(), PRECISION);
+	}
+
+	@Test
+	public void testWithin() {
+		VesselStateStore store = new VesselStateStore();
+		store.update(fix(1, -35, 150, 1));
+		store.update(fix(2, -35, 179.5f, 1));
+		store.update(fix(3, -35, -179.5f, 1));
+		store.update(fix(4, 10, 150, 1));
+		assertEquals(set(1), mmsis(store.within(-40, -30, 140, 160)));
+		assertEquals(set(2, 3), mmsis(store.within(-40, -30, 179, -179)));
+		assertEquals(set(1, 2, 3, 4), mmsis(store.iterator()));
+		assertEquals(set(), mmsis(store.within(20, 30, 140, 160)));
+	}
+
+	@Test
+	public void testConcurrentReadsSeeWholeUpdates() throws InterruptedException {
+		final VesselStateStore store = new VesselStateStore();
+		final AtomicBoolean finished = new AtomicBoolean();
+		final AtomicReference<String> error = new AtomicReference<>();
+		Thread reader = new Thread(() -> {
+			VesselState s = new VesselState();
+			while (!finished.get()) {
+				for (int mmsi = 1; mmsi <= 100; mmsi++)
+					if (store.get(mmsi, s)) {
+						// the writer always writes lat = lon / 2 = time % 80
+						if (s.lonOrNaN() != s.latOrNaN() * 2
+								|| s.latOrNaN() != s.positionTime() % 80)
+							error.set(s.toString());
+					}
+			}
+		});
+		reader.start();
+		for (int time = 0; time < 200000; time++) {
+			int lat = time % 80;
+			store.update(fix(time % 100 + 1, lat, lat * 2, time));
+		}
+		finished.set(true);
+		reader.join();
+		assertEquals(null, error.get());
+	}
+
+	private static FixImpl fix(int mmsi, float lat, float lon, long time) {
+		return new FixImpl(mmsi, lat, lon, time, AisClass.A);
+	}
+
+	private static Set<Integer> mmsis(Iterator<VesselState> it) {
+		Set<Integer> set = new HashSet<>();
+		while (it.hasNext())
+			set.add(it.next().mmsi());
+		return set;
+	}
+
+	private static Set<Integer> set(Integer... values) {
+		Set<Integer> set = new HashSet<>();
+		for (Integer value : values)
+			set.add(value);
+		return set;
+	}
+
+}
@@ -0,0 +1,63 @@
+package au.gov.amsa.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.Map;
+
+import org.junit.Test;
+
+import au.gov.amsa.util.nmea.NmeaMessageParser;
+
+public class StringInternerTest {
+
+	@Test
+	public void testReturnsCachedInstanceOnSecondCall() {
+		StringInterner interner = new StringInterner(16);
+		String a = new String("MEL");
+		String b = new String("MEL");
+		assertSame(a, interner.intern(a));
+		assertSame(a, interner.intern(b));
+		assertEquals(1, interner.hits());
+		assertEquals(1, interner.misses());
+		assertEquals(0.5, interner.hitRate(), 0.00001);
+	}
+
+	@Test
+	public void testCapacityRoundedUpToPowerOfTwo() {
+		assertEquals(16, new StringInterner(9).capacity());
+		assertEquals(8, new StringInterner(8).capacity());
+	}
+
+	@Test
+	public void testNullReturnsNull() {
+		assertNull(new StringInterner(4).intern(null));
+	}
+
+	@Test
+	public void testBoundedTableStillReturnsEqualStrings() {
+		StringInterner interner = new StringInterner(2);
+		for (int i = 0; i < 1000; i++) {
+			String s = "v" + (i % 37);
+			assertEquals(s, interner.intern(s));
+		}
+		assertEquals(2, interner.capacity());
+		assertEquals(1000, interner.hits() + interner.misses());
+	}
+
+	@Test
+	public void testHitRateZeroWhenUnused() {
+		assertEquals(0, new StringInterner(4).hitRate(), 0.00001);
+	}
+
+	@Test
+	public void testTagBlockSourceIsInterned() {
+		Map<String, String> tags1 = NmeaMessageParser
+				.extractTags("c:1234567890,s:MEL1*00");
+		Map<String, String> tags2 = NmeaMessageParser
+				.extractTags("c:1234567891,s:MEL1*00");
+		assertSame(tags1.get("s"), tags2.get("s"));
+	}
+
+}
@@ -200,4 +200,19 @@ public class NmeaUtilTest {
 				NmeaUtil.getChecksum("s:rEV02,d:1334337321,c:1234567"));
 	}
 
+	@Test
+	public void testSpliceArrivalTimeMatchesSupplementWithTime() {
+		String[] lines = {
+				"\\g:2-2-3987*58\\!BSVDM,2,2,0,A,lQ@@0000002,0*00",
+				"\\g:1-2-3987,s:rEV02*0C\\!BSVDM,2,1,0,A,55DSBL02<Dm7<I`OP005,0*00",
+				"\\s:rEV02,c:1334337322*5E\\!AIVDM,1,1,,B,14`980002?6UgpR1w0c8cG0L0Gww,0*58",
+				"$PGHP,1,2012,1,31,5,55,12,0,316,3,316999999,1AIS_S,18*7A",
+				"\\s:rEV02,d:1334337321*5A\\!AIVDM,1,1,,B,33:JeT0OjtVls<;fDlbl5CFH2000,0*71",
+				"\\s:rEV02*37\\!BSVDM,2,2,0,A,lQ@@0000002,0*00",
+				"!AIVDM,2,1,3,B,55P5TL01VIaAL@7WKO@mBplU@<PDhh000000001S;AJ::4A80?4i@E53,0*3E" };
+		for (String line : lines)
+			assertEquals(NmeaUtil.supplementWithTime(line, 1234567890),
+					NmeaUtil.spliceArrivalTime(line, 1234567890));
+	}
+
 }
@@ -0,0 +1,200 @@
+package au.gov.amsa.util.nmea.replay;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Test;
+
+import rx.observers.TestSubscriber;
+import rx.schedulers.Schedulers;
+
+public class NmeaReplayTest {
+
+	private static final File DIRECTORY = new File("target/replay");
+	private static final String PAYLOAD = "!AIVDM,1,1,,B,33:JeT0OjtVls<;fDlbl5CFH2000,0*71";
+
+	@Test
+	public void testTimeFromTagBlock() {
+		assertEquals(1234000, NmeaReplay.time("\\s:MEL,c:1234*00\\" + PAYLOAD));
+		assertEquals(1234567, NmeaReplay.time("\\c:1234,a:1234567*00\\" + PAYLOAD));
+		assertEquals(Long.MIN_VALUE, NmeaReplay.time("\\s:MEL*00\\" + PAYLOAD));
+		assertEquals(Long.MIN_VALUE, NmeaReplay.time(PAYLOAD));
+	}
+
+	@Test
+	public void testMergesFilesInTimeOrder() throws IOException {
+		File a = write("a.nmea", line(1), line(3), PAYLOAD, line(6));
+		File b = write("b.nmea.gz", PAYLOAD, line(2), line(4), line(5));
+		List<String> lines = NmeaReplay.files(a, b).speedUp(Double.POSITIVE_INFINITY).build()
+				.lines().toList().toBlocking().single();
+		// the untimed line in b before any timed line is dropped, the one in a
+		// takes the time of the line before it
+		assertEquals(Arrays.asList(line(1), line(2), line(3), PAYLOAD, line(4), line(5),
+				line(6)), lines);
+	}
+
+	@Test
+	public void testSpeedUpControlsRate() throws IOException {
+		File a = write("speed.nmea", line(0), line(1), line(2));
+		NmeaReplay replay = NmeaReplay.files(a).speedUp(10).build();
+		long start = System.currentTimeMillis();
+		assertEquals(3, (int) replay.lines().count().toBlocking().single());
+		long elapsed = System.currentTimeMillis() - start;
+		// 2 seconds of archive at 10x
+		assertTrue("elapsed=" + elapsed, elapsed >= 180 && elapsed < 2000);
+		assertEquals(2000, replay.currentTime());
+	}
+
+	@Test
+	public void testStartTimeSkipsEarlierLines() throws IOException {
+		File a = write("seek.nmea", line(1), line(2), line(3));
+		List<String> lines = NmeaReplay.files(a).speedUp(Double.POSITIVE_INFINITY)
+				.startTime(2000).build().lines().toList().toBlocking().single();
+		assertEquals(Arrays.asList(line(2), line(3)), lines);
+	}
+
+	@Test
+	public void testHighSpeedUpEmitsInBatches() throws IOException {
+		String[] lines = new String[100];
+		for (int i = 0; i < lines.length; i++)
+			lines[i] = line(i);
+		File a = write("batches.nmea", lines);
+		List<List<String>> batches = NmeaReplay.files(a).speedUp(Double.POSITIVE_INFINITY)
+				.maxBatchSize(30).build().batches().toList().toBlocking().single();
+		assertEquals(4, batches.size());
+		assertEquals(30, batches.get(0).size());
+		assertEquals(10, batches.get(3).size());
+	}
+
+	@Test
+	public void testBatchesAreOnlyEmittedWhenRequested() throws IOException {
+		String[] lines = new String[10];
+		for (int i = 0; i < lines.length; i++)
+			lines[i] = line(i);
+		File a = write("requests.nmea", lines);
+		TestSubscriber<List<String>> ts = TestSubscriber.create(0);
+		NmeaReplay.files(a).speedUp(Double.POSITIVE_INFINITY).maxBatchSize(1).build()
+				.batches().subscribe(ts);
+		ts.requestMore(2);
+		ts.awaitValueCount(2, 5, TimeUnit.SECONDS);
+		ts.awaitTerminalEvent(200, TimeUnit.MILLISECONDS);
+		ts.assertValueCount(2);
+		ts.assertNoTerminalEvent();
+		ts.requestMore(Long.MAX_VALUE);
+		ts.awaitTerminalEvent(5, TimeUnit.SECONDS);
+		ts.assertCompleted();
+		ts.assertValueCount(10);
+	}
+
+	@Test
+	public void testConsumingAtMaxSpeedThroughObserveOn() throws IOException {
+		// many more batches than the observeOn buffer
+		String[] lines = new String[10000];
+		for (int i = 0; i < lines.length; i++)
+			lines[i] = line(i);
+		File a = write("observeOn.nmea", lines);
+		TestSubscriber<String> ts = TestSubscriber.create();
+		NmeaReplay.files(a).speedUp(Double.POSITIVE_INFINITY).maxBatchSize(1).build().lines()
+				.observeOn(Schedulers.computation()).subscribe(ts);
+		ts.awaitTerminalEvent(30, TimeUnit.SECONDS);
+		ts.assertNoErrors();
+		ts.assertCompleted();
+		ts.assertValueCount(lines.length);
+	}
+
+	@Test
+	public void testPauseSeekAndResume() throws IOException {
+		File a = write("pause.nmea", line(0), line(1), line(2), line(100), line(101));
+		NmeaReplay replay = NmeaReplay.files(a).speedUp(1).build();
+		TestSubscriber<String> ts = TestSubscriber.create();
+		replay.lines().subscribe(ts);
+		ts.awaitValueCount(1, 5, TimeUnit.SECONDS);
+		replay.pause();
+		assertTrue(replay.isPaused());
+		// at 1x the next line would be due within a second
+		ts.awaitTerminalEvent(1500, TimeUnit.MILLISECONDS);
+		ts.assertNoTerminalEvent();
+		assertEquals(line(0), ts.getOnNextEvents().get(0));
+		assertTrue(ts.getOnNextEvents().size() <= 2);
+		replay.seek(100000);
+		replay.speedUp(Double.POSITIVE_INFINITY);
+		replay.resume();
+		ts.awaitTerminalEvent(5, TimeUnit.SECONDS);
+		ts.assertCompleted();
+		List<String> list = ts.getOnNextEvents();
+		assertEquals(line(101), list.get(list.size() - 1));
+		assertEquals(line(100), list.get(list.size() - 2));
+	}
+
+	@Test
+	public void testSlowingDownFromInfiniteSpeedContinuesFromLastLine() throws IOException {
+		File a = write("slowDown.nmea", line(0), line(1), line(2), line(100));
+		NmeaReplay replay = NmeaReplay.files(a).speedUp(Double.POSITIVE_INFINITY).maxBatchSize(1)
+				.build();
+		TestSubscriber<List<String>> ts = TestSubscriber.create(0);
+		replay.batches().subscribe(ts);
+		ts.requestMore(2);
+		ts.awaitValueCount(2, 5, TimeUnit.SECONDS);
+		replay.speedUp(1);
+		checkContinuesAtOneTimesSpeed(replay, ts);
+	}
+
+	@Test
+	public void testPauseAndResumeAtInfiniteSpeed() throws IOException {
+		File a = write("pauseInfinite.nmea", line(0), line(1), line(2), line(100));
+		NmeaReplay replay = NmeaReplay.files(a).speedUp(Double.POSITIVE_INFINITY).maxBatchSize(1)
+				.build();
+		TestSubscriber<List<String>> ts = TestSubscriber.create(0);
+		replay.batches().subscribe(ts);
+		ts.requestMore(2);
+		ts.awaitValueCount(2, 5, TimeUnit.SECONDS);
+		replay.pause();
+		replay.resume();
+		replay.speedUp(1);
+		checkContinuesAtOneTimesSpeed(replay, ts);
+	}
+
+	private static void checkContinuesAtOneTimesSpeed(NmeaReplay replay,
+			TestSubscriber<List<String>> ts) {
+		assertEquals(1000, replay.currentTime());
+		ts.requestMore(Long.MAX_VALUE);
+		// line(2) is due a second after line(1) and line(100) well after that
+		ts.awaitValueCount(3, 5, TimeUnit.SECONDS);
+		ts.awaitTerminalEvent(1000, TimeUnit.MILLISECONDS);
+		ts.assertNoTerminalEvent();
+		ts.assertValueCount(3);
+		assertEquals(2000, replay.currentTime());
+		ts.unsubscribe();
+	}
+
+	private static String line(long seconds) {
+		return "\\c:" + seconds + "*00\\" + PAYLOAD;
+	}
+
+	private static File write(String name, String... lines) throws IOException {
+		DIRECTORY.mkdirs();
+		File file = new File(DIRECTORY, name);
+		file.delete();
+		try (Writer w = new OutputStreamWriter(name.endsWith(".gz") ? new GZIPOutputStream(
+				new FileOutputStream(file)) : new FileOutputStream(file),
+				StandardCharsets.UTF_8)) {
+			for (String line : lines) {
+				w.write(line);
+				w.write('\n');
+			}
+		}
+		return file;
+	}
+
+}
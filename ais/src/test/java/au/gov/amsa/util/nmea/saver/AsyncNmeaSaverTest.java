@@ -0,0 +1,98 @@
+package au.gov.amsa.util.nmea.saver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+
+import au.gov.amsa.ais.rx.Streams;
+import rx.Observable;
+import rx.schedulers.Schedulers;
+
+public class AsyncNmeaSaverTest {
+
+	private static final String LINE = "\\s:rEV02,d:1334337321*5A\\!AIVDM,1,1,,B,33:JeT0OjtVls<;fDlbl5CFH2000,0*71";
+	private static final String AMENDED_LINE = "\\s:rEV02,d:1334337321,c:1234567,a:1234567890*69\\!AIVDM,1,1,,B,33:JeT0OjtVls<;fDlbl5CFH2000,0*71";
+
+	@Test
+	public void testSavingRollsSegmentsAndIndexesThem() throws Exception {
+		File directory = new File("target/async-saver");
+		FileUtils.deleteDirectory(directory);
+		Clock clock = new Clock() {
+			@Override
+			public long getTimeMs() {
+				return 1234567890;
+			}
+		};
+		AsyncNmeaSaver saver = AsyncNmeaSaver.source(Observable.just(LINE).repeat(100))
+				.directory(directory).batchSize(7).maxSegmentBytes(AMENDED_LINE.length() * 30)
+				.clock(clock).build();
+		saver.start(Schedulers.immediate());
+		saver.stop();
+		assertEquals(100, saver.linesWritten());
+
+		List<File> segments = AsyncNmeaSaver.segments(directory, 0, Long.MAX_VALUE);
+		assertEquals(4, segments.size());
+		int count = 0;
+		for (File segment : segments) {
+			// each line is terminated by a newline so ignore the empty string
+			// after the last one
+			for (String line : Streams.nmeaFromGzip(segment).filter(line -> !line.isEmpty())
+					.toList().toBlocking().single()) {
+				assertEquals(AMENDED_LINE, line);
+				count++;
+			}
+		}
+		assertEquals(100, count);
+		assertEquals(0, AsyncNmeaSaver.segments(directory, 0, 1234567890).size());
+		assertEquals(4,
+				AsyncNmeaSaver.segments(directory, 1234567890, 1234567891).size());
+		assertEquals(1, AsyncNmeaSaver
+				.segments(directory, 1234567891, TimeUnit.DAYS.toMillis(100)).size());
+	}
+
+	@Test
+	public void testMalformedLinesAreCountedAndNotSaved() throws Exception {
+		File directory = new File("target/async-saver-malformed");
+		FileUtils.deleteDirectory(directory);
+		AsyncNmeaSaver saver = AsyncNmeaSaver
+				.source(Observable.just(LINE, "\\s:rEV02!AIVDM,1,1,,B,33:JeT0OjtVls<;fDlbl5CFH2000,0*71"))
+				.directory(directory).build();
+		saver.start(Schedulers.immediate());
+		saver.stop();
+		assertEquals(1, saver.linesWritten());
+		assertEquals(1, saver.malformedLines());
+	}
+
+	@Test(timeout = 10000)
+	public void testWriteFailureUnsubscribesSourceAndIsThrownByStop() throws Exception {
+		// a file where the directory should be so segments cannot be opened
+		File directory = new File("target/async-saver-not-a-directory");
+		directory.delete();
+		assertTrue(directory.createNewFile());
+		AtomicBoolean unsubscribed = new AtomicBoolean();
+		Observable<String> source = Observable.just(LINE).repeat()
+				.doOnUnsubscribe(() -> unsubscribed.set(true));
+		AsyncNmeaSaver saver = AsyncNmeaSaver.source(source).directory(directory)
+				.queueSize(10).build();
+		saver.start(Schedulers.io());
+		while (!saver.error().isPresent() || !unsubscribed.get())
+			Thread.sleep(10);
+		try {
+			saver.stop();
+			fail();
+		} catch (IOException e) {
+			assertEquals(saver.error().get(), e);
+		}
+		assertEquals(0, saver.linesWritten());
+	}
+
+}
@@ -2,7 +2,10 @@ package au.gov.amsa.navigation;
 
 import java.io.File;
 import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import com.github.davidmoten.rx.Checked;
 import com.github.davidmoten.rx.Transformers;
@@ -16,6 +19,8 @@ import au.gov.amsa.ais.message.AisShipStaticA;
 import au.gov.amsa.ais.message.AisShipStaticUtil;
 import au.gov.amsa.ais.rx.Streams;
 import au.gov.amsa.ais.rx.Streams.TimestampedAndLine;
+import au.gov.amsa.navigation.ShipStaticData.Info;
+import au.gov.amsa.risky.format.AisClass;
 import rx.Observable;
 import rx.Scheduler;
 import rx.functions.Action1;
@@ -92,6 +97,118 @@ public final class ShipStaticDataCreator {
         return Observable.using(resourceFactory, observableFactory, disposeAction);
     }
 
+    /**
+     * Reads all the given gzipped NMEA files in parallel and writes the latest
+     * static data (by message time) for each MMSI to a
+     * {@link ShipStaticDataIndex} file. Lines that cannot contain static data
+     * are discarded by looking at the first payload character before any
+     * parsing or decoding happens.
+     *
+     * @param files
+     *            gzipped NMEA files
+     * @param outputFile
+     *            index file to write
+     * @param scheduler
+     *            scheduler to process each file on
+     * @return the number of records written (emitted once writing is finished)
+     */
+    public static Observable<Integer> writeStaticDataIndex(List<File> files, File outputFile,
+            Scheduler scheduler) {
+        return Observable.from(files)
+                // process files in parallel
+                .flatMap(file -> latestStaticData(file).subscribeOn(scheduler),
+                        Runtime.getRuntime().availableProcessors())
+                // merge the per file maps keeping the latest per mmsi
+                .collect(() -> new HashMap<Integer, Timestamped<AisShipStatic>>(),
+                        (map, fileMap) -> {
+                    for (Timestamped<AisShipStatic> m : fileMap.values())
+                        putIfLater(map, m);
+                })
+                // write the index
+                .map(Checked.f1(map -> {
+                    List<Info> infos = new ArrayList<Info>(map.size());
+                    for (Timestamped<AisShipStatic> m : map.values())
+                        infos.add(toInfo(m.message()));
+                    ShipStaticDataIndex.write(infos, outputFile);
+                    return infos.size();
+                }));
+    }
+
+    public static Observable<Integer> writeStaticDataIndex(List<File> files, File outputFile) {
+        return writeStaticDataIndex(files, outputFile, Schedulers.computation());
+    }
+
+    private static Observable<Map<Integer, Timestamped<AisShipStatic>>> latestStaticData(
+            File file) {
+        return Streams.extractMessages(Streams.nmeaFromGzip(file)
+                // avoid parsing lines that can't be static data
+                .filter(line -> mayBeStaticData(line)))
+                //
+                .filter(m -> m.message() instanceof AisShipStatic)
+                //
+                .collect(() -> new HashMap<Integer, Timestamped<AisShipStatic>>(), (map, m) -> {
+                    @SuppressWarnings("unchecked")
+                    Timestamped<AisShipStatic> t = (Timestamped<AisShipStatic>) (Timestamped<?>) m;
+                    putIfLater(map, t);
+                });
+    }
+
+    private static void putIfLater(Map<Integer, Timestamped<AisShipStatic>> map,
+            Timestamped<AisShipStatic> m) {
+        Timestamped<AisShipStatic> existing = map.get(m.message().getMmsi());
+        if (existing == null || existing.time() <= m.time())
+            map.put(m.message().getMmsi(), m);
+    }
+
+    /**
+     * Returns false only if the line is an AIS sentence that cannot be (part
+     * of) a message of type 5 (static and voyage data), 19 (extended class B
+     * position report) or 24 (static data report). Only the first character
+     * of the payload is inspected. Second and later sentences of a
+     * multi-sentence message are always accepted because they don't start with
+     * the message type.
+     *
+     * @param line
+     * @return
+     */
+    static boolean mayBeStaticData(String line) {
+        int i = 0;
+        if (line.startsWith("\\")) {
+            i = line.indexOf('\\', 1) + 1;
+            if (i == 0)
+                return false;
+        }
+        int column = 0;
+        int sentenceNumberStart = -1;
+        int n = line.length();
+        while (i < n && column < 5) {
+            if (line.charAt(i) == ',') {
+                column++;
+                if (column == 2)
+                    sentenceNumberStart = i + 1;
+            }
+            i++;
+        }
+        if (column < 5 || i >= n)
+            // not an AIS sentence so let the parser decide
+            return true;
+        if (line.charAt(sentenceNumberStart) != '1' || line.charAt(sentenceNumberStart + 1) != ',')
+            // not the first sentence
+            return true;
+        char ch = line.charAt(i);
+        // 5 = type 5, C = type 19, H = type 24 in six bit ascii armouring
+        return ch == '5' || ch == 'C' || ch == 'H';
+    }
+
+    private static Info toInfo(AisShipStatic m) {
+        String name = prepareName(m.getName());
+        return new Info(m.getMmsi(), getImo(m).transform(imo -> String.valueOf(imo)),
+                m instanceof AisShipStaticA ? AisClass.A : AisClass.B,
+                Optional.of(m.getShipType()), getMaximumPresentStaticDraughtMetres(m),
+                m.getDimensionA(), m.getDimensionB(), m.getDimensionC(), m.getDimensionD(),
+                name.length() == 0 ? Optional.<String> absent() : Optional.of(name));
+    }
+
     private static String prepareName(String name) {
         if (name == null)
             return "";
@@ -0,0 +1,215 @@
+package au.gov.amsa.navigation;
+
+import static com.google.common.base.Optional.absent;
+import static com.google.common.base.Optional.of;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import com.google.common.base.Optional;
+
+import au.gov.amsa.navigation.ShipStaticData.Info;
+import au.gov.amsa.risky.format.AisClass;
+
+/**
+ * Binary snapshot of {@link Info} records sorted by MMSI with fixed size
+ * records so that the file can be memory-mapped and searched directly. Opening
+ * an index does no parsing; {@link #get(int)} is a binary search over the
+ * mapped file.
+ *
+ * <p>
+ * Layout (big endian): a header of magic, version, record size and record
+ * count (ints) followed by the records. Each record is
+ * <code>mmsi(int), imo(int), class(byte), shipType(int), maxDraftMetres(float),
+ * dimA, dimB, dimC, dimD (shorts), name (20 bytes ASCII, zero padded)</code>
+ * where -1 means not present.
+ */
+public final class ShipStaticDataIndex {
+
+    private static final int MAGIC = 0x53534931; // SSI1
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    // AIS names are at most 20 characters
+    private static final int NAME_LENGTH = 20;
+    static final int RECORD_SIZE = 4 + 4 + 1 + 4 + 4 + 2 * 4 + NAME_LENGTH;
+
+    private final ByteBuffer bb;
+    private final int count;
+
+    private ShipStaticDataIndex(ByteBuffer bb) {
+        if (bb.getInt(0) != MAGIC)
+            throw new IllegalArgumentException("not a ship static data index");
+        if (bb.getInt(4) != VERSION)
+            throw new IllegalArgumentException("unsupported version " + bb.getInt(4));
+        if (bb.getInt(8) != RECORD_SIZE)
+            throw new IllegalArgumentException("unexpected record size " + bb.getInt(8));
+        this.bb = bb;
+        this.count = bb.getInt(12);
+    }
+
+    /**
+     * Memory-maps the given index file.
+     *
+     * @param file
+     * @return
+     * @throws IOException
+     */
+    public static ShipStaticDataIndex open(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+                FileChannel channel = raf.getChannel()) {
+            // the mapping stays valid after the channel is closed
+            MappedByteBuffer bb = channel.map(MapMode.READ_ONLY, 0, channel.size());
+            return new ShipStaticDataIndex(bb);
+        }
+    }
+
+    /**
+     * Returns an index over an in-memory copy of an index file.
+     *
+     * @param bytes
+     * @return
+     */
+    public static ShipStaticDataIndex from(byte[] bytes) {
+        return new ShipStaticDataIndex(ByteBuffer.wrap(bytes));
+    }
+
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Returns the static data for the given MMSI or absent if not in the
+     * index.
+     *
+     * @param mmsi
+     * @return
+     */
+    public Optional<Info> get(int mmsi) {
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int value = bb.getInt(HEADER_SIZE + mid * RECORD_SIZE);
+            if (value < mmsi)
+                low = mid + 1;
+            else if (value > mmsi)
+                high = mid - 1;
+            else
+                return of(read(HEADER_SIZE + mid * RECORD_SIZE));
+        }
+        return absent();
+    }
+
+    private Info read(int offset) {
+        int i = offset;
+        int mmsi = bb.getInt(i);
+        i += 4;
+        int imo = bb.getInt(i);
+        i += 4;
+        AisClass cls = bb.get(i) == 'A' ? AisClass.A : AisClass.B;
+        i += 1;
+        int shipType = bb.getInt(i);
+        i += 4;
+        float draft = bb.getFloat(i);
+        i += 4;
+        short a = bb.getShort(i);
+        short b = bb.getShort(i + 2);
+        short c = bb.getShort(i + 4);
+        short d = bb.getShort(i + 6);
+        i += 8;
+        byte[] nameBytes = new byte[NAME_LENGTH];
+        int nameLength = 0;
+        for (; nameLength < NAME_LENGTH; nameLength++) {
+            byte ch = bb.get(i + nameLength);
+            if (ch == 0)
+                break;
+            nameBytes[nameLength] = ch;
+        }
+        Optional<String> name = nameLength == 0 ? absent()
+                : of(new String(nameBytes, 0, nameLength, StandardCharsets.US_ASCII));
+        return new Info(mmsi, imo == -1 ? absent() : of(String.valueOf(imo)), cls,
+                shipType == -1 ? absent() : of(shipType), draft == -1 ? absent() : of(draft),
+                optional(a), optional(b), optional(c), optional(d), name);
+    }
+
+    private static Optional<Integer> optional(short value) {
+        return value == -1 ? absent() : of((int) value);
+    }
+
+    /**
+     * Writes the given records sorted by MMSI to the given file. If there are
+     * multiple records for the same MMSI only the last in iteration order is
+     * kept.
+     *
+     * @param infos
+     * @param file
+     * @throws IOException
+     */
+    public static void write(Collection<Info> infos, File file) throws IOException {
+        List<Info> list = new ArrayList<Info>(infos);
+        // stable sort keeps iteration order within an mmsi
+        Collections.sort(list, (x, y) -> Integer.compare(x.mmsi, y.mmsi));
+        List<Info> distinct = new ArrayList<Info>(list.size());
+        for (Info info : list) {
+            if (!distinct.isEmpty() && distinct.get(distinct.size() - 1).mmsi == info.mmsi)
+                distinct.set(distinct.size() - 1, info);
+            else
+                distinct.add(info);
+        }
+        ByteBuffer bb = ByteBuffer.allocate(HEADER_SIZE + distinct.size() * RECORD_SIZE);
+        bb.putInt(MAGIC);
+        bb.putInt(VERSION);
+        bb.putInt(RECORD_SIZE);
+        bb.putInt(distinct.size());
+        for (Info info : distinct)
+            write(info, bb);
+        bb.flip();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw");
+                FileChannel channel = raf.getChannel()) {
+            channel.truncate(0);
+            while (bb.hasRemaining())
+                channel.write(bb);
+        }
+    }
+
+    private static void write(Info info, ByteBuffer bb) {
+        bb.putInt(info.mmsi);
+        bb.putInt(info.imo.isPresent() ? parseImo(info.imo.get()) : -1);
+        bb.put((byte) (info.cls == AisClass.A ? 'A' : 'B'));
+        bb.putInt(info.shipType.or(-1));
+        bb.putFloat(info.maxDraftMetres.or(-1f));
+        bb.putShort(toShort(info.dimensionAMetres));
+        bb.putShort(toShort(info.dimensionBMetres));
+        bb.putShort(toShort(info.dimensionCMetres));
+        bb.putShort(toShort(info.dimensionDMetres));
+        byte[] name = info.name.or("").getBytes(StandardCharsets.US_ASCII);
+        for (int i = 0; i < NAME_LENGTH; i++)
+            bb.put(i < name.length ? name[i] : 0);
+    }
+
+    private static int parseImo(String imo) {
+        try {
+            return Integer.parseInt(imo.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static short toShort(Optional<Integer> value) {
+        if (value.isPresent() && value.get() >= Short.MIN_VALUE && value.get() <= Short.MAX_VALUE)
+            return (short) (int) value.get();
+        else
+            return -1;
+    }
+
+}
@@ -32,6 +32,28 @@ public class AisVesselPositions {
                 .map(toVesselPosition);
     }
 
+    /**
+     * As {@link #positions(Observable)} but parses and decodes the NMEA in
+     * parallel (preserving order).
+     * 
+     * @param nmea
+     * @param parallelism
+     *            maximum number of batches processed concurrently
+     * @param batchSize
+     *            number of lines processed together
+     * @return
+     */
+    public static Observable<VesselPosition> positions(Observable<String> nmea, int parallelism,
+            int batchSize) {
+        return Streams.extract(nmea, parallelism, batchSize).filter(isPresent())
+        // aggregate ship data with the message
+                .scan(new AisMessageAndVesselData(), AisMessageAndVesselData.aggregate)
+                // positions only
+                .filter(isPosition)
+                // convert to vessel positions
+                .map(toVesselPosition);
+    }
+
     public static Transformer<String, VesselPosition> positions() {
         return nmea -> positions(nmea);
     }
@@ -0,0 +1,88 @@
+package au.gov.amsa.navigation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.ByteStreams;
+
+import au.gov.amsa.navigation.ShipStaticData.Info;
+import au.gov.amsa.risky.format.AisClass;
+import rx.schedulers.Schedulers;
+
+public class ShipStaticDataIndexTest {
+
+    @Test
+    public void testWriteAndReadBack() throws IOException {
+        InputStreamReader isr = new InputStreamReader(
+                ShipStaticDataTest.class.getResourceAsStream("/ship-data.txt"), Charsets.UTF_8);
+        List<Info> list = ShipStaticData.fromAndClose(isr).toList().toBlocking().single();
+        File file = new File("target/ship-data.idx");
+        ShipStaticDataIndex.write(list, file);
+        ShipStaticDataIndex index = ShipStaticDataIndex.open(file);
+        assertEquals(2, index.size());
+        for (Info expected : list) {
+            Info info = index.get(expected.mmsi).get();
+            assertEquals(expected.toString(), info.toString());
+        }
+        assertFalse(index.get(123456789).isPresent());
+        assertEquals(ShipStaticDataIndex.RECORD_SIZE * 2 + 16, file.length());
+    }
+
+    @Test
+    public void testWriteStaticDataIndexFromNmea() throws IOException {
+        // the creator reads gzipped NMEA
+        File nmea = new File("target/static-data.nmea.gz");
+        try (InputStream is = ShipStaticDataIndexTest.class
+                .getResourceAsStream("/static-data.nmea");
+                OutputStream os = new GZIPOutputStream(new FileOutputStream(nmea))) {
+            ByteStreams.copy(is, os);
+        }
+        File file = new File("target/static-data.idx");
+        int count = ShipStaticDataCreator
+                .writeStaticDataIndex(Collections.singletonList(nmea), file, Schedulers.immediate())
+                .toBlocking().single();
+        assertEquals(1, count);
+        ShipStaticDataIndex index = ShipStaticDataIndex.open(file);
+        // the position report is not static data
+        assertEquals(1, index.size());
+        // the type 5 message split over two sentences
+        Info info = index.get(357094000).get();
+        assertEquals("ASIAN LILY", info.name.get());
+        assertEquals("9196369", info.imo.get());
+        assertEquals(AisClass.A, info.cls);
+        assertEquals(70, (int) info.shipType.get());
+        assertEquals(5.9, info.maxDraftMetres.get(), 0.0001);
+        assertEquals(110, (int) info.dimensionAMetres.get());
+        assertEquals(8, (int) info.dimensionDMetres.get());
+    }
+
+    @Test
+    public void testPrefilterOnMessageType() {
+        // type 5 first sentence
+        assertTrue(ShipStaticDataCreator.mayBeStaticData(
+                "\\g:1-2-1130,c:1334278696*29\\!BSVDM,2,1,0,A,55DSBL02<Dm7<I`OP005<T4r0hTiT00000000016=hJ<855f?>kV`54Qh000,0*0B"));
+        // second sentence
+        assertTrue(ShipStaticDataCreator
+                .mayBeStaticData("\\g:2-2-1130*5E\\!BSVDM,2,2,0,A,00000000002,0*3D"));
+        // type 1
+        assertFalse(ShipStaticDataCreator
+                .mayBeStaticData("!AIVDM,1,1,,A,144gjIP0085KKPQHMPjT81Sb1PSL,0*22"));
+        // type 24
+        assertTrue(ShipStaticDataCreator
+                .mayBeStaticData("!AIVDM,1,1,,A,H7P?n900Irg8IHL4RblF?wRToP06,0*1B"));
+    }
+}
@@ -0,0 +1,228 @@
+package au.gov.amsa.streams;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.github.davidmoten.util.Preconditions;
+
+import rx.Observable;
+import rx.Scheduler;
+import rx.Subscriber;
+import rx.Subscription;
+import rx.schedulers.Schedulers;
+
+/**
+ * A fixed size ring of the most recent values from one upstream subscription
+ * that any number of readers follow, each with its own cursor. Publishing a
+ * value costs the same however many readers there are and readers never hold
+ * up the writer: a reader that falls <code>capacity() - 1</code> or more values
+ * behind skips to the oldest value that is not about to be overwritten
+ * (counted by {@link #overruns()}).
+ *
+ * <p>
+ * Each value is stamped with the publish time so that a reader joining late
+ * can start with the values published in the last N seconds.
+ *
+ * <p>
+ * {@link #publish(Object)} must be called by one thread at a time (as
+ * {@link #subscribeTo(Observable)} does).
+ */
+public final class BroadcastRing<T> {
+
+    private static final long WAIT_MS = 100;
+
+    private final AtomicReferenceArray<T> values;
+    private final AtomicLongArray times;
+    private final int mask;
+    private final Scheduler clock;
+    // sequence number of the next value to be published
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong overruns = new AtomicLong();
+    private final Object lock = new Object();
+    private volatile int waiters;
+    private volatile boolean completed;
+    private volatile Throwable error;
+
+    /**
+     * Constructor.
+     *
+     * @param size
+     *            number of values held, rounded up to a power of two
+     * @param clock
+     *            source of the publish times
+     */
+    public BroadcastRing(int size, Scheduler clock) {
+        Preconditions.checkArgument(size > 0, "size must be > 0");
+        Preconditions.checkNotNull(clock);
+        int capacity = Integer.highestOneBit(size);
+        if (capacity < size)
+            capacity <<= 1;
+        this.values = new AtomicReferenceArray<T>(capacity);
+        this.times = new AtomicLongArray(capacity);
+        this.mask = capacity - 1;
+        this.clock = clock;
+    }
+
+    public BroadcastRing(int size) {
+        this(size, Schedulers.immediate());
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+
+    /**
+     * Returns the number of times a reader fell behind by more than the ring
+     * size and skipped values.
+     *
+     * @return
+     */
+    public long overruns() {
+        return overruns.get();
+    }
+
+    /**
+     * Subscribes to the source and publishes each value to the ring.
+     *
+     * @param source
+     * @return subscription to the source
+     */
+    public Subscription subscribeTo(Observable<T> source) {
+        return source.subscribe(new Subscriber<T>() {
+
+            @Override
+            public void onCompleted() {
+                complete();
+            }
+
+            @Override
+            public void onError(Throwable e) {
+                error(e);
+            }
+
+            @Override
+            public void onNext(T t) {
+                publish(t);
+            }
+        });
+    }
+
+    public void publish(T value) {
+        long seq = tail.get();
+        int i = (int) seq & mask;
+        times.lazySet(i, clock.now());
+        values.lazySet(i, value);
+        // volatile write publishes the value to readers
+        tail.set(seq + 1);
+        signal();
+    }
+
+    public void complete() {
+        completed = true;
+        signalAll();
+    }
+
+    public void error(Throwable e) {
+        error = e;
+        completed = true;
+        signalAll();
+    }
+
+    private void signal() {
+        if (waiters > 0)
+            signalAll();
+    }
+
+    private void signalAll() {
+        synchronized (lock) {
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Returns the values published from now on, preceded by those still in
+     * the ring that were published in the last <code>replay</code> time
+     * units. Each subscription reads on the calling thread until
+     * unsubscribed so use <code>subscribeOn</code>. The reader does not
+     * support backpressure: if it cannot keep up it skips values that have
+     * been overwritten.
+     *
+     * @param replay
+     *            how far back to start, 0 for no replay
+     * @param unit
+     *            unit of replay
+     * @return values
+     */
+    public Observable<T> observe(long replay, TimeUnit unit) {
+        final long replayMs = unit.toMillis(replay);
+        return Observable.create(subscriber -> {
+            long seq = replayMs <= 0 ? tail.get() : sequenceSince(clock.now() - replayMs);
+            while (!subscriber.isUnsubscribed()) {
+                long available = tail.get();
+                if (seq < available) {
+                    // the slot of sequence available - capacity is the one
+                    // the writer overwrites next so is not safe to read
+                    if (available - seq >= capacity()) {
+                        overruns.incrementAndGet();
+                        seq = available - capacity() + 1;
+                    }
+                    T value = values.get((int) seq & mask);
+                    // if the writer has lapped us since we read tail the value
+                    // may be a newer one so check before emitting
+                    if (tail.get() - seq >= capacity())
+                        continue;
+                    subscriber.onNext(value);
+                    seq++;
+                } else if (completed) {
+                    // values may have been published between reading tail
+                    // and reading completed
+                    if (seq != tail.get())
+                        continue;
+                    Throwable e = error;
+                    if (e != null)
+                        subscriber.onError(e);
+                    else
+                        subscriber.onCompleted();
+                    return;
+                } else
+                    await(seq);
+            }
+        });
+    }
+
+    private void await(long seq) {
+        synchronized (lock) {
+            waiters++;
+            try {
+                if (tail.get() == seq && !completed)
+                    lock.wait(WAIT_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                waiters--;
+            }
+        }
+    }
+
+    /**
+     * Returns the sequence number of the oldest value still held that was
+     * published at or after the given time.
+     */
+    private long sequenceSince(long time) {
+        long hi = tail.get();
+        long lo = Math.max(0, hi - capacity() + 1);
+        // publish times are non-decreasing so binary search
+        while (lo < hi) {
+            long mid = (lo + hi) >>> 1;
+            if (times.get((int) mid & mask) < time)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        // the writer may have overwritten the start since tail was read
+        return Math.max(lo, tail.get() - capacity() + 1);
+    }
+
+}
@@ -1,42 +1,79 @@
 package au.gov.amsa.streams;
 
-import java.util.Deque;
-import java.util.LinkedList;
-import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
+import au.gov.amsa.streams.metrics.Metrics;
 import rx.Subscriber;
+import rx.internal.operators.BackpressureUtils;
 import rx.internal.operators.NotificationLite;
+import rx.internal.util.atomic.SpscUnboundedAtomicArrayQueue;
+import rx.subscriptions.Subscriptions;
 
+/**
+ * Holds the notifications from upstream until the child has asked for them
+ * with {@link #requestMore(long)}.
+ *
+ * <p>
+ * The upstream events are the single producer and the drain loop is the
+ * single consumer of an array backed queue (so there is no allocation per
+ * item, only per block of items). {@link #requestMore(long)} and the event
+ * methods may be called concurrently: whichever thread gets into
+ * {@link #drainQueue()} first delivers to the child while the others just
+ * record that there is more work, so the child is only ever called by one
+ * thread at a time.
+ *
+ * <p>
+ * The number of items waiting for requests is the {@link Metrics} gauge
+ * <code>buffered.&lt;n&gt;.queued</code> where <code>n</code> numbers the
+ * instances. The gauge is removed on unsubscribe or when the terminal event is
+ * delivered.
+ */
 public class BufferedSubscriber<T> extends Subscriber<T> {
+
+    private static final int QUEUE_BLOCK_SIZE = 128;
+
+    private static final AtomicInteger IDS = new AtomicInteger();
+
     // utility object for reactive events
     private final NotificationLite<T> on = NotificationLite.instance();
 
-    private volatile long expected;
-    @SuppressWarnings("rawtypes")
-    private final AtomicLongFieldUpdater<BufferedSubscriber> EXPECTED = AtomicLongFieldUpdater
-            .newUpdater(BufferedSubscriber.class, "expected");
+    // number of items requested by the child not yet delivered
+    private final AtomicLong expected = new AtomicLong();
+
+    // work in progress, non-zero while a thread is draining
+    private final AtomicInteger wip = new AtomicInteger();
 
     // queue to hold messages till they are requested
-    private final Deque<Object> queue = new LinkedList<Object>();
+    private final Queue<Object> queue = new SpscUnboundedAtomicArrayQueue<Object>(
+            QUEUE_BLOCK_SIZE);
     private volatile boolean requestAll = false;
     private final Subscriber<? super T> child;
+    private final String metricsPrefix;
 
     public BufferedSubscriber(Subscriber<? super T> child) {
         this.child = child;
-        this.expected = expected;
+        this.metricsPrefix = "buffered." + IDS.incrementAndGet() + ".";
+        // read only when metrics are reported so costs nothing per item
+        Metrics.instance().gauge(metricsPrefix + "queued", queue::size);
+        add(Subscriptions.create(() -> removeMetrics()));
+    }
+
+    private void removeMetrics() {
+        Metrics.instance().removeAll(metricsPrefix);
     }
 
     public void requestMore(long n) {
-        // this method may be run concurrent with any of the event methods
-        // below so watch out for thread safety
         if (requestAll || n <= 0)
             // ignore request if all items have already been requested or if
             // invalid request is received
             return;
-        else if (n == Long.MAX_VALUE)
+        else if (n == Long.MAX_VALUE) {
             requestAll = true;
-        else
-            EXPECTED.addAndGet(this, n);
+            expected.set(Long.MAX_VALUE);
+        } else
+            BackpressureUtils.getAndAddRequest(expected, n);
         request(n);
         drainQueue();
     }
@@ -46,47 +83,58 @@ public class BufferedSubscriber<T> extends Subscriber<T> {
     }
 
     public void drainQueue() {
-        // only used by backpressure path
+        if (wip.getAndIncrement() != 0)
+            return;
+        int missed = 1;
         while (true) {
-            Object item = queue.peek();
-            if (item == null || isUnsubscribed())
-                break;
-            else if (on.isCompleted(item) || on.isError(item)) {
-                on.accept(child, queue.poll());
-                break;
-            } else if (expected == 0)
-                break;
-            else {
-                // expected won't be Long.MAX_VALUE so can safely
-                // decrement
-                EXPECTED.decrementAndGet(this);
-                on.accept(child, queue.poll());
+            long r = expected.get();
+            long e = 0;
+            while (true) {
+                if (isUnsubscribed())
+                    return;
+                Object item = queue.peek();
+                if (item == null)
+                    break;
+                else if (on.isCompleted(item) || on.isError(item)) {
+                    // terminal events don't need to be requested
+                    queue.poll();
+                    removeMetrics();
+                    on.accept(child, item);
+                    return;
+                } else if (e == r)
+                    break;
+                else {
+                    queue.poll();
+                    e++;
+                    on.accept(child, item);
+                }
             }
+            if (e > 0)
+                BackpressureUtils.produced(expected, e);
+            missed = wip.addAndGet(-missed);
+            if (missed == 0)
+                return;
         }
     }
 
     @Override
     public void onCompleted() {
-        queue.add(on.completed());
+        queue.offer(on.completed());
         drainQueue();
     }
 
     @Override
     public void onError(Throwable e) {
-        if (requestedAll()) {
-            // fast path
-            child.onError(e);
-        } else {
-            // backpressure path
-            queue.add(on.error(e));
-            drainQueue();
-        }
+        // queued behind any items not yet delivered so that events stay in
+        // order, delivered straight away if the child has requested all
+        queue.offer(on.error(e));
+        drainQueue();
     }
 
     @Override
     public void onNext(T t) {
-        queue.add(on.next(t));
-        // for optimization purposes the caller should drain the queue
+        queue.offer(on.next(t));
+        drainQueue();
     }
 
 }
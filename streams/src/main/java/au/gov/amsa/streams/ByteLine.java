@@ -0,0 +1,120 @@
+package au.gov.amsa.streams;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A line of bytes (without its terminating newline) as emitted by
+ * {@link LineFramer}. The bytes are only decoded to a String when
+ * {@link #toString()} is first called, and then with a fast path for the
+ * common case of pure ASCII (as NMEA is), so a consumer that filters or
+ * forwards lines as bytes never decodes them at all.
+ *
+ * <p>
+ * This is deliberately not a {@link CharSequence}: a line may hold multi-byte
+ * UTF-8 characters so byte indexes and lengths are not char indexes and
+ * lengths of the decoded line. Use {@link #byteAt(int)} and
+ * {@link #length()} to inspect the bytes and {@link #toString()} for the
+ * text.
+ */
+public final class ByteLine {
+
+    private final byte[] bytes;
+    private String string;
+
+    ByteLine(byte[] bytes) {
+        this.bytes = bytes;
+    }
+
+    /**
+     * Returns a line of the given bytes. The array is not copied so must not
+     * be modified afterwards.
+     *
+     * @param bytes
+     * @return line
+     */
+    public static ByteLine wrap(byte[] bytes) {
+        return new ByteLine(bytes);
+    }
+
+    /**
+     * Returns the number of bytes in the line (which is the number of chars
+     * only if the line is ASCII).
+     *
+     * @return
+     */
+    public int length() {
+        return bytes.length;
+    }
+
+    public byte byteAt(int index) {
+        return bytes[index];
+    }
+
+    public boolean isEmpty() {
+        return bytes.length == 0;
+    }
+
+    /**
+     * Returns a copy of the bytes.
+     *
+     * @return
+     */
+    public byte[] toByteArray() {
+        return bytes.clone();
+    }
+
+    /**
+     * Returns a read only view of the bytes.
+     *
+     * @return
+     */
+    public ByteBuffer asByteBuffer() {
+        return ByteBuffer.wrap(bytes).asReadOnlyBuffer();
+    }
+
+    public String toString(Charset charset) {
+        return new String(bytes, charset);
+    }
+
+    /**
+     * Returns the line decoded as UTF-8 (ASCII being a subset). The result is
+     * cached.
+     */
+    @Override
+    public String toString() {
+        String s = string;
+        if (s == null) {
+            if (isAscii())
+                s = new String(bytes, StandardCharsets.ISO_8859_1);
+            else
+                s = new String(bytes, StandardCharsets.UTF_8);
+            string = s;
+        }
+        return s;
+    }
+
+    private boolean isAscii() {
+        for (byte b : bytes)
+            if (b < 0)
+                return false;
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(bytes);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (!(obj instanceof ByteLine))
+            return false;
+        return Arrays.equals(bytes, ((ByteLine) obj).bytes);
+    }
+
+}
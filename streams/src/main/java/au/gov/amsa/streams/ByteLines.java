@@ -0,0 +1,109 @@
+package au.gov.amsa.streams;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.StandardOpenOption;
+
+import com.github.davidmoten.rx.Checked;
+
+import rx.Observable;
+import rx.Observer;
+import rx.functions.Func0;
+import rx.observables.SyncOnSubscribe;
+
+/**
+ * Observables of the lines framed by {@link LineFramer}. Each supports
+ * backpressure: a line is only read from the source when one is requested.
+ */
+public final class ByteLines {
+
+    private ByteLines() {
+        // prevent instantiation
+    }
+
+    /**
+     * Returns the lines of the input stream. The stream is not closed.
+     *
+     * @param is
+     * @param bufferSize
+     * @return lines
+     */
+    public static Observable<ByteLine> from(InputStream is, int bufferSize) {
+        return from(() -> LineFramer.from(is, bufferSize));
+    }
+
+    public static Observable<ByteLine> from(InputStream is) {
+        return from(is, LineFramer.DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Returns the lines read from the channel (which must be in blocking
+     * mode). The channel is not closed.
+     *
+     * @param channel
+     * @return lines
+     */
+    public static Observable<ByteLine> from(ReadableByteChannel channel) {
+        return from(() -> LineFramer.from(channel));
+    }
+
+    /**
+     * Returns the lines of the file read through a {@link FileChannel} which
+     * is opened on subscription and closed on termination or unsubscription.
+     *
+     * @param file
+     * @return lines
+     */
+    public static Observable<ByteLine> from(File file) {
+        return Observable.using(Checked.f0(() -> FileChannel.open(file.toPath(),
+                StandardOpenOption.READ)), channel -> from(channel), channel -> {
+                    try {
+                        channel.close();
+                    } catch (IOException e) {
+                        // don't care
+                    }
+                }, true);
+    }
+
+    /**
+     * Returns the lines from a {@link LineFramer} created per subscription.
+     *
+     * @param framerFactory
+     * @return lines
+     */
+    public static Observable<ByteLine> from(Func0<LineFramer> framerFactory) {
+        return Observable.create(new OnSubscribeLineFramer(framerFactory));
+    }
+
+    private static final class OnSubscribeLineFramer extends SyncOnSubscribe<LineFramer, ByteLine> {
+
+        private final Func0<LineFramer> framerFactory;
+
+        OnSubscribeLineFramer(Func0<LineFramer> framerFactory) {
+            this.framerFactory = framerFactory;
+        }
+
+        @Override
+        protected LineFramer generateState() {
+            return framerFactory.call();
+        }
+
+        @Override
+        protected LineFramer next(LineFramer framer, Observer<? super ByteLine> observer) {
+            try {
+                ByteLine line = framer.next();
+                if (line == null)
+                    observer.onCompleted();
+                else
+                    observer.onNext(line);
+            } catch (IOException e) {
+                observer.onError(e);
+            }
+            return framer;
+        }
+    }
+
+}
@@ -0,0 +1,101 @@
+package au.gov.amsa.streams;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A string encoded to bytes once so that it can be written unchanged to any
+ * number of sockets. The bytes are never modified or handed out (only
+ * written or viewed read only) so one instance can be shared by every client
+ * of a server.
+ */
+public final class EncodedString {
+
+    private final byte[] bytes;
+
+    private EncodedString(byte[] bytes) {
+        this.bytes = bytes;
+    }
+
+    public static EncodedString of(String s, Charset charset) {
+        return new EncodedString(s.getBytes(charset));
+    }
+
+    /**
+     * Returns the string encoded as UTF-8.
+     *
+     * @param s
+     * @return encoded string
+     */
+    public static EncodedString of(String s) {
+        return of(s, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns the line encoded as UTF-8 with a newline appended, without
+     * creating the intermediate <code>line + "\n"</code>.
+     *
+     * @param line
+     *            line without terminator
+     * @return encoded line
+     */
+    public static EncodedString line(String line) {
+        int n = line.length();
+        byte[] b = new byte[n + 1];
+        for (int i = 0; i < n; i++) {
+            char ch = line.charAt(i);
+            if (ch >= 128) {
+                // not ASCII
+                byte[] utf8 = line.getBytes(StandardCharsets.UTF_8);
+                b = Arrays.copyOf(utf8, utf8.length + 1);
+                n = utf8.length;
+                break;
+            }
+            b[i] = (byte) ch;
+        }
+        b[n] = '\n';
+        return new EncodedString(b);
+    }
+
+    /**
+     * Returns the number of bytes.
+     *
+     * @return
+     */
+    public int length() {
+        return bytes.length;
+    }
+
+    /**
+     * Writes the bytes to the stream (without copying them).
+     *
+     * @param out
+     * @throws IOException
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(bytes);
+    }
+
+    /**
+     * Returns a read only view of the bytes.
+     *
+     * @return
+     */
+    public ByteBuffer asByteBuffer() {
+        return ByteBuffer.wrap(bytes).asReadOnlyBuffer();
+    }
+
+    public String toString(Charset charset) {
+        return new String(bytes, charset);
+    }
+
+    @Override
+    public String toString() {
+        return toString(StandardCharsets.UTF_8);
+    }
+
+}
@@ -0,0 +1,565 @@
+package au.gov.amsa.streams;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.davidmoten.util.Preconditions;
+
+import au.gov.amsa.streams.metrics.Counter;
+import au.gov.amsa.streams.metrics.Histogram;
+import au.gov.amsa.streams.metrics.Metrics;
+import rx.Observable;
+import rx.Subscriber;
+import rx.Subscription;
+
+/**
+ * Publishes lines from an Observable&lt;String&gt; source to every client
+ * connected to a server socket, using one selector thread for all clients
+ * instead of a thread blocked in a write per client as {@link StringServer}
+ * does.
+ *
+ * <p>
+ * The source is subscribed to once when the server starts and each line is
+ * encoded once. The encoded bytes are shared: each client has a bounded ring
+ * of references to the lines it has not yet been sent and the selector thread
+ * copies as many of those as fit into the client's write buffer before each
+ * socket write, so a client that is keeping up receives many lines per
+ * syscall. Lines that arrive while no client is connected are discarded (the
+ * source is treated as a live feed).
+ *
+ * <p>
+ * When a client's ring is full the {@link SlowConsumerPolicy} decides whether
+ * to drop its oldest lines, disconnect it or hold up the source until it
+ * catches up.
+ *
+ * <p>
+ * Once started the server records {@link Metrics} named
+ * <code>fanout.&lt;port&gt;.clients</code>, <code>.lines</code> (lines
+ * received from the source), <code>.bytes</code> (bytes written over all
+ * clients), <code>.droppedLines</code>, <code>.droppedClients</code> and
+ * <code>.writeMicros</code> (time of each socket write).
+ */
+public final class FanOutStringServer {
+
+    private static final Logger log = LoggerFactory.getLogger(FanOutStringServer.class);
+
+    private static final long SELECT_TIMEOUT_MS = 100;
+    private static final long BLOCK_CHECK_MS = 100;
+
+    private final Observable<String> source;
+    private final Charset charset;
+    private final int clientBufferLines;
+    private final int writeBufferBytes;
+    private final SlowConsumerPolicy policy;
+    private final ServerSocketChannel serverChannel;
+    private final Selector selector;
+    private final CopyOnWriteArrayList<Client> clients = new CopyOnWriteArrayList<Client>();
+    // clients that were idle and now have lines to write
+    private final Queue<Client> toArm = new ConcurrentLinkedQueue<Client>();
+    private final AtomicLong droppedLines = new AtomicLong();
+    private final AtomicLong droppedClients = new AtomicLong();
+    private final Thread thread;
+    private volatile boolean stopped;
+    private volatile boolean sourceTerminated;
+    private volatile Subscription subscription;
+    private final String metricsPrefix;
+    private final Counter lines;
+    private final Counter bytesWritten;
+    private final Histogram writeMicros;
+
+    private FanOutStringServer(Builder b) {
+        this.source = b.source;
+        this.charset = b.charset;
+        this.clientBufferLines = b.clientBufferLines;
+        this.writeBufferBytes = b.writeBufferBytes;
+        this.policy = b.policy;
+        try {
+            this.serverChannel = ServerSocketChannel.open();
+            this.serverChannel.configureBlocking(false);
+            this.serverChannel.bind(new InetSocketAddress(b.port));
+            this.selector = Selector.open();
+            this.serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        this.thread = new Thread(() -> run(), "fan-out-string-server-" + port());
+        this.thread.setDaemon(true);
+        this.metricsPrefix = "fanout." + port();
+        this.lines = Metrics.instance().counter(metricsPrefix + ".lines");
+        this.bytesWritten = Metrics.instance().counter(metricsPrefix + ".bytes");
+        this.writeMicros = Metrics.instance().histogram(metricsPrefix + ".writeMicros");
+    }
+
+    public static Builder builder(Observable<String> source) {
+        return new Builder(source);
+    }
+
+    /**
+     * Factory method using the default buffer sizes and
+     * {@link SlowConsumerPolicy#DROP_OLDEST}.
+     *
+     * @param source
+     *            source to publish on the server socket
+     * @param port
+     *            port to listen on, 0 for any free port
+     * @return server (not started)
+     */
+    public static FanOutStringServer create(Observable<String> source, int port) {
+        return builder(source).port(port).build();
+    }
+
+    public static final class Builder {
+
+        private final Observable<String> source;
+        private int port;
+        private Charset charset = StandardCharsets.UTF_8;
+        private int clientBufferLines = 8192;
+        private int writeBufferBytes = 65536;
+        private SlowConsumerPolicy policy = SlowConsumerPolicy.DROP_OLDEST;
+
+        private Builder(Observable<String> source) {
+            Preconditions.checkNotNull(source);
+            this.source = source;
+        }
+
+        /**
+         * Sets the port to listen on. The default is 0 which picks any free
+         * port (see {@link FanOutStringServer#port()}).
+         *
+         * @param port
+         * @return this
+         */
+        public Builder port(int port) {
+            this.port = port;
+            return this;
+        }
+
+        public Builder charset(Charset charset) {
+            Preconditions.checkNotNull(charset);
+            this.charset = charset;
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of lines buffered for a client before the
+         * slow consumer policy applies.
+         *
+         * @param lines
+         * @return this
+         */
+        public Builder clientBufferLines(int lines) {
+            Preconditions.checkArgument(lines > 0, "clientBufferLines must be > 0");
+            this.clientBufferLines = lines;
+            return this;
+        }
+
+        /**
+         * Sets the size of the per client buffer that lines are copied into
+         * for each socket write.
+         *
+         * @param bytes
+         * @return this
+         */
+        public Builder writeBufferBytes(int bytes) {
+            Preconditions.checkArgument(bytes > 0, "writeBufferBytes must be > 0");
+            this.writeBufferBytes = bytes;
+            return this;
+        }
+
+        public Builder slowConsumerPolicy(SlowConsumerPolicy policy) {
+            Preconditions.checkNotNull(policy);
+            this.policy = policy;
+            return this;
+        }
+
+        /**
+         * Binds the server socket and returns the server. Call
+         * {@link FanOutStringServer#start()} to accept clients.
+         *
+         * @return server
+         */
+        public FanOutStringServer build() {
+            return new FanOutStringServer(this);
+        }
+    }
+
+    /**
+     * Starts accepting clients and subscribes to the source. Unlike
+     * {@link StringServer#start()} this method does not block unless the
+     * source emits synchronously (use <code>subscribeOn</code> for such a
+     * source).
+     */
+    public void start() {
+        Metrics.instance().gauge(metricsPrefix + ".clients", this::clientCount);
+        Metrics.instance().gauge(metricsPrefix + ".droppedLines", this::droppedLines);
+        Metrics.instance().gauge(metricsPrefix + ".droppedClients", this::droppedClients);
+        thread.start();
+        subscription = source.subscribe(new Subscriber<String>() {
+
+            @Override
+            public void onCompleted() {
+                log.info("source completed");
+                sourceTerminated();
+            }
+
+            @Override
+            public void onError(Throwable e) {
+                log.error(e.getMessage(), e);
+                sourceTerminated();
+            }
+
+            @Override
+            public void onNext(String line) {
+                lines.inc();
+                publish(line.getBytes(charset));
+            }
+        });
+    }
+
+    /**
+     * Stops the server, unsubscribing from the source and closing every
+     * client connection.
+     */
+    public void stop() {
+        stopped = true;
+        Subscription s = subscription;
+        if (s != null)
+            s.unsubscribe();
+        selector.wakeup();
+        Metrics.instance().removeAll(metricsPrefix + ".");
+    }
+
+    /**
+     * Returns the port the server is listening on.
+     *
+     * @return
+     */
+    public int port() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    public int clientCount() {
+        return clients.size();
+    }
+
+    /**
+     * Returns the number of lines discarded for clients under
+     * {@link SlowConsumerPolicy#DROP_OLDEST}, summed over clients.
+     *
+     * @return
+     */
+    public long droppedLines() {
+        return droppedLines.get();
+    }
+
+    /**
+     * Returns the number of clients disconnected under
+     * {@link SlowConsumerPolicy#DROP_CLIENT}.
+     *
+     * @return
+     */
+    public long droppedClients() {
+        return droppedClients.get();
+    }
+
+    private void sourceTerminated() {
+        sourceTerminated = true;
+        // idle clients are closed by the selector thread
+        selector.wakeup();
+    }
+
+    private void publish(byte[] bytes) {
+        boolean wakeup = false;
+        for (Client client : clients) {
+            if (client.offer(bytes)) {
+                toArm.offer(client);
+                wakeup = true;
+            }
+        }
+        if (wakeup)
+            selector.wakeup();
+    }
+
+    private void run() {
+        try {
+            while (!stopped) {
+                selector.select(SELECT_TIMEOUT_MS);
+                Client client;
+                while ((client = toArm.poll()) != null)
+                    client.setWriteInterest(true);
+                Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    if (!key.isValid())
+                        continue;
+                    if (key.isAcceptable())
+                        accept();
+                    else {
+                        Client c = (Client) key.attachment();
+                        if (key.isReadable())
+                            c.read();
+                        if (key.isValid() && key.isWritable())
+                            c.write();
+                    }
+                }
+                if (sourceTerminated)
+                    for (Client c : clients)
+                        if (c.isDrained())
+                            c.close();
+            }
+        } catch (IOException | RuntimeException e) {
+            if (!stopped)
+                log.warn(e.getMessage(), e);
+        } finally {
+            closeAll();
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = serverChannel.accept()) != null) {
+            channel.configureBlocking(false);
+            Client client = new Client(channel);
+            log.info("accepted socket connection from " + client);
+            if (sourceTerminated) {
+                client.close();
+            } else {
+                client.key = channel.register(selector, SelectionKey.OP_READ, client);
+                clients.add(client);
+            }
+        }
+    }
+
+    private void closeAll() {
+        log.info("stopping fan out string server on port " + port());
+        for (Client c : clients)
+            c.close();
+        try {
+            serverChannel.close();
+        } catch (IOException e) {
+            log.info("could not close server socket: " + e.getMessage());
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {
+            // don't care
+        }
+    }
+
+    private final class Client {
+
+        private final SocketChannel channel;
+        private final String name;
+        private final byte[][] ring = new byte[clientBufferLines][];
+        // guarded by this
+        private int head;
+        private int count;
+        private boolean idle = true;
+        private boolean closed;
+        // selector thread only
+        private final ByteBuffer out = ByteBuffer.allocateDirect(writeBufferBytes);
+        private byte[] current;
+        private int currentOffset;
+        private SelectionKey key;
+        private final ByteBuffer discard = ByteBuffer.allocate(256);
+
+        Client(SocketChannel channel) {
+            this.channel = channel;
+            this.name = String.valueOf(channel.socket().getRemoteSocketAddress());
+        }
+
+        /**
+         * Adds the line to the ring applying the slow consumer policy if full.
+         * Returns true if the client was idle and so needs its write interest
+         * set by the selector thread.
+         */
+        synchronized boolean offer(byte[] bytes) {
+            if (closed)
+                return false;
+            if (count == ring.length) {
+                switch (policy) {
+                case DROP_OLDEST:
+                    ring[head] = null;
+                    head = next(head);
+                    count--;
+                    droppedLines.incrementAndGet();
+                    break;
+                case DROP_CLIENT:
+                    log.info("disconnecting slow client " + name);
+                    droppedClients.incrementAndGet();
+                    closed = true;
+                    // selector thread closes the channel
+                    return true;
+                case BLOCK:
+                    while (count == ring.length && !closed && !stopped) {
+                        try {
+                            wait(BLOCK_CHECK_MS);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            return false;
+                        }
+                    }
+                    if (closed || stopped)
+                        return false;
+                    break;
+                }
+            }
+            int tail = head + count;
+            if (tail >= ring.length)
+                tail -= ring.length;
+            ring[tail] = bytes;
+            count++;
+            if (idle) {
+                idle = false;
+                return true;
+            } else
+                return false;
+        }
+
+        private int next(int i) {
+            return i + 1 == ring.length ? 0 : i + 1;
+        }
+
+        private synchronized byte[] poll() {
+            if (count == 0) {
+                idle = true;
+                return null;
+            }
+            byte[] b = ring[head];
+            ring[head] = null;
+            head = next(head);
+            count--;
+            if (policy == SlowConsumerPolicy.BLOCK && count == ring.length - 1)
+                notifyAll();
+            return b;
+        }
+
+        private synchronized boolean isClosed() {
+            return closed;
+        }
+
+        boolean isDrained() {
+            synchronized (this) {
+                if (count > 0)
+                    return false;
+            }
+            return current == null && out.position() == 0;
+        }
+
+        void setWriteInterest(boolean write) {
+            if (isClosed())
+                close();
+            else if (key.isValid())
+                key.interestOps(write ? SelectionKey.OP_READ | SelectionKey.OP_WRITE
+                        : SelectionKey.OP_READ);
+        }
+
+        void read() {
+            try {
+                discard.clear();
+                if (channel.read(discard) == -1) {
+                    log.info("connection closed by " + name);
+                    close();
+                }
+            } catch (IOException e) {
+                log.info(e.getMessage() + " " + name);
+                close();
+            }
+        }
+
+        void write() {
+            if (isClosed()) {
+                close();
+                return;
+            }
+            boolean empty = fill();
+            out.flip();
+            try {
+                long t = System.nanoTime();
+                int n = channel.write(out);
+                writeMicros.record((System.nanoTime() - t) / 1000);
+                bytesWritten.add(n);
+            } catch (IOException e) {
+                log.info(e.getMessage() + " " + name);
+                close();
+                return;
+            }
+            out.compact();
+            if (empty && out.position() == 0)
+                // fill found the ring empty and marked us idle so the next
+                // offer re-arms the write interest
+                setWriteInterest(false);
+        }
+
+        /**
+         * Copies as many pending lines as fit into the write buffer. Returns
+         * true if the ring was found empty.
+         */
+        private boolean fill() {
+            while (out.hasRemaining()) {
+                if (current == null) {
+                    current = poll();
+                    currentOffset = 0;
+                    if (current == null)
+                        return true;
+                }
+                int n = Math.min(out.remaining(), current.length - currentOffset);
+                out.put(current, currentOffset, n);
+                currentOffset += n;
+                if (currentOffset == current.length)
+                    current = null;
+            }
+            return false;
+        }
+
+        void close() {
+            synchronized (this) {
+                closed = true;
+                count = 0;
+                notifyAll();
+            }
+            if (clients.remove(this))
+                log.info("closing socket " + name);
+            if (key != null)
+                key.cancel();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                log.info("closing socket " + name + ":" + e.getMessage());
+            }
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder b = new StringBuilder();
+        b.append("FanOutStringServer [port=");
+        b.append(port());
+        b.append(", policy=");
+        b.append(policy);
+        b.append("]");
+        return b.toString();
+    }
+
+}
@@ -0,0 +1,37 @@
+package au.gov.amsa.streams;
+
+/**
+ * A line of text and the {@link HostPort} it was read from.
+ */
+public final class LineAndSource {
+
+    private final String line;
+    private final HostPort source;
+
+    public LineAndSource(String line, HostPort source) {
+        this.line = line;
+        this.source = source;
+    }
+
+    public String line() {
+        return line;
+    }
+
+    public HostPort source() {
+        return source;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder b = new StringBuilder();
+        b.append("LineAndSource [line=");
+        b.append(line);
+        b.append(", source=");
+        b.append(source.getHost());
+        b.append(":");
+        b.append(source.getPort());
+        b.append("]");
+        return b.toString();
+    }
+
+}
@@ -0,0 +1,151 @@
+package au.gov.amsa.streams;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SocketChannel;
+
+import com.github.davidmoten.util.Preconditions;
+
+/**
+ * Splits bytes from an {@link InputStream} or a {@link ReadableByteChannel}
+ * (such as a {@link SocketChannel} or {@link FileChannel}) into lines on
+ * <code>'\n'</code> by scanning the read buffer for the newline byte. Each line
+ * is copied once out of the buffer into a {@link ByteLine} and never decoded
+ * unless asked for, unlike splitting decoded String chunks which copies every
+ * line at least twice and creates a String per chunk and fragment.
+ *
+ * <p>
+ * Lines are split exactly as <code>Strings.split(o, "\n")</code> splits text:
+ * a <code>'\r'</code> is kept, empty lines are emitted and the text after the
+ * last newline is always emitted as the last line, even if empty. A line
+ * longer than the buffer grows the buffer.
+ *
+ * <p>
+ * Not thread safe. A channel must be in blocking mode.
+ */
+public final class LineFramer {
+
+    public static final int DEFAULT_BUFFER_SIZE = 65536;
+
+    private final Source source;
+    // in read mode, bytes between position and limit not yet emitted
+    private ByteBuffer buffer;
+    // number of bytes after position already scanned without finding '\n'
+    private int scanned;
+    private boolean eof;
+    private boolean finished;
+
+    private LineFramer(Source source, ByteBuffer buffer) {
+        this.source = source;
+        this.buffer = buffer;
+        buffer.flip();
+    }
+
+    public static LineFramer from(InputStream is, int bufferSize) {
+        Preconditions.checkNotNull(is);
+        Preconditions.checkArgument(bufferSize > 0, "bufferSize must be > 0");
+        return new LineFramer(bb -> {
+            int n = is.read(bb.array(), bb.arrayOffset() + bb.position(), bb.remaining());
+            if (n > 0)
+                bb.position(bb.position() + n);
+            return n;
+        }, ByteBuffer.allocate(bufferSize));
+    }
+
+    public static LineFramer from(InputStream is) {
+        return from(is, DEFAULT_BUFFER_SIZE);
+    }
+
+    public static LineFramer from(ReadableByteChannel channel, int bufferSize) {
+        Preconditions.checkNotNull(channel);
+        Preconditions.checkArgument(bufferSize > 0, "bufferSize must be > 0");
+        return new LineFramer(bb -> channel.read(bb), ByteBuffer.allocateDirect(bufferSize));
+    }
+
+    public static LineFramer from(ReadableByteChannel channel) {
+        return from(channel, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Frames the remaining bytes of the buffer (for example a
+     * {@link java.nio.MappedByteBuffer}) in place, without copying them into
+     * a read buffer first. The buffer's position and limit are not changed.
+     *
+     * @param bb
+     *            bytes to split into lines
+     * @return framer
+     */
+    public static LineFramer from(ByteBuffer bb) {
+        Preconditions.checkNotNull(bb);
+        ByteBuffer b = bb.slice();
+        // the constructor expects the buffer in write mode
+        b.position(b.limit());
+        LineFramer framer = new LineFramer(x -> -1, b);
+        framer.eof = true;
+        return framer;
+    }
+
+    /**
+     * Returns the next line or null if the end of input has been reached.
+     *
+     * @return next line or null
+     * @throws IOException
+     *             if the read fails
+     */
+    public ByteLine next() throws IOException {
+        while (true) {
+            int start = buffer.position();
+            int limit = buffer.limit();
+            for (int i = start + scanned; i < limit; i++) {
+                if (buffer.get(i) == '\n') {
+                    ByteLine line = take(i - start);
+                    // skip the newline
+                    buffer.position(buffer.position() + 1);
+                    return line;
+                }
+            }
+            scanned = limit - start;
+            if (eof) {
+                if (finished)
+                    return null;
+                finished = true;
+                return take(scanned);
+            }
+            fill();
+        }
+    }
+
+    private ByteLine take(int length) {
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        scanned = 0;
+        return new ByteLine(bytes);
+    }
+
+    private void fill() throws IOException {
+        buffer.compact();
+        if (!buffer.hasRemaining()) {
+            // line longer than the buffer
+            ByteBuffer b = buffer.isDirect() ? ByteBuffer.allocateDirect(buffer.capacity() * 2)
+                    : ByteBuffer.allocate(buffer.capacity() * 2);
+            buffer.flip();
+            b.put(buffer);
+            buffer = b;
+        }
+        int n;
+        do {
+            n = source.read(buffer);
+        } while (n == 0);
+        if (n == -1)
+            eof = true;
+        buffer.flip();
+    }
+
+    private interface Source {
+        int read(ByteBuffer bb) throws IOException;
+    }
+
+}
@@ -0,0 +1,196 @@
+package au.gov.amsa.streams;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.github.davidmoten.util.Preconditions;
+
+import rx.Observable;
+import rx.Scheduler;
+import rx.schedulers.Schedulers;
+
+/**
+ * Reads the lines of a large uncompressed file (for example a sorted NMEA day
+ * file) on several threads. The file is split into chunks that end on newline
+ * boundaries, each chunk is memory mapped and framed into lines by its own
+ * {@link LineFramer} on a thread of the given scheduler.
+ *
+ * <p>
+ * Lines are split as {@link Strings#split(Observable, String)} splits the whole
+ * file on <code>"\n"</code> so in ordered mode the result is the same as
+ * reading the file sequentially. In unordered mode lines from different chunks
+ * are interleaved (lines within a chunk keep their order), which is faster
+ * when the consumer does not care about order. Note that multi-sentence NMEA
+ * messages need ordered mode if a message can straddle a chunk boundary.
+ *
+ * <p>
+ * In ordered mode every chunk is read at once and the lines of the chunks
+ * after the one being emitted are buffered. Each chunk buffers up to an
+ * estimate of its number of lines (at most {@value #MAX_BUFFERED_LINES}) so
+ * that the chunks are read in parallel rather than stalling when a small
+ * buffer fills.
+ */
+public final class MappedLines {
+
+    // chunks are mapped individually and a mapping is at most 2GB
+    private static final long MAX_CHUNK_SIZE = 1L << 30;
+    // used to estimate the number of lines in a chunk (NMEA lines are longer)
+    private static final int ESTIMATED_LINE_BYTES = 64;
+    private static final int MIN_BUFFERED_LINES = 128;
+    private static final int MAX_BUFFERED_LINES = 1 << 18;
+
+    private MappedLines() {
+        // prevent instantiation
+    }
+
+    /**
+     * Returns the lines of the file read as <code>chunks</code> chunks in
+     * parallel on the given scheduler.
+     *
+     * @param file
+     *            uncompressed text file
+     * @param chunks
+     *            number of chunks to read in parallel
+     * @param ordered
+     *            if true lines are emitted in file order
+     * @param scheduler
+     *            scheduler that each chunk is read on
+     * @return lines
+     */
+    public static Observable<String> from(File file, int chunks, boolean ordered,
+            Scheduler scheduler) {
+        Preconditions.checkArgument(chunks > 0, "chunks must be > 0");
+        Observable<Observable<String>> sources = chunks(file, chunks)
+                .map(chunk -> chunk.subscribeOn(scheduler));
+        if (ordered)
+            return ordered(sources, bufferedLines(file.length(), chunks));
+        else
+            return Observable.merge(sources);
+    }
+
+    /**
+     * Returns the lines of the chunks in order, subscribing to all chunks at
+     * once and buffering up to <code>bufferedLines</code> lines of each.
+     */
+    static Observable<String> ordered(Observable<Observable<String>> chunks,
+            int bufferedLines) {
+        return chunks.concatMapEager(chunk -> chunk, bufferedLines);
+    }
+
+    static int bufferedLines(long fileSize, int chunks) {
+        long lines = fileSize / chunks / ESTIMATED_LINE_BYTES + 1;
+        return (int) Math.max(MIN_BUFFERED_LINES, Math.min(MAX_BUFFERED_LINES, lines));
+    }
+
+    public static Observable<String> from(File file, int chunks, boolean ordered) {
+        return from(file, chunks, ordered, Schedulers.io());
+    }
+
+    /**
+     * Returns the lines of the file in order, read in as many chunks as there
+     * are available processors.
+     *
+     * @param file
+     * @return lines
+     */
+    public static Observable<String> from(File file) {
+        return from(file, Runtime.getRuntime().availableProcessors(), true);
+    }
+
+    /**
+     * Returns the lines of each chunk of the file, in file order, so that a
+     * consumer can process the chunks in parallel itself (for example with
+     * <code>flatMap(chunk -&gt; chunk.compose(t).subscribeOn(s))</code>).
+     * Nothing is read until a chunk is subscribed to.
+     *
+     * @param file
+     * @param chunks
+     *            requested number of chunks (a small file may give fewer and
+     *            a very large one more)
+     * @return chunks of lines
+     */
+    public static Observable<Observable<String>> chunks(File file, int chunks) {
+        Preconditions.checkNotNull(file);
+        Preconditions.checkArgument(chunks > 0, "chunks must be > 0");
+        return Observable.defer(() -> {
+            try {
+                List<Observable<String>> list = new ArrayList<Observable<String>>();
+                long[] bounds = boundaries(file, chunks);
+                for (int i = 0; i < bounds.length - 1; i++)
+                    list.add(chunk(file, bounds[i], bounds[i + 1], i == bounds.length - 2));
+                return Observable.from(list);
+            } catch (IOException e) {
+                return Observable.error(e);
+            }
+        });
+    }
+
+    /**
+     * Returns the start of each chunk followed by the file size. Each chunk
+     * ends just before a newline (or at the end of the file) and the next
+     * starts just after it.
+     */
+    static long[] boundaries(File file, int chunks) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            long n = Math.max(chunks, (size + MAX_CHUNK_SIZE - 1) / MAX_CHUNK_SIZE);
+            List<Long> starts = new ArrayList<Long>();
+            starts.add(0L);
+            ByteBuffer bb = ByteBuffer.allocate(4096);
+            for (long i = 1; i < n; i++) {
+                long from = Math.max(size * i / n, starts.get(starts.size() - 1));
+                long newline = findNewline(channel, from, bb);
+                if (newline == -1)
+                    break;
+                long start = newline + 1;
+                if (start > starts.get(starts.size() - 1))
+                    starts.add(start);
+            }
+            long[] bounds = new long[starts.size() + 1];
+            for (int i = 0; i < starts.size(); i++)
+                bounds[i] = starts.get(i);
+            bounds[starts.size()] = size;
+            return bounds;
+        }
+    }
+
+    private static long findNewline(FileChannel channel, long from, ByteBuffer bb)
+            throws IOException {
+        long position = from;
+        while (true) {
+            bb.clear();
+            int n = channel.read(bb, position);
+            if (n <= 0)
+                return -1;
+            for (int i = 0; i < n; i++)
+                if (bb.get(i) == '\n')
+                    return position + i;
+            position += n;
+        }
+    }
+
+    private static Observable<String> chunk(File file, long start, long end, boolean last) {
+        return Observable.defer(() -> {
+            final MappedByteBuffer mapped;
+            try (FileChannel channel = FileChannel.open(file.toPath(),
+                    StandardOpenOption.READ)) {
+                // the mapping stays valid after the channel is closed. The
+                // newline ending the chunk is left out so that the framer's
+                // last line is the chunk's last line.
+                long length = last ? end - start : end - start - 1;
+                mapped = channel.map(MapMode.READ_ONLY, start, length);
+            } catch (IOException e) {
+                return Observable.error(e);
+            }
+            return ByteLines.from(() -> LineFramer.from(mapped)).map(line -> line.toString());
+        });
+    }
+
+}
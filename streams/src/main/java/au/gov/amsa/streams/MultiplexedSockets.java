@@ -0,0 +1,537 @@
+package au.gov.amsa.streams;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.davidmoten.util.Preconditions;
+
+import au.gov.amsa.streams.metrics.Counter;
+import au.gov.amsa.streams.metrics.Metrics;
+import rx.Observable;
+import rx.Producer;
+import rx.Subscriber;
+import rx.internal.operators.BackpressureUtils;
+import rx.subscriptions.Subscriptions;
+
+/**
+ * Reads lines from many {@link HostPort}s using one thread and a
+ * {@link Selector} over non-blocking {@link SocketChannel}s rather than a
+ * thread blocked in a read per feed.
+ *
+ * <p>
+ * Host names are resolved on separate threads so that a slow or failing DNS
+ * lookup for one feed does not hold up reading the others.
+ *
+ * <p>
+ * Each feed is reconnected if it is quiet for longer than its
+ * <code>quietTimeoutMs</code>, if the server closes the connection or if any
+ * error occurs. Reconnect attempts for a feed back off exponentially from its
+ * <code>reconnectDelayMs</code> while connects keep failing and the backoff is
+ * reset once data arrives.
+ *
+ * <p>
+ * Lines from all feeds are emitted on the one Observable which supports
+ * backpressure. When more than <code>maxQueuedLines</code> lines are waiting
+ * for downstream requests the selector stops reading from the sockets (so TCP
+ * flow control pushes back on the servers) until the queue has drained to
+ * half that size.
+ *
+ * <p>
+ * Each feed records {@link Metrics} under
+ * {@link StringSockets#metricsPrefix(String, int)}: <code>.lines</code>,
+ * <code>.bytes</code>, <code>.connects</code> and <code>.reconnects</code>.
+ * The number of lines waiting for downstream requests is the gauge
+ * <code>multiplexed.&lt;n&gt;.queued</code> where <code>n</code> numbers the
+ * subscriptions (each has its own queue) and is removed when the
+ * subscription ends.
+ */
+public final class MultiplexedSockets {
+
+    private static final Logger log = LoggerFactory.getLogger(MultiplexedSockets.class);
+
+    private static final int DEFAULT_MAX_QUEUED_LINES = 8192;
+    private static final int BUFFER_SIZE = 65536;
+    private static final int MAX_LINE_LENGTH = 65536;
+    private static final long MAX_RECONNECT_DELAY_MS = TimeUnit.MINUTES.toMillis(1);
+    private static final long SELECT_TIMEOUT_MS = 100;
+    private static final AtomicInteger READER_IDS = new AtomicInteger();
+
+    private MultiplexedSockets() {
+        // prevent instantiation
+    }
+
+    /**
+     * Returns the lines read from all the given {@link HostPort}s. The
+     * returned Observable does not complete (feeds are reconnected) and each
+     * subscription opens its own connections.
+     *
+     * @param hostPorts
+     *            the feeds to read from
+     * @param charset
+     *            charset of the lines
+     * @param maxQueuedLines
+     *            maximum number of lines to buffer before reading from the
+     *            sockets is paused
+     * @return lines from all feeds
+     */
+    public static Observable<LineAndSource> lines(List<HostPort> hostPorts, Charset charset,
+            int maxQueuedLines) {
+        Preconditions.checkNotNull(hostPorts);
+        Preconditions.checkNotNull(charset);
+        Preconditions.checkArgument(maxQueuedLines > 0, "maxQueuedLines must be > 0");
+        final List<HostPort> list = new ArrayList<HostPort>(hostPorts);
+        return Observable.create(subscriber -> {
+            Reader reader = new Reader(list, charset, maxQueuedLines, subscriber);
+            subscriber.add(Subscriptions.create(() -> reader.close()));
+            subscriber.setProducer(reader);
+            reader.start();
+        });
+    }
+
+    public static Observable<LineAndSource> lines(List<HostPort> hostPorts) {
+        return lines(hostPorts, StandardCharsets.UTF_8, DEFAULT_MAX_QUEUED_LINES);
+    }
+
+    public static Observable<LineAndSource> lines(HostPort... hostPorts) {
+        return lines(Arrays.asList(hostPorts));
+    }
+
+    private static final class Reader implements Producer, Runnable {
+
+        private final List<Feed> feeds = new ArrayList<Feed>();
+        private final Charset charset;
+        private final int maxQueuedLines;
+        private final Subscriber<? super LineAndSource> child;
+        private final Queue<LineAndSource> queue = new ConcurrentLinkedQueue<LineAndSource>();
+        private final AtomicInteger queued = new AtomicInteger();
+        private final AtomicLong requested = new AtomicLong();
+        private final AtomicInteger wip = new AtomicInteger();
+        // feeds whose address lookup has finished, handed from the resolver
+        // threads to the selector thread
+        private final Queue<Feed> resolved = new ConcurrentLinkedQueue<Feed>();
+        private final ExecutorService resolver;
+        private final Thread thread;
+        private final String metricsPrefix;
+        private volatile boolean closed;
+        // set by the selector thread before done, delivered by drain
+        private volatile Throwable error;
+        private volatile boolean done;
+        private volatile Selector selector;
+        // only accessed by the selector thread
+        private boolean paused;
+
+        Reader(List<HostPort> hostPorts, Charset charset, int maxQueuedLines,
+                Subscriber<? super LineAndSource> child) {
+            this.charset = charset;
+            this.maxQueuedLines = maxQueuedLines;
+            this.child = child;
+            for (HostPort hp : hostPorts)
+                feeds.add(new Feed(hp));
+            this.thread = new Thread(this, "multiplexed-sockets");
+            this.thread.setDaemon(true);
+            this.resolver = Executors.newCachedThreadPool(r -> {
+                Thread t = new Thread(r, "multiplexed-sockets-resolver");
+                t.setDaemon(true);
+                return t;
+            });
+            this.metricsPrefix = "multiplexed." + READER_IDS.incrementAndGet() + ".";
+            Metrics.instance().gauge(metricsPrefix + "queued", queued::get);
+        }
+
+        void start() {
+            thread.start();
+        }
+
+        void close() {
+            closed = true;
+            Selector s = selector;
+            if (s != null)
+                s.wakeup();
+        }
+
+        @Override
+        public void request(long n) {
+            if (n > 0) {
+                BackpressureUtils.getAndAddRequest(requested, n);
+                drain();
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                selector = Selector.open();
+            } catch (IOException e) {
+                Metrics.instance().removeAll(metricsPrefix);
+                resolver.shutdownNow();
+                fail(e);
+                return;
+            }
+            try {
+                while (!closed) {
+                    long now = System.currentTimeMillis();
+                    connectResolved(now);
+                    checkFeeds(now);
+                    updatePaused(now);
+                    selector.select(SELECT_TIMEOUT_MS);
+                    Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                    while (it.hasNext()) {
+                        SelectionKey key = it.next();
+                        it.remove();
+                        Feed feed = (Feed) key.attachment();
+                        if (!key.isValid())
+                            continue;
+                        if (key.isConnectable())
+                            finishConnect(feed);
+                        else if (key.isReadable())
+                            read(feed);
+                    }
+                    if (queued.get() > 0)
+                        drain();
+                }
+            } catch (IOException | RuntimeException e) {
+                if (!closed) {
+                    log.warn(e.getMessage(), e);
+                    closed = true;
+                    closeAll();
+                    fail(e);
+                    return;
+                }
+            }
+            closeAll();
+        }
+
+        /**
+         * Records the error and has {@link #drain()} deliver it after the lines
+         * already queued so that it is serialized with the calls to
+         * <code>onNext</code>.
+         */
+        private void fail(Throwable e) {
+            error = e;
+            done = true;
+            drain();
+        }
+
+        private void checkFeeds(long now) {
+            for (Feed feed : feeds) {
+                if (feed.channel == null) {
+                    if (!feed.resolving && now >= feed.nextConnectTime)
+                        resolve(feed);
+                } else if (!paused && now - feed.lastActivityTime > feed.hostPort
+                        .getQuietTimeoutMs()) {
+                    log.info("no data from " + feed + " for "
+                            + feed.hostPort.getQuietTimeoutMs() + "ms, reconnecting");
+                    reconnectLater(feed, now);
+                }
+            }
+        }
+
+        private void updatePaused(long now) {
+            if (!paused && queued.get() >= maxQueuedLines) {
+                paused = true;
+                setReadInterest(false);
+            } else if (paused && queued.get() <= maxQueuedLines / 2) {
+                paused = false;
+                setReadInterest(true);
+                // don't count time spent paused as quiet time
+                for (Feed feed : feeds)
+                    feed.lastActivityTime = now;
+            }
+        }
+
+        private void setReadInterest(boolean read) {
+            for (Feed feed : feeds) {
+                if (feed.key != null && feed.key.isValid()
+                        && (feed.key.interestOps() & SelectionKey.OP_CONNECT) == 0)
+                    feed.key.interestOps(read ? SelectionKey.OP_READ : 0);
+            }
+        }
+
+        /**
+         * Looks up the feed's address on a resolver thread and hands the feed
+         * back to {@link #connectResolved(long)}.
+         */
+        private void resolve(Feed feed) {
+            feed.resolving = true;
+            resolver.execute(() -> {
+                InetSocketAddress address;
+                try {
+                    address = new InetSocketAddress(feed.hostPort.getHost(),
+                            feed.hostPort.getPort());
+                } catch (RuntimeException e) {
+                    address = InetSocketAddress.createUnresolved(feed.hostPort.getHost(),
+                            feed.hostPort.getPort());
+                }
+                feed.address = address;
+                resolved.offer(feed);
+                Selector s = selector;
+                if (s != null)
+                    s.wakeup();
+            });
+        }
+
+        private void connectResolved(long now) {
+            Feed feed;
+            while ((feed = resolved.poll()) != null) {
+                feed.resolving = false;
+                if (feed.address.isUnresolved()) {
+                    log.warn("could not resolve " + feed);
+                    reconnectLater(feed, now);
+                } else
+                    connect(feed, feed.address, now);
+            }
+        }
+
+        private void connect(Feed feed, InetSocketAddress address, long now) {
+            try {
+                log.info("connecting to " + feed);
+                SocketChannel channel = SocketChannel.open();
+                feed.channel = channel;
+                feed.lastActivityTime = now;
+                channel.configureBlocking(false);
+                if (channel.connect(address)) {
+                    feed.connects.inc();
+                    feed.key = channel.register(selector, paused ? 0 : SelectionKey.OP_READ,
+                            feed);
+                } else
+                    feed.key = channel.register(selector, SelectionKey.OP_CONNECT, feed);
+            } catch (IOException | RuntimeException e) {
+                log.warn("could not connect to " + feed + ": " + e.getMessage());
+                reconnectLater(feed, now);
+            }
+        }
+
+        private void finishConnect(Feed feed) {
+            try {
+                feed.channel.finishConnect();
+                feed.key.interestOps(paused ? 0 : SelectionKey.OP_READ);
+                feed.lastActivityTime = System.currentTimeMillis();
+                feed.connects.inc();
+                log.info("connected to " + feed);
+            } catch (IOException e) {
+                log.warn("could not connect to " + feed + ": " + e.getMessage());
+                reconnectLater(feed, System.currentTimeMillis());
+            }
+        }
+
+        private void read(Feed feed) {
+            ByteBuffer bb = feed.buffer;
+            int count;
+            try {
+                count = feed.channel.read(bb);
+            } catch (IOException e) {
+                log.warn("read from " + feed + " failed: " + e.getMessage());
+                reconnectLater(feed, System.currentTimeMillis());
+                return;
+            }
+            if (count == -1) {
+                log.info("connection closed by " + feed);
+                reconnectLater(feed, System.currentTimeMillis());
+            } else if (count > 0) {
+                feed.lastActivityTime = System.currentTimeMillis();
+                feed.failures = 0;
+                feed.bytes.add(count);
+                bb.flip();
+                splitLines(feed, bb);
+                bb.clear();
+            }
+        }
+
+        private void splitLines(Feed feed, ByteBuffer bb) {
+            int start = bb.position();
+            int limit = bb.limit();
+            for (int i = start; i < limit; i++) {
+                if (bb.get(i) == '\n') {
+                    if (feed.discarding || tooLong(feed, i - start))
+                        // end of a line that was too long
+                        feed.discarding = false;
+                    else {
+                        feed.append(bb, start, i);
+                        emit(feed);
+                    }
+                    start = i + 1;
+                }
+            }
+            if (start < limit && !feed.discarding && !tooLong(feed, limit - start))
+                feed.append(bb, start, limit);
+        }
+
+        /**
+         * Returns true and starts discarding the rest of the line (up to the
+         * next newline) if adding <code>n</code> bytes to the partial line
+         * would make it longer than {@link #MAX_LINE_LENGTH}.
+         */
+        private boolean tooLong(Feed feed, int n) {
+            if (feed.partialLength + n > MAX_LINE_LENGTH) {
+                log.warn("discarding line longer than " + MAX_LINE_LENGTH + " bytes from " + feed);
+                feed.partialLength = 0;
+                feed.discarding = true;
+                return true;
+            } else
+                return false;
+        }
+
+        private void emit(Feed feed) {
+            int length = feed.partialLength;
+            // remove trailing carriage return
+            if (length > 0 && feed.partial[length - 1] == '\r')
+                length--;
+            if (length > 0) {
+                queue.offer(new LineAndSource(new String(feed.partial, 0, length, charset),
+                        feed.hostPort));
+                queued.incrementAndGet();
+                feed.lines.inc();
+            }
+            feed.partialLength = 0;
+        }
+
+        private void reconnectLater(Feed feed, long now) {
+            closeChannel(feed);
+            feed.reconnects.inc();
+            long delay = Math.min(
+                    feed.hostPort.getReconnectDelayMs() << Math.min(feed.failures, 20),
+                    Math.max(feed.hostPort.getReconnectDelayMs(), MAX_RECONNECT_DELAY_MS));
+            feed.failures++;
+            feed.nextConnectTime = now + delay;
+            log.info("reconnecting to " + feed + " in " + delay + "ms");
+        }
+
+        private void closeChannel(Feed feed) {
+            if (feed.key != null)
+                feed.key.cancel();
+            if (feed.channel != null) {
+                try {
+                    feed.channel.close();
+                } catch (IOException e) {
+                    // don't care
+                    log.info("closing " + feed + ": " + e.getMessage());
+                }
+            }
+            feed.key = null;
+            feed.channel = null;
+            feed.partialLength = 0;
+            feed.discarding = false;
+            feed.buffer.clear();
+        }
+
+        private void closeAll() {
+            Metrics.instance().removeAll(metricsPrefix);
+            resolver.shutdownNow();
+            for (Feed feed : feeds)
+                closeChannel(feed);
+            try {
+                selector.close();
+            } catch (IOException e) {
+                // don't care
+            }
+        }
+
+        private void drain() {
+            if (wip.getAndIncrement() != 0)
+                return;
+            int missed = 1;
+            while (true) {
+                long r = requested.get();
+                long e = 0;
+                while (e != r) {
+                    if (child.isUnsubscribed())
+                        return;
+                    boolean d = done;
+                    LineAndSource line = queue.poll();
+                    if (line == null) {
+                        if (d) {
+                            // wip is left non-zero so nothing is emitted after
+                            child.onError(error);
+                            return;
+                        }
+                        break;
+                    }
+                    child.onNext(line);
+                    e++;
+                }
+                if (e == r && done && queue.isEmpty()) {
+                    if (!child.isUnsubscribed())
+                        child.onError(error);
+                    return;
+                }
+                if (e > 0) {
+                    BackpressureUtils.produced(requested, e);
+                    if (queued.addAndGet((int) -e) <= maxQueuedLines / 2 && paused) {
+                        Selector s = selector;
+                        if (s != null)
+                            s.wakeup();
+                    }
+                }
+                missed = wip.addAndGet(-missed);
+                if (missed == 0)
+                    return;
+            }
+        }
+    }
+
+    private static final class Feed {
+        final HostPort hostPort;
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        byte[] partial = new byte[256];
+        int partialLength;
+        // true while skipping the rest of a line that was too long
+        boolean discarding;
+        SocketChannel channel;
+        SelectionKey key;
+        // set by a resolver thread, read after the feed is taken from the
+        // resolved queue
+        InetSocketAddress address;
+        // only accessed by the selector thread
+        boolean resolving;
+        long lastActivityTime;
+        long nextConnectTime;
+        int failures;
+        final Counter lines;
+        final Counter bytes;
+        final Counter connects;
+        final Counter reconnects;
+
+        Feed(HostPort hostPort) {
+            this.hostPort = hostPort;
+            String prefix = StringSockets.metricsPrefix(hostPort.getHost(), hostPort.getPort());
+            this.lines = Metrics.instance().counter(prefix + ".lines");
+            this.bytes = Metrics.instance().counter(prefix + ".bytes");
+            this.connects = Metrics.instance().counter(prefix + ".connects");
+            this.reconnects = Metrics.instance().counter(prefix + ".reconnects");
+        }
+
+        void append(ByteBuffer bb, int from, int to) {
+            int n = to - from;
+            if (partialLength + n > partial.length)
+                partial = Arrays.copyOf(partial,
+                        Math.max(partial.length * 2, partialLength + n));
+            for (int i = from; i < to; i++)
+                partial[partialLength++] = bb.get(i);
+        }
+
+        @Override
+        public String toString() {
+            return hostPort.getHost() + ":" + hostPort.getPort();
+        }
+    }
+}
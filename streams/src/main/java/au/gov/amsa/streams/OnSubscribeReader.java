@@ -3,6 +3,7 @@ package au.gov.amsa.streams;
 import java.io.IOException;
 import java.io.Reader;
 
+import au.gov.amsa.streams.metrics.Counter;
 import rx.Observable;
 import rx.Observer;
 import rx.observables.SyncOnSubscribe;
@@ -11,10 +12,27 @@ public final class OnSubscribeReader extends SyncOnSubscribe<Reader, String> {
 
     private final Reader reader;
     private final int size;
+    // null if reads are not counted
+    private final Counter chars;
 
     public OnSubscribeReader(Reader reader, int size) {
+        this(reader, size, null);
+    }
+
+    /**
+     * Constructor.
+     * 
+     * @param reader
+     * @param size
+     *            maximum number of chars emitted in each string
+     * @param chars
+     *            counter incremented by the number of chars in each read, may
+     *            be null
+     */
+    public OnSubscribeReader(Reader reader, int size, Counter chars) {
         this.reader = reader;
         this.size = size;
+        this.chars = chars;
     }
 
     @Override
@@ -29,8 +47,11 @@ public final class OnSubscribeReader extends SyncOnSubscribe<Reader, String> {
             int count = reader.read(buffer);
             if (count == -1)
                 observer.onCompleted();
-            else
+            else {
+                if (chars != null)
+                    chars.add(count);
                 observer.onNext(String.valueOf(buffer, 0, count));
+            }
         } catch (IOException e) {
             observer.onError(e);
         }
@@ -0,0 +1,26 @@
+package au.gov.amsa.streams;
+
+/**
+ * What {@link FanOutStringServer} does with a line for a client whose buffer
+ * is full because the client is not reading as fast as lines arrive.
+ */
+public enum SlowConsumerPolicy {
+
+    /**
+     * Discard the oldest lines buffered for the client to make room. The
+     * client sees a gap but every other client is unaffected.
+     */
+    DROP_OLDEST,
+
+    /**
+     * Disconnect the client.
+     */
+    DROP_CLIENT,
+
+    /**
+     * Wait for the client to read. This holds up the source (and so every
+     * other client) until there is room.
+     */
+    BLOCK;
+
+}
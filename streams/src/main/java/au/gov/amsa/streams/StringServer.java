@@ -5,11 +5,15 @@ import java.io.OutputStream;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketTimeoutException;
-import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import au.gov.amsa.streams.metrics.Counter;
+import au.gov.amsa.streams.metrics.Histogram;
+import au.gov.amsa.streams.metrics.Metrics;
 import rx.Observable;
 import rx.Subscriber;
 import rx.internal.util.SubscriptionList;
@@ -19,6 +23,25 @@ import rx.subscriptions.Subscriptions;
 /**
  * Publishes lines from an Observable&lt;String&gt; source to a
  * {@link ServerSocket}.
+ *
+ * <p>
+ * By default each connection subscribes to the source afresh. A server made
+ * with {@link #createBroadcast(Observable, int, int, long, TimeUnit)} instead
+ * subscribes to the source once and every connection reads from a shared
+ * {@link BroadcastRing}, so a cold source is not re-run per client.
+ *
+ * <p>
+ * Lines are written as {@link EncodedString}s. A server made with
+ * {@link #createEncoded(Observable, int)} from a shared source of encoded
+ * lines writes the same bytes to every client rather than encoding each
+ * line once per client.
+ *
+ * <p>
+ * Once started the server records {@link Metrics} named
+ * <code>server.&lt;port&gt;.clients</code>, <code>.lines</code> (lines written
+ * over all clients) and <code>.writeMicros</code> (time to write and flush a
+ * line). A broadcasting server also reports <code>.overruns</code>, the
+ * number of times a client fell behind the ring and skipped lines.
  */
 public final class StringServer {
 
@@ -26,8 +49,12 @@ public final class StringServer {
 
     private final ServerSocket ss;
     private volatile boolean keepGoing = true;
-    private final Observable<String> source;
+    private final Observable<EncodedString> source;
     private final SubscriptionList subscriptions = new SubscriptionList();
+    // null unless broadcasting
+    private final BroadcastRing<EncodedString> ring;
+    private final long replayMs;
+    private final AtomicInteger clients = new AtomicInteger();
 
     /**
      * Factory method.
@@ -38,7 +65,46 @@ public final class StringServer {
      *            to assign the server socket to
      */
     public static StringServer create(Observable<String> source, int port) {
-        return new StringServer(source, port);
+        return createEncoded(source.map(s -> EncodedString.of(s)), port);
+    }
+
+    /**
+     * Factory method for a server that writes already encoded strings. Each
+     * connection subscribes to the source so if the source is shared (for
+     * example with {@link Observable#share()}) every client is written the
+     * same bytes and each line is encoded only once.
+     *
+     * @param source
+     *            source to publish on server socket
+     * @param port
+     *            to assign the server socket to
+     */
+    public static StringServer createEncoded(Observable<EncodedString> source, int port) {
+        return new StringServer(source, port, null, 0);
+    }
+
+    /**
+     * Factory method for a server that subscribes to the source once (when
+     * started) rather than once per connection. A client that connects is
+     * first sent the lines published in the last <code>replay</code> time
+     * units that are still held, then lines as they arrive. A client that
+     * falls more than <code>bufferSize</code> lines behind skips lines.
+     *
+     * @param source
+     *            source to publish on server socket
+     * @param port
+     *            to assign the server socket to
+     * @param bufferSize
+     *            number of most recent lines held for clients
+     * @param replay
+     *            how far back a new client starts, 0 for no replay
+     * @param unit
+     *            unit of replay
+     */
+    public static StringServer createBroadcast(Observable<String> source, int port,
+            int bufferSize, long replay, TimeUnit unit) {
+        return new StringServer(source.map(s -> EncodedString.of(s)), port,
+                new BroadcastRing<EncodedString>(bufferSize), unit.toMillis(replay));
     }
 
     /**
@@ -49,7 +115,8 @@ public final class StringServer {
      * @param source
      *            the source of lines to publish on ServerSocket
      */
-    private StringServer(Observable<String> source, int port) {
+    private StringServer(Observable<EncodedString> source, int port,
+            BroadcastRing<EncodedString> ring, long replayMs) {
         try {
             this.ss = new ServerSocket(port);
             subscriptions.add(Subscriptions.create(() -> closeServerSocket()));
@@ -57,13 +124,23 @@ public final class StringServer {
             throw new RuntimeException(e);
         }
         this.source = source;
+        this.ring = ring;
+        this.replayMs = replayMs;
     }
 
     /**
      * Starts the server. Each connection to the server will bring about another
-     * subscription to the source.
+     * subscription to the source (or to the shared ring when broadcasting).
      */
     public void start() {
+        String prefix = metricsPrefix();
+        Metrics.instance().gauge(prefix + ".clients", clients::get);
+        Counter lines = Metrics.instance().counter(prefix + ".lines");
+        Histogram writeMicros = Metrics.instance().histogram(prefix + ".writeMicros");
+        if (ring != null) {
+            Metrics.instance().gauge(prefix + ".overruns", ring::overruns);
+            subscriptions.add(ring.subscribeTo(source.subscribeOn(Schedulers.io())));
+        }
         try {
             while (keepGoing) {
                 try {
@@ -75,11 +152,16 @@ public final class StringServer {
                     try {
                         final OutputStream out = socket.getOutputStream();
 
-                        Subscriber<String> subscriber = createSubscriber(socket, socketName, out);
+                        Subscriber<EncodedString> subscriber = createSubscriber(socket, socketName, out,
+                                lines, writeMicros);
                         subscriptions.add(subscriber);
-                        source.subscribeOn(Schedulers.io())
+                        clients.incrementAndGet();
+                        clientSource().subscribeOn(Schedulers.io())
                                 // remove subscriber from subscriptions on unsub
-                                .doOnUnsubscribe(() -> subscriptions.remove(subscriber))
+                                .doOnUnsubscribe(() -> {
+                                    clients.decrementAndGet();
+                                    subscriptions.remove(subscriber);
+                                })
                                 // write each line to the socket OutputStream
                                 .subscribe(subscriber);
 
@@ -105,12 +187,24 @@ public final class StringServer {
         }
     }
 
+    private String metricsPrefix() {
+        return "server." + ss.getLocalPort();
+    }
+
+    private Observable<EncodedString> clientSource() {
+        if (ring == null)
+            return source;
+        else
+            return ring.observe(replayMs, TimeUnit.MILLISECONDS);
+    }
+
     /**
      * Stops the server by closing the ServerSocket.
      */
     public void stop() {
         keepGoing = false;
         subscriptions.unsubscribe();
+        Metrics.instance().removeAll(metricsPrefix() + ".");
     }
 
     private void closeServerSocket() {
@@ -122,9 +216,9 @@ public final class StringServer {
         }
     }
 
-    private static Subscriber<String> createSubscriber(final Socket socket, final String socketName,
-            final OutputStream out) {
-        return new Subscriber<String>() {
+    private static Subscriber<EncodedString> createSubscriber(final Socket socket, final String socketName,
+            final OutputStream out, final Counter lines, final Histogram writeMicros) {
+        return new Subscriber<EncodedString>() {
 
             @Override
             public void onCompleted() {
@@ -139,10 +233,13 @@ public final class StringServer {
             }
 
             @Override
-            public void onNext(String line) {
+            public void onNext(EncodedString line) {
                 try {
-                    out.write(line.getBytes(StandardCharsets.UTF_8));
+                    long t = System.nanoTime();
+                    line.writeTo(out);
                     out.flush();
+                    writeMicros.record((System.nanoTime() - t) / 1000);
+                    lines.inc();
                 } catch (IOException e) {
                     log.info(e.getMessage() + " " + socketName);
                     // this will unsubscribe to clean up the
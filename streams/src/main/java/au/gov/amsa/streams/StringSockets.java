@@ -6,6 +6,7 @@ import java.net.Socket;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -15,6 +16,9 @@ import com.github.davidmoten.rx.RetryWhen;
 import com.github.davidmoten.util.Preconditions;
 import com.google.common.annotations.VisibleForTesting;
 
+import au.gov.amsa.streams.metrics.Counter;
+import au.gov.amsa.streams.metrics.Metrics;
+
 import rx.Observable;
 import rx.Scheduler;
 import rx.functions.Action1;
@@ -44,13 +48,26 @@ public final class StringSockets {
         // delay connect by delayMs so that if server closes
         // stream on every connect we won't be in a mad loop of
         // failing connections
-        return from(socketCreator(host, port, (int) quietTimeoutMs), quietTimeoutMs,
-                reconnectDelayMs, charset, scheduler); //
+        String prefix = metricsPrefix(host, port);
+        Counter chars = Metrics.instance().counter(prefix + ".chars");
+        Counter errors = Metrics.instance().counter(prefix + ".errors");
+        Observable<String> strings = Observable
+                .using(socketCreator(host, port, (int) quietTimeoutMs),
+                        socketObservableFactory(charset, chars), socketDisposer(), true)
+                // count each failed connection, not just the end of retrying
+                .doOnError(e -> errors.inc());
+        return reconnecting(strings, quietTimeoutMs, reconnectDelayMs, scheduler);
     }
 
     public static Observable<String> from(Func0<Socket> socketCreator, long quietTimeoutMs,
             long reconnectDelayMs, Charset charset, Scheduler scheduler) {
-        return strings(socketCreator, charset) //
+        return reconnecting(strings(socketCreator, charset), quietTimeoutMs, reconnectDelayMs,
+                scheduler);
+    }
+
+    private static Observable<String> reconnecting(Observable<String> strings,
+            long quietTimeoutMs, long reconnectDelayMs, Scheduler scheduler) {
+        return strings //
                 // additional timeout appears to be necessary for certain use
                 // cases like when the server side does not close the socket
                 .timeout(quietTimeoutMs + 100, TimeUnit.MILLISECONDS) //
@@ -63,6 +80,47 @@ public final class StringSockets {
                 .share();
     }
 
+    /**
+     * Returns the lines (UTF-8) read from sockets made by
+     * <code>socketCreator</code>, reconnecting in the same way as
+     * {@link #from(Func0, long, long, Charset, Scheduler)}. Lines are framed
+     * on the bytes by {@link LineFramer} rather than by splitting decoded
+     * strings.
+     *
+     * @param socketCreator
+     * @param quietTimeoutMs
+     * @param reconnectDelayMs
+     * @param scheduler
+     * @return lines
+     */
+    public static Observable<String> linesFrom(Func0<Socket> socketCreator, long quietTimeoutMs,
+            long reconnectDelayMs, Scheduler scheduler) {
+        return Observable.using(socketCreator, socketLinesFactory(), socketDisposer(), true)
+                .timeout(quietTimeoutMs + 100, TimeUnit.MILLISECONDS) //
+                .subscribeOn(scheduler) //
+                .retryWhen(RetryWhen //
+                        .delay(reconnectDelayMs, TimeUnit.MILLISECONDS) //
+                        .build()) //
+                .share();
+    }
+
+    public static Observable<String> linesFrom(String host, int port, long quietTimeoutMs,
+            long reconnectDelayMs, Scheduler scheduler) {
+        String prefix = metricsPrefix(host, port);
+        Counter lines = Metrics.instance().counter(prefix + ".lines");
+        Counter errors = Metrics.instance().counter(prefix + ".errors");
+        Func0<Socket> socketCreator = socketCreator(host, port, (int) quietTimeoutMs);
+        return linesFrom(() -> {
+            try {
+                return socketCreator.call();
+            } catch (RuntimeException e) {
+                errors.inc();
+                throw e;
+            }
+        }, quietTimeoutMs, reconnectDelayMs, scheduler) //
+                .doOnNext(line -> lines.inc());
+    }
+
     public static class Builder {
         private final String host;
         private int port = 6564;
@@ -144,10 +202,34 @@ public final class StringSockets {
                 .using(socketCreator, socketObservableFactory(charset), socketDisposer(), true);
     }
 
+    /**
+     * Returns the prefix of the {@link Metrics} names recorded for reads from
+     * the given host and port, for example <code>socket.host:port.lines</code>,
+     * <code>socket.host:port.connects</code> and
+     * <code>socket.host:port.reconnects</code> (connection attempts after the
+     * first). The <code>ageMs</code> of the lines (or chars) counter is the
+     * time since data was last received.
+     *
+     * @param host
+     * @param port
+     * @return metric name prefix
+     */
+    public static String metricsPrefix(String host, int port) {
+        return "socket." + host + ":" + port;
+    }
+
     @VisibleForTesting
     static Func0<Socket> socketCreator(final String host, final int port, long quietTimeoutMs) {
+        String prefix = metricsPrefix(host, port);
+        Counter connects = Metrics.instance().counter(prefix + ".connects");
+        Counter reconnects = Metrics.instance().counter(prefix + ".reconnects");
+        AtomicBoolean first = new AtomicBoolean(true);
         return Checked.f0(() -> {
+            // every attempt after the first is a reconnect, successful or not
+            if (!first.compareAndSet(true, false))
+                reconnects.inc();
             Socket socket = new Socket(host, port);
+            connects.inc();
             socket.setSoTimeout((int) quietTimeoutMs);
             return socket;
         });
@@ -159,6 +241,18 @@ public final class StringSockets {
                 socket -> Strings.from(new InputStreamReader(socket.getInputStream(), charset)));
     }
 
+    private static Func1<Socket, Observable<String>> socketObservableFactory(
+            final Charset charset, Counter chars) {
+        return Checked.f1(socket -> Strings
+                .from(new InputStreamReader(socket.getInputStream(), charset), 8192, chars));
+    }
+
+    @VisibleForTesting
+    static Func1<Socket, Observable<String>> socketLinesFactory() {
+        return Checked.f1(socket -> ByteLines.from(socket.getInputStream())
+                .map(line -> line.toString()));
+    }
+
     @VisibleForTesting
     static Action1<Socket> socketDisposer() {
         return socket -> {
@@ -177,11 +271,8 @@ public final class StringSockets {
             Scheduler scheduler) {
         return hostPorts
                 //
-                .map(hp -> StringSockets
-                        .from(hp.getHost(), hp.getPort(), hp.getQuietTimeoutMs(),
-                                hp.getReconnectDelayMs(), StandardCharsets.UTF_8, scheduler)
-                        // split by new line character
-                        .compose(o -> Strings.split(o, "\n")))
+                .map(hp -> StringSockets.linesFrom(hp.getHost(), hp.getPort(),
+                        hp.getQuietTimeoutMs(), hp.getReconnectDelayMs(), scheduler))
                 // merge streams of lines
                 .compose(o -> Observable.merge(o));
     }
@@ -4,6 +4,7 @@ import java.io.File;
 import java.io.Reader;
 import java.nio.charset.Charset;
 
+import au.gov.amsa.streams.metrics.Counter;
 import rx.Observable;
 import rx.functions.Func1;
 
@@ -36,6 +37,19 @@ public final class Strings {
         // return StringObservable.from(reader, size);
     }
 
+    /**
+     * Returns the strings read from the reader, adding the number of chars in
+     * each to <code>chars</code> as it is read.
+     * 
+     * @param reader
+     * @param size
+     * @param chars
+     * @return strings (not lines)
+     */
+    public static Observable<String> from(final Reader reader, final int size, Counter chars) {
+        return new OnSubscribeReader(reader, size, chars).toObservable();
+    }
+
     public static Observable<String> from(Reader reader) {
         return from(reader, 8192);
     }
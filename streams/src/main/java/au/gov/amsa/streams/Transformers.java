@@ -1,9 +1,16 @@
 package au.gov.amsa.streams;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
+import com.github.davidmoten.util.Preconditions;
+
+import rx.Observable;
 import rx.Observable.Transformer;
 import rx.Scheduler;
+import rx.functions.Func1;
+import rx.schedulers.Schedulers;
 
 public class Transformers {
 
@@ -11,4 +18,55 @@ public class Transformers {
             Scheduler scheduler) {
         return o -> o.lift(new OperatorSubscriptionInterval<T>(delay, unit, scheduler));
     }
+
+    /**
+     * Applies <code>func</code> to each item like <code>map</code> but in
+     * parallel. Items are grouped into batches of <code>batchSize</code>, up to
+     * <code>parallelism</code> batches are mapped concurrently on the given
+     * scheduler and the results are emitted in the same order as the source
+     * items. Backpressure is supported (at most <code>parallelism</code>
+     * batches are requested ahead of downstream demand).
+     *
+     * <p>
+     * Note that an item is not mapped until its batch is full (or the source
+     * completes) so on a slow live source use a small batch size. The function
+     * must be thread safe and should not return null.
+     *
+     * @param func
+     *            mapping function
+     * @param parallelism
+     *            maximum number of batches mapped concurrently
+     * @param batchSize
+     *            number of items mapped together in one task
+     * @param scheduler
+     *            scheduler to do the mapping on
+     * @return transformer that maps in parallel preserving order
+     */
+    public static <T, R> Transformer<T, R> parallelOrdered(Func1<? super T, ? extends R> func,
+            int parallelism, int batchSize, Scheduler scheduler) {
+        Preconditions.checkNotNull(func);
+        Preconditions.checkArgument(parallelism > 0, "parallelism must be > 0");
+        Preconditions.checkArgument(batchSize > 0, "batchSize must be > 0");
+        Preconditions.checkNotNull(scheduler);
+        return o -> o.buffer(batchSize)
+                // map each batch on the scheduler, subscribing to up to
+                // parallelism batches at once but emitting in order
+                .concatMapEager(batch -> Observable.fromCallable(() -> {
+                    List<R> list = new ArrayList<R>(batch.size());
+                    for (T t : batch)
+                        list.add(func.call(t));
+                    return list;
+                }).subscribeOn(scheduler), parallelism, parallelism)
+                // flatten
+                .concatMapIterable(list -> list);
+    }
+
+    /**
+     * As {@link #parallelOrdered(Func1, int, int, Scheduler)} using the
+     * computation scheduler.
+     */
+    public static <T, R> Transformer<T, R> parallelOrdered(Func1<? super T, ? extends R> func,
+            int parallelism, int batchSize) {
+        return parallelOrdered(func, parallelism, batchSize, Schedulers.computation());
+    }
 }
@@ -0,0 +1,63 @@
+package au.gov.amsa.streams.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A monotonically increasing count that remembers when it was last
+ * incremented, so that a stalled feed shows up as a growing age rather than
+ * only as a flat count.
+ */
+public final class Counter {
+
+    private final LongAdder count = new LongAdder();
+    private volatile long lastUpdateTime;
+
+    Counter() {
+        // created by Metrics
+    }
+
+    public void inc() {
+        count.increment();
+        touch();
+    }
+
+    public void add(long n) {
+        count.add(n);
+        touch();
+    }
+
+    private void touch() {
+        // only write the shared field when the ms has moved on so that
+        // threads incrementing at high rates don't contend on its cache line
+        long now = System.currentTimeMillis();
+        if (now != lastUpdateTime)
+            lastUpdateTime = now;
+    }
+
+    public long count() {
+        return count.sum();
+    }
+
+    /**
+     * Returns the time of the last increment in epoch ms or 0 if never
+     * incremented.
+     *
+     * @return
+     */
+    public long lastUpdateTime() {
+        return lastUpdateTime;
+    }
+
+    /**
+     * Returns the ms since the last increment or -1 if never incremented.
+     *
+     * @param now
+     *            current time in epoch ms
+     * @return
+     */
+    public long ageMs(long now) {
+        long t = lastUpdateTime;
+        return t == 0 ? -1 : Math.max(0, now - t);
+    }
+
+}
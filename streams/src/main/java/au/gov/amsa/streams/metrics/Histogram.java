@@ -0,0 +1,98 @@
+package au.gov.amsa.streams.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Distribution of non-negative long values (typically latencies in
+ * microseconds) in log-linear buckets in the style of HdrHistogram: values
+ * are grouped by power of two and each power of two is divided into
+ * {@value #SUB_BUCKETS} linear sub-buckets, so any percentile is reported to
+ * within about 6% of the true value using a fixed {@value #BUCKETS} counters
+ * whatever the range. Recording is lock free and does not allocate.
+ */
+public final class Histogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // values below SUB_BUCKETS have their own bucket, then SUB_BUCKETS per
+    // power of two up to 2^63
+    static final int BUCKETS = SUB_BUCKETS + (63 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    Histogram() {
+        // created by Metrics
+    }
+
+    public void record(long value) {
+        long v = Math.max(0, value);
+        counts.incrementAndGet(index(v));
+        count.increment();
+        sum.add(v);
+        max.accumulate(v);
+    }
+
+    public long count() {
+        return count.sum();
+    }
+
+    public long max() {
+        return max.get();
+    }
+
+    public double mean() {
+        long n = count.sum();
+        return n == 0 ? 0 : (double) sum.sum() / n;
+    }
+
+    /**
+     * Returns the value at the given percentile (0 to 100). The result is the
+     * upper bound of the bucket holding that value (and no more than the
+     * maximum recorded).
+     *
+     * @param percentile
+     * @return value at percentile, 0 if nothing recorded
+     */
+    public long percentile(double percentile) {
+        long[] snapshot = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0)
+            return 0;
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank)
+                return Math.min(upperBound(i), max());
+        }
+        return max();
+    }
+
+    static int index(long v) {
+        if (v < SUB_BUCKETS)
+            return (int) v;
+        int exponent = 63 - Long.numberOfLeadingZeros(v);
+        int shift = exponent - SUB_BUCKET_BITS;
+        int sub = (int) (v >>> shift) & (SUB_BUCKETS - 1);
+        return SUB_BUCKETS + shift * SUB_BUCKETS + sub;
+    }
+
+    static long upperBound(int index) {
+        if (index < SUB_BUCKETS)
+            return index;
+        int shift = (index - SUB_BUCKETS) / SUB_BUCKETS;
+        int sub = (index - SUB_BUCKETS) % SUB_BUCKETS;
+        long lower = ((long) (SUB_BUCKETS + sub)) << shift;
+        return lower + (1L << shift) - 1;
+    }
+
+}
@@ -0,0 +1,147 @@
+package au.gov.amsa.streams.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * A registry of named {@link Counter}s, {@link Histogram}s and gauges for
+ * watching the health of feeds and servers. Metrics are created on first use
+ * and looked up by name so instrumented code just does
+ * <code>Metrics.instance().counter("socket.host:port.lines").inc()</code>
+ * (holding on to the returned counter where the lookup is on a hot path).
+ *
+ * <p>
+ * The current values can be read with {@link #snapshot()}, rendered as plain
+ * text with {@link #toText()} (served over HTTP by {@link MetricsEndpoint})
+ * or published to JMX with {@link #registerMBean(String)}.
+ */
+public final class Metrics {
+
+    private static final Metrics INSTANCE = new Metrics();
+
+    private final ConcurrentHashMap<String, Counter> counters = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Histogram> histograms = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the registry shared by the instrumented classes of this module.
+     *
+     * @return
+     */
+    public static Metrics instance() {
+        return INSTANCE;
+    }
+
+    public Counter counter(String name) {
+        return counters.computeIfAbsent(name, n -> new Counter());
+    }
+
+    public Histogram histogram(String name) {
+        return histograms.computeIfAbsent(name, n -> new Histogram());
+    }
+
+    /**
+     * Registers (or replaces) a gauge, a value read when metrics are reported
+     * such as a queue depth or a number of connected clients.
+     *
+     * @param name
+     * @param gauge
+     */
+    public void gauge(String name, LongSupplier gauge) {
+        gauges.put(name, gauge);
+    }
+
+    /**
+     * Removes the metrics whose names start with the given prefix, for
+     * example when the server or feed they describe is stopped.
+     *
+     * @param prefix
+     */
+    public void removeAll(String prefix) {
+        counters.keySet().removeIf(k -> k.startsWith(prefix));
+        histograms.keySet().removeIf(k -> k.startsWith(prefix));
+        gauges.keySet().removeIf(k -> k.startsWith(prefix));
+    }
+
+    /**
+     * Returns the current value of every metric by name, sorted by name. A
+     * counter <code>x</code> is reported as <code>x</code> (the count) and
+     * <code>x.ageMs</code> (ms since the last increment, -1 if never). A
+     * histogram <code>h</code> is reported as <code>h.count</code>,
+     * <code>h.mean</code>, <code>h.p50</code>, <code>h.p99</code>,
+     * <code>h.p999</code> and <code>h.max</code>.
+     *
+     * @return values by name
+     */
+    public Map<String, Number> snapshot() {
+        long now = System.currentTimeMillis();
+        Map<String, Number> map = new TreeMap<>();
+        for (Entry<String, Counter> e : counters.entrySet()) {
+            map.put(e.getKey(), e.getValue().count());
+            map.put(e.getKey() + ".ageMs", e.getValue().ageMs(now));
+        }
+        for (Entry<String, Histogram> e : histograms.entrySet()) {
+            Histogram h = e.getValue();
+            String name = e.getKey();
+            map.put(name + ".count", h.count());
+            map.put(name + ".mean", h.mean());
+            map.put(name + ".p50", h.percentile(50));
+            map.put(name + ".p99", h.percentile(99));
+            map.put(name + ".p999", h.percentile(99.9));
+            map.put(name + ".max", h.max());
+        }
+        for (Entry<String, LongSupplier> e : gauges.entrySet()) {
+            long value;
+            try {
+                value = e.getValue().getAsLong();
+            } catch (RuntimeException ex) {
+                value = -1;
+            }
+            map.put(e.getKey(), value);
+        }
+        return map;
+    }
+
+    /**
+     * Returns the snapshot as lines of <code>name value</code>.
+     *
+     * @return text
+     */
+    public String toText() {
+        StringBuilder b = new StringBuilder();
+        for (Entry<String, Number> e : snapshot().entrySet()) {
+            b.append(e.getKey());
+            b.append(' ');
+            b.append(e.getValue());
+            b.append('\n');
+        }
+        return b.toString();
+    }
+
+    /**
+     * Registers this registry with the platform MBean server under the given
+     * object name (for example <code>au.gov.amsa:type=Metrics</code>) with
+     * one read only attribute per value in {@link #snapshot()}.
+     *
+     * @param objectName
+     */
+    public void registerMBean(String objectName) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(objectName);
+            if (!server.isRegistered(name))
+                server.registerMBean(new MetricsMBean(this), name);
+        } catch (JMException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+}
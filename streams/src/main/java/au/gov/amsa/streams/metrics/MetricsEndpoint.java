@@ -0,0 +1,69 @@
+package au.gov.amsa.streams.metrics;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Serves {@link Metrics#toText()} as <code>text/plain</code> on
+ * <code>GET /metrics</code> using the JDK's built in HTTP server, for scraping
+ * by a monitoring system without needing a servlet container.
+ */
+public final class MetricsEndpoint {
+
+    private static final Logger log = LoggerFactory.getLogger(MetricsEndpoint.class);
+
+    private final HttpServer server;
+
+    private MetricsEndpoint(HttpServer server) {
+        this.server = server;
+    }
+
+    /**
+     * Starts serving the metrics.
+     *
+     * @param metrics
+     *            registry to report
+     * @param port
+     *            port to listen on, 0 for any free port
+     * @return the running endpoint
+     */
+    public static MetricsEndpoint start(Metrics metrics, int port) {
+        try {
+            HttpServer server = HttpServer.create(new InetSocketAddress(port), 0);
+            server.createContext("/metrics", exchange -> {
+                try {
+                    byte[] bytes = metrics.toText().getBytes(StandardCharsets.UTF_8);
+                    exchange.getResponseHeaders().set("Content-Type",
+                            "text/plain; charset=utf-8");
+                    exchange.sendResponseHeaders(200, bytes.length);
+                    try (OutputStream os = exchange.getResponseBody()) {
+                        os.write(bytes);
+                    }
+                } finally {
+                    exchange.close();
+                }
+            });
+            server.start();
+            log.info("serving metrics on port " + server.getAddress().getPort());
+            return new MetricsEndpoint(server);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public int port() {
+        return server.getAddress().getPort();
+    }
+
+    public void stop() {
+        server.stop(0);
+    }
+
+}
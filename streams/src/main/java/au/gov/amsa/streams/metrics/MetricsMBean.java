@@ -0,0 +1,74 @@
+package au.gov.amsa.streams.metrics;
+
+import java.util.Map;
+import java.util.Map.Entry;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+
+/**
+ * Exposes the values of a {@link Metrics} registry as JMX attributes. The set
+ * of attributes is read afresh each time so metrics created after
+ * registration appear too.
+ */
+final class MetricsMBean implements DynamicMBean {
+
+    private final Metrics metrics;
+
+    MetricsMBean(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+        Number value = metrics.snapshot().get(attribute);
+        if (value == null)
+            throw new AttributeNotFoundException(attribute);
+        return value;
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute) {
+        throw new UnsupportedOperationException("metrics are read only");
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] attributes) {
+        Map<String, Number> snapshot = metrics.snapshot();
+        AttributeList list = new AttributeList();
+        for (String name : attributes) {
+            Number value = snapshot.get(name);
+            if (value != null)
+                list.add(new Attribute(name, value));
+        }
+        return list;
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes) {
+        return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(String actionName, Object[] params, String[] signature) {
+        throw new UnsupportedOperationException(actionName);
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo() {
+        Map<String, Number> snapshot = metrics.snapshot();
+        MBeanAttributeInfo[] attributes = new MBeanAttributeInfo[snapshot.size()];
+        int i = 0;
+        for (Entry<String, Number> e : snapshot.entrySet())
+            attributes[i++] = new MBeanAttributeInfo(e.getKey(), e.getValue().getClass()
+                    .getName(), e.getKey(), true, false, false);
+        return new MBeanInfo(Metrics.class.getName(), "stream metrics", attributes, null,
+                new MBeanOperationInfo[0], null);
+    }
+
+}
@@ -0,0 +1,120 @@
+package au.gov.amsa.streams;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import au.gov.amsa.util.PortFinder;
+import rx.Observable;
+import rx.schedulers.Schedulers;
+import rx.schedulers.TestScheduler;
+import rx.subjects.PublishSubject;
+
+public class BroadcastRingTest {
+
+    @Test(timeout = 10000)
+    public void testEveryReaderSeesEveryValue() {
+        BroadcastRing<Integer> ring = new BroadcastRing<Integer>(1024);
+        PublishSubject<Integer> source = PublishSubject.create();
+        ring.subscribeTo(source);
+        // replay so that readers starting after publishing see every value
+        Observable<List<Integer>> a = ring.observe(1, TimeUnit.HOURS)
+                .subscribeOn(Schedulers.io()).toList().cache();
+        Observable<List<Integer>> b = ring.observe(1, TimeUnit.HOURS)
+                .subscribeOn(Schedulers.io()).toList().cache();
+        a.subscribe();
+        b.subscribe();
+        for (int i = 0; i < 100; i++)
+            source.onNext(i);
+        source.onCompleted();
+        List<Integer> expected = Observable.range(0, 100).toList().toBlocking().single();
+        assertEquals(expected, a.toBlocking().single());
+        assertEquals(expected, b.toBlocking().single());
+        assertEquals(0, ring.overruns());
+    }
+
+    @Test
+    public void testLateReaderGetsReplayOfLastNSeconds() {
+        TestScheduler clock = new TestScheduler();
+        BroadcastRing<Integer> ring = new BroadcastRing<Integer>(1024, clock);
+        for (int i = 0; i < 10; i++) {
+            ring.publish(i);
+            clock.advanceTimeBy(1, TimeUnit.SECONDS);
+        }
+        ring.complete();
+        // now is 10s, values were published at 0s..9s
+        assertEquals(Arrays.asList(7, 8, 9),
+                ring.observe(3, TimeUnit.SECONDS).toList().toBlocking().single());
+        assertEquals(Arrays.asList(),
+                ring.observe(0, TimeUnit.SECONDS).toList().toBlocking().single());
+    }
+
+    @Test
+    public void testReplayIsLimitedToValuesStillHeld() {
+        TestScheduler clock = new TestScheduler();
+        BroadcastRing<Integer> ring = new BroadcastRing<Integer>(3, clock);
+        assertEquals(4, ring.capacity());
+        for (int i = 0; i < 10; i++)
+            ring.publish(i);
+        ring.complete();
+        // the oldest slot is the next to be overwritten so is not replayed
+        assertEquals(Arrays.asList(7, 8, 9),
+                ring.observe(1, TimeUnit.HOURS).toList().toBlocking().single());
+    }
+
+    @Test(timeout = 30000)
+    public void testValuesPublishedJustBeforeCompletionAreNotLost() {
+        for (int run = 0; run < 200; run++) {
+            BroadcastRing<Integer> ring = new BroadcastRing<Integer>(1024);
+            Observable<List<Integer>> a = ring.observe(1, TimeUnit.HOURS)
+                    .subscribeOn(Schedulers.io()).toList().cache();
+            a.subscribe();
+            for (int i = 0; i < 100; i++)
+                ring.publish(i);
+            ring.complete();
+            assertEquals(100, a.toBlocking().single().size());
+        }
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void testErrorIsPassedToReaders() {
+        BroadcastRing<Integer> ring = new BroadcastRing<Integer>(16);
+        ring.publish(1);
+        ring.error(new RuntimeException("boo"));
+        ring.observe(0, TimeUnit.SECONDS).toBlocking().last();
+    }
+
+    @Test(timeout = 10000)
+    public void testBroadcastStringServerSubscribesToSourceOnce() throws InterruptedException {
+        AtomicInteger subscriptions = new AtomicInteger();
+        Observable<String> source = Observable.interval(5, TimeUnit.MILLISECONDS)
+                .map(n -> n + "\n").doOnSubscribe(() -> subscriptions.incrementAndGet());
+        int port = PortFinder.findFreePort();
+        StringServer server = StringServer.createBroadcast(source, port, 1024, 1,
+                TimeUnit.SECONDS);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        executor.execute(() -> server.start());
+        try {
+            for (int i = 0; i < 3; i++) {
+                List<String> list = StringSockets
+                        .from("localhost", port, 1000, 1000, StandardCharsets.UTF_8,
+                                Schedulers.io())
+                        .take(5).toList().toBlocking().single();
+                assertEquals(5, list.size());
+            }
+            assertEquals(1, subscriptions.get());
+        } finally {
+            server.stop();
+            executor.shutdownNow();
+        }
+    }
+
+}
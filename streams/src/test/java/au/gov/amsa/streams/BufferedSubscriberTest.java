@@ -0,0 +1,154 @@
+package au.gov.amsa.streams;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import au.gov.amsa.streams.metrics.Metrics;
+
+import rx.Subscriber;
+import rx.observers.TestSubscriber;
+
+public class BufferedSubscriberTest {
+
+    @Test
+    public void testItemsHeldUntilRequested() {
+        TestSubscriber<Integer> ts = TestSubscriber.create(0);
+        BufferedSubscriber<Integer> b = new BufferedSubscriber<Integer>(ts);
+        b.onNext(1);
+        b.onNext(2);
+        b.onNext(3);
+        ts.assertNoValues();
+        b.requestMore(2);
+        ts.assertValues(1, 2);
+        b.onCompleted();
+        ts.assertNotCompleted();
+        b.requestMore(1);
+        ts.assertValues(1, 2, 3);
+        ts.assertCompleted();
+    }
+
+    @Test
+    public void testQueuedGaugeTracksItemsWaiting() {
+        Set<String> before = Metrics.instance().snapshot().keySet();
+        TestSubscriber<Integer> ts = TestSubscriber.create(0);
+        BufferedSubscriber<Integer> b = new BufferedSubscriber<Integer>(ts);
+        Set<String> names = new HashSet<String>(Metrics.instance().snapshot().keySet());
+        names.removeAll(before);
+        assertEquals(1, names.size());
+        String name = names.iterator().next();
+        assertTrue(name, name.startsWith("buffered.") && name.endsWith(".queued"));
+        b.onNext(1);
+        b.onNext(2);
+        b.onNext(3);
+        assertEquals(3L, Metrics.instance().snapshot().get(name));
+        b.requestMore(2);
+        assertEquals(1L, Metrics.instance().snapshot().get(name));
+        b.onCompleted();
+        b.requestMore(1);
+        ts.assertCompleted();
+        // removed once the terminal event is delivered
+        assertFalse(Metrics.instance().snapshot().containsKey(name));
+    }
+
+    @Test
+    public void testRequestAllDeliversImmediately() {
+        TestSubscriber<Integer> ts = TestSubscriber.create(0);
+        BufferedSubscriber<Integer> b = new BufferedSubscriber<Integer>(ts);
+        b.requestMore(Long.MAX_VALUE);
+        assertTrue(b.requestedAll());
+        b.onNext(1);
+        b.onNext(2);
+        ts.assertValues(1, 2);
+        RuntimeException e = new RuntimeException();
+        b.onError(e);
+        ts.assertError(e);
+    }
+
+    @Test
+    public void testErrorDeliveredAfterPendingItems() {
+        TestSubscriber<Integer> ts = TestSubscriber.create(0);
+        BufferedSubscriber<Integer> b = new BufferedSubscriber<Integer>(ts);
+        b.onNext(1);
+        b.onError(new RuntimeException());
+        ts.assertNoTerminalEvent();
+        b.requestMore(1);
+        ts.assertValues(1);
+        ts.assertError(RuntimeException.class);
+    }
+
+    @Test(timeout = 60000)
+    public void testConcurrentRequestMoreAndEmission() throws InterruptedException {
+        for (int run = 0; run < 20; run++)
+            checkConcurrentRequestMoreAndEmission(100000);
+    }
+
+    private static void checkConcurrentRequestMoreAndEmission(final int n)
+            throws InterruptedException {
+        final AtomicInteger inOnNext = new AtomicInteger();
+        final AtomicBoolean overlapped = new AtomicBoolean();
+        final AtomicInteger next = new AtomicInteger();
+        final AtomicBoolean outOfOrder = new AtomicBoolean();
+        final CountDownLatch completed = new CountDownLatch(1);
+        final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+        Subscriber<Integer> child = new Subscriber<Integer>() {
+
+            @Override
+            public void onStart() {
+                request(0);
+            }
+
+            @Override
+            public void onCompleted() {
+                completed.countDown();
+            }
+
+            @Override
+            public void onError(Throwable e) {
+                error.set(e);
+                completed.countDown();
+            }
+
+            @Override
+            public void onNext(Integer t) {
+                if (inOnNext.incrementAndGet() != 1)
+                    overlapped.set(true);
+                if (t != next.getAndIncrement())
+                    outOfOrder.set(true);
+                inOnNext.decrementAndGet();
+            }
+        };
+        final BufferedSubscriber<Integer> b = new BufferedSubscriber<Integer>(child);
+        Thread producer = new Thread(() -> {
+            for (int i = 0; i < n; i++)
+                b.onNext(i);
+            b.onCompleted();
+        });
+        Thread requester = new Thread(() -> {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            while (completed.getCount() > 0)
+                b.requestMore(1 + random.nextInt(64));
+        });
+        producer.start();
+        requester.start();
+        completed.await();
+        producer.join();
+        requester.join();
+        assertEquals(null, error.get());
+        assertEquals(Arrays.asList(false, false),
+                Arrays.asList(overlapped.get(), outOfOrder.get()));
+        assertEquals(n, next.get());
+    }
+
+}
@@ -0,0 +1,110 @@
+package au.gov.amsa.streams;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import rx.Observable;
+import rx.observers.TestSubscriber;
+
+public class ByteLinesTest {
+
+    @Test
+    public void testSplitsTheSameAsStringsSplit() {
+        for (String s : Arrays.asList("", "a", "a\n", "a\nb", "a\n\nb\n", "\n", "\n\n",
+                "ab\r\ncd\r\n", "line one\nline two\nthree")) {
+            assertEquals(s, expected(s), lines(s, 65536));
+            // tiny buffer so lines span reads and the buffer grows
+            assertEquals(s, expected(s), lines(s, 1));
+            assertEquals(s, expected(s), linesFromChannel(s, 2));
+        }
+    }
+
+    @Test
+    public void testNonAsciiIsDecodedAsUtf8() throws IOException {
+        assertEquals(Arrays.asList("café", "x"), lines("café\nx", 3));
+        // length is in bytes, not chars
+        ByteLine line = LineFramer.from(input("café")).next();
+        assertEquals(5, line.length());
+        assertEquals("café", line.toString());
+    }
+
+    @Test
+    public void testLineFramerReturnsNullAtEnd() throws IOException {
+        LineFramer framer = LineFramer.from(input("abc\ndef"));
+        assertEquals("abc", framer.next().toString());
+        ByteLine line = framer.next();
+        assertEquals(3, line.length());
+        assertEquals('d', line.byteAt(0));
+        assertEquals("def", line.toString());
+        assertNull(framer.next());
+        assertNull(framer.next());
+    }
+
+    @Test
+    public void testFromFile() throws IOException {
+        File file = File.createTempFile("byte-lines", ".txt");
+        try {
+            try (OutputStream os = new FileOutputStream(file)) {
+                for (int i = 0; i < 10000; i++)
+                    os.write(("line " + i + "\n").getBytes(StandardCharsets.UTF_8));
+            }
+            List<String> list = ByteLines.from(file).map(line -> line.toString()).toList()
+                    .toBlocking().single();
+            // the text after the last newline is an empty last line
+            assertEquals(10001, list.size());
+            assertEquals("line 9999", list.get(9999));
+            assertEquals("", list.get(10000));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testBackpressure() {
+        TestSubscriber<ByteLine> ts = TestSubscriber.create(0);
+        ByteLines.from(input("a\nb\nc\n")).subscribe(ts);
+        ts.assertNoValues();
+        ts.requestMore(2);
+        ts.assertValueCount(2);
+        ts.assertNotCompleted();
+        ts.requestMore(1);
+        ts.assertValueCount(3);
+        ts.assertNotCompleted();
+        ts.requestMore(1);
+        ts.assertValueCount(4);
+        // end of input is only found on the next request
+        ts.requestMore(1);
+        ts.assertCompleted();
+    }
+
+    private static List<String> expected(String s) {
+        return Strings.split(Observable.just(s), "\n").toList().toBlocking().single();
+    }
+
+    private static List<String> lines(String s, int bufferSize) {
+        return ByteLines.from(input(s), bufferSize).map(line -> line.toString()).toList()
+                .toBlocking().single();
+    }
+
+    private static List<String> linesFromChannel(String s, int bufferSize) {
+        return ByteLines.from(() -> LineFramer.from(Channels.newChannel(input(s)), bufferSize))
+                .map(line -> line.toString()).toList().toBlocking().single();
+    }
+
+    private static ByteArrayInputStream input(String s) {
+        return new ByteArrayInputStream(s.getBytes(StandardCharsets.UTF_8));
+    }
+
+}
@@ -0,0 +1,119 @@
+package au.gov.amsa.streams;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import au.gov.amsa.util.PortFinder;
+import rx.Observable;
+import rx.subjects.PublishSubject;
+
+public class EncodedStringTest {
+
+    private static final String READY = "ready";
+
+    @Test
+    public void testLineAppendsNewline() throws IOException {
+        assertEquals("abc\n", write(EncodedString.line("abc")));
+        assertEquals("\n", write(EncodedString.line("")));
+        assertEquals("é°\n", write(EncodedString.line("é°")));
+        assertEquals(5, EncodedString.line("é°").length());
+        assertEquals("abc", EncodedString.of("abc").toString());
+        assertEquals(3, EncodedString.of("abc").asByteBuffer().remaining());
+    }
+
+    private static String write(EncodedString s) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        s.writeTo(bytes);
+        return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    @Test(timeout = 10000)
+    public void testSharedSourceEncodedOncePerLineForAllClients()
+            throws IOException, InterruptedException {
+        PublishSubject<String> source = PublishSubject.create();
+        AtomicInteger encodings = new AtomicInteger();
+        Observable<EncodedString> encoded = source.map(line -> {
+            if (!line.equals(READY))
+                encodings.incrementAndGet();
+            return EncodedString.line(line);
+        }).share();
+        int port = PortFinder.findFreePort();
+        StringServer server = StringServer.createEncoded(encoded, port);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        executor.execute(() -> server.start());
+        try (Socket a = connect(port); Socket b = connect(port)) {
+            BufferedReader readerA = reader(a);
+            BufferedReader readerB = reader(b);
+            // emit until both clients are known to be subscribed
+            AtomicBoolean ready = new AtomicBoolean();
+            executor.execute(() -> {
+                while (!ready.get()) {
+                    source.onNext(READY);
+                    try {
+                        Thread.sleep(10);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            });
+            assertEquals(READY, readerA.readLine());
+            assertEquals(READY, readerB.readLine());
+            ready.set(true);
+            Thread.sleep(50);
+            List<String> lines = Arrays.asList("one", "two", "three");
+            for (String line : lines)
+                source.onNext(line);
+            assertEquals(lines, read(readerA, 3));
+            assertEquals(lines, read(readerB, 3));
+            assertEquals(3, encodings.get());
+        } finally {
+            server.stop();
+            executor.shutdownNow();
+        }
+    }
+
+    private static Socket connect(int port) throws InterruptedException {
+        while (true) {
+            try {
+                return new Socket("localhost", port);
+            } catch (IOException e) {
+                // server not listening yet
+                Thread.sleep(10);
+            }
+        }
+    }
+
+    private static BufferedReader reader(Socket socket) throws IOException {
+        return new BufferedReader(
+                new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Returns the next n lines that are not {@link #READY}.
+     */
+    private static List<String> read(BufferedReader reader, int n) throws IOException {
+        List<String> lines = new ArrayList<String>();
+        while (lines.size() < n) {
+            String line = reader.readLine();
+            if (!READY.equals(line))
+                lines.add(line);
+        }
+        return lines;
+    }
+
+}
@@ -0,0 +1,142 @@
+package au.gov.amsa.streams;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import rx.subjects.PublishSubject;
+
+public class FanOutStringServerTest {
+
+    private static final long TIMEOUT_MS = 10000;
+
+    @Test(timeout = TIMEOUT_MS)
+    public void testEveryClientReceivesEveryLine() throws IOException, InterruptedException {
+        PublishSubject<String> source = PublishSubject.create();
+        FanOutStringServer server = FanOutStringServer.create(source, 0);
+        server.start();
+        try (Socket a = new Socket("localhost", server.port());
+                Socket b = new Socket("localhost", server.port())) {
+            waitForClients(server, 2);
+            for (int i = 0; i < 1000; i++)
+                source.onNext("line " + i + "\n");
+            source.onCompleted();
+            for (Socket socket : Arrays.asList(a, b)) {
+                BufferedReader reader = reader(socket);
+                for (int i = 0; i < 1000; i++)
+                    assertEquals("line " + i, reader.readLine());
+                // server closes clients once drained after the source completes
+                assertNull(reader.readLine());
+            }
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test(timeout = TIMEOUT_MS)
+    public void testDropOldestKeepsSlowClientConnected() throws IOException,
+            InterruptedException {
+        PublishSubject<String> source = PublishSubject.create();
+        FanOutStringServer server = FanOutStringServer.builder(source)
+                .slowConsumerPolicy(SlowConsumerPolicy.DROP_OLDEST).clientBufferLines(16)
+                .build();
+        server.start();
+        try (Socket socket = new Socket("localhost", server.port())) {
+            waitForClients(server, 1);
+            String line = bigLine();
+            // client never reads so the socket buffers fill up
+            while (server.droppedLines() == 0)
+                source.onNext(line);
+            assertEquals(1, server.clientCount());
+            assertEquals(0, server.droppedClients());
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test(timeout = TIMEOUT_MS)
+    public void testDropClientDisconnectsSlowClient() throws IOException, InterruptedException {
+        PublishSubject<String> source = PublishSubject.create();
+        FanOutStringServer server = FanOutStringServer.builder(source)
+                .slowConsumerPolicy(SlowConsumerPolicy.DROP_CLIENT).clientBufferLines(16)
+                .build();
+        server.start();
+        try (Socket socket = new Socket("localhost", server.port())) {
+            waitForClients(server, 1);
+            String line = bigLine();
+            while (server.droppedClients() == 0)
+                source.onNext(line);
+            waitForClients(server, 0);
+            assertEquals(0, server.droppedLines());
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test(timeout = TIMEOUT_MS)
+    public void testBlockWaitsForSlowClient() throws IOException, InterruptedException {
+        PublishSubject<String> source = PublishSubject.create();
+        FanOutStringServer server = FanOutStringServer.builder(source)
+                .slowConsumerPolicy(SlowConsumerPolicy.BLOCK).clientBufferLines(4)
+                .writeBufferBytes(64).build();
+        server.start();
+        try (Socket socket = new Socket("localhost", server.port())) {
+            waitForClients(server, 1);
+            // failures on the reader thread would not fail the test so keep
+            // them for the test thread
+            AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+            Thread reader = new Thread(() -> {
+                try {
+                    BufferedReader r = reader(socket);
+                    // read slowly
+                    for (int i = 0; i < 2000; i++) {
+                        assertEquals("line " + i, r.readLine());
+                        if (i % 100 == 0)
+                            Thread.sleep(10);
+                    }
+                } catch (Throwable e) {
+                    error.set(e);
+                }
+            });
+            reader.start();
+            for (int i = 0; i < 2000; i++)
+                source.onNext("line " + i + "\n");
+            reader.join();
+            if (error.get() != null)
+                throw new AssertionError(error.get());
+            assertEquals(0, server.droppedLines());
+            assertEquals(1, server.clientCount());
+        } finally {
+            server.stop();
+        }
+    }
+
+    private static String bigLine() {
+        char[] chars = new char[4096];
+        Arrays.fill(chars, 'a');
+        return new String(chars) + "\n";
+    }
+
+    private static BufferedReader reader(Socket socket) throws IOException {
+        return new BufferedReader(
+                new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+    }
+
+    private static void waitForClients(FanOutStringServer server, int n)
+            throws InterruptedException {
+        while (server.clientCount() != n)
+            Thread.sleep(10);
+        assertTrue(server.clientCount() == n);
+    }
+
+}
@@ -0,0 +1,129 @@
+package au.gov.amsa.streams;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import rx.Observable;
+import rx.observers.TestSubscriber;
+import rx.schedulers.Schedulers;
+
+public class MappedLinesTest {
+
+    @Test
+    public void testOrderedMatchesSequentialSplit() throws IOException {
+        Random random = new Random(1);
+        for (String s : Arrays.asList("", "a", "a\n", "\n", "\n\n\n", "a\nb\n\nc", randomText(
+                random, 10000))) {
+            File file = write(s);
+            try {
+                List<String> expected = expected(s);
+                for (int chunks : new int[] { 1, 2, 3, 7, 64 })
+                    assertEquals(s + " chunks=" + chunks, expected,
+                            MappedLines.from(file, chunks, true).toList().toBlocking()
+                                    .single());
+            } finally {
+                file.delete();
+            }
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testOrderedReadsLaterChunksWhileEmittingFirst() throws InterruptedException {
+        int linesPerChunk = 1000;
+        AtomicInteger lastChunkRead = new AtomicInteger();
+        CountDownLatch lastChunkFinished = new CountDownLatch(1);
+        List<Observable<String>> chunks = new ArrayList<Observable<String>>();
+        for (int i = 0; i < 4; i++) {
+            Observable<String> chunk = Observable.range(0, linesPerChunk).map(n -> "line " + n);
+            if (i == 3)
+                chunk = chunk.doOnNext(line -> lastChunkRead.incrementAndGet())
+                        .doOnCompleted(() -> lastChunkFinished.countDown());
+            chunks.add(chunk.subscribeOn(Schedulers.io()));
+        }
+        int bufferedLines = MappedLines.bufferedLines(linesPerChunk * 4 * 64, 4);
+        TestSubscriber<String> ts = TestSubscriber.create(1);
+        MappedLines.ordered(Observable.from(chunks), bufferedLines).subscribe(ts);
+        ts.awaitValueCount(1, 5, TimeUnit.SECONDS);
+        // while only the first line has been requested the last chunk is read
+        // completely rather than stopping when a small buffer is full
+        assertTrue(lastChunkFinished.await(5, TimeUnit.SECONDS));
+        assertEquals(linesPerChunk, lastChunkRead.get());
+        ts.requestMore(Long.MAX_VALUE);
+        ts.awaitTerminalEvent(5, TimeUnit.SECONDS);
+        ts.assertValueCount(linesPerChunk * 4);
+    }
+
+    @Test
+    public void testUnorderedHasSameLines() throws IOException {
+        String s = randomText(new Random(2), 20000);
+        File file = write(s);
+        try {
+            List<String> expected = new ArrayList<String>(expected(s));
+            List<String> list = new ArrayList<String>(
+                    MappedLines.from(file, 8, false).toList().toBlocking().single());
+            Collections.sort(expected);
+            Collections.sort(list);
+            assertEquals(expected, list);
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testBoundariesEndOnNewlines() throws IOException {
+        File file = write("aaaa\nbbbb\ncccc\ndddd\n");
+        try {
+            long[] bounds = MappedLines.boundaries(file, 4);
+            assertEquals(Arrays.toString(bounds), 5, bounds.length);
+            assertEquals(0, bounds[0]);
+            assertEquals(10, bounds[1]);
+            assertEquals(15, bounds[2]);
+            assertEquals(20, bounds[3]);
+            assertEquals(20, bounds[4]);
+            assertEquals(4, MappedLines.chunks(file, 4).count().toBlocking().single()
+                    .intValue());
+        } finally {
+            file.delete();
+        }
+    }
+
+    private static String randomText(Random random, int lines) {
+        StringBuilder b = new StringBuilder();
+        for (int i = 0; i < lines; i++) {
+            int length = random.nextInt(100);
+            for (int j = 0; j < length; j++)
+                b.append((char) ('a' + random.nextInt(26)));
+            b.append('\n');
+        }
+        return b.toString();
+    }
+
+    private static List<String> expected(String s) {
+        return Strings.split(Observable.just(s), "\n").toList().toBlocking().single();
+    }
+
+    private static File write(String s) throws IOException {
+        File file = File.createTempFile("mapped-lines", ".txt");
+        try (OutputStream os = new FileOutputStream(file)) {
+            os.write(s.getBytes(StandardCharsets.UTF_8));
+        }
+        return file;
+    }
+
+}
@@ -0,0 +1,109 @@
+package au.gov.amsa.streams;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import au.gov.amsa.streams.metrics.Metrics;
+import au.gov.amsa.util.PortFinder;
+import rx.Observable;
+
+public class MultiplexedSocketsTest {
+
+    @Test
+    public void testLinesFromTwoServersAreMergedWithSource() throws InterruptedException {
+        int port1 = PortFinder.findFreePort();
+        // lines split across writes and with mixed line terminators
+        StringServer server1 = StringServer.create(Observable.just("a1\na", "2\r\n", "a3\n"),
+                port1);
+        // find the second port after the first is bound so they differ
+        int port2 = PortFinder.findFreePort();
+        StringServer server2 = StringServer.create(Observable.just("b1\n", "\n", "b2\n"), port2);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        executor.execute(() -> server1.start());
+        executor.execute(() -> server2.start());
+        try {
+            HostPort hp1 = HostPort.create("localhost", port1, 10000, 10000);
+            HostPort hp2 = HostPort.create("localhost", port2, 10000, 10000);
+            List<LineAndSource> list = MultiplexedSockets.lines(hp1, hp2)
+                    // all lines from both servers
+                    .take(5)
+                    // wait for result
+                    .toList().timeout(10, TimeUnit.SECONDS).toBlocking().single();
+            List<String> fromServer1 = new ArrayList<String>();
+            List<String> fromServer2 = new ArrayList<String>();
+            for (LineAndSource line : list) {
+                if (line.source() == hp1)
+                    fromServer1.add(line.line());
+                else if (line.source() == hp2)
+                    fromServer2.add(line.line());
+            }
+            assertEquals(Arrays.asList("a1", "a2", "a3"), fromServer1);
+            assertEquals(Arrays.asList("b1", "b2"), fromServer2);
+            // the queue gauge is removed once the subscription has ended
+            long deadline = System.currentTimeMillis() + 10000;
+            while (hasQueuedGauge() && System.currentTimeMillis() < deadline)
+                Thread.sleep(10);
+            assertFalse(hasQueuedGauge());
+        } finally {
+            server1.stop();
+            server2.stop();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testUnresolvableHostDoesNotStopOtherFeeds() {
+        int port = PortFinder.findFreePort();
+        StringServer server = StringServer.create(Observable.just("a1\n", "a2\n"), port);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        executor.execute(() -> server.start());
+        try {
+            HostPort unknown = HostPort.create("non-existent-host.invalid", 1234, 10000, 100);
+            HostPort hp = HostPort.create("localhost", port, 10000, 10000);
+            List<String> list = MultiplexedSockets.lines(unknown, hp).map(line -> line.line())
+                    .take(2).toList().timeout(10, TimeUnit.SECONDS).toBlocking().single();
+            assertEquals(Arrays.asList("a1", "a2"), list);
+        } finally {
+            server.stop();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testRestOfTooLongLineIsDiscarded() {
+        StringBuilder b = new StringBuilder();
+        for (int i = 0; i < 50000; i++)
+            b.append('x');
+        String half = b.toString();
+        int port = PortFinder.findFreePort();
+        // a line of 100000 bytes written in two parts
+        StringServer server = StringServer.create(Observable.just("a\n", half, half + "\nb\n"),
+                port);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        executor.execute(() -> server.start());
+        try {
+            HostPort hp = HostPort.create("localhost", port, 10000, 10000);
+            List<String> list = MultiplexedSockets.lines(hp).map(line -> line.line()).take(2)
+                    .toList().timeout(10, TimeUnit.SECONDS).toBlocking().single();
+            assertEquals(Arrays.asList("a", "b"), list);
+        } finally {
+            server.stop();
+            executor.shutdownNow();
+        }
+    }
+
+    private static boolean hasQueuedGauge() {
+        return Metrics.instance().snapshot().keySet().stream()
+                .anyMatch(name -> name.startsWith("multiplexed.") && name.endsWith(".queued"));
+    }
+
+}
@@ -1,5 +1,6 @@
 package au.gov.amsa.streams;
 
+import static org.junit.Assert.assertEquals;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
@@ -15,8 +16,11 @@ import java.util.concurrent.TimeUnit;
 
 import org.junit.Test;
 
+import au.gov.amsa.streams.metrics.Counter;
+import au.gov.amsa.streams.metrics.Metrics;
 import au.gov.amsa.util.PortFinder;
 import rx.Observable;
+import rx.functions.Func0;
 import rx.functions.Func1;
 import rx.schedulers.Schedulers;
 
@@ -70,4 +74,26 @@ public class StringSocketsTest {
         StringSockets.socketCreator("non-existent-host", 1234, 5000).call();
     }
 
+    @Test
+    public void testSocketCreatorCountsAttemptsAfterTheFirstAsReconnects() {
+        String prefix = StringSockets.metricsPrefix("non-existent-host", 1235);
+        Metrics.instance().removeAll(prefix);
+        Counter reconnects = Metrics.instance().counter(prefix + ".reconnects");
+        Func0<Socket> creator = StringSockets.socketCreator("non-existent-host",
+                1235, 5000);
+        try {
+            for (int i = 0; i < 3; i++) {
+                try {
+                    creator.call();
+                } catch (RuntimeException e) {
+                    // expected
+                }
+            }
+            assertEquals(2, reconnects.count());
+            assertEquals(0, Metrics.instance().counter(prefix + ".connects").count());
+        } finally {
+            Metrics.instance().removeAll(prefix);
+        }
+    }
+
 }
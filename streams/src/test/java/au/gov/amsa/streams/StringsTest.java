@@ -2,8 +2,13 @@ package au.gov.amsa.streams;
 
 import static org.junit.Assert.assertEquals;
 
+import java.io.StringReader;
+
 import org.junit.Test;
 
+import au.gov.amsa.streams.metrics.Counter;
+import au.gov.amsa.streams.metrics.Metrics;
+
 public class StringsTest {
 
 	@Test
@@ -16,4 +21,16 @@ public class StringsTest {
 		assertEquals(null, Strings.TRIM.call(null));
 	}
 
+	@Test
+	public void testFromReaderCountsChars() {
+		Counter chars = Metrics.instance().counter("StringsTest.chars");
+		try {
+			assertEquals(3, (int) Strings.from(new StringReader("abcdefghij"), 4, chars).count()
+					.toBlocking().single());
+			assertEquals(10, chars.count());
+		} finally {
+			Metrics.instance().removeAll("StringsTest.");
+		}
+	}
+
 }
@@ -0,0 +1,67 @@
+package au.gov.amsa.streams;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import rx.Observable;
+import rx.observers.TestSubscriber;
+
+public class TransformersTest {
+
+    @Test
+    public void testParallelOrderedPreservesOrder() {
+        List<Integer> list = Observable.range(1, 1000)
+                .compose(Transformers.<Integer, Integer> parallelOrdered(n -> {
+                    // finish later batches sooner
+                    if (n % 10 == 0 && n < 100)
+                        sleep(5);
+                    return n * 2;
+                } , 4, 10))
+                // wait for all
+                .toList().toBlocking().single();
+        assertEquals(1000, list.size());
+        for (int i = 0; i < list.size(); i++)
+            assertEquals(2 * (i + 1), (int) list.get(i));
+    }
+
+    @Test
+    public void testParallelOrderedSupportsBackpressure() {
+        TestSubscriber<Integer> ts = TestSubscriber.create(0);
+        Observable.range(1, 100).compose(Transformers.<Integer, Integer> parallelOrdered(n -> n, 2, 3))
+                .subscribe(ts);
+        ts.assertNoValues();
+        ts.requestMore(5);
+        ts.awaitValueCount(5, 5, TimeUnit.SECONDS);
+        sleep(100);
+        ts.assertValues(1, 2, 3, 4, 5);
+        ts.requestMore(Long.MAX_VALUE);
+        ts.awaitTerminalEvent(5, TimeUnit.SECONDS);
+        ts.assertValueCount(100);
+        ts.assertCompleted();
+    }
+
+    @Test
+    public void testParallelOrderedPropagatesError() {
+        TestSubscriber<Integer> ts = TestSubscriber.create();
+        Observable.range(1, 100).compose(Transformers.<Integer, Integer> parallelOrdered(n -> {
+            if (n == 50)
+                throw new IllegalStateException();
+            return n;
+        } , 2, 3)).subscribe(ts);
+        ts.awaitTerminalEvent(5, TimeUnit.SECONDS);
+        ts.assertError(IllegalStateException.class);
+    }
+
+    private static void sleep(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+}
@@ -0,0 +1,125 @@
+package au.gov.amsa.streams.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Test;
+
+public class MetricsTest {
+
+    @Test
+    public void testIndexAndUpperBoundAgree() {
+        for (long v = 0; v < 100000; v++) {
+            int index = Histogram.index(v);
+            assertTrue(index < Histogram.BUCKETS);
+            assertTrue(v <= Histogram.upperBound(index));
+            if (index > 0)
+                assertTrue(v > Histogram.upperBound(index - 1));
+        }
+        assertEquals(Histogram.BUCKETS - 1, Histogram.index(Long.MAX_VALUE));
+        assertEquals(Long.MAX_VALUE, Histogram.upperBound(Histogram.BUCKETS - 1));
+    }
+
+    @Test
+    public void testHistogramPercentilesWithinBucketError() {
+        Histogram h = new Histogram();
+        for (int i = 1; i <= 10000; i++)
+            h.record(i);
+        assertEquals(10000, h.count());
+        assertEquals(10000, h.max());
+        assertEquals(5000.5, h.mean(), 0.0001);
+        assertWithin(5000, h.percentile(50));
+        assertWithin(9900, h.percentile(99));
+        assertWithin(9990, h.percentile(99.9));
+        assertEquals(10000, h.percentile(100));
+        assertEquals(1, h.percentile(0));
+    }
+
+    @Test
+    public void testEmptyHistogram() {
+        Histogram h = new Histogram();
+        assertEquals(0, h.percentile(99));
+        assertEquals(0, h.mean(), 0);
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        assertTrue(actual + " not within 1/16 of " + expected,
+                actual >= expected && actual <= expected + expected / 16);
+    }
+
+    @Test
+    public void testCounterAge() {
+        Metrics m = new Metrics();
+        Counter c = m.counter("a");
+        assertEquals(-1, c.ageMs(System.currentTimeMillis()));
+        c.add(3);
+        c.inc();
+        assertEquals(4, c.count());
+        assertEquals(1000, c.ageMs(c.lastUpdateTime() + 1000));
+        assertTrue(c == m.counter("a"));
+    }
+
+    @Test
+    public void testSnapshotAndText() {
+        Metrics m = new Metrics();
+        m.counter("feed.lines").add(7);
+        m.histogram("write").record(5);
+        m.gauge("clients", () -> 2);
+        Map<String, Number> snapshot = m.snapshot();
+        assertEquals(7L, snapshot.get("feed.lines"));
+        assertEquals(1L, snapshot.get("write.count"));
+        assertEquals(5L, snapshot.get("write.p99"));
+        assertEquals(2L, snapshot.get("clients"));
+        assertTrue(m.toText().startsWith("clients 2\nfeed.lines 7\nfeed.lines.ageMs "));
+        m.removeAll("feed.");
+        assertTrue(!m.snapshot().containsKey("feed.lines"));
+    }
+
+    @Test
+    public void testJmx() throws Exception {
+        Metrics m = new Metrics();
+        m.counter("lines").add(12);
+        m.registerMBean("au.gov.amsa:type=MetricsTest");
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName("au.gov.amsa:type=MetricsTest");
+        try {
+            assertEquals(12L, server.getAttribute(name, "lines"));
+            m.counter("more").inc();
+            assertEquals(1L, server.getAttribute(name, "more"));
+        } finally {
+            server.unregisterMBean(name);
+        }
+    }
+
+    @Test
+    public void testEndpoint() throws IOException {
+        Metrics m = new Metrics();
+        m.gauge("clients", () -> 3);
+        MetricsEndpoint endpoint = MetricsEndpoint.start(m, 0);
+        try {
+            URL url = new URL("http://localhost:" + endpoint.port() + "/metrics");
+            try (InputStream is = url.openStream()) {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                byte[] b = new byte[1024];
+                int n;
+                while ((n = is.read(b)) != -1)
+                    bytes.write(b, 0, n);
+                assertEquals("clients 3\n", new String(bytes.toByteArray(), StandardCharsets.UTF_8));
+            }
+        } finally {
+            endpoint.stop();
+        }
+    }
+
+}